@@ -59,4 +59,32 @@ Create the name of the service account to use
 {{- else }}
 {{- default "default" .Values.serviceAccount.name }}
 {{- end }}
-{{- end }}
\ No newline at end of file
+{{- end }}
+{{/*
+Maximum replicas for the autoscaler. With lag-based scaling, capped at the topic's partition
+count: a consumer group never assigns more consumers than partitions, so extra replicas sit idle.
+*/}}
+{{- define "kafka-sendgrid.maxReplicas" -}}
+{{- if .Values.autoscaling.lag.enabled }}
+{{- min .Values.autoscaling.maxReplicas .Values.autoscaling.lag.partitions }}
+{{- else }}
+{{- .Values.autoscaling.maxReplicas }}
+{{- end }}
+{{- end }}
+
+{{/*
+Workload kind. Static group membership needs the stable pod names of a StatefulSet.
+*/}}
+{{- define "kafka-sendgrid.workloadKind" -}}
+{{- if .Values.staticMembership.enabled }}StatefulSet{{ else }}Deployment{{ end }}
+{{- end }}
+
+{{/*
+Refuses deferred delivery without a StatefulSet: the journal lives on a per-pod persistent volume,
+and the pods of a Deployment would lose it with every restart.
+*/}}
+{{- define "kafka-sendgrid.validateDeferred" -}}
+{{- if and .Values.deferred.enabled (ne (include "kafka-sendgrid.workloadKind" .) "StatefulSet") }}
+{{- fail "deferred.enabled needs staticMembership.enabled: the deferred-delivery journal is kept on a per-pod volume only a StatefulSet provides" }}
+{{- end }}
+{{- end }}
@@ -0,0 +1,170 @@
+package ph.edu.cspb.kafkasendgrid.benchmark;
+
+import ph.edu.cspb.kafkasendgrid.config.CoalescingConfig;
+import ph.edu.cspb.kafkasendgrid.config.ConcurrencyLimitConfig;
+import ph.edu.cspb.kafkasendgrid.config.DeadLetterConfig;
+import ph.edu.cspb.kafkasendgrid.config.DeferredDeliveryConfig;
+import ph.edu.cspb.kafkasendgrid.config.DomainLimitConfig;
+import ph.edu.cspb.kafkasendgrid.config.DrainConfig;
+import ph.edu.cspb.kafkasendgrid.config.IdempotencyConfig;
+import ph.edu.cspb.kafkasendgrid.config.LaneConfig;
+import ph.edu.cspb.kafkasendgrid.config.RateLimitConfig;
+import ph.edu.cspb.kafkasendgrid.config.RetryConfig;
+import ph.edu.cspb.kafkasendgrid.config.SuppressionConfig;
+import ph.edu.cspb.kafkasendgrid.config.TemplateConfig;
+import ph.edu.cspb.kafkasendgrid.model.EmailMessage;
+import ph.edu.cspb.kafkasendgrid.service.AdaptiveConcurrencyLimiter;
+import ph.edu.cspb.kafkasendgrid.service.BlockingSendGridTransport;
+import ph.edu.cspb.kafkasendgrid.service.DeadLetterPublisher;
+import ph.edu.cspb.kafkasendgrid.service.DeferredDeliveryScheduler;
+import ph.edu.cspb.kafkasendgrid.service.DomainLimiter;
+import ph.edu.cspb.kafkasendgrid.service.DrainCoordinator;
+import ph.edu.cspb.kafkasendgrid.service.EmailMessageReader;
+import ph.edu.cspb.kafkasendgrid.service.EmailMessageValidator;
+import ph.edu.cspb.kafkasendgrid.service.EmailService;
+import ph.edu.cspb.kafkasendgrid.service.IdempotencyCache;
+import ph.edu.cspb.kafkasendgrid.service.KafkaConsumerService;
+import ph.edu.cspb.kafkasendgrid.service.LaneScheduler;
+import ph.edu.cspb.kafkasendgrid.service.MailRequestWriter;
+import ph.edu.cspb.kafkasendgrid.service.PipelineMetrics;
+import ph.edu.cspb.kafkasendgrid.service.RetryPublisher;
+import ph.edu.cspb.kafkasendgrid.service.SendGridRateLimiter;
+import ph.edu.cspb.kafkasendgrid.service.SuppressionList;
+import ph.edu.cspb.kafkasendgrid.service.TemplateEmailCoalescer;
+import ph.edu.cspb.kafkasendgrid.service.TemplateRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sendgrid.Request;
+import com.sendgrid.Response;
+import com.sendgrid.SendGrid;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.util.ReflectionUtils;
+
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Builds the services under benchmark the way the application context wires them, without
+ * starting Spring, Kafka or a network client. SendGrid is replaced by a client that accepts
+ * every request immediately.
+ */
+final class BenchmarkFixtures {
+
+    static final String PLAIN_TEXT_JSON = "{\"to\":\"student@example.com\",\"subject\":\"Form 137 request received\","
+        + "\"body\":\"Your Form 137 request has been received and is being processed.\",\"from\":\"registrar@example.com\"}";
+
+    static final String TEMPLATE_JSON = "{\"to\":\"student@example.com\",\"templateId\":\"d-submission-template-id\","
+        + "\"notificationType\":\"submission\",\"templateData\":{\"student_name\":\"Juan Dela Cruz\","
+        + "\"form_id\":\"F137-2024-001\",\"submission_date\":\"2024-06-01\",\"school_name\":\"CSPB\"}}";
+
+    private BenchmarkFixtures() {
+    }
+
+    static ObjectMapper objectMapper() {
+        return new ObjectMapper();
+    }
+
+    static Validator jakartaValidator() {
+        return Validation.buildDefaultValidatorFactory().getValidator();
+    }
+
+    static byte[] utf8(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static EmailMessage parse(String json) {
+        try {
+            return objectMapper().readValue(json, EmailMessage.class);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static TemplateConfig templateConfig() {
+        TemplateConfig templateConfig = new TemplateConfig();
+        templateConfig.setIds(Map.of(
+            "submission", "d-submission-template-id",
+            "status_update", "d-status-update-template-id",
+            "approval", "d-approval-template-id",
+            "rejection", "d-rejection-template-id",
+            "reminder", "d-reminder-template-id",
+            "completion", "d-completion-template-id"));
+        return templateConfig;
+    }
+
+    static TemplateRegistry templateRegistry() {
+        return new TemplateRegistry(templateConfig(), objectMapper(), new SimpleMeterRegistry());
+    }
+
+    /**
+     * SendGrid client that answers 202 Accepted without sending anything
+     */
+    static SendGrid acceptingSendGrid() {
+        return new SendGrid("benchmark-api-key") {
+            @Override
+            public Response api(Request request) {
+                return new Response(202, "", Map.of());
+            }
+        };
+    }
+
+    static PipelineMetrics pipelineMetrics() {
+        return new PipelineMetrics(new SimpleMeterRegistry(), templateConfig());
+    }
+
+    static EmailService emailService() {
+        return emailService(pipelineMetrics());
+    }
+
+    static EmailService emailService(PipelineMetrics pipelineMetrics) {
+        RateLimitConfig rateLimitConfig = new RateLimitConfig();
+        rateLimitConfig.setEnabled(false);
+        EmailService emailService = new EmailService(
+            new BlockingSendGridTransport(acceptingSendGrid()),
+            new SendGridRateLimiter(rateLimitConfig),
+            new AdaptiveConcurrencyLimiter(new ConcurrencyLimitConfig(), new SimpleMeterRegistry()),
+            templateRegistry(),
+            objectMapper(),
+            pipelineMetrics,
+            new MailRequestWriter(),
+            new DomainLimiter(new DomainLimitConfig(), new SimpleMeterRegistry()));
+        setField(emailService, "defaultFromEmail", "no-reply@example.com");
+        setField(emailService, "defaultFromName", "Form 137 System");
+        return emailService;
+    }
+
+    static KafkaConsumerService kafkaConsumerService() {
+        ObjectMapper objectMapper = objectMapper();
+        PipelineMetrics pipelineMetrics = pipelineMetrics();
+        EmailService emailService = emailService(pipelineMetrics);
+        EmailMessageReader emailMessageReader = new EmailMessageReader(objectMapper);
+        KafkaConsumerService kafkaConsumerService = new KafkaConsumerService(
+            emailService,
+            emailMessageReader,
+            new EmailMessageValidator(jakartaValidator()),
+            new TemplateEmailCoalescer(emailService, new CoalescingConfig()),
+            new RetryPublisher(null, new RetryConfig()),
+            new DeadLetterPublisher(null, new DeadLetterConfig(), objectMapper),
+            new IdempotencyCache(new IdempotencyConfig(), new SimpleMeterRegistry()),
+            pipelineMetrics,
+            new LaneScheduler(new LaneConfig(), new SimpleMeterRegistry()),
+            new DeferredDeliveryScheduler(new DeferredDeliveryConfig(), emailService, emailMessageReader,
+                new SimpleMeterRegistry()),
+            new SuppressionList(new SuppressionConfig(), null, new SimpleMeterRegistry()),
+            new DrainCoordinator(new DrainConfig(), null, new SimpleMeterRegistry()));
+        setField(kafkaConsumerService, "batchRetryBackoff", Duration.ofSeconds(5));
+        return kafkaConsumerService;
+    }
+
+    /**
+     * Stands in for Spring's @Value injection
+     */
+    private static void setField(Object target, String name, Object value) {
+        Field field = ReflectionUtils.findField(target.getClass(), name);
+        ReflectionUtils.makeAccessible(field);
+        ReflectionUtils.setField(field, target, value);
+    }
+}
@@ -0,0 +1,37 @@
+package ph.edu.cspb.kafkasendgrid.benchmark;
+
+import ph.edu.cspb.kafkasendgrid.service.KafkaConsumerService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.kafka.support.Acknowledgment;
+
+/**
+ * The whole single-record path: {@code consumeEmailMessage} parses, validates, builds the mail
+ * and sends it through the blocking transport to a SendGrid client that accepts immediately.
+ */
+@State(Scope.Benchmark)
+public class ConsumePipelineBenchmark {
+
+    @Param({"plain", "template"})
+    public String payload;
+
+    private KafkaConsumerService kafkaConsumerService;
+    private byte[] message;
+
+    @Setup
+    public void setUp() {
+        kafkaConsumerService = BenchmarkFixtures.kafkaConsumerService();
+        message = BenchmarkFixtures.utf8(
+            "plain".equals(payload) ? BenchmarkFixtures.PLAIN_TEXT_JSON : BenchmarkFixtures.TEMPLATE_JSON);
+    }
+
+    @Benchmark
+    public void consumeEmailMessage(Blackhole blackhole) {
+        Acknowledgment acknowledgment = () -> blackhole.consume(message);
+        kafkaConsumerService.consumeEmailMessage(message, "form137-email-notifications", 0, 42L, acknowledgment);
+    }
+}
@@ -0,0 +1,71 @@
+package ph.edu.cspb.kafkasendgrid.benchmark;
+
+import ph.edu.cspb.kafkasendgrid.model.EmailMessage;
+import ph.edu.cspb.kafkasendgrid.service.MailRequestWriter;
+import com.sendgrid.helpers.mail.Mail;
+import com.sendgrid.helpers.mail.objects.Content;
+import com.sendgrid.helpers.mail.objects.Email;
+import com.sendgrid.helpers.mail.objects.Personalization;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Building the SendGrid request body: the {@link Mail} object graph the way
+ * {@code EmailService} assembles it, followed by {@code mail.build()}, against
+ * {@link MailRequestWriter} writing the same JSON directly.
+ */
+@State(Scope.Benchmark)
+public class MailBuildBenchmark {
+
+    private EmailMessage plainTextMessage;
+    private EmailMessage templateMessage;
+    private MailRequestWriter mailRequestWriter;
+
+    @Setup
+    public void setUp() {
+        plainTextMessage = BenchmarkFixtures.parse(BenchmarkFixtures.PLAIN_TEXT_JSON);
+        templateMessage = BenchmarkFixtures.parse(BenchmarkFixtures.TEMPLATE_JSON);
+        mailRequestWriter = new MailRequestWriter();
+    }
+
+    @Benchmark
+    public String plainTextMail() throws IOException {
+        Email from = new Email(plainTextMessage.getFrom(), "Form 137 System");
+        Email to = new Email(plainTextMessage.getTo());
+        Content content = new Content("text/plain", plainTextMessage.getBody());
+        Mail mail = new Mail(from, plainTextMessage.getSubject(), to, content);
+        return mail.build();
+    }
+
+    @Benchmark
+    public String templateMail() throws IOException {
+        Mail mail = new Mail();
+        mail.setFrom(new Email("no-reply@example.com", "Form 137 System"));
+        mail.setTemplateId("d-submission-template-id");
+
+        Personalization personalization = new Personalization();
+        personalization.addTo(new Email(templateMessage.getTo()));
+        for (Map.Entry<String, Object> entry : templateMessage.getTemplateData().entrySet()) {
+            personalization.addDynamicTemplateData(entry.getKey(), entry.getValue());
+        }
+        mail.addPersonalization(personalization);
+        return mail.build();
+    }
+
+    @Benchmark
+    public String plainTextStreamed() throws IOException {
+        return mailRequestWriter.plainText(plainTextMessage.getFrom(), "Form 137 System", plainTextMessage);
+    }
+
+    @Benchmark
+    public String templateStreamed() throws IOException {
+        return mailRequestWriter.template("no-reply@example.com", "Form 137 System", "d-submission-template-id",
+            List.of(templateMessage));
+    }
+}
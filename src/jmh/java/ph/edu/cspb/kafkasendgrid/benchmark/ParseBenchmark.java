@@ -0,0 +1,51 @@
+package ph.edu.cspb.kafkasendgrid.benchmark;
+
+import ph.edu.cspb.kafkasendgrid.model.EmailMessage;
+import ph.edu.cspb.kafkasendgrid.service.EmailMessageReader;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+
+/**
+ * Parsing a record payload into an {@link EmailMessage}: the original String-based
+ * {@code ObjectMapper.readValue} against the byte-based reader the listeners use now.
+ */
+@State(Scope.Benchmark)
+public class ParseBenchmark {
+
+    @Param({"plain", "template"})
+    public String payload;
+
+    private ObjectMapper objectMapper;
+    private EmailMessageReader emailMessageReader;
+    private String json;
+    private byte[] bytes;
+
+    @Setup
+    public void setUp() {
+        objectMapper = BenchmarkFixtures.objectMapper();
+        emailMessageReader = new EmailMessageReader(objectMapper);
+        json = "plain".equals(payload) ? BenchmarkFixtures.PLAIN_TEXT_JSON : BenchmarkFixtures.TEMPLATE_JSON;
+        bytes = BenchmarkFixtures.utf8(json);
+    }
+
+    @Benchmark
+    public EmailMessage objectMapperReadValueString() throws IOException {
+        return objectMapper.readValue(json, EmailMessage.class);
+    }
+
+    @Benchmark
+    public EmailMessage objectMapperReadValueBytes() throws IOException {
+        return objectMapper.readValue(bytes, EmailMessage.class);
+    }
+
+    @Benchmark
+    public EmailMessage emailMessageReader() throws IOException {
+        return emailMessageReader.read(bytes);
+    }
+}
@@ -0,0 +1,39 @@
+package ph.edu.cspb.kafkasendgrid.benchmark;
+
+import ph.edu.cspb.kafkasendgrid.config.TemplateConfig;
+import ph.edu.cspb.kafkasendgrid.service.TemplateRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Resolving a notification type to its SendGrid template ID, through the bound
+ * properties and through the registry's snapshot.
+ */
+@State(Scope.Benchmark)
+public class TemplateLookupBenchmark {
+
+    @Param({"submission", "Status_Update", "unknown"})
+    public String notificationType;
+
+    private TemplateConfig templateConfig;
+    private TemplateRegistry templateRegistry;
+
+    @Setup
+    public void setUp() {
+        templateConfig = BenchmarkFixtures.templateConfig();
+        templateRegistry = BenchmarkFixtures.templateRegistry();
+    }
+
+    @Benchmark
+    public String getTemplateId() {
+        return templateConfig.getTemplateId(notificationType);
+    }
+
+    @Benchmark
+    public String registryGetTemplateId() {
+        return templateRegistry.getTemplateId(notificationType);
+    }
+}
@@ -0,0 +1,47 @@
+package ph.edu.cspb.kafkasendgrid.benchmark;
+
+import ph.edu.cspb.kafkasendgrid.model.EmailMessage;
+import ph.edu.cspb.kafkasendgrid.service.EmailMessageValidator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import java.util.Set;
+
+/**
+ * Validating a parsed message: reflective Jakarta Bean Validation (plus the separate content
+ * checks it needs) against the fast-path validator.
+ */
+@State(Scope.Benchmark)
+public class ValidationBenchmark {
+
+    @Param({"plain", "template"})
+    public String payload;
+
+    private Validator jakartaValidator;
+    private EmailMessageValidator emailMessageValidator;
+    private EmailMessage emailMessage;
+
+    @Setup
+    public void setUp() {
+        jakartaValidator = BenchmarkFixtures.jakartaValidator();
+        emailMessageValidator = new EmailMessageValidator(jakartaValidator);
+        emailMessage = BenchmarkFixtures.parse(
+            "plain".equals(payload) ? BenchmarkFixtures.PLAIN_TEXT_JSON : BenchmarkFixtures.TEMPLATE_JSON);
+    }
+
+    @Benchmark
+    public boolean jakartaValidation() {
+        Set<ConstraintViolation<EmailMessage>> violations = jakartaValidator.validate(emailMessage);
+        return violations.isEmpty() && (emailMessage.isTemplateEmail() || emailMessage.hasPlainTextContent());
+    }
+
+    @Benchmark
+    public String fastPathValidation() {
+        return emailMessageValidator.validate(emailMessage);
+    }
+}
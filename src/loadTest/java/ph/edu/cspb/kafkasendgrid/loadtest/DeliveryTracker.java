@@ -0,0 +1,118 @@
+package ph.edu.cspb.kafkasendgrid.loadtest;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Matches emails arriving at the fake SendGrid with the records they were produced as, and
+ * keeps every end-to-end latency of the measurement window.
+ * <p>
+ * Latency runs from when a record was due to be produced, not when the producer got to it, so
+ * a stalled producer does not hide the delay it causes. Only the first delivery of a record
+ * counts; redeliveries after retries are counted as duplicates.
+ */
+final class DeliveryTracker {
+
+    private final Map<Long, Long> pending = new ConcurrentHashMap<>();
+    private final LongAdder produced = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder deliveredInWindow = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final AtomicLongArray latencies;
+    private final AtomicInteger latencyCount = new AtomicInteger();
+
+    private volatile long windowStartNanos = Long.MAX_VALUE;
+    private volatile long windowEndNanos = Long.MAX_VALUE;
+
+    /**
+     * @param capacity latencies kept at most; later ones are dropped
+     */
+    DeliveryTracker(int capacity) {
+        this.latencies = new AtomicLongArray(capacity);
+    }
+
+    /**
+     * Sets the measurement window; records due before it are warm-up
+     * @param startNanos start of the window
+     * @param endNanos end of the window
+     */
+    void measure(long startNanos, long endNanos) {
+        this.windowStartNanos = startNanos;
+        this.windowEndNanos = endNanos;
+    }
+
+    void produced(long sequence, long dueNanos) {
+        pending.put(sequence, dueNanos);
+        produced.increment();
+    }
+
+    void delivered(long sequence, long nowNanos) {
+        Long dueNanos = pending.remove(sequence);
+        if (dueNanos == null) {
+            duplicates.increment();
+            return;
+        }
+        delivered.increment();
+        if (nowNanos >= windowStartNanos && nowNanos < windowEndNanos) {
+            deliveredInWindow.increment();
+        }
+        if (dueNanos >= windowStartNanos && dueNanos < windowEndNanos) {
+            int index = latencyCount.getAndIncrement();
+            if (index < latencies.length()) {
+                latencies.set(index, nowNanos - dueNanos);
+            }
+        }
+    }
+
+    long produced() {
+        return produced.sum();
+    }
+
+    long delivered() {
+        return delivered.sum();
+    }
+
+    long deliveredInWindow() {
+        return deliveredInWindow.sum();
+    }
+
+    long duplicates() {
+        return duplicates.sum();
+    }
+
+    long pending() {
+        return pending.size();
+    }
+
+    /**
+     * Sorted latencies of the records due in the measurement window
+     * @return latencies in nanoseconds, ascending
+     */
+    long[] sortedLatencies() {
+        int count = Math.min(latencyCount.get(), latencies.length());
+        long[] sorted = new long[count];
+        for (int i = 0; i < count; i++) {
+            sorted[i] = latencies.get(i);
+        }
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Nearest-rank percentile
+     * @param sorted ascending latencies
+     * @param percentile between 0 and 1
+     * @return the latency in nanoseconds, or 0 if there are none
+     */
+    static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+    }
+}
@@ -0,0 +1,390 @@
+package ph.edu.cspb.kafkasendgrid.loadtest;
+
+import ph.edu.cspb.kafkasendgrid.KafkaSendgridApplication;
+import ph.edu.cspb.kafkasendgrid.fake.FakeSendGridServer;
+import ph.edu.cspb.kafkasendgrid.fake.FaultProfile;
+import ph.edu.cspb.kafkasendgrid.fake.LatencyDistribution;
+import ph.edu.cspb.kafkasendgrid.fake.RecordedRequest;
+import ph.edu.cspb.kafkasendgrid.model.EmailMessage;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.ListOffsetsResult;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.test.EmbeddedKafkaKraftBroker;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * End-to-end load test: embedded Kafka, the application, and the fake SendGrid in one JVM.
+ * <p>
+ * Produces a mix of template and plain-text emails at a fixed rate, warms up, then measures
+ * for a fixed duration and waits for the backlog to drain. Each record's recipient carries its
+ * sequence number, so its arrival at the fake SendGrid can be matched with when it was due.
+ * Reports sustained deliveries per second, end-to-end latency percentiles, the consumer group's
+ * committed-offset lag, and heap and GC figures to the console and as JSON.
+ * <p>
+ * Broker, application and harness share the heap and CPUs, so absolute numbers are a lower bound
+ * for a dedicated deployment; they are meant to be compared between runs on the same machine.
+ * Exits with status 1 if any record was never delivered or was settled as invalid.
+ */
+public final class LoadTestHarness {
+
+    private static final String TOPIC = "loadtest-email-notifications";
+    private static final String GROUP_ID = "loadtest-sendgrid";
+    private static final String API_KEY = "SG.loadtest";
+    private static final String[] NOTIFICATION_TYPES = {"submission", "status_update", "approval", "reminder"};
+    private static final long SAMPLE_INTERVAL_MILLIS = 1000;
+
+    private final LoadTestOptions options;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final AtomicLong maxHeapUsed = new AtomicLong();
+    private final AtomicLong maxLag = new AtomicLong();
+    private final AtomicLong lastLag = new AtomicLong();
+
+    private LoadTestHarness(LoadTestOptions options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        boolean complete = new LoadTestHarness(options).run();
+        System.exit(complete ? 0 : 1);
+    }
+
+    private boolean run() throws Exception {
+        EmbeddedKafkaKraftBroker broker = new EmbeddedKafkaKraftBroker(1, options.partitions(), TOPIC);
+        broker.afterPropertiesSet();
+        FakeSendGridServer sendGrid = FakeSendGridServer.start(API_KEY);
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "loadtest-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ConfigurableApplicationContext application = null;
+        try (Admin admin = Admin.create(Map.<String, Object>of(
+                    AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString()));
+                KafkaProducer<String, byte[]> producer = producer(broker.getBrokersAsString())) {
+            sendGrid.setRecording(false);
+            sendGrid.setFaults(FaultProfile.builder()
+                .latency(LatencyDistribution.logNormal(options.latencyMedian(), options.latencyP99()))
+                .throttleRate(options.throttleRate())
+                .serverErrorRate(options.errorRate())
+                .seed(options.seed())
+                .build());
+            int capacity = (int) Math.min(Integer.MAX_VALUE - 8,
+                (long) (options.rate() * (options.warmup().toSeconds() + options.duration().toSeconds())) + 1024);
+            DeliveryTracker tracker = new DeliveryTracker(capacity);
+            sendGrid.setListener(request -> delivered(request, tracker));
+
+            application = startApplication(broker.getBrokersAsString(), sendGrid.baseUrl());
+            awaitAssignment(application);
+            sampler.scheduleAtFixedRate(() -> sample(admin), 0, SAMPLE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+
+            long start = System.nanoTime();
+            long measureStart = start + options.warmup().toNanos();
+            long measureEnd = measureStart + options.duration().toNanos();
+            tracker.measure(measureStart, measureEnd);
+            System.out.printf("Producing %.0f msgs/s for %s warm-up and %s measurement%n",
+                options.rate(), options.warmup(), options.duration());
+
+            produce(producer, tracker, start, measureStart);
+            long[] gcBefore = gcTotals();
+            maxHeapUsed.set(0);
+            maxLag.set(0);
+            produce(producer, tracker, measureStart, measureEnd);
+            long[] gcAfter = gcTotals();
+            long lagAtEnd = lastLag.get();
+
+            long drainStart = System.nanoTime();
+            long drainDeadline = drainStart + options.drainTimeout().toNanos();
+            while (tracker.pending() > 0 && System.nanoTime() < drainDeadline) {
+                TimeUnit.MILLISECONDS.sleep(50);
+            }
+            long drainNanos = System.nanoTime() - drainStart;
+
+            long invalid = invalidRecords(application);
+            Map<String, Object> report = report(tracker, sendGrid, invalid, lagAtEnd, drainNanos,
+                gcAfter[0] - gcBefore[0], gcAfter[1] - gcBefore[1]);
+            print(report);
+            Files.createDirectories(options.report().toAbsolutePath().getParent());
+            objectMapper.enable(SerializationFeature.INDENT_OUTPUT).writeValue(options.report().toFile(), report);
+            System.out.println("Report written to " + options.report().toAbsolutePath());
+            if (invalid > 0) {
+                System.err.println(invalid + " records were rejected as invalid; the payloads no longer match"
+                    + " what the application accepts");
+            }
+            return tracker.pending() == 0 && invalid == 0;
+        } finally {
+            sampler.shutdownNow();
+            if (application != null) {
+                application.close();
+            }
+            sendGrid.close();
+            broker.destroy();
+        }
+    }
+
+    private ConfigurableApplicationContext startApplication(String brokers, String sendGridUrl) {
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("spring.kafka.bootstrap-servers", brokers);
+        properties.put("spring.kafka.topic.name", TOPIC);
+        properties.put("spring.kafka.consumer.group-id", GROUP_ID);
+        properties.put("spring.kafka.listener.concurrency", Integer.toString(options.concurrency()));
+        properties.put("spring.kafka.listener.type", options.listenerType());
+        properties.put("sendgrid.api-key", API_KEY);
+        properties.put("sendgrid.from-email", "no-reply@example.com");
+        properties.put("sendgrid.transport.type", options.transport());
+        properties.put("sendgrid.transport.base-url", sendGridUrl);
+        // Measure the service, not the client-side SendGrid quota
+        properties.put("sendgrid.rate-limit.enabled", "false");
+        properties.put("server.port", "0");
+        properties.put("logging.level.ph.edu.cspb.kafkasendgrid", "WARN");
+        properties.putAll(options.properties());
+        // Command-line arguments take precedence over application.yml and its environment defaults
+        String[] args = properties.entrySet().stream()
+            .map(property -> "--" + property.getKey() + "=" + property.getValue())
+            .toArray(String[]::new);
+        return new SpringApplicationBuilder(KafkaSendgridApplication.class).run(args);
+    }
+
+    private void awaitAssignment(ConfigurableApplicationContext application) {
+        KafkaListenerEndpointRegistry registry = application.getBean(KafkaListenerEndpointRegistry.class);
+        for (MessageListenerContainer container : registry.getListenerContainers()) {
+            String[] topics = container.getContainerProperties().getTopics();
+            if (topics != null && Arrays.asList(topics).contains(TOPIC)) {
+                ContainerTestUtils.waitForAssignment(container, options.partitions());
+            }
+        }
+    }
+
+    private KafkaProducer<String, byte[]> producer(String brokers) {
+        return new KafkaProducer<>(Map.<String, Object>of(
+            ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, brokers,
+            ProducerConfig.LINGER_MS_CONFIG, 5,
+            ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class,
+            ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class));
+    }
+
+    /**
+     * Produces one record per interval from {@code fromNanos} until {@code untilNanos}.
+     * A producer that falls behind catches up without pausing, so the offered load stays fixed.
+     */
+    private void produce(KafkaProducer<String, byte[]> producer, DeliveryTracker tracker, long fromNanos,
+            long untilNanos) throws IOException {
+        SplittableRandom random = new SplittableRandom(options.seed() + tracker.produced());
+        double intervalNanos = TimeUnit.SECONDS.toNanos(1) / options.rate();
+        long first = tracker.produced();
+        for (long count = 0; ; count++) {
+            long due = fromNanos + (long) (count * intervalNanos);
+            if (due >= untilNanos) {
+                return;
+            }
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            long id = first + count;
+            tracker.produced(id, due);
+            producer.send(new ProducerRecord<>(TOPIC, Long.toString(id), payload(id, random)));
+        }
+    }
+
+    private byte[] payload(long id, SplittableRandom random) throws IOException {
+        String to = "load+" + id + "@example.com";
+        EmailMessage emailMessage;
+        if (random.nextDouble() < options.templateRatio()) {
+            String notificationType = NOTIFICATION_TYPES[random.nextInt(NOTIFICATION_TYPES.length)];
+            emailMessage = EmailMessage.builder()
+                .to(to)
+                .templateId("d-loadtest-" + notificationType)
+                .notificationType(notificationType)
+                .templateData(Map.of(
+                    "student_name", "Student " + id,
+                    "form_id", "F137-" + id,
+                    "school_year", "2025-2026"))
+                .build();
+        } else {
+            emailMessage = EmailMessage.builder()
+                .to(to)
+                .subject("Form 137 request " + id)
+                .body("Your Form 137 request " + id + " has been received and is being processed.")
+                .build();
+        }
+        return objectMapper.writeValueAsBytes(emailMessage);
+    }
+
+    /**
+     * Credits every recipient of an accepted request; coalesced requests carry several
+     */
+    private void delivered(RecordedRequest request, DeliveryTracker tracker) {
+        if (request.status() != 202) {
+            return;
+        }
+        long now = System.nanoTime();
+        try {
+            for (JsonNode personalization : request.json().path("personalizations")) {
+                for (JsonNode recipient : personalization.path("to")) {
+                    String email = recipient.path("email").asText();
+                    int plus = email.indexOf('+');
+                    int at = email.indexOf('@');
+                    if (email.startsWith("load+") && at > plus) {
+                        tracker.delivered(Long.parseLong(email.substring(plus + 1, at)), now);
+                    }
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Unexpected request body: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Records the application settled as invalid, which the fake SendGrid never sees
+     */
+    private static long invalidRecords(ConfigurableApplicationContext application) {
+        Counter invalid = application.getBean(MeterRegistry.class)
+            .find("email.messages").tag("outcome", "invalid").counter();
+        return invalid != null ? (long) invalid.count() : 0;
+    }
+
+    private void sample(Admin admin) {
+        maxHeapUsed.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+        try {
+            Map<TopicPartition, OffsetAndMetadata> committed = admin.listConsumerGroupOffsets(GROUP_ID)
+                .partitionsToOffsetAndMetadata().get(5, TimeUnit.SECONDS);
+            Map<TopicPartition, OffsetSpec> latest = new LinkedHashMap<>();
+            for (int partition = 0; partition < options.partitions(); partition++) {
+                latest.put(new TopicPartition(TOPIC, partition), OffsetSpec.latest());
+            }
+            Map<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> ends = admin.listOffsets(latest)
+                .all().get(5, TimeUnit.SECONDS);
+            long lag = 0;
+            for (Map.Entry<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> end : ends.entrySet()) {
+                OffsetAndMetadata offset = committed.get(end.getKey());
+                lag += Math.max(0, end.getValue().offset() - (offset != null ? offset.offset() : 0));
+            }
+            lastLag.set(lag);
+            maxLag.accumulateAndGet(lag, Math::max);
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Collections and collection time so far, summed over every collector
+     * @return count and milliseconds
+     */
+    private static long[] gcTotals() {
+        long[] totals = new long[2];
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            totals[0] += Math.max(0, gc.getCollectionCount());
+            totals[1] += Math.max(0, gc.getCollectionTime());
+        }
+        return totals;
+    }
+
+    private Map<String, Object> report(DeliveryTracker tracker, FakeSendGridServer sendGrid, long invalid,
+            long lagAtEnd, long drainNanos, long gcCount, long gcTimeMillis) {
+        long[] latencies = tracker.sortedLatencies();
+        double measuredSeconds = options.duration().toNanos() / 1e9;
+        Function<Double, Double> millis = percentile -> DeliveryTracker.percentile(latencies, percentile) / 1e6;
+
+        Map<String, Object> throughput = new LinkedHashMap<>();
+        throughput.put("targetPerSecond", options.rate());
+        throughput.put("sustainedPerSecond", tracker.deliveredInWindow() / measuredSeconds);
+
+        Map<String, Object> latency = new LinkedHashMap<>();
+        latency.put("samples", latencies.length);
+        latency.put("p50Millis", millis.apply(0.50));
+        latency.put("p99Millis", millis.apply(0.99));
+        latency.put("p999Millis", millis.apply(0.999));
+        latency.put("maxMillis", millis.apply(1.0));
+
+        Map<String, Object> lag = new LinkedHashMap<>();
+        lag.put("max", maxLag.get());
+        lag.put("atEndOfLoad", lagAtEnd);
+        lag.put("drainSeconds", drainNanos / 1e9);
+
+        Map<String, Object> records = new LinkedHashMap<>();
+        records.put("produced", tracker.produced());
+        records.put("delivered", tracker.delivered());
+        records.put("undelivered", tracker.pending());
+        records.put("invalid", invalid);
+        records.put("duplicates", tracker.duplicates());
+
+        Map<String, Long> statuses = new LinkedHashMap<>();
+        for (int status : new int[] {202, 400, 429, 503, -1}) {
+            if (sendGrid.statusCount(status) > 0) {
+                statuses.put(Integer.toString(status), sendGrid.statusCount(status));
+            }
+        }
+        Map<String, Object> sendGridStats = new LinkedHashMap<>();
+        sendGridStats.put("requests", sendGrid.requestCount());
+        sendGridStats.put("statuses", statuses);
+        sendGridStats.put("maxConcurrentRequests", sendGrid.maxConcurrentRequests());
+
+        Map<String, Object> jvm = new LinkedHashMap<>();
+        jvm.put("maxHeapUsedMb", maxHeapUsed.get() / (1024 * 1024));
+        jvm.put("heapCommittedMb", memory.getHeapMemoryUsage().getCommitted() / (1024 * 1024));
+        jvm.put("gcCount", gcCount);
+        jvm.put("gcTimeMillis", gcTimeMillis);
+        jvm.put("gcTimePercent", 100.0 * gcTimeMillis / options.duration().toMillis());
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("options", options.describe());
+        report.put("records", records);
+        report.put("throughput", throughput);
+        report.put("latency", latency);
+        report.put("lag", lag);
+        report.put("sendGrid", sendGridStats);
+        report.put("jvm", jvm);
+        return report;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void print(Map<String, Object> report) {
+        System.out.println();
+        for (Map.Entry<String, Object> section : report.entrySet()) {
+            if (section.getKey().equals("options")) {
+                continue;
+            }
+            System.out.printf("%-12s", section.getKey());
+            ((Map<String, Object>) section.getValue()).forEach((name, value) -> System.out.printf(" %s=%s", name,
+                value instanceof Double number ? String.format("%.2f", number) : value));
+            System.out.println();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package ph.edu.cspb.kafkasendgrid.loadtest;
+
+import ph.edu.cspb.kafkasendgrid.fake.LatencyDistribution;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Settings for one load-test run, parsed from {@code key=value} arguments.
+ * Keys containing a dot are not harness options but Spring properties handed to the
+ * application, e.g. {@code sendgrid.coalescing.enabled=true}.
+ *
+ * @param partitions partitions of the email topic
+ * @param concurrency listener consumers, at most one per partition
+ * @param rate target produce rate in messages per second
+ * @param warmup load before measuring starts, excluded from the results
+ * @param duration measured load after the warm-up
+ * @param drainTimeout how long to wait for the backlog once producing stops
+ * @param templateRatio share of template emails, the rest being plain text
+ * @param transport SendGrid transport type
+ * @param listenerType Kafka listener type, single or batch
+ * @param latencyMedian median fake SendGrid latency
+ * @param latencyP99 99th percentile fake SendGrid latency
+ * @param throttleRate share of fake SendGrid requests answered 429
+ * @param errorRate share of fake SendGrid requests answered 503
+ * @param seed seed for the message mix and the fake SendGrid's faults
+ * @param report where the JSON report is written
+ * @param properties Spring properties for the application
+ */
+record LoadTestOptions(int partitions, int concurrency, double rate, Duration warmup, Duration duration,
+        Duration drainTimeout, double templateRatio, String transport, String listenerType,
+        Duration latencyMedian, Duration latencyP99, double throttleRate, double errorRate, long seed,
+        Path report, Map<String, String> properties) {
+
+    /**
+     * Parses the harness arguments; anything not given keeps its default
+     * @param args {@code key=value} arguments
+     * @return the options
+     */
+    static LoadTestOptions parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        Map<String, String> properties = new LinkedHashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Expected key=value but got: " + arg);
+            }
+            String key = arg.substring(0, separator);
+            (key.contains(".") ? properties : options).put(key, arg.substring(separator + 1));
+        }
+        int partitions = Integer.parseInt(options.getOrDefault("partitions", "6"));
+        return new LoadTestOptions(
+            partitions,
+            Integer.parseInt(options.getOrDefault("concurrency", Integer.toString(partitions))),
+            Double.parseDouble(options.getOrDefault("rate", "500")),
+            duration(options, "warmup", "10s"),
+            duration(options, "duration", "60s"),
+            duration(options, "drain-timeout", "60s"),
+            Double.parseDouble(options.getOrDefault("template-ratio", "0.7")),
+            options.getOrDefault("transport", "pooled"),
+            options.getOrDefault("listener-type", "single"),
+            duration(options, "latency-median", "50ms"),
+            duration(options, "latency-p99", "250ms"),
+            Double.parseDouble(options.getOrDefault("throttle-rate", "0")),
+            Double.parseDouble(options.getOrDefault("error-rate", "0")),
+            Long.parseLong(options.getOrDefault("seed", "1")),
+            Path.of(options.getOrDefault("report", "build/results/loadtest/results.json")),
+            Map.copyOf(properties));
+    }
+
+    /**
+     * The options as they go into the report
+     * @return option names and values
+     */
+    Map<String, Object> describe() {
+        Map<String, Object> description = new LinkedHashMap<>();
+        description.put("partitions", partitions);
+        description.put("concurrency", concurrency);
+        description.put("rate", rate);
+        description.put("warmup", warmup.toString());
+        description.put("duration", duration.toString());
+        description.put("templateRatio", templateRatio);
+        description.put("transport", transport);
+        description.put("listenerType", listenerType);
+        description.put("latencyMedian", latencyMedian.toString());
+        description.put("latencyP99", latencyP99.toString());
+        description.put("throttleRate", throttleRate);
+        description.put("errorRate", errorRate);
+        description.put("seed", seed);
+        description.put("properties", properties);
+        return description;
+    }
+
+    private static Duration duration(Map<String, String> options, String key, String defaultValue) {
+        return LatencyDistribution.parseDuration(options.getOrDefault(key, defaultValue));
+    }
+}
@@ -0,0 +1,32 @@
+package ph.edu.cspb.kafkasendgrid.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Configuration for coalescing template emails into multi-personalization SendGrid requests.
+ * Messages that share a template ID and sender are held briefly and sent as one request.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "sendgrid.coalescing")
+@Data
+public class CoalescingConfig {
+
+    /**
+     * Whether the batch listener coalesces template emails
+     */
+    private boolean enabled = false;
+
+    /**
+     * Number of personalizations that triggers an immediate flush (SendGrid allows at most 1000)
+     */
+    private int maxPersonalizations = 1000;
+
+    /**
+     * Longest time a message may wait for its group to fill before being flushed
+     */
+    private Duration maxDelay = Duration.ofMillis(200);
+}
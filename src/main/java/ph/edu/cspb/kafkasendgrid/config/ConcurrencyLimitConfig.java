@@ -0,0 +1,51 @@
+package ph.edu.cspb.kafkasendgrid.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuration for the adaptive limit on concurrent SendGrid requests.
+ * The limit starts at {@code initialLimit}, grows additively while SendGrid answers quickly and
+ * successfully, and is cut multiplicatively on throttling, server errors and latency spikes.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "sendgrid.concurrency-limit")
+@Data
+public class ConcurrencyLimitConfig {
+
+    /**
+     * Whether concurrent SendGrid requests are limited adaptively
+     */
+    private boolean enabled = false;
+
+    /**
+     * Limit used until the first responses arrive
+     */
+    private int initialLimit = 8;
+
+    /**
+     * Lowest the limit may be cut to
+     */
+    private int minLimit = 1;
+
+    /**
+     * Highest the limit may grow to; keep at or below {@code sendgrid.transport.max-in-flight}
+     */
+    private int maxLimit = 64;
+
+    /**
+     * Amount the limit grows per round trip's worth of successful requests
+     */
+    private double increase = 1;
+
+    /**
+     * Factor the limit is multiplied by on throttling, a server error or a latency spike
+     */
+    private double backoffRatio = 0.5;
+
+    /**
+     * How many times the long-term average round trip the recent average may reach before it counts as a spike
+     */
+    private double latencyTolerance = 2;
+}
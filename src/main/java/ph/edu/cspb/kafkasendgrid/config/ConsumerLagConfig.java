@@ -0,0 +1,38 @@
+package ph.edu.cspb.kafkasendgrid.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Configuration for the consumer lag metrics, which report how far the consumer group is
+ * behind on the main topic and how long it would take to catch up.
+ * Autoscalers scale on these rather than CPU, since the service spends its time waiting on SendGrid.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "spring.kafka.listener.lag")
+@Data
+public class ConsumerLagConfig {
+
+    /**
+     * Whether the group's committed and end offsets are sampled and exported as metrics
+     */
+    private boolean enabled = false;
+
+    /**
+     * Time between lag samples
+     */
+    private Duration interval = Duration.ofSeconds(15);
+
+    /**
+     * How long to wait for the broker to answer an offset query before skipping the sample
+     */
+    private Duration requestTimeout = Duration.ofSeconds(10);
+
+    /**
+     * Weight of the newest sample in the smoothed drain rate, between 0 (never changes) and 1 (no smoothing)
+     */
+    private double rateSmoothing = 0.3;
+}
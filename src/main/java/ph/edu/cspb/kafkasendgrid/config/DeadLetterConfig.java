@@ -0,0 +1,43 @@
+package ph.edu.cspb.kafkasendgrid.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Configuration for the dead-letter topic and for re-driving dead letters.
+ * Records that fail permanently are published there with a failure envelope before their
+ * offset is committed, so the payload is never lost.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "spring.kafka.listener.dead-letter")
+@Data
+public class DeadLetterConfig {
+
+    /**
+     * Whether permanently failed records are published to the dead-letter topic
+     */
+    private boolean enabled = false;
+
+    /**
+     * Appended to the main topic name to name the dead-letter topic
+     */
+    private String topicSuffix = "-dlt";
+
+    /**
+     * How long to wait for the broker to accept a dead letter before redelivering the record instead
+     */
+    private Duration publishTimeout = Duration.ofSeconds(10);
+
+    /**
+     * Records per second replayed by a re-drive when the request does not specify a rate
+     */
+    private double redriveRate = 5;
+
+    /**
+     * Upper bound on the rate a re-drive may be started with
+     */
+    private double maxRedriveRate = 50;
+}
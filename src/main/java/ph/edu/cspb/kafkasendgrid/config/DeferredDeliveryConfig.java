@@ -0,0 +1,70 @@
+package ph.edu.cspb.kafkasendgrid.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * Configuration for delayed delivery of messages that carry a {@code sendAt} time.
+ * Such messages are held in a timing wheel, journaled to a local file, and handed to SendGrid
+ * one window ahead of their time with SendGrid's {@code send_at}, grouped by window.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "sendgrid.deferred")
+@Data
+public class DeferredDeliveryConfig {
+
+    /**
+     * Whether messages due later than the current window are held back instead of sent at once
+     */
+    private boolean enabled = false;
+
+    /**
+     * Messages due in the same window are released together, one window before it starts
+     */
+    private Duration window = Duration.ofMinutes(1);
+
+    /**
+     * Resolution of the timing wheel
+     */
+    private Duration tick = Duration.ofSeconds(1);
+
+    /**
+     * Deferred messages whose payload is kept in memory; the rest are read back from the journal when due
+     */
+    private int maxInMemory = 100_000;
+
+    /**
+     * Append-only journal of deferred messages, recovered on restart
+     */
+    private String journalPath = "data/deferred-deliveries.journal";
+
+    /**
+     * Whether every journal write is forced to disk before the record is committed
+     */
+    private boolean sync = true;
+
+    /**
+     * Whether each released window gets a SendGrid batch ID, so its scheduled sends can be
+     * paused or cancelled together
+     */
+    private boolean batchIds = true;
+
+    /**
+     * Delay before a release that failed transiently is tried again
+     */
+    private Duration retryDelay = Duration.ofSeconds(30);
+
+    /**
+     * Share of the journal taken by messages already sent above which it is rewritten while running
+     */
+    private double compactThreshold = 0.5;
+
+    /**
+     * Journal size below which it is left to grow until the next restart or until nothing is pending
+     */
+    private DataSize compactMinSize = DataSize.ofMegabytes(64);
+}
@@ -0,0 +1,66 @@
+package ph.edu.cspb.kafkasendgrid.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Configuration for per-recipient-domain limits on concurrent SendGrid requests.
+ * Each domain may have at most {@code maxInFlightPerDomain} requests in flight. Domains whose
+ * requests turn slow or start failing share the few slots of the slow lane, so they cannot
+ * hold the send path hostage.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "sendgrid.domain-limits")
+@Data
+public class DomainLimitConfig {
+
+    /**
+     * Whether requests are limited per recipient domain
+     */
+    private boolean enabled = false;
+
+    /**
+     * Most requests to one domain in flight at once
+     */
+    private int maxInFlightPerDomain = 8;
+
+    /**
+     * Requests in flight at once across every slow domain
+     */
+    private int slowLaneSlots = 2;
+
+    /**
+     * How long a request to a slow domain waits for a slow-lane slot before it is handed back
+     * to be retried later
+     */
+    private Duration slowLaneWait = Duration.ofMillis(200);
+
+    /**
+     * Average round trip above which a domain is moved to the slow lane
+     */
+    private Duration slowLatency = Duration.ofSeconds(2);
+
+    /**
+     * Share of failed requests (transport errors and 5xx) above which a domain is moved to the slow lane
+     */
+    private double errorRateThreshold = 0.5;
+
+    /**
+     * Requests a domain must have completed before it can be judged slow
+     */
+    private int minSamples = 20;
+
+    /**
+     * Domains whose statistics are kept; idle healthy domains are forgotten beyond this
+     */
+    private int maxTrackedDomains = 10_000;
+
+    /**
+     * Domains counted by the heavy-hitter summary; the busiest ones are reported exactly enough
+     * as long as this is well above the number reported
+     */
+    private int heavyHitterCapacity = 200;
+}
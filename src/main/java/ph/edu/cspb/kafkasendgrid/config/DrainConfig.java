@@ -0,0 +1,34 @@
+package ph.edu.cspb.kafkasendgrid.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Configuration for draining the listeners on shutdown and when partitions are revoked.
+ * Sends already in flight are given up to {@code deadline} to finish and have their offsets
+ * committed, so the partition's next owner does not send them again.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "spring.kafka.listener.drain")
+@Data
+public class DrainConfig {
+
+    /**
+     * Whether in-flight sends are waited for before partitions are given up
+     */
+    private boolean enabled = true;
+
+    /**
+     * Longest wait for in-flight sends, on shutdown and on each revocation; keep it below the
+     * pod's termination grace period and {@code max.poll.interval.ms}
+     */
+    private Duration deadline = Duration.ofSeconds(20);
+
+    /**
+     * Extra time listener containers are given to commit and close once the deadline has passed
+     */
+    private Duration closeTimeout = Duration.ofSeconds(10);
+}
@@ -0,0 +1,31 @@
+package ph.edu.cspb.kafkasendgrid.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Configuration for suppressing duplicate sends when a record is redelivered.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "sendgrid.idempotency")
+@Data
+public class IdempotencyConfig {
+
+    /**
+     * Whether emails already sent within the TTL are skipped
+     */
+    private boolean enabled = false;
+
+    /**
+     * Maximum number of remembered sends; 16 bytes each. Oldest entries are evicted first when full
+     */
+    private int capacity = 1 << 20;
+
+    /**
+     * How long a send is remembered
+     */
+    private Duration ttl = Duration.ofHours(24);
+}
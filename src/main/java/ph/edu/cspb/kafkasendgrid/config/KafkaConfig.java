@@ -1,20 +1,47 @@
 package ph.edu.cspb.kafkasendgrid.config;
 
+import ph.edu.cspb.kafkasendgrid.service.DrainCoordinator;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.CooperativeStickyAssignor;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.MicrometerConsumerListener;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
 import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.util.StringUtils;
 
+import java.time.Duration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 
 /**
- * Kafka configuration for consuming messages from the sendgrid topic.
+ * Kafka configuration for consuming messages from the sendgrid topic,
+ * and for republishing failed messages to the retry and dead-letter topics.
+ * Record values stay raw bytes end to end: they are parsed straight from the byte array and
+ * republished unchanged, without ever being decoded into a String.
+ * Listener containers hand revocations to the {@link DrainCoordinator} and wait long enough on
+ * shutdown for it to drain in-flight sends.
+ * <p>
+ * Consumers rebalance cooperatively by default, so a member joining or leaving the group only
+ * moves the partitions that change owner instead of revoking every partition in the group. With
+ * a {@code group-instance-id} they also join as static members: a restarted pod that comes back
+ * within the session timeout gets its partitions back without any rebalance at all.
  */
 @Configuration
 public class KafkaConfig {
@@ -28,25 +55,132 @@ public class KafkaConfig {
     @Value("${spring.kafka.consumer.auto-offset-reset}")
     private String autoOffsetReset;
 
+    /**
+     * Consumers per listener container; consumers beyond the topic's partition count stay idle
+     */
+    @Value("${spring.kafka.listener.concurrency:1}")
+    private int concurrency;
+
+    /**
+     * Whether to use the cooperative-sticky assignor; Kafka's default list also contains it, so
+     * a running group can switch over in a single rolling restart
+     */
+    @Value("${spring.kafka.consumer.cooperative-rebalancing:true}")
+    private boolean cooperativeRebalancing = true;
+
+    /**
+     * Stable identity of this replica, such as a StatefulSet pod name; blank for dynamic membership
+     */
+    @Value("${spring.kafka.consumer.group-instance-id:}")
+    private String groupInstanceId;
+
+    /**
+     * How long the group waits for a silent member, and so for a restarting static member,
+     * before moving its partitions
+     */
+    @Value("${spring.kafka.consumer.session-timeout:45s}")
+    private Duration sessionTimeout = Duration.ofSeconds(45);
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
     @Bean
-    public ConsumerFactory<String, String> consumerFactory() {
+    public ConsumerFactory<String, byte[]> consumerFactory() {
         Map<String, Object> props = new HashMap<>();
         props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         props.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
         props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, autoOffsetReset);
         props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
         props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
-        
-        return new DefaultKafkaConsumerFactory<>(props);
+        props.put(ConsumerConfig.SESSION_TIMEOUT_MS_CONFIG, (int) sessionTimeout.toMillis());
+        if (cooperativeRebalancing) {
+            props.put(ConsumerConfig.PARTITION_ASSIGNMENT_STRATEGY_CONFIG, List.of(CooperativeStickyAssignor.class));
+        }
+
+        DefaultKafkaConsumerFactory<String, byte[]> consumerFactory = new DefaultKafkaConsumerFactory<>(props);
+        if (meterRegistry != null) {
+            // The clients' own meters, among them kafka.consumer.coordinator.rebalance.latency.*
+            consumerFactory.addListener(new MicrometerConsumerListener<>(meterRegistry));
+        }
+        return consumerFactory;
+    }
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, byte[]> kafkaListenerContainerFactory(
+            DrainCoordinator drainCoordinator, DrainConfig drainConfig) {
+        ConcurrentKafkaListenerContainerFactory<String, byte[]> factory = 
+            new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory());
+        factory.setConcurrency(concurrency);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL_IMMEDIATE);
+        drainOnShutdown(factory.getContainerProperties(), drainCoordinator, drainConfig);
+        factory.setContainerCustomizer(this::joinAsStaticMember);
+        return factory;
     }
 
+    /**
+     * Container factory for the batch listener, which receives every record of a poll at once.
+     * Used when {@code spring.kafka.listener.type=batch}.
+     */
     @Bean
-    public ConcurrentKafkaListenerContainerFactory<String, String> kafkaListenerContainerFactory() {
-        ConcurrentKafkaListenerContainerFactory<String, String> factory = 
+    public ConcurrentKafkaListenerContainerFactory<String, byte[]> batchKafkaListenerContainerFactory(
+            DrainCoordinator drainCoordinator, DrainConfig drainConfig) {
+        ConcurrentKafkaListenerContainerFactory<String, byte[]> factory = 
             new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(consumerFactory());
+        factory.setConcurrency(concurrency);
+        factory.setBatchListener(true);
         factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL_IMMEDIATE);
+        drainOnShutdown(factory.getContainerProperties(), drainCoordinator, drainConfig);
+        factory.setContainerCustomizer(this::joinAsStaticMember);
         return factory;
     }
-}
\ No newline at end of file
+
+    /**
+     * Routes revocations through the drain coordinator and lets a stopping container wait for
+     * the drain and the final commit instead of the default 10 seconds
+     */
+    private static void drainOnShutdown(ContainerProperties containerProperties, DrainCoordinator drainCoordinator,
+            DrainConfig drainConfig) {
+        containerProperties.setConsumerRebalanceListener(drainCoordinator);
+        containerProperties.setShutdownTimeout(drainConfig.getDeadline().plus(drainConfig.getCloseTimeout()).toMillis());
+    }
+
+    /**
+     * Gives a container that subscribes to topics its own {@code group.instance.id}, made of this
+     * replica's id and the topics, since the main, lane and retry containers share one group and
+     * every member of a group needs a distinct id. Containers with more than one consumer suffix
+     * it with {@code -n} themselves. Containers assigned fixed partitions never join the group.
+     * @param container the container being created
+     */
+    void joinAsStaticMember(ConcurrentMessageListenerContainer<String, byte[]> container) {
+        String[] topics = container.getContainerProperties().getTopics();
+        if (!StringUtils.hasText(groupInstanceId) || topics == null || topics.length == 0) {
+            return;
+        }
+        ContainerProperties containerProperties = container.getContainerProperties();
+        Properties consumerProperties = new Properties();
+        consumerProperties.putAll(containerProperties.getKafkaConsumerProperties());
+        consumerProperties.setProperty(ConsumerConfig.GROUP_INSTANCE_ID_CONFIG,
+            groupInstanceId + "-" + String.join("-", topics));
+        containerProperties.setKafkaConsumerProperties(consumerProperties);
+    }
+
+    @Bean
+    public ProducerFactory<String, byte[]> producerFactory() {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        props.put(ProducerConfig.ACKS_CONFIG, "all");
+        props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        
+        return new DefaultKafkaProducerFactory<>(props);
+    }
+
+    @Bean
+    public KafkaTemplate<String, byte[]> kafkaTemplate() {
+        return new KafkaTemplate<>(producerFactory());
+    }
+}
@@ -0,0 +1,74 @@
+package ph.edu.cspb.kafkasendgrid.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Configuration for priority lanes, which share the send stage between kinds of email by weight
+ * so that a bulk campaign cannot crowd out transactional mail.
+ * A message belongs to the lane of the topic it was read from, if that topic is a lane's own,
+ * otherwise to the lane listing its notification type, otherwise to the default lane.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "sendgrid.priority-lanes")
+@Data
+public class LaneConfig {
+
+    /**
+     * Whether sends are scheduled through the lanes
+     */
+    private boolean enabled = false;
+
+    /**
+     * Sends in flight at once across every lane
+     */
+    private int slots = 16;
+
+    /**
+     * Lane for messages whose notification type no lane lists
+     */
+    private String defaultLane = "bulk";
+
+    /**
+     * Lanes by name, in the order ties between them are broken
+     */
+    private Map<String, Lane> lanes = new LinkedHashMap<>();
+
+    /**
+     * A lane's share of the send stage and where its messages come from
+     */
+    @Data
+    public static class Lane {
+
+        /**
+         * Relative share of the slots while other lanes are waiting too
+         */
+        private int weight = 1;
+
+        /**
+         * Notification types that belong to this lane, matched case-insensitively
+         */
+        private List<String> notificationTypes = new ArrayList<>();
+
+        /**
+         * Optional topic of this lane's own, consumed by its own listener container
+         */
+        private String topic;
+
+        /**
+         * Consumers of the lane's topic, up to its partition count
+         */
+        private int concurrency = 1;
+
+        /**
+         * Largest share of the slots the lane may hold, even when no other lane is waiting
+         */
+        private double maxShare = 1.0;
+    }
+}
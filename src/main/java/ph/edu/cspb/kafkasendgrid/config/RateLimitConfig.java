@@ -0,0 +1,50 @@
+package ph.edu.cspb.kafkasendgrid.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Configuration for the client-side SendGrid rate limiter.
+ * The configured rate is the starting point; the limiter adapts to the rate-limit headers
+ * SendGrid returns.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "sendgrid.rate-limit")
+@Data
+public class RateLimitConfig {
+
+    /**
+     * Whether requests are paced by the limiter and throttled requests retried in place.
+     * Off by default: the ceiling would otherwise cap every deployment at {@code permitsPerSecond}
+     * whatever its SendGrid plan allows
+     */
+    private boolean enabled = false;
+
+    /**
+     * Sustained request rate used until SendGrid reports otherwise, and the ceiling for header-derived rates
+     */
+    private double permitsPerSecond = 100;
+
+    /**
+     * Number of requests that may be sent back to back after an idle period
+     */
+    private int burst = 100;
+
+    /**
+     * How many times a throttled (429) request is retried before the send fails
+     */
+    private int maxRetries = 5;
+
+    /**
+     * Pause applied after a 429 that carries no reset information
+     */
+    private Duration defaultBackoff = Duration.ofSeconds(1);
+
+    /**
+     * Longest pause any single response may impose
+     */
+    private Duration maxBackoff = Duration.ofMinutes(1);
+}
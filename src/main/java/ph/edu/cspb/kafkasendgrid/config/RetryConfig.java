@@ -0,0 +1,51 @@
+package ph.edu.cspb.kafkasendgrid.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Configuration for the tiered retry topics.
+ * A record that fails transiently is republished to the next tier's topic and consumed again
+ * once that tier's delay has passed, so the main topic keeps moving.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "spring.kafka.listener.retry")
+@Data
+public class RetryConfig {
+
+    /**
+     * Whether transient failures are moved to retry topics instead of blocking their partition
+     */
+    private boolean enabled = false;
+
+    /**
+     * Delay of each tier; the n-th retry waits for the n-th delay
+     */
+    private List<Duration> delays = new ArrayList<>(List.of(
+        Duration.ofSeconds(10), Duration.ofMinutes(1), Duration.ofMinutes(10)));
+
+    /**
+     * Appended to the main topic name, followed by the tier number, to name each retry topic
+     */
+    private String topicSuffix = "-retry-";
+
+    /**
+     * How long to wait for the broker to accept a retry record before falling back to redelivery
+     */
+    private Duration publishTimeout = Duration.ofSeconds(10);
+
+    /**
+     * Name of a tier's retry topic
+     * @param mainTopic the main topic name
+     * @param tier the tier number, starting at 1
+     * @return the retry topic name
+     */
+    public String topicForTier(String mainTopic, int tier) {
+        return mainTopic + topicSuffix + tier;
+    }
+}
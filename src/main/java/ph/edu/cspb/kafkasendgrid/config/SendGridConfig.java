@@ -1,10 +1,17 @@
 package ph.edu.cspb.kafkasendgrid.config;
 
+import ph.edu.cspb.kafkasendgrid.service.BlockingSendGridTransport;
+import ph.edu.cspb.kafkasendgrid.service.HttpClientSendGridTransport;
+import ph.edu.cspb.kafkasendgrid.service.PooledSendGridTransport;
+import ph.edu.cspb.kafkasendgrid.service.SendGridTransport;
 import com.sendgrid.SendGrid;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.net.URI;
+
 /**
  * SendGrid configuration for email sending functionality.
  */
@@ -14,8 +21,29 @@ public class SendGridConfig {
     @Value("${sendgrid.api-key}")
     private String apiKey;
 
+    /**
+     * SendGrid client for the blocking transport, aimed at {@code sendgrid.transport.base-url}
+     * like the other transports, so a local stand-in server can take the place of SendGrid.
+     */
+    @Bean
+    public SendGrid sendGrid(SendGridTransportConfig transportConfig) {
+        URI baseUrl = URI.create(transportConfig.getBaseUrl());
+        // The client only knows a host and, in "test" mode, plain HTTP instead of HTTPS
+        SendGrid sendGrid = new SendGrid(apiKey, "http".equalsIgnoreCase(baseUrl.getScheme()));
+        sendGrid.setHost(baseUrl.getAuthority());
+        return sendGrid;
+    }
+
+    /**
+     * Transport used by EmailService, selected by {@code sendgrid.transport.type}.
+     */
     @Bean
-    public SendGrid sendGrid() {
-        return new SendGrid(apiKey);
+    public SendGridTransport sendGridTransport(SendGrid sendGrid, SendGridTransportConfig transportConfig,
+            MeterRegistry meterRegistry) {
+        return switch (transportConfig.getType()) {
+            case HTTP2 -> new HttpClientSendGridTransport(apiKey, transportConfig);
+            case POOLED -> new PooledSendGridTransport(apiKey, transportConfig, meterRegistry);
+            case BLOCKING -> new BlockingSendGridTransport(sendGrid);
+        };
     }
 }
\ No newline at end of file
@@ -0,0 +1,87 @@
+package ph.edu.cspb.kafkasendgrid.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * Configuration for the HTTP transport used to reach the SendGrid API.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "sendgrid.transport")
+@Data
+public class SendGridTransportConfig {
+
+    /**
+     * Available transport implementations
+     */
+    public enum Type {
+        /**
+         * The SendGrid client's blocking call, executed on the caller's thread
+         */
+        BLOCKING,
+
+        /**
+         * Non-blocking JDK HTTP client with HTTP/2 multiplexing
+         */
+        HTTP2,
+
+        /**
+         * Apache HttpClient with a pool of keep-alive connections, executed on the caller's thread
+         */
+        POOLED
+    }
+
+    /**
+     * Which transport implementation to use
+     */
+    private Type type = Type.BLOCKING;
+
+    /**
+     * Base URL of the SendGrid API
+     */
+    private String baseUrl = "https://api.sendgrid.com";
+
+    /**
+     * Maximum number of requests in flight at once (non-blocking transport only)
+     */
+    private int maxInFlight = 64;
+
+    /**
+     * Timeout for establishing a connection
+     */
+    private Duration connectTimeout = Duration.ofSeconds(10);
+
+    /**
+     * Timeout for a complete request/response exchange
+     */
+    private Duration requestTimeout = Duration.ofSeconds(30);
+
+    /**
+     * Maximum pooled connections to SendGrid (pooled transport only)
+     */
+    private int maxConnections = 64;
+
+    /**
+     * Maximum pooled connections per route (pooled transport only)
+     */
+    private int maxConnectionsPerRoute = 64;
+
+    /**
+     * How long a pooled connection may sit idle before it is closed (pooled transport only)
+     */
+    private Duration idleTimeout = Duration.ofSeconds(60);
+
+    /**
+     * Request bodies at least this large are sent gzip-compressed (pooled transport only)
+     */
+    private DataSize compressionThreshold = DataSize.ofKilobytes(16);
+
+    /**
+     * Whether large request bodies are gzip-compressed (pooled transport only)
+     */
+    private boolean compressionEnabled = true;
+}
@@ -0,0 +1,62 @@
+package ph.edu.cspb.kafkasendgrid.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Configuration for the local cache of suppressed recipients (bounces, blocks, spam reports,
+ * unsubscribes). Emails to a suppressed address are skipped before any request to SendGrid,
+ * which would only drop them anyway.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "sendgrid.suppression")
+@Data
+public class SuppressionConfig {
+
+    /**
+     * Whether recipients are checked against the suppression list
+     */
+    private boolean enabled = false;
+
+    /**
+     * Snapshot file of suppressed addresses, one per line or the first column of a CSV export
+     * such as SendGrid's; lines without an {@code @} (headers) and {@code #} comments are skipped
+     */
+    private String file;
+
+    /**
+     * How often the snapshot file is checked for changes
+     */
+    private Duration refreshInterval = Duration.ofMinutes(1);
+
+    /**
+     * Compacted topic of suppressed addresses, keyed by address and applied on top of the file;
+     * any value (such as the reason) suppresses the address, a tombstone lifts the suppression
+     */
+    private String topic;
+
+    /**
+     * Topic skipped records are published to, unchanged, for whoever tracks delivery outcomes;
+     * skipped records are only committed when empty
+     */
+    private String outcomeTopic;
+
+    /**
+     * How long publishing a skipped record to the outcome topic may take before it is redelivered
+     */
+    private Duration publishTimeout = Duration.ofSeconds(10);
+
+    /**
+     * Addresses the Bloom filter is sized for; more than this raises its false-positive rate,
+     * which costs an exact lookup, never a wrong answer
+     */
+    private int expectedAddresses = 1_000_000;
+
+    /**
+     * Share of unsuppressed addresses the Bloom filter lets through to the exact lookup
+     */
+    private double falsePositiveRate = 0.01;
+}
@@ -4,12 +4,15 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
  * Configuration class for managing SendGrid dynamic template IDs.
  * Maps notification types to their corresponding SendGrid template IDs.
+ * These are the mappings bound at startup; lookups at runtime go through
+ * {@code TemplateRegistry}, which can also reload them while running.
  */
 @Configuration
 @ConfigurationProperties(prefix = "sendgrid.templates")
@@ -32,6 +35,11 @@ public class TemplateConfig {
      * Whether to use templates by default when available
      */
     private boolean useTemplatesByDefault = true;
+
+    /**
+     * Sources the mappings are reloaded from while running
+     */
+    private Reload reload = new Reload();
     
     /**
      * Get template ID for a specific notification type
@@ -59,4 +67,28 @@ public class TemplateConfig {
         String templateId = ids.get(notificationType.toLowerCase());
         return templateId != null && !templateId.trim().isEmpty();
     }
-}
\ No newline at end of file
+
+    /**
+     * Where template mappings are reloaded from without a restart
+     */
+    @Data
+    public static class Reload {
+
+        /**
+         * JSON file, e.g. a mounted ConfigMap, whose {@code ids}, {@code defaultTemplateId} and
+         * {@code useTemplatesByDefault} replace the ones bound at startup
+         */
+        private String file;
+
+        /**
+         * How often the file is checked for changes
+         */
+        private Duration interval = Duration.ofSeconds(10);
+
+        /**
+         * Compacted topic of template IDs keyed by notification type ({@code *} for the default),
+         * applied on top of the file; a tombstone removes the override
+         */
+        private String topic;
+    }
+}
@@ -0,0 +1,72 @@
+package ph.edu.cspb.kafkasendgrid.controller;
+
+import ph.edu.cspb.kafkasendgrid.service.DeadLetterRedriver;
+import ph.edu.cspb.kafkasendgrid.service.DeadLetterRedriver.RedriveStatus;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.boot.actuate.endpoint.web.annotation.WebEndpoint;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Actuator endpoint ({@code /actuator/dltredrive}) for re-driving dead letters back through the
+ * pipeline.
+ * Re-driving republishes emails, so the endpoint is not exposed by default: operators opt in
+ * through {@code management.endpoints.web.exposure.include}, ideally with the actuator on a
+ * separate {@code management.server.port} that is only reachable from inside the cluster.
+ */
+@Component
+@WebEndpoint(id = "dltredrive")
+@RequiredArgsConstructor
+public class DeadLetterRedriveEndpoint {
+
+    private final DeadLetterRedriver deadLetterRedriver;
+
+    /**
+     * Starts replaying a range of one dead-letter partition onto the main topic.
+     *
+     * @param partition the dead-letter partition
+     * @param from first offset to replay
+     * @param to offset to stop before
+     * @param rate records per second, optional
+     * @return 202 with the re-drive status, 400 for an invalid range, 409 if one is already running
+     */
+    @WriteOperation
+    public WebEndpointResponse<Object> start(int partition, long from, long to, @Nullable Double rate) {
+        try {
+            return new WebEndpointResponse<>(deadLetterRedriver.start(partition, from, to, rate), 202);
+        } catch (IllegalArgumentException e) {
+            return new WebEndpointResponse<>(Map.of("error", e.getMessage()), WebEndpointResponse.STATUS_BAD_REQUEST);
+        } catch (IllegalStateException e) {
+            return new WebEndpointResponse<>(Map.of("error", e.getMessage()), 409);
+        }
+    }
+
+    /**
+     * Reports the progress of the most recent re-drive.
+     *
+     * @return 200 with the re-drive status, or 404 if none was started
+     */
+    @ReadOperation
+    public WebEndpointResponse<RedriveStatus> status() {
+        RedriveStatus status = deadLetterRedriver.status();
+        return status != null
+            ? new WebEndpointResponse<>(status)
+            : new WebEndpointResponse<>(WebEndpointResponse.STATUS_NOT_FOUND);
+    }
+
+    /**
+     * Stops the running re-drive.
+     *
+     * @return 202 if a running re-drive was asked to stop, 404 if none is running
+     */
+    @DeleteOperation
+    public WebEndpointResponse<Void> cancel() {
+        return new WebEndpointResponse<>(deadLetterRedriver.cancel() ? 202 : WebEndpointResponse.STATUS_NOT_FOUND);
+    }
+}
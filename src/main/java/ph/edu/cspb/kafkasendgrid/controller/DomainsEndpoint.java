@@ -0,0 +1,45 @@
+package ph.edu.cspb.kafkasendgrid.controller;
+
+import ph.edu.cspb.kafkasendgrid.service.DomainLimiter;
+import ph.edu.cspb.kafkasendgrid.service.DomainLimiter.DomainStats;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Actuator endpoint ({@code /actuator/domains}) reporting the busiest recipient domains and the
+ * ones currently isolated in the slow lane.
+ * Domains are kept out of meter tags, where every new domain would add a time series.
+ */
+@Component
+@Endpoint(id = "domains")
+@RequiredArgsConstructor
+public class DomainsEndpoint {
+
+    private static final int DEFAULT_LIMIT = 20;
+
+    private final DomainLimiter domainLimiter;
+
+    /**
+     * Reports recipient domains.
+     *
+     * @param limit how many of the busiest domains to list, 20 if omitted
+     * @return the busiest domains and the slow ones
+     */
+    @ReadOperation
+    public DomainsReport domains(@Nullable Integer limit) {
+        int top = limit != null && limit > 0 ? limit : DEFAULT_LIMIT;
+        return new DomainsReport(domainLimiter.topDomains(top), domainLimiter.slowDomains());
+    }
+
+    /**
+     * @param top the busiest domains, busiest first
+     * @param slow the domains in the slow lane, slowest first
+     */
+    public record DomainsReport(List<DomainStats> top, List<DomainStats> slow) {
+    }
+}
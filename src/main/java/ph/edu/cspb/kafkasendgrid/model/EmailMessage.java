@@ -1,5 +1,6 @@
 package ph.edu.cspb.kafkasendgrid.model;
 
+import com.fasterxml.jackson.annotation.JsonAlias;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -44,6 +45,22 @@ public class EmailMessage {
     @JsonProperty("notificationType")
     private String notificationType; // Type of notification (submission, status_update, etc.)
     
+    @JsonProperty("idempotencyKey")
+    private String idempotencyKey; // Optional, identifies redeliveries of the same email
+    
+    @JsonProperty("sendAt")
+    @JsonAlias("notBefore")
+    private Long sendAt; // Optional Unix time in seconds to deliver at, passed to SendGrid as send_at
+    
+    /**
+     * Determines if this message asks to be delivered later than now
+     * @param nowSeconds the current Unix time in seconds
+     * @return true if sendAt is set and still in the future
+     */
+    public boolean isScheduledAfter(long nowSeconds) {
+        return sendAt != null && sendAt > nowSeconds;
+    }
+    
     /**
      * Determines if this message should use a SendGrid template
      * @return true if templateId is provided, false otherwise
@@ -0,0 +1,37 @@
+package ph.edu.cspb.kafkasendgrid.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Describes why a record ended up on the dead-letter topic.
+ * Travels as JSON in the {@code dlt-failure} header next to the original payload.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class FailureEnvelope {
+
+    private String stage; // PARSE, VALIDATION, SEND or RETRIES_EXHAUSTED
+
+    private String errorClass;
+
+    private String errorMessage;
+
+    private Integer sendGridStatus; // Only for failures reported by SendGrid
+
+    private String sourceTopic; // Where the record was first consumed, even after retries
+
+    private Integer sourcePartition;
+
+    private Long sourceOffset;
+
+    private Integer attempts; // Retries made before giving up
+
+    private Long failedAt; // Epoch milliseconds
+}
@@ -0,0 +1,196 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.config.ConcurrencyLimitConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits concurrent SendGrid requests with an AIMD (additive increase, multiplicative decrease)
+ * window, so throughput settles at whatever SendGrid accepts without per-environment tuning.
+ * <p>
+ * Every successful request grows the limit by {@code increase / limit}, i.e. by
+ * {@code increase} per round trip's worth of requests, as long as the window is actually in
+ * use. A 429, a 5xx, a transport failure or a latency spike multiplies it by
+ * {@code backoffRatio}, at most once per round trip so one burst of failures is not punished
+ * repeatedly. A latency spike is the recent average round trip exceeding
+ * {@code latencyTolerance} times the long-term average; their ratio is exported as the RTT
+ * gradient, 1 when SendGrid is as fast as usual and falling as requests queue up.
+ * <p>
+ * Callers block in {@link #acquire()} while the window is full, which holds back the
+ * listener the same way the non-blocking transport's request window does.
+ */
+@Component
+@Slf4j
+public class AdaptiveConcurrencyLimiter {
+
+    private static final double RECENT_WEIGHT = 0.2;
+    private static final double LONG_TERM_WEIGHT = 0.01;
+    private static final int WARMUP_SAMPLES = 20;
+
+    /**
+     * Why the limit was cut
+     */
+    enum DropReason {
+        THROTTLED,
+        SERVER_ERROR,
+        TRANSPORT_ERROR,
+        LATENCY
+    }
+
+    private final ConcurrencyLimitConfig config;
+    private final LongSupplier nanoClock;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition windowOpen = lock.newCondition();
+    private final Counter[] drops = new Counter[DropReason.values().length];
+
+    private double limit;
+    private int inFlight;
+    private double recentRttNanos;
+    private double longTermRttNanos;
+    private long samples;
+    private long lastDecreaseNanos;
+
+    @Autowired
+    public AdaptiveConcurrencyLimiter(ConcurrencyLimitConfig config, MeterRegistry meterRegistry) {
+        this(config, meterRegistry, System::nanoTime);
+    }
+
+    AdaptiveConcurrencyLimiter(ConcurrencyLimitConfig config, MeterRegistry meterRegistry, LongSupplier nanoClock) {
+        this.config = config;
+        this.nanoClock = nanoClock;
+        this.limit = Math.max(config.getMinLimit(), Math.min(config.getMaxLimit(), config.getInitialLimit()));
+        this.lastDecreaseNanos = nanoClock.getAsLong();
+
+        for (DropReason reason : DropReason.values()) {
+            drops[reason.ordinal()] = Counter.builder("email.sendgrid.concurrency.drops")
+                .description("SendGrid requests that signalled overload, by cause; at most one cut per round trip follows")
+                .tag("reason", reason.name().toLowerCase())
+                .register(meterRegistry);
+        }
+        Gauge.builder("email.sendgrid.concurrency.limit", this, AdaptiveConcurrencyLimiter::limit)
+            .description("Current limit on concurrent SendGrid requests")
+            .register(meterRegistry);
+        Gauge.builder("email.sendgrid.concurrency.gradient", this, AdaptiveConcurrencyLimiter::gradient)
+            .description("Long-term over recent average SendGrid round trip; below 1 when latency is rising")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Waits until another request fits in the window and takes a slot
+     * @return the request's start time, to hand back to {@link #release}
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    public long acquire() throws InterruptedIOException {
+        if (!config.isEnabled()) {
+            return nanoClock.getAsLong();
+        }
+        lock.lock();
+        try {
+            while (inFlight >= (int) limit) {
+                windowOpen.await();
+            }
+            inFlight++;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a SendGrid concurrency slot");
+        } finally {
+            lock.unlock();
+        }
+        return nanoClock.getAsLong();
+    }
+
+    /**
+     * Frees a request's slot and adapts the limit to how the request went
+     * @param startNanos the value returned by {@link #acquire()}
+     * @param status the HTTP status code, or -1 if the transport failed
+     */
+    public void release(long startNanos, int status) {
+        if (!config.isEnabled()) {
+            return;
+        }
+        long now = nanoClock.getAsLong();
+        lock.lock();
+        try {
+            int used = inFlight;
+            inFlight--;
+            if (status == 429) {
+                decrease(DropReason.THROTTLED, now);
+            } else if (status >= 500) {
+                decrease(DropReason.SERVER_ERROR, now);
+            } else if (status < 0) {
+                decrease(DropReason.TRANSPORT_ERROR, now);
+            } else {
+                sample(now - startNanos);
+                if (samples > WARMUP_SAMPLES && recentRttNanos > config.getLatencyTolerance() * longTermRttNanos) {
+                    decrease(DropReason.LATENCY, now);
+                } else if (used * 2 >= (int) limit) {
+                    // Only a window that is being used has shown it can carry more
+                    limit = Math.min(config.getMaxLimit(), limit + config.getIncrease() / limit);
+                }
+            }
+            windowOpen.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Current limit on concurrent requests
+     * @return the limit, possibly fractional while it grows
+     */
+    public double limit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ratio of the long-term to the recent average round trip
+     * @return 1 when SendGrid is as fast as usual, less when it is slowing down
+     */
+    public double gradient() {
+        lock.lock();
+        try {
+            return recentRttNanos > 0 ? Math.min(1, longTermRttNanos / recentRttNanos) : 1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void sample(long rttNanos) {
+        if (samples++ == 0) {
+            recentRttNanos = rttNanos;
+            longTermRttNanos = rttNanos;
+            return;
+        }
+        recentRttNanos += RECENT_WEIGHT * (rttNanos - recentRttNanos);
+        longTermRttNanos += LONG_TERM_WEIGHT * (rttNanos - longTermRttNanos);
+    }
+
+    private void decrease(DropReason reason, long now) {
+        drops[reason.ordinal()].increment();
+        if (now - lastDecreaseNanos < recentRttNanos) {
+            return;
+        }
+        double previous = limit;
+        limit = Math.max(config.getMinLimit(), limit * config.getBackoffRatio());
+        lastDecreaseNanos = now;
+        if (reason == DropReason.LATENCY) {
+            // Rebase on the new latency, or a lasting slowdown would keep cutting down to the minimum
+            longTermRttNanos = recentRttNanos;
+        }
+        log.debug("SendGrid concurrency limit cut from {} to {} ({})", (int) previous, (int) limit, reason);
+    }
+}
@@ -0,0 +1,28 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import com.sendgrid.Request;
+import com.sendgrid.Response;
+import com.sendgrid.SendGrid;
+import lombok.RequiredArgsConstructor;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Transport that performs the SendGrid client's blocking call on the caller's thread.
+ * The returned future is always already complete.
+ */
+@RequiredArgsConstructor
+public class BlockingSendGridTransport implements SendGridTransport {
+
+    private final SendGrid sendGrid;
+
+    @Override
+    public CompletableFuture<Response> send(Request request) {
+        try {
+            return CompletableFuture.completedFuture(sendGrid.api(request));
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+}
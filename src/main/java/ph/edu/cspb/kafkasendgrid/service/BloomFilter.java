@@ -0,0 +1,101 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter of email addresses, compared ignoring case and surrounding whitespace.
+ * <p>
+ * Answers "definitely not present" without allocating and in a handful of memory reads, so the
+ * common case of an unsuppressed recipient never touches the exact set. Addresses can be added
+ * concurrently with lookups, but never removed; a removed address only costs a false positive
+ * until the filter is rebuilt.
+ */
+final class BloomFilter {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final AtomicLongArray words;
+    private final long bits;
+    private final int hashes;
+
+    /**
+     * @param expectedAddresses addresses the filter is sized for
+     * @param falsePositiveRate share of absent addresses reported as possibly present at that size
+     */
+    BloomFilter(long expectedAddresses, double falsePositiveRate) {
+        long expected = Math.max(1, expectedAddresses);
+        double rate = Math.min(0.5, Math.max(1e-9, falsePositiveRate));
+        long optimalBits = (long) Math.ceil(-expected * Math.log(rate) / (Math.log(2) * Math.log(2)));
+        int wordCount = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (optimalBits + 63) / 64));
+        this.words = new AtomicLongArray(wordCount);
+        this.bits = (long) wordCount * 64;
+        this.hashes = (int) Math.max(1, Math.min(16, Math.round((double) bits / expected * Math.log(2))));
+    }
+
+    void put(String address) {
+        long hash = hash(address);
+        long step = step(hash);
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(hash + i * step, bits);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current = words.get(word);
+            while ((current & mask) == 0 && !words.compareAndSet(word, current, current | mask)) {
+                current = words.get(word);
+            }
+        }
+    }
+
+    boolean mightContain(String address) {
+        long hash = hash(address);
+        long step = step(hash);
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(hash + i * step, bits);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Size of the filter
+     * @return the number of bits
+     */
+    long bits() {
+        return bits;
+    }
+
+    /**
+     * Hashes the way {@link SuppressionList#normalize} normalizes, char by char, so an address
+     * hashes alike before and after normalizing
+     */
+    static long hash(String address) {
+        int start = 0;
+        int end = address.length();
+        while (start < end && Character.isWhitespace(address.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(address.charAt(end - 1))) {
+            end--;
+        }
+        long hash = FNV_OFFSET;
+        for (int i = start; i < end; i++) {
+            hash = (hash ^ Character.toLowerCase(address.charAt(i))) * FNV_PRIME;
+        }
+        // Finish with MurmurHash3's mix so nearby addresses spread over every bit
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+
+    /**
+     * Second hash for double hashing, derived from the first and always odd
+     */
+    private static long step(long hash) {
+        return Long.rotateLeft(hash, 32) * 0x9e3779b97f4a7c15L | 1;
+    }
+}
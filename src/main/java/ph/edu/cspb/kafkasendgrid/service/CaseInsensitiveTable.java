@@ -0,0 +1,82 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import java.util.Map;
+
+/**
+ * Immutable string-keyed table with allocation-free, case-insensitive lookups.
+ * <p>
+ * Keys and values sit in parallel arrays probed linearly from a hash computed the way
+ * {@link String#equalsIgnoreCase} compares, so a lookup neither lower-cases its key nor
+ * allocates anything.
+ *
+ * @param <V> the value type
+ */
+final class CaseInsensitiveTable<V> {
+
+    private final String[] keys;
+    private final Object[] values;
+    private final int mask;
+    private final int size;
+
+    /**
+     * @param entries the mappings; null keys and values are skipped, and of keys equal ignoring
+     *                case the last one iterated wins
+     */
+    CaseInsensitiveTable(Map<String, ? extends V> entries) {
+        // At most half full, so probe sequences stay short
+        int capacity = Math.max(2, Integer.highestOneBit(Math.max(1, entries.size() * 2 - 1)) << 1);
+        this.keys = new String[capacity];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+
+        int count = 0;
+        for (Map.Entry<String, ? extends V> entry : entries.entrySet()) {
+            if (entry.getKey() == null || entry.getValue() == null) {
+                continue;
+            }
+            int slot = hash(entry.getKey()) & mask;
+            while (keys[slot] != null && !keys[slot].equalsIgnoreCase(entry.getKey())) {
+                slot = (slot + 1) & mask;
+            }
+            if (keys[slot] == null) {
+                count++;
+            }
+            keys[slot] = entry.getKey();
+            values[slot] = entry.getValue();
+        }
+        this.size = count;
+    }
+
+    /**
+     * Looks a key up ignoring case
+     * @param key the key, not null
+     * @return the value, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    V get(String key) {
+        int slot = hash(key) & mask;
+        for (String candidate = keys[slot]; candidate != null; candidate = keys[slot]) {
+            if (candidate.equalsIgnoreCase(key)) {
+                return (V) values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Hashes the way {@link String#equalsIgnoreCase} compares, so strings equal ignoring
+     * case always hash alike
+     */
+    private static int hash(String value) {
+        int hash = 0;
+        for (int i = 0; i < value.length(); i++) {
+            hash = 31 * hash + Character.toLowerCase(Character.toUpperCase(value.charAt(i)));
+        }
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,218 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.config.ConsumerLagConfig;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.admin.ListOffsetsResult;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.clients.admin.TopicDescription;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.TopicPartitionInfo;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Samples the consumer group's lag on the main topic and exports it as metrics.
+ * <p>
+ * Every interval it reads the group's committed offsets and the topic's end offsets with its
+ * own admin client, so it sees the whole group rather than the partitions this instance owns,
+ * and every replica reports the same figures. Drain rate is how fast the committed offsets
+ * advance between samples, smoothed; time to drain is the total lag divided by that rate.
+ * <p>
+ * Meters:
+ * <ul>
+ *   <li>{@code email.consumer.partition.lag} gauge, tagged {@code partition}</li>
+ *   <li>{@code email.consumer.group.lag} gauge, lag summed over all partitions</li>
+ *   <li>{@code email.consumer.drain.rate} gauge, records committed per second</li>
+ *   <li>{@code email.consumer.time.to.drain} time gauge; infinite while there is lag and
+ *       nothing is being committed</li>
+ * </ul>
+ */
+@Service
+@Slf4j
+public class ConsumerLagMonitor {
+
+    private final KafkaAdmin kafkaAdmin;
+    private final ConsumerLagConfig consumerLagConfig;
+    private final MeterRegistry meterRegistry;
+    private final Map<Integer, AtomicLong> partitionLag = new ConcurrentHashMap<>();
+    private final AtomicLong groupLag = new AtomicLong();
+
+    private volatile double drainRate;
+    private boolean drainRateKnown;
+    private long lastCommitted = -1;
+    private long lastSampleNanos;
+    private int lastPartitionCount;
+
+    private ScheduledExecutorService scheduler;
+    private Admin admin;
+
+    @Value("${spring.kafka.topic.name}")
+    private String topic;
+
+    @Value("${spring.kafka.consumer.group-id}")
+    private String groupId;
+
+    @Value("${spring.kafka.consumer.auto-offset-reset}")
+    private String autoOffsetReset;
+
+    public ConsumerLagMonitor(KafkaAdmin kafkaAdmin, ConsumerLagConfig consumerLagConfig, MeterRegistry meterRegistry) {
+        this.kafkaAdmin = kafkaAdmin;
+        this.consumerLagConfig = consumerLagConfig;
+        this.meterRegistry = meterRegistry;
+
+        Gauge.builder("email.consumer.group.lag", groupLag, AtomicLong::get)
+            .description("Records on the main topic not yet committed by the consumer group")
+            .register(meterRegistry);
+        Gauge.builder("email.consumer.drain.rate", this, ConsumerLagMonitor::drainRate)
+            .description("Records committed per second by the consumer group, smoothed")
+            .register(meterRegistry);
+        TimeGauge.builder("email.consumer.time.to.drain", this, TimeUnit.SECONDS, ConsumerLagMonitor::timeToDrainSeconds)
+            .description("Estimated time for the consumer group to work off its lag at the current drain rate")
+            .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!consumerLagConfig.isEnabled()) {
+            return;
+        }
+        admin = Admin.create(kafkaAdmin.getConfigurationProperties());
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "consumer-lag");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = consumerLagConfig.getInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::sample, 0, intervalMillis, TimeUnit.MILLISECONDS);
+        log.info("Sampling lag of group {} on {} every {}", groupId, topic, consumerLagConfig.getInterval());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        if (admin != null) {
+            admin.close(consumerLagConfig.getRequestTimeout());
+        }
+    }
+
+    /**
+     * Records per second the group commits, smoothed across samples
+     * @return the drain rate
+     */
+    public double drainRate() {
+        return drainRate;
+    }
+
+    /**
+     * Estimated seconds until the group has no lag
+     * @return 0 without lag, infinity if there is lag but nothing is being committed
+     */
+    public double timeToDrainSeconds() {
+        long lag = groupLag.get();
+        if (lag == 0) {
+            return 0;
+        }
+        double rate = drainRate;
+        return rate > 0 ? lag / rate : Double.POSITIVE_INFINITY;
+    }
+
+    private void sample() {
+        try {
+            long timeoutMillis = consumerLagConfig.getRequestTimeout().toMillis();
+            TopicDescription description = admin.describeTopics(List.of(topic)).allTopicNames()
+                .get(timeoutMillis, TimeUnit.MILLISECONDS).get(topic);
+            Map<TopicPartition, OffsetAndMetadata> committed = admin.listConsumerGroupOffsets(groupId)
+                .partitionsToOffsetAndMetadata().get(timeoutMillis, TimeUnit.MILLISECONDS);
+
+            Map<TopicPartition, OffsetSpec> latest = new HashMap<>();
+            Map<TopicPartition, OffsetSpec> earliest = new HashMap<>();
+            for (TopicPartitionInfo info : description.partitions()) {
+                TopicPartition partition = new TopicPartition(topic, info.partition());
+                latest.put(partition, OffsetSpec.latest());
+                if (committed.get(partition) == null) {
+                    earliest.put(partition, OffsetSpec.earliest());
+                }
+            }
+            Map<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> ends = admin.listOffsets(latest).all()
+                .get(timeoutMillis, TimeUnit.MILLISECONDS);
+            Map<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> starts = earliest.isEmpty()
+                ? Map.of()
+                : admin.listOffsets(earliest).all().get(timeoutMillis, TimeUnit.MILLISECONDS);
+
+            Map<Integer, Long> lagByPartition = new HashMap<>();
+            long committedTotal = 0;
+            for (TopicPartition partition : latest.keySet()) {
+                long end = ends.get(partition).offset();
+                OffsetAndMetadata offset = committed.get(partition);
+                // Without a commit the group starts where auto.offset.reset points it
+                long position = offset != null
+                    ? offset.offset()
+                    : "earliest".equals(autoOffsetReset) ? starts.get(partition).offset() : end;
+                lagByPartition.put(partition.partition(), Math.max(0, end - position));
+                committedTotal += position;
+            }
+            record(lagByPartition, committedTotal, System.nanoTime());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("Could not sample lag of group {} on {}: {}", groupId, topic, e.getMessage());
+        }
+    }
+
+    /**
+     * Publishes one lag sample and folds the committed offsets into the drain rate
+     * @param lagByPartition lag of each partition of the main topic
+     * @param committedTotal sum of the group's positions over all partitions
+     * @param nowNanos when the sample was taken
+     */
+    void record(Map<Integer, Long> lagByPartition, long committedTotal, long nowNanos) {
+        long total = 0;
+        for (Map.Entry<Integer, Long> entry : lagByPartition.entrySet()) {
+            partitionLag.computeIfAbsent(entry.getKey(), this::registerPartition).set(entry.getValue());
+            total += entry.getValue();
+        }
+        groupLag.set(total);
+
+        // A new partition or an offset reset moves the sum without anything being consumed
+        boolean comparable = lastCommitted >= 0 && lagByPartition.size() == lastPartitionCount
+            && committedTotal >= lastCommitted && nowNanos > lastSampleNanos;
+        if (comparable) {
+            double seconds = (nowNanos - lastSampleNanos) / 1e9;
+            double rate = (committedTotal - lastCommitted) / seconds;
+            double smoothing = consumerLagConfig.getRateSmoothing();
+            drainRate = drainRateKnown ? smoothing * rate + (1 - smoothing) * drainRate : rate;
+            drainRateKnown = true;
+        }
+        lastCommitted = committedTotal;
+        lastSampleNanos = nowNanos;
+        lastPartitionCount = lagByPartition.size();
+    }
+
+    private AtomicLong registerPartition(int partition) {
+        AtomicLong lag = new AtomicLong();
+        Gauge.builder("email.consumer.partition.lag", lag, AtomicLong::get)
+            .description("Records on one partition of the main topic not yet committed by the consumer group")
+            .tag("partition", String.valueOf(partition))
+            .register(meterRegistry);
+        return lag;
+    }
+}
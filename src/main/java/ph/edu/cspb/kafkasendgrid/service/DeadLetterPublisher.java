@@ -0,0 +1,136 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.config.DeadLetterConfig;
+import ph.edu.cspb.kafkasendgrid.model.FailureEnvelope;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes permanently failed records to the dead-letter topic.
+ * <p>
+ * The dead letter carries the original key and payload unchanged plus a {@link FailureEnvelope}
+ * in the {@value #FAILURE_HEADER} header, so it can be inspected or re-driven later.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DeadLetterPublisher {
+
+    public static final String FAILURE_HEADER = "dlt-failure";
+
+    private static final int MAX_ERROR_MESSAGE_LENGTH = 500;
+
+    private final KafkaTemplate<String, byte[]> kafkaTemplate;
+    private final DeadLetterConfig deadLetterConfig;
+    private final ObjectMapper objectMapper;
+
+    @Value("${spring.kafka.topic.name}")
+    private String mainTopic;
+
+    /**
+     * Name of the dead-letter topic
+     * @return the main topic name with the dead-letter suffix
+     */
+    public String topic() {
+        return mainTopic + deadLetterConfig.getTopicSuffix();
+    }
+
+    /**
+     * Whether failed records are published to the dead-letter topic
+     * @return true if dead-lettering is enabled
+     */
+    public boolean isEnabled() {
+        return deadLetterConfig.isEnabled();
+    }
+
+    /**
+     * Dead-letters a record that failed permanently
+     * @param record the failed record
+     * @param result why it failed
+     * @return true if the record's offset may be committed: the dead letter was published,
+     *         or dead-lettering is disabled; false if the publish failed
+     */
+    public boolean publish(ConsumerRecord<String, byte[]> record, ProcessingResult result) {
+        if (!deadLetterConfig.isEnabled()) {
+            return true;
+        }
+
+        ProducerRecord<String, byte[]> deadLetter = new ProducerRecord<>(topic(), record.key(), record.value());
+        FailureEnvelope envelope;
+        try {
+            envelope = envelope(record, result);
+            deadLetter.headers().add(FAILURE_HEADER, objectMapper.writeValueAsBytes(envelope));
+            kafkaTemplate.send(deadLetter).get(deadLetterConfig.getPublishTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            log.error("Failed to dead-letter record from topic: {}, partition: {}, offset: {}; it will be redelivered",
+                record.topic(), record.partition(), record.offset(), e);
+            return false;
+        }
+
+        log.warn("Dead-lettered record from topic: {}, partition: {}, offset: {} (stage: {}, error: {})",
+            envelope.getSourceTopic(), envelope.getSourcePartition(), envelope.getSourceOffset(),
+            envelope.getStage(), envelope.getErrorClass());
+        return true;
+    }
+
+    /**
+     * Reads the failure envelope of a dead letter
+     * @param headers the dead letter's headers
+     * @return the envelope, or null if it is missing or unreadable
+     */
+    public FailureEnvelope readEnvelope(Headers headers) {
+        Header header = headers.lastHeader(FAILURE_HEADER);
+        if (header == null) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(header.value(), FailureEnvelope.class);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private FailureEnvelope envelope(ConsumerRecord<String, byte[]> record, ProcessingResult result) {
+        Headers headers = record.headers();
+        Throwable error = result.error();
+        return FailureEnvelope.builder()
+            .stage(result.stage() != null ? result.stage().name() : null)
+            .errorClass(error != null ? error.getClass().getName() : null)
+            .errorMessage(error != null ? truncate(error.getMessage()) : null)
+            .sendGridStatus(result.sendGridStatus())
+            .sourceTopic(header(headers, RetryPublisher.ORIGINAL_TOPIC_HEADER, record.topic()))
+            .sourcePartition(Integer.valueOf(header(headers, RetryPublisher.ORIGINAL_PARTITION_HEADER,
+                String.valueOf(record.partition()))))
+            .sourceOffset(Long.valueOf(header(headers, RetryPublisher.ORIGINAL_OFFSET_HEADER,
+                String.valueOf(record.offset()))))
+            .attempts(RetryPublisher.attempt(headers))
+            .failedAt(System.currentTimeMillis())
+            .build();
+    }
+
+    private static String header(Headers headers, String name, String defaultValue) {
+        Header header = headers != null ? headers.lastHeader(name) : null;
+        return header != null ? new String(header.value(), StandardCharsets.UTF_8) : defaultValue;
+    }
+
+    private static String truncate(String message) {
+        return message != null && message.length() > MAX_ERROR_MESSAGE_LENGTH
+            ? message.substring(0, MAX_ERROR_MESSAGE_LENGTH)
+            : message;
+    }
+}
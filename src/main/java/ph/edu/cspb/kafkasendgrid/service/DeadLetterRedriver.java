@@ -0,0 +1,222 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.config.DeadLetterConfig;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a range of dead letters back onto the main topic.
+ * <p>
+ * A re-drive reads one dead-letter partition from a start offset up to an end offset, with its
+ * own assigned consumer in a group of its own that never commits, so it neither joins the live
+ * consumer group nor leaves offsets behind under its name, and republishes each
+ * record's original key and payload at a fixed, capped rate. Replayed records then go through
+ * the full pipeline alongside live traffic, sharing its SendGrid rate limiter; the cap keeps a
+ * large replay from crowding out live emails. Only one re-drive runs at a time.
+ */
+@Service
+@Slf4j
+public class DeadLetterRedriver {
+
+    public static final String REDRIVE_HEADER = "dlt-redriven-from";
+
+    private static final Duration POLL_TIMEOUT = Duration.ofSeconds(1);
+
+    private final ConsumerFactory<String, byte[]> consumerFactory;
+    private final KafkaTemplate<String, byte[]> kafkaTemplate;
+    private final DeadLetterPublisher deadLetterPublisher;
+    private final DeadLetterConfig deadLetterConfig;
+    private final ExecutorService executor;
+    private final AtomicReference<RedriveStatus> current = new AtomicReference<>();
+
+    @Value("${spring.kafka.topic.name}")
+    private String mainTopic;
+
+    @Value("${spring.kafka.consumer.group-id}")
+    private String groupId;
+
+    public DeadLetterRedriver(
+            ConsumerFactory<String, byte[]> consumerFactory,
+            KafkaTemplate<String, byte[]> kafkaTemplate,
+            DeadLetterPublisher deadLetterPublisher,
+            DeadLetterConfig deadLetterConfig) {
+        this.consumerFactory = consumerFactory;
+        this.kafkaTemplate = kafkaTemplate;
+        this.deadLetterPublisher = deadLetterPublisher;
+        this.deadLetterConfig = deadLetterConfig;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "dlt-redrive");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts replaying a range of one dead-letter partition
+     * @param partition the dead-letter partition
+     * @param fromOffset first offset to replay
+     * @param toOffset offset to stop before; capped at the partition's current end
+     * @param ratePerSecond records per second, null for the configured default
+     * @return the status of the new re-drive
+     * @throws IllegalArgumentException if the range or rate is invalid
+     * @throws IllegalStateException if another re-drive is still running
+     */
+    public RedriveStatus start(int partition, long fromOffset, long toOffset, Double ratePerSecond) {
+        if (partition < 0 || fromOffset < 0 || toOffset <= fromOffset) {
+            throw new IllegalArgumentException("Re-drive needs a partition >= 0 and 0 <= from < to");
+        }
+        double rate = ratePerSecond != null ? ratePerSecond : deadLetterConfig.getRedriveRate();
+        if (rate <= 0) {
+            throw new IllegalArgumentException("Re-drive rate must be positive");
+        }
+        rate = Math.min(rate, deadLetterConfig.getMaxRedriveRate());
+
+        RedriveStatus status = new RedriveStatus(partition, fromOffset, toOffset, rate);
+        RedriveStatus previous = current.get();
+        if (previous != null && previous.getState() == RedriveState.RUNNING) {
+            throw new IllegalStateException("A re-drive of partition " + previous.getPartition() + " is already running");
+        }
+        if (!current.compareAndSet(previous, status)) {
+            throw new IllegalStateException("Another re-drive was started concurrently");
+        }
+
+        executor.execute(() -> run(status));
+        return status;
+    }
+
+    /**
+     * The most recent re-drive
+     * @return its status, or null if none was started
+     */
+    public RedriveStatus status() {
+        return current.get();
+    }
+
+    /**
+     * Stops the running re-drive after the record in progress
+     * @return true if a running re-drive was asked to stop
+     */
+    public boolean cancel() {
+        RedriveStatus status = current.get();
+        if (status == null || status.getState() != RedriveState.RUNNING) {
+            return false;
+        }
+        status.cancelRequested = true;
+        return true;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        cancel();
+        executor.shutdown();
+    }
+
+    private void run(RedriveStatus status) {
+        TopicPartition partition = new TopicPartition(deadLetterPublisher.topic(), status.getPartition());
+        log.info("Re-driving {} offsets {}..{} at {} records/s", partition, status.getFromOffset(),
+            status.getToOffset(), status.getRate());
+
+        Properties overrides = new Properties();
+        overrides.setProperty(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+        try (Consumer<String, byte[]> consumer = consumerFactory.createConsumer(
+                groupId + "-dlt-redrive", null, "-dlt-redrive", overrides)) {
+            consumer.assign(List.of(partition));
+            consumer.seek(partition, status.getFromOffset());
+            long end = Math.min(status.getToOffset(), consumer.endOffsets(List.of(partition)).get(partition));
+
+            long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / status.getRate());
+            long nextSlot = System.nanoTime();
+
+            while (!status.cancelRequested && consumer.position(partition) < end) {
+                ConsumerRecords<String, byte[]> records = consumer.poll(POLL_TIMEOUT);
+                for (ConsumerRecord<String, byte[]> record : records.records(partition)) {
+                    if (status.cancelRequested || record.offset() >= end) {
+                        break;
+                    }
+                    long wait = nextSlot - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                    nextSlot = Math.max(nextSlot, System.nanoTime() - intervalNanos) + intervalNanos;
+
+                    replay(record);
+                    status.replayed++;
+                    status.nextOffset = record.offset() + 1;
+                }
+            }
+
+            status.state = status.cancelRequested ? RedriveState.CANCELLED : RedriveState.COMPLETED;
+            log.info("Re-drive of {} {} after {} records", partition, status.getState(), status.getReplayed());
+        } catch (Exception e) {
+            status.error = e.getMessage();
+            status.state = RedriveState.FAILED;
+            log.error("Re-drive of {} failed at offset {}", partition, status.getNextOffset(), e);
+        }
+    }
+
+    private void replay(ConsumerRecord<String, byte[]> record) throws Exception {
+        ProducerRecord<String, byte[]> replay = new ProducerRecord<>(mainTopic, record.key(), record.value());
+        String origin = record.partition() + ":" + record.offset();
+        replay.headers().add(REDRIVE_HEADER, origin.getBytes(StandardCharsets.UTF_8));
+        kafkaTemplate.send(replay).get(deadLetterConfig.getPublishTimeout().toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * State of a re-drive.
+     */
+    public enum RedriveState {
+        RUNNING,
+        COMPLETED,
+        CANCELLED,
+        FAILED
+    }
+
+    /**
+     * Progress of a re-drive, updated as it runs.
+     */
+    @Getter
+    public static class RedriveStatus {
+
+        private final int partition;
+        private final long fromOffset;
+        private final long toOffset;
+        private final double rate;
+        private volatile RedriveState state = RedriveState.RUNNING;
+        private volatile long nextOffset;
+        private volatile long replayed;
+        private volatile String error;
+
+        @Getter(AccessLevel.NONE)
+        private volatile boolean cancelRequested;
+
+        RedriveStatus(int partition, long fromOffset, long toOffset, double rate) {
+            this.partition = partition;
+            this.fromOffset = fromOffset;
+            this.toOffset = toOffset;
+            this.rate = rate;
+            this.nextOffset = fromOffset;
+        }
+    }
+}
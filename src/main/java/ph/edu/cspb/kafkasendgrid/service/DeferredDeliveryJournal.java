@@ -0,0 +1,293 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only file of deferred messages, so that scheduled emails survive a restart and need
+ * not all be held in memory.
+ * <p>
+ * Scheduling a message appends an add record holding its ID, delivery time and raw payload;
+ * sending it appends a done record with its ID. Every record ends with a CRC32C of its
+ * contents, so a record torn by a crash is recognised and cut off on recovery. Recovery keeps
+ * the adds without a matching done and rewrites the file with only those. The same rewrite
+ * is available while running through {@link #compact}, so the space of sent messages can be
+ * reclaimed without a restart; the file is truncated outright whenever nothing is pending.
+ */
+@Slf4j
+final class DeferredDeliveryJournal implements Closeable {
+
+    private static final byte ADD = 'A';
+    private static final byte DONE = 'D';
+    private static final int ADD_HEADER = 1 + Long.BYTES + Long.BYTES + Integer.BYTES;
+    private static final int DONE_LENGTH = 1 + Long.BYTES + Integer.BYTES;
+
+    /**
+     * A message recovered from the journal
+     * @param id the message's journal ID
+     * @param sendAt the requested delivery time, Unix seconds
+     * @param offset where the message's record starts, for {@link #read}
+     * @param length the size of the message's record in bytes
+     */
+    record Entry(long id, long sendAt, long offset, int length) {
+    }
+
+    private final Path path;
+    private final boolean sync;
+    private FileChannel channel;
+
+    /**
+     * @param path the journal file, created with its directory if missing
+     * @param sync whether every append is forced to disk before it returns
+     * @throws IOException if the file cannot be opened
+     */
+    DeferredDeliveryJournal(Path path, boolean sync) throws IOException {
+        this.path = path;
+        this.sync = sync;
+        Path directory = path.toAbsolutePath().getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+        this.channel = open(path);
+    }
+
+    /**
+     * Reads back every message that was added but never marked done, dropping a torn record
+     * at the end and compacting the file down to the pending messages
+     * @return the pending messages, in the order they were added
+     * @throws IOException if the file cannot be read or rewritten
+     */
+    synchronized List<Entry> recover() throws IOException {
+        Map<Long, Entry> pending = new LinkedHashMap<>();
+        long size = channel.size();
+        long position = 0;
+        int done = 0;
+        while (position < size) {
+            try {
+                ByteBuffer type = readFully(position, 1);
+                if (type.get(0) == ADD) {
+                    ByteBuffer header = readFully(position, ADD_HEADER);
+                    int length = header.getInt(ADD_HEADER - Integer.BYTES);
+                    if (length < 0 || position + ADD_HEADER + length + Integer.BYTES > size) {
+                        break;
+                    }
+                    ByteBuffer record = readFully(position, ADD_HEADER + length + Integer.BYTES);
+                    if (!checksumMatches(record)) {
+                        break;
+                    }
+                    long id = record.getLong(1);
+                    pending.put(id, new Entry(id, record.getLong(1 + Long.BYTES), position, record.capacity()));
+                    position += record.capacity();
+                } else if (type.get(0) == DONE) {
+                    ByteBuffer record = readFully(position, DONE_LENGTH);
+                    if (!checksumMatches(record)) {
+                        break;
+                    }
+                    pending.remove(record.getLong(1));
+                    done++;
+                    position += DONE_LENGTH;
+                } else {
+                    break;
+                }
+            } catch (EOFException e) {
+                break;
+            }
+        }
+        if (position < size) {
+            log.warn("Dropping {} bytes of torn or corrupt records at the end of {}", size - position, path);
+        }
+        if (done == 0 && position == size) {
+            return new ArrayList<>(pending.values());
+        }
+        return compact(pending.values().stream().map(Entry::offset).toList());
+    }
+
+    /**
+     * Appends a deferred message
+     * @param id the message's journal ID
+     * @param sendAt the requested delivery time, Unix seconds
+     * @param payload the message's raw record value
+     * @return where the record starts, for {@link #read}
+     * @throws IOException if the record cannot be written
+     */
+    synchronized long append(long id, long sendAt, byte[] payload) throws IOException {
+        long offset = channel.size();
+        write(addRecord(id, sendAt, payload), offset);
+        return offset;
+    }
+
+    /**
+     * Marks messages as sent, so they are not recovered after a restart
+     * @param ids the messages' journal IDs
+     * @throws IOException if the records cannot be written
+     */
+    synchronized void complete(Collection<Long> ids) throws IOException {
+        if (ids.isEmpty()) {
+            return;
+        }
+        ByteBuffer records = ByteBuffer.allocate(ids.size() * DONE_LENGTH);
+        for (long id : ids) {
+            int start = records.position();
+            records.put(DONE).putLong(id);
+            records.putInt((int) checksum(records, start, records.position() - start));
+        }
+        records.flip();
+        write(records, channel.size());
+    }
+
+    /**
+     * Reads a message's payload back
+     * @param offset the offset returned by {@link #append}, or recovered by {@link #recover}
+     * @return the raw record value
+     * @throws IOException if the record cannot be read or is corrupt
+     */
+    synchronized byte[] read(long offset) throws IOException {
+        ByteBuffer record = readAdd(offset);
+        byte[] payload = new byte[record.capacity() - ADD_HEADER - Integer.BYTES];
+        record.get(ADD_HEADER, payload);
+        return payload;
+    }
+
+    /**
+     * Rewrites the journal with only the given messages and switches to the new file.
+     * Every other message, and every done record, is dropped, so the offsets of the kept
+     * messages change: callers must use the returned entries from then on.
+     * @param offsets where the messages to keep start, in the order to keep them
+     * @return the kept messages, at their new offsets
+     * @throws IOException if a kept record cannot be read or the file cannot be rewritten
+     */
+    synchronized List<Entry> compact(List<Long> offsets) throws IOException {
+        Path compacted = path.resolveSibling(path.getFileName() + ".compact");
+        List<Entry> moved = new ArrayList<>(offsets.size());
+        try (FileChannel target = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long position = 0;
+            for (long offset : offsets) {
+                // Copied as they are, checksum included
+                ByteBuffer record = readAdd(offset);
+                int length = record.remaining();
+                while (record.hasRemaining()) {
+                    target.write(record, position + record.position());
+                }
+                moved.add(new Entry(record.getLong(1), record.getLong(1 + Long.BYTES), position, length));
+                position += length;
+            }
+            target.force(true);
+        }
+        channel.close();
+        try {
+            Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            channel = open(path);
+        }
+        log.info("Compacted {} to {} pending messages", path, moved.size());
+        return moved;
+    }
+
+    /**
+     * Empties the journal; only valid while no message is pending
+     * @throws IOException if the file cannot be truncated
+     */
+    synchronized void clear() throws IOException {
+        channel.truncate(0);
+        if (sync) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Current size of the journal file
+     * @return the size in bytes
+     * @throws IOException if the size cannot be read
+     */
+    synchronized long size() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Size of the record {@link #append} writes for a payload
+     * @param payloadLength the payload's length in bytes
+     * @return the record's length in bytes
+     */
+    static int recordLength(int payloadLength) {
+        return ADD_HEADER + payloadLength + Integer.BYTES;
+    }
+
+    /**
+     * Reads a whole add record and checks it
+     */
+    private ByteBuffer readAdd(long offset) throws IOException {
+        ByteBuffer header = readFully(offset, ADD_HEADER);
+        if (header.get(0) != ADD) {
+            throw new IOException("No deferred message at offset " + offset + " of " + path);
+        }
+        int length = header.getInt(ADD_HEADER - Integer.BYTES);
+        ByteBuffer record = readFully(offset, recordLength(length));
+        if (!checksumMatches(record)) {
+            throw new IOException("Corrupt deferred message at offset " + offset + " of " + path);
+        }
+        return record;
+    }
+
+    private static ByteBuffer addRecord(long id, long sendAt, byte[] payload) {
+        ByteBuffer record = ByteBuffer.allocate(recordLength(payload.length));
+        record.put(ADD).putLong(id).putLong(sendAt).putInt(payload.length).put(payload);
+        record.putInt((int) checksum(record, 0, record.position()));
+        return record.flip();
+    }
+
+    private void write(ByteBuffer records, long offset) throws IOException {
+        long position = offset;
+        while (records.hasRemaining()) {
+            position += channel.write(records, position);
+        }
+        if (sync) {
+            channel.force(false);
+        }
+    }
+
+    private ByteBuffer readFully(long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static boolean checksumMatches(ByteBuffer record) {
+        int end = record.capacity() - Integer.BYTES;
+        return (int) checksum(record, 0, end) == record.getInt(end);
+    }
+
+    private static long checksum(ByteBuffer buffer, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(offset, length));
+        return crc.getValue();
+    }
+
+    private static FileChannel open(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+}
@@ -0,0 +1,505 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.config.DeferredDeliveryConfig;
+import ph.edu.cspb.kafkasendgrid.model.EmailMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Holds back messages whose {@code sendAt} lies beyond the current window and hands them to
+ * SendGrid shortly before they are due.
+ * <p>
+ * Time is cut into windows of {@code sendgrid.deferred.window}. A message is released one
+ * window before the window its {@code sendAt} falls in, together with every other message of
+ * that window: template emails sharing a template and sender go out as one multi-personalization
+ * request, and every request of the release shares one SendGrid {@code batch_id}. Each
+ * personalization carries its own {@code send_at}, so SendGrid still delivers every message at
+ * its own second and a campaign scheduled across an hour goes out across that hour.
+ * <p>
+ * Until released, messages wait in a {@link TimingWheel}. Each is first appended to the
+ * {@link DeferredDeliveryJournal}, so its Kafka record can be committed and it survives a
+ * restart; only the first {@code max-in-memory} keep their parsed message in memory, the rest
+ * are read back from the journal when due. A release that fails transiently is tried again
+ * after {@code retry-delay}; one SendGrid rejects is logged and dropped. Once sent messages
+ * take up more than {@code compact-threshold} of a journal larger than {@code compact-min-size},
+ * the journal is rewritten with only the held messages, so it does not grow for as long as the
+ * service runs.
+ * <p>
+ * Whether enabled or not, a {@code sendAt} already in the past is cleared before sending, so
+ * SendGrid never receives a delivery time it would have to reject.
+ * <p>
+ * Meters:
+ * <ul>
+ *   <li>{@code email.deferred.pending} gauge, messages held back</li>
+ *   <li>{@code email.deferred.spilled} gauge, held messages kept only in the journal</li>
+ *   <li>{@code email.deferred.released} counter, tagged {@code result} (sent, retry, failed)</li>
+ * </ul>
+ */
+@Service
+@Slf4j
+public class DeferredDeliveryScheduler {
+
+    private static final int WHEEL_SIZE = 60;
+    private static final int MAX_PERSONALIZATIONS = 1000;
+
+    private final DeferredDeliveryConfig config;
+    private final EmailService emailService;
+    private final EmailMessageReader emailMessageReader;
+    private final LongSupplier clock;
+    private final Executor releaseExecutor;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Counter sent;
+    private final Counter retried;
+    private final Counter failed;
+    private final List<Deferred> overdue = new ArrayList<>();
+    private final Map<Long, Deferred> held = new HashMap<>();
+
+    private TimingWheel<Deferred> wheel;
+    private DeferredDeliveryJournal journal;
+    private ScheduledExecutorService ticker;
+    private long nextId = 1;
+    private long heldBytes;
+    private int inMemory;
+
+    @Autowired
+    public DeferredDeliveryScheduler(DeferredDeliveryConfig config, EmailService emailService,
+            EmailMessageReader emailMessageReader, MeterRegistry meterRegistry) {
+        this(config, emailService, emailMessageReader, meterRegistry, System::currentTimeMillis,
+            Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    DeferredDeliveryScheduler(DeferredDeliveryConfig config, EmailService emailService,
+            EmailMessageReader emailMessageReader, MeterRegistry meterRegistry, LongSupplier clock,
+            Executor releaseExecutor) {
+        this.config = config;
+        this.emailService = emailService;
+        this.emailMessageReader = emailMessageReader;
+        this.clock = clock;
+        this.releaseExecutor = releaseExecutor;
+        this.sent = releasedCounter(meterRegistry, "sent");
+        this.retried = releasedCounter(meterRegistry, "retry");
+        this.failed = releasedCounter(meterRegistry, "failed");
+
+        Gauge.builder("email.deferred.pending", this, DeferredDeliveryScheduler::pending)
+            .description("Messages held back until shortly before their sendAt time")
+            .register(meterRegistry);
+        Gauge.builder("email.deferred.spilled", this, DeferredDeliveryScheduler::spilled)
+            .description("Held messages kept only in the journal, to be read back when due")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Recovers the journal and starts the clock
+     * @throws IOException if the journal cannot be opened or read
+     */
+    @PostConstruct
+    public void start() throws IOException {
+        if (!config.isEnabled()) {
+            return;
+        }
+        recover();
+        ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "deferred-delivery");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long tickMillis = config.getTick().toMillis();
+        ticker.scheduleAtFixedRate(this::tick, 0, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens the journal and puts every message it still holds back into the wheel; those
+     * already due go out on the first tick
+     * @throws IOException if the journal cannot be opened or read
+     */
+    void recover() throws IOException {
+        long now = clock.getAsLong();
+        lock.lock();
+        try {
+            wheel = new TimingWheel<>(config.getTick().toMillis(), WHEEL_SIZE, now);
+            journal = new DeferredDeliveryJournal(Path.of(config.getJournalPath()), config.isSync());
+            for (DeferredDeliveryJournal.Entry entry : journal.recover()) {
+                Deferred deferred = new Deferred(entry.id(), entry.offset(), entry.length(), null);
+                if (!wheel.add(releaseAt(entry.sendAt()), deferred)) {
+                    overdue.add(deferred);
+                }
+                nextId = Math.max(nextId, entry.id() + 1);
+                hold(deferred);
+            }
+            if (!held.isEmpty()) {
+                log.info("Recovered {} deferred messages from {} ({} already due)",
+                    held.size(), config.getJournalPath(), overdue.size());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+        if (releaseExecutor instanceof ExecutorService executorService) {
+            executorService.shutdown();
+        }
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    /**
+     * Holds a validated message back if it is due after the current window.
+     * A {@code sendAt} that has already passed is cleared, whether or not deferral is enabled.
+     * @param emailMessage the validated message
+     * @param payload the message's raw record value, journaled as it is
+     * @return true if the message is held and its record may be committed, false if it should be sent now
+     * @throws IOException if the message could not be journaled; the record must be redelivered
+     */
+    public boolean defer(EmailMessage emailMessage, byte[] payload) throws IOException {
+        long now = clock.getAsLong();
+        if (emailMessage.getSendAt() == null) {
+            return false;
+        }
+        if (!emailMessage.isScheduledAfter(now / 1000)) {
+            emailMessage.setSendAt(null);
+            return false;
+        }
+        if (!config.isEnabled()) {
+            return false;
+        }
+        long releaseAt = releaseAt(emailMessage.getSendAt());
+        if (releaseAt <= now + config.getTick().toMillis()) {
+            return false;
+        }
+
+        lock.lock();
+        try {
+            long id = nextId++;
+            long offset = journal.append(id, emailMessage.getSendAt(), payload);
+            boolean keep = inMemory < config.getMaxInMemory();
+            Deferred deferred = new Deferred(id, offset, DeferredDeliveryJournal.recordLength(payload.length),
+                keep ? emailMessage : null);
+            wheel.add(releaseAt, deferred);
+            hold(deferred);
+            if (keep) {
+                inMemory++;
+            }
+        } finally {
+            lock.unlock();
+        }
+        return true;
+    }
+
+    /**
+     * Messages held back
+     * @return the number of pending messages
+     */
+    public int pending() {
+        lock.lock();
+        try {
+            return held.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Held messages whose payload is only in the journal
+     * @return the number of spilled messages
+     */
+    public int spilled() {
+        lock.lock();
+        try {
+            return held.size() - inMemory;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Advances the wheel to the current time and releases whatever has come due
+     */
+    void tick() {
+        List<Deferred> due = new ArrayList<>();
+        lock.lock();
+        try {
+            due.addAll(overdue);
+            overdue.clear();
+            wheel.advance(clock.getAsLong(), due::add);
+        } finally {
+            lock.unlock();
+        }
+        try {
+            if (!due.isEmpty()) {
+                release(due);
+            }
+        } catch (RuntimeException e) {
+            // Never let one bad release stop the clock
+            log.error("Failed to release {} deferred messages", due.size(), e);
+        }
+    }
+
+    /**
+     * Sends the messages of a release, grouped into as few requests as possible under one batch ID
+     */
+    private void release(List<Deferred> due) {
+        long nowSeconds = clock.getAsLong() / 1000;
+        Map<List<String>, List<Deferred>> templateGroups = new LinkedHashMap<>();
+        List<Deferred> plain = new ArrayList<>();
+        EmailMessage first = null;
+        for (Deferred deferred : due) {
+            EmailMessage emailMessage = load(deferred);
+            if (emailMessage == null) {
+                continue;
+            }
+            if (!emailMessage.isScheduledAfter(nowSeconds)) {
+                emailMessage.setSendAt(null);
+            }
+            first = first != null ? first : emailMessage;
+            String templateId = emailService.determineTemplateId(emailMessage);
+            if (templateId != null) {
+                templateGroups.computeIfAbsent(List.of(templateId, emailService.resolveFromEmail(emailMessage)),
+                    key -> new ArrayList<>()).add(deferred);
+            } else {
+                plain.add(deferred);
+            }
+        }
+        if (first == null) {
+            return;
+        }
+
+        String batchId = batchId(first);
+        log.info("Releasing {} deferred messages in {} template groups (batch: {})",
+            due.size(), templateGroups.size(), batchId);
+        templateGroups.forEach((key, group) -> {
+            for (int start = 0; start < group.size(); start += MAX_PERSONALIZATIONS) {
+                List<Deferred> chunk = group.subList(start, Math.min(group.size(), start + MAX_PERSONALIZATIONS));
+                List<EmailMessage> messages = chunk.stream().map(deferred -> deferred.message).toList();
+                CompletableFuture.runAsync(() -> {
+                    try {
+                        emailService.sendTemplateBatch(key.get(0), key.get(1), messages, batchId);
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                }, releaseExecutor).whenComplete((ignored, error) -> {
+                    if (chunk.size() > 1 && isRejection(error)) {
+                        // Resend one at a time so a single refused message does not take the others down with it
+                        log.warn("SendGrid rejected a grouped release of {} messages; resending them one by one", chunk.size());
+                        chunk.forEach(deferred -> sendOne(deferred, batchId));
+                    } else {
+                        released(chunk, error);
+                    }
+                });
+            }
+        });
+        plain.forEach(deferred -> sendOne(deferred, batchId));
+    }
+
+    private void sendOne(Deferred deferred, String batchId) {
+        CompletableFuture.supplyAsync(() -> emailService.sendEmailAsync(deferred.message, batchId), releaseExecutor)
+            .thenCompose(send -> send)
+            .whenComplete((ignored, error) -> released(List.of(deferred), error));
+    }
+
+    private static boolean isRejection(Throwable error) {
+        return error != null && !isTransient(error);
+    }
+
+    private static boolean isTransient(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof IOException
+            || (cause instanceof SendGridException sendGridException && sendGridException.isTransient());
+    }
+
+    /**
+     * Settles released messages: sent or rejected ones leave the journal, transient failures go back into the wheel
+     */
+    private void released(List<Deferred> deferreds, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        lock.lock();
+        try {
+            if (cause != null && isTransient(cause)) {
+                // At least two ticks out, so the wheel never refuses the entry as already due
+                long retryAt = clock.getAsLong()
+                    + Math.max(config.getRetryDelay().toMillis(), 2 * config.getTick().toMillis());
+                for (Deferred deferred : deferreds) {
+                    wheel.add(retryAt, deferred);
+                }
+                retried.increment(deferreds.size());
+                log.warn("Release of {} deferred messages failed; retrying in {}",
+                    deferreds.size(), config.getRetryDelay(), cause);
+                return;
+            }
+            if (cause != null) {
+                failed.increment(deferreds.size());
+                log.error("SendGrid rejected {} deferred messages; dropping them", deferreds.size(), cause);
+            } else {
+                sent.increment(deferreds.size());
+            }
+            finish(deferreds);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Counts a journaled message as held; must hold the lock
+     */
+    private void hold(Deferred deferred) {
+        held.put(deferred.id, deferred);
+        heldBytes += deferred.length;
+    }
+
+    /**
+     * Takes messages out of the journal and the counts; must hold the lock
+     */
+    private void finish(List<Deferred> deferreds) {
+        List<Long> ids = new ArrayList<>(deferreds.size());
+        for (Deferred deferred : deferreds) {
+            if (held.remove(deferred.id) == null) {
+                continue;
+            }
+            ids.add(deferred.id);
+            heldBytes -= deferred.length;
+            if (deferred.inMemory) {
+                inMemory--;
+            }
+        }
+        try {
+            if (held.isEmpty()) {
+                journal.clear();
+            } else {
+                journal.complete(ids);
+                compactIfWasteful();
+            }
+        } catch (IOException e) {
+            // The messages are sent; at worst they are sent again after a restart
+            log.error("Failed to mark {} deferred messages as sent in the journal", ids.size(), e);
+        }
+    }
+
+    /**
+     * Rewrites the journal with only the held messages once sent ones take up too much of it,
+     * moving every held message to its new offset; must hold the lock
+     * @throws IOException if the journal cannot be rewritten; it is then left as it was
+     */
+    private void compactIfWasteful() throws IOException {
+        long size = journal.size();
+        if (size < config.getCompactMinSize().toBytes()
+                || size - heldBytes <= size * config.getCompactThreshold()) {
+            return;
+        }
+        List<Long> offsets = new ArrayList<>(held.size());
+        for (Deferred deferred : held.values()) {
+            offsets.add(deferred.offset);
+        }
+        for (DeferredDeliveryJournal.Entry entry : journal.compact(offsets)) {
+            held.get(entry.id()).offset = entry.offset();
+        }
+    }
+
+    /**
+     * The message of a due entry, read back from the journal if it was spilled
+     * @return the message, or null if it could not be read and was dropped
+     */
+    private EmailMessage load(Deferred deferred) {
+        if (deferred.message != null) {
+            return deferred.message;
+        }
+        try {
+            byte[] payload;
+            lock.lock();
+            try {
+                payload = journal.read(deferred.offset);
+            } finally {
+                lock.unlock();
+            }
+            deferred.message = emailMessageReader.read(payload);
+            return deferred.message;
+        } catch (IOException e) {
+            log.error("Dropping deferred message {} that could not be read back from the journal", deferred.id, e);
+            lock.lock();
+            try {
+                failed.increment();
+                finish(List.of(deferred));
+            } finally {
+                lock.unlock();
+            }
+            return null;
+        }
+    }
+
+    private String batchId(EmailMessage emailMessage) {
+        if (!config.isBatchIds()) {
+            return null;
+        }
+        try {
+            return emailService.createBatchId(emailMessage);
+        } catch (Exception e) {
+            log.warn("Could not create a SendGrid batch ID; releasing without one: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * When a message is released: one window before the start of the window it is due in
+     * @param sendAt the requested delivery time, Unix seconds
+     * @return the release time in epoch milliseconds
+     */
+    long releaseAt(long sendAt) {
+        long windowMillis = config.getWindow().toMillis();
+        long sendAtMillis = sendAt * 1000;
+        return sendAtMillis - Math.floorMod(sendAtMillis, windowMillis) - windowMillis;
+    }
+
+    private static Counter releasedCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("email.deferred.released")
+            .description("Deferred messages released to SendGrid, by result")
+            .tag("result", result)
+            .register(meterRegistry);
+    }
+
+    /**
+     * A message held in the wheel
+     */
+    private static final class Deferred {
+
+        private final long id;
+        private final int length;
+        private final boolean inMemory;
+        private long offset;
+        private EmailMessage message;
+
+        private Deferred(long id, long offset, int length, EmailMessage message) {
+            this.id = id;
+            this.offset = offset;
+            this.length = length;
+            this.inMemory = message != null;
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,411 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.config.DomainLimitConfig;
+import ph.edu.cspb.kafkasendgrid.model.EmailMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits concurrent SendGrid requests per recipient domain and isolates domains that turn slow
+ * or start failing.
+ * <p>
+ * Each domain may have {@code maxInFlightPerDomain} requests in flight; callers block in
+ * {@link #acquire} beyond that, the same way they do for the global concurrency limit. Every
+ * completed request updates the domain's moving averages of round trip and failure rate
+ * (transport errors and 5xx; 429s are global and not held against a domain). Once a domain
+ * has {@code minSamples} requests behind it and either average crosses its threshold, the
+ * domain is moved to the slow lane: all slow domains together share {@code slowLaneSlots}
+ * requests in flight, and a request that cannot get a slot within {@code slowLaneWait} fails
+ * with a {@link SlowDomainException}, an {@link IOException}, so its record is retried later
+ * instead of holding a send slot. A domain leaves the slow lane once both averages fall below
+ * half their thresholds.
+ * <p>
+ * The busiest domains are tracked with a Space-Saving summary of {@code heavyHitterCapacity}
+ * counters and reported by {@link #topDomains}. A request to several domains at once, such as
+ * a coalesced template send, is counted for each but limited by none.
+ * <p>
+ * Meters:
+ * <ul>
+ *   <li>{@code email.domain.slow} gauge, domains in the slow lane</li>
+ *   <li>{@code email.domain.slow.lane.in.flight} gauge, requests holding slow-lane slots</li>
+ *   <li>{@code email.domain.isolations} counter, domains moved to the slow lane</li>
+ *   <li>{@code email.domain.slow.lane.rejections} counter, requests handed back for lack of a slow-lane slot</li>
+ * </ul>
+ */
+@Component
+@Slf4j
+public class DomainLimiter {
+
+    private static final double WEIGHT = 0.1;
+
+    /**
+     * A domain's slot, to hand back to {@link #release}
+     */
+    public static final class Permit {
+
+        static final Permit NONE = new Permit(null, false, 0);
+
+        private final Domain domain;
+        private final boolean slowLane;
+        private final long startNanos;
+
+        private Permit(Domain domain, boolean slowLane, long startNanos) {
+            this.domain = domain;
+            this.slowLane = slowLane;
+            this.startNanos = startNanos;
+        }
+    }
+
+    /**
+     * What is known about one recipient domain
+     * @param domain the domain
+     * @param messages messages counted for the domain, possibly overcounted by up to {@code overcount}
+     * @param overcount how much {@code messages} may exceed the true count
+     * @param inFlight requests in flight
+     * @param latencyMillis moving average round trip
+     * @param errorRate moving average share of failed requests
+     * @param slow whether the domain is in the slow lane
+     */
+    public record DomainStats(String domain, long messages, long overcount, int inFlight, double latencyMillis,
+                              double errorRate, boolean slow) {
+    }
+
+    private final DomainLimitConfig config;
+    private final LongSupplier nanoClock;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition slotFreed = lock.newCondition();
+    private final Map<String, Domain> domains = new HashMap<>();
+    private final Map<String, long[]> heavyHitters = new HashMap<>();
+    private final Counter isolations;
+    private final Counter rejections;
+
+    private int slowInFlight;
+    private int slowDomains;
+
+    @Autowired
+    public DomainLimiter(DomainLimitConfig config, MeterRegistry meterRegistry) {
+        this(config, meterRegistry, System::nanoTime);
+    }
+
+    DomainLimiter(DomainLimitConfig config, MeterRegistry meterRegistry, LongSupplier nanoClock) {
+        this.config = config;
+        this.nanoClock = nanoClock;
+        this.isolations = Counter.builder("email.domain.isolations")
+            .description("Recipient domains moved to the slow lane")
+            .register(meterRegistry);
+        this.rejections = Counter.builder("email.domain.slow.lane.rejections")
+            .description("Requests to slow domains handed back to be retried for lack of a slow-lane slot")
+            .register(meterRegistry);
+
+        Gauge.builder("email.domain.slow", this, limiter -> limiter.locked(() -> limiter.slowDomains))
+            .description("Recipient domains in the slow lane")
+            .register(meterRegistry);
+        Gauge.builder("email.domain.slow.lane.in.flight", this, limiter -> limiter.locked(() -> limiter.slowInFlight))
+            .description("Requests holding slow-lane slots")
+            .register(meterRegistry);
+    }
+
+    /**
+     * The domain part of an address
+     * @param address the recipient address
+     * @return the lowercased part after the last {@code @}, or null if there is none
+     */
+    public static String domainOf(String address) {
+        if (address == null) {
+            return null;
+        }
+        int at = address.lastIndexOf('@');
+        if (at < 0) {
+            return null;
+        }
+        String domain = address.substring(at + 1).trim();
+        return domain.isEmpty() ? null : domain.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Waits for a slot for a message's recipient domain
+     * @param emailMessage the message about to be sent
+     * @return the slot, to hand back to {@link #release}
+     * @throws SlowDomainException if the domain is slow and no slow-lane slot freed up in time
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    public Permit acquire(EmailMessage emailMessage) throws IOException {
+        if (!config.isEnabled()) {
+            return Permit.NONE;
+        }
+        return acquire(domainOf(emailMessage.getTo()), 1);
+    }
+
+    /**
+     * Waits for a slot for a request to several recipients; only a request whose recipients
+     * all share a domain is limited
+     * @param emailMessages the messages sent in one request
+     * @return the slot, to hand back to {@link #release}
+     * @throws SlowDomainException if the shared domain is slow and no slow-lane slot freed up in time
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    public Permit acquire(List<EmailMessage> emailMessages) throws IOException {
+        if (!config.isEnabled()) {
+            return Permit.NONE;
+        }
+        String shared = domainOf(emailMessages.get(0).getTo());
+        for (EmailMessage emailMessage : emailMessages) {
+            if (shared != null && !shared.equals(domainOf(emailMessage.getTo()))) {
+                shared = null;
+            }
+        }
+        if (shared != null) {
+            return acquire(shared, emailMessages.size());
+        }
+        lock.lock();
+        try {
+            for (EmailMessage emailMessage : emailMessages) {
+                String domain = domainOf(emailMessage.getTo());
+                if (domain != null) {
+                    count(domain, 1);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return Permit.NONE;
+    }
+
+    /**
+     * Frees a slot and learns from how the request went
+     * @param permit the slot returned by {@link #acquire}
+     * @param status the HTTP status code, or -1 if the transport failed
+     */
+    public void release(Permit permit, int status) {
+        Domain domain = permit.domain;
+        if (domain == null) {
+            return;
+        }
+        long roundTripNanos = nanoClock.getAsLong() - permit.startNanos;
+        lock.lock();
+        try {
+            domain.inFlight--;
+            if (permit.slowLane) {
+                slowInFlight--;
+            }
+            if (status != 429) {
+                domain.sample(roundTripNanos, status < 0 || status >= 500);
+                reassess(domain);
+            }
+            slotFreed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The busiest domains
+     * @param limit how many to report
+     * @return the domains with the most messages, busiest first
+     */
+    public List<DomainStats> topDomains(int limit) {
+        lock.lock();
+        try {
+            return heavyHitters.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<String, long[]> entry) -> entry.getValue()[0]).reversed())
+                .limit(limit)
+                .map(entry -> stats(entry.getKey()))
+                .toList();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Domains currently in the slow lane
+     * @return the slow domains, slowest first
+     */
+    public List<DomainStats> slowDomains() {
+        lock.lock();
+        try {
+            return domains.values().stream()
+                .filter(domain -> domain.slow)
+                .sorted(Comparator.comparingDouble((Domain domain) -> domain.latencyNanos).reversed())
+                .map(domain -> stats(domain.name))
+                .toList();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Permit acquire(String domainName, int messages) throws IOException {
+        if (domainName == null) {
+            return Permit.NONE;
+        }
+        lock.lock();
+        try {
+            count(domainName, messages);
+            Domain domain = domains.get(domainName);
+            if (domain == null) {
+                domain = track(domainName);
+            }
+            domain.waiting++;
+            try {
+                long deadline = 0;
+                while (true) {
+                    if (!domain.slow) {
+                        if (domain.inFlight < config.getMaxInFlightPerDomain()) {
+                            domain.inFlight++;
+                            return new Permit(domain, false, nanoClock.getAsLong());
+                        }
+                        deadline = 0;
+                        slotFreed.await();
+                        continue;
+                    }
+                    int slots = Math.max(1, config.getSlowLaneSlots());
+                    if (slowInFlight < slots && domain.inFlight < Math.min(slots, config.getMaxInFlightPerDomain())) {
+                        domain.inFlight++;
+                        slowInFlight++;
+                        return new Permit(domain, true, nanoClock.getAsLong());
+                    }
+                    long now = nanoClock.getAsLong();
+                    if (deadline == 0) {
+                        deadline = now + config.getSlowLaneWait().toNanos();
+                    }
+                    if (now >= deadline) {
+                        rejections.increment();
+                        throw new SlowDomainException(domainName);
+                    }
+                    slotFreed.awaitNanos(deadline - now);
+                }
+            } finally {
+                domain.waiting--;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a send slot for " + domainName);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Starts tracking a domain, first forgetting idle healthy ones if too many are tracked; must hold the lock
+     */
+    private Domain track(String name) {
+        if (domains.size() >= config.getMaxTrackedDomains()) {
+            domains.values().removeIf(domain -> domain.inFlight == 0 && domain.waiting == 0 && !domain.slow);
+        }
+        Domain domain = new Domain(name);
+        domains.put(name, domain);
+        return domain;
+    }
+
+    /**
+     * Counts messages in the Space-Saving summary; must hold the lock
+     */
+    private void count(String domain, int messages) {
+        long[] counter = heavyHitters.get(domain);
+        if (counter != null) {
+            counter[0] += messages;
+            return;
+        }
+        if (heavyHitters.size() < Math.max(1, config.getHeavyHitterCapacity())) {
+            heavyHitters.put(domain, new long[] {messages, 0});
+            return;
+        }
+        // Take over the smallest counter; its count becomes the newcomer's possible overcount
+        String smallest = null;
+        long minimum = Long.MAX_VALUE;
+        for (Map.Entry<String, long[]> entry : heavyHitters.entrySet()) {
+            if (entry.getValue()[0] < minimum) {
+                minimum = entry.getValue()[0];
+                smallest = entry.getKey();
+            }
+        }
+        heavyHitters.remove(smallest);
+        heavyHitters.put(domain, new long[] {minimum + messages, minimum});
+    }
+
+    /**
+     * Moves a domain into or out of the slow lane; must hold the lock
+     */
+    private void reassess(Domain domain) {
+        if (domain.samples < config.getMinSamples()) {
+            return;
+        }
+        double slowLatencyNanos = config.getSlowLatency().toNanos();
+        double errorRateThreshold = config.getErrorRateThreshold();
+        if (!domain.slow && (domain.latencyNanos > slowLatencyNanos || domain.errorRate > errorRateThreshold)) {
+            domain.slow = true;
+            slowDomains++;
+            isolations.increment();
+            log.warn("Moving {} to the slow lane (average round trip {} ms, error rate {})", domain.name,
+                TimeUnit.NANOSECONDS.toMillis((long) domain.latencyNanos), String.format("%.2f", domain.errorRate));
+        } else if (domain.slow && domain.latencyNanos < slowLatencyNanos / 2 && domain.errorRate < errorRateThreshold / 2) {
+            domain.slow = false;
+            slowDomains--;
+            log.info("{} recovered and left the slow lane", domain.name);
+        }
+    }
+
+    private DomainStats stats(String name) {
+        long[] counter = heavyHitters.getOrDefault(name, new long[] {0, 0});
+        Domain domain = domains.get(name);
+        if (domain == null) {
+            return new DomainStats(name, counter[0], counter[1], 0, 0, 0, false);
+        }
+        return new DomainStats(name, counter[0], counter[1], domain.inFlight,
+            domain.latencyNanos / TimeUnit.MILLISECONDS.toNanos(1), domain.errorRate, domain.slow);
+    }
+
+    private int locked(IntSupplier value) {
+        lock.lock();
+        try {
+            return value.getAsInt();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Slots and moving averages of one domain; guarded by the limiter's lock
+     */
+    private static final class Domain {
+
+        private final String name;
+        private int inFlight;
+        private int waiting;
+        private long samples;
+        private double latencyNanos;
+        private double errorRate;
+        private boolean slow;
+
+        private Domain(String name) {
+            this.name = name;
+        }
+
+        private void sample(long roundTripNanos, boolean failed) {
+            double failure = failed ? 1 : 0;
+            if (samples++ == 0) {
+                latencyNanos = roundTripNanos;
+                errorRate = failure;
+                return;
+            }
+            latencyNanos += WEIGHT * (roundTripNanos - latencyNanos);
+            errorRate += WEIGHT * (failure - errorRate);
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.config.DrainConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lets in-flight sends finish before their partitions are given up, so the next owner of a
+ * partition does not send them a second time.
+ * <p>
+ * Listeners report every record they start and finish through {@link #begin} and {@link #end}.
+ * On shutdown this lifecycle bean stops before the listener containers: it pauses them, so no
+ * further records are fetched, sets {@link #isDraining()} so listeners start nothing new from
+ * the poll at hand, and waits up to {@code deadline} for the sends in flight to finish. The
+ * containers then stop, committing what the listeners acknowledged, and close their consumers.
+ * <p>
+ * As the rebalance listener of every container it does the same per partition on revocation,
+ * including the revocation on close: it waits for the revoked partitions' in-flight sends,
+ * then synchronously commits the offset watermarks the concurrent listener tracks for them
+ * (see {@link #tracker}) before the partitions change hands. Lost partitions are only
+ * forgotten, since their offsets can no longer be committed. With cooperative rebalancing only
+ * the partitions that change owner are revoked, and the rest keep being consumed meanwhile.
+ * <p>
+ * Meters:
+ * <ul>
+ *   <li>{@code email.drain.records} counter, tagged {@code reason} (shutdown, rebalance) and
+ *       {@code result}: drained if the send finished within the deadline, abandoned if not</li>
+ *   <li>{@code email.rebalance.partitions} counter, tagged {@code change} (assigned, revoked, lost)</li>
+ *   <li>{@code email.rebalance.revocation} timer: how long revoked partitions were held for the
+ *       drain and the final commit, which adds to the rebalance</li>
+ * </ul>
+ * The consumers' own {@code kafka.consumer.coordinator.*} meters time the rebalances themselves.
+ * An abandoned send may still complete, in which case the partition's next owner repeats it.
+ */
+@Component
+@Slf4j
+public class DrainCoordinator implements ConsumerAwareRebalanceListener, SmartLifecycle {
+
+    /**
+     * Stops before the listener endpoint registry ({@code Integer.MAX_VALUE - 100}), so the
+     * containers are paused and drained before they are stopped
+     */
+    static final int PHASE = Integer.MAX_VALUE - 50;
+
+    private static final long CHECK_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final DrainConfig config;
+    private final KafkaListenerEndpointRegistry endpointRegistry;
+    private final Counter shutdownDrained;
+    private final Counter shutdownAbandoned;
+    private final Counter rebalanceDrained;
+    private final Counter rebalanceAbandoned;
+    private final Counter partitionsAssigned;
+    private final Counter partitionsRevoked;
+    private final Counter partitionsLost;
+    private final Timer revocation;
+    private final Map<TopicPartition, OffsetWatermarkTracker> watermarks = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition finished = lock.newCondition();
+
+    // Guarded by lock
+    private final Map<TopicPartition, Integer> inFlight = new HashMap<>();
+    private int totalInFlight;
+
+    private volatile boolean running;
+    private volatile boolean draining;
+    private volatile long drainDeadlineNanos;
+
+    public DrainCoordinator(DrainConfig config, KafkaListenerEndpointRegistry endpointRegistry,
+            MeterRegistry meterRegistry) {
+        this.config = config;
+        this.endpointRegistry = endpointRegistry;
+        this.shutdownDrained = drainCounter(meterRegistry, "shutdown", "drained");
+        this.shutdownAbandoned = drainCounter(meterRegistry, "shutdown", "abandoned");
+        this.rebalanceDrained = drainCounter(meterRegistry, "rebalance", "drained");
+        this.rebalanceAbandoned = drainCounter(meterRegistry, "rebalance", "abandoned");
+        this.partitionsAssigned = partitionCounter(meterRegistry, "assigned");
+        this.partitionsRevoked = partitionCounter(meterRegistry, "revoked");
+        this.partitionsLost = partitionCounter(meterRegistry, "lost");
+        this.revocation = Timer.builder("email.rebalance.revocation")
+            .description("Time revoked partitions were held for draining and the final commit")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Reports a record about to be processed
+     * @param partition the record's partition
+     */
+    public void begin(TopicPartition partition) {
+        lock.lock();
+        try {
+            inFlight.merge(partition, 1, Integer::sum);
+            totalInFlight++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reports a record processed and settled, whatever the outcome
+     * @param partition the record's partition
+     */
+    public void end(TopicPartition partition) {
+        lock.lock();
+        try {
+            if (inFlight.merge(partition, -1, Integer::sum) <= 0) {
+                inFlight.remove(partition);
+            }
+            totalInFlight--;
+            finished.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Whether the service is shutting down; listeners should start no new records
+     * @return true once the shutdown drain has begun
+     */
+    public boolean isDraining() {
+        return draining;
+    }
+
+    /**
+     * The watermark tracker of a partition consumed by the concurrent listener, created on first use
+     * @param partition the partition
+     * @param startOffset the first offset the tracker will see, if it has to be created
+     * @return the partition's tracker
+     */
+    public OffsetWatermarkTracker tracker(TopicPartition partition, long startOffset) {
+        return watermarks.computeIfAbsent(partition, key -> new OffsetWatermarkTracker(startOffset));
+    }
+
+    /**
+     * Waits for a poll's records to finish, giving up early once the shutdown drain has run out of time
+     * @param latch counted down as each record finishes
+     * @param timeout the longest wait outside of a shutdown
+     * @return true if every record finished
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean await(CountDownLatch latch, Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (true) {
+            long now = System.nanoTime();
+            if (draining && now - drainDeadlineNanos >= 0) {
+                return latch.getCount() == 0;
+            }
+            long remaining = deadline - now;
+            if (remaining <= 0) {
+                return latch.getCount() == 0;
+            }
+            if (latch.await(Math.min(remaining, CHECK_INTERVAL_NANOS), TimeUnit.NANOSECONDS)) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public void start() {
+        draining = false;
+        running = true;
+    }
+
+    /**
+     * Pauses every listener container and waits for the sends in flight
+     */
+    @Override
+    public void stop() {
+        running = false;
+        if (!config.isEnabled()) {
+            return;
+        }
+        drainDeadlineNanos = System.nanoTime() + config.getDeadline().toNanos();
+        draining = true;
+        if (endpointRegistry != null) {
+            endpointRegistry.getListenerContainers().forEach(MessageListenerContainer::pause);
+        }
+        int[] counts = awaitInFlight(null, drainDeadlineNanos);
+        record(counts, shutdownDrained, shutdownAbandoned);
+        if (counts[0] + counts[1] > 0) {
+            log.info("Drained {} in-flight records on shutdown, abandoned {}", counts[0], counts[1]);
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        if (partitions.isEmpty()) {
+            return;
+        }
+        partitionsRevoked.increment(partitions.size());
+        long start = System.nanoTime();
+        if (config.isEnabled()) {
+            long deadline = start + config.getDeadline().toNanos();
+            if (draining && deadline - drainDeadlineNanos > 0) {
+                // The shutdown drain has already had its time
+                deadline = drainDeadlineNanos;
+            }
+            int[] counts = awaitInFlight(partitions, deadline);
+            record(counts, rebalanceDrained, rebalanceAbandoned);
+            if (counts[0] + counts[1] > 0) {
+                log.info("Drained {} in-flight records of revoked partitions {}, abandoned {}",
+                    counts[0], partitions, counts[1]);
+            }
+            commitWatermarks(consumer, partitions);
+        }
+        partitions.forEach(watermarks::remove);
+        revocation.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        partitionsLost.increment(partitions.size());
+        partitions.forEach(watermarks::remove);
+    }
+
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        partitionsAssigned.increment(partitions.size());
+    }
+
+    /**
+     * Number of records in flight
+     * @return records begun but not yet ended
+     */
+    int inFlight() {
+        lock.lock();
+        try {
+            return totalInFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until the given partitions, or all if null, have nothing in flight
+     * @return the records that finished in time and those still in flight at the deadline
+     */
+    private int[] awaitInFlight(Collection<TopicPartition> partitions, long deadlineNanos) {
+        lock.lock();
+        try {
+            int initial = inFlight(partitions);
+            int remaining = initial;
+            while (remaining > 0) {
+                long wait = deadlineNanos - System.nanoTime();
+                if (wait <= 0) {
+                    break;
+                }
+                finished.awaitNanos(wait);
+                remaining = inFlight(partitions);
+            }
+            return new int[] {Math.max(0, initial - remaining), remaining};
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            int remaining = inFlight(partitions);
+            return new int[] {0, remaining};
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records in flight on the given partitions, or all if null; must hold the lock
+     */
+    private int inFlight(Collection<TopicPartition> partitions) {
+        if (partitions == null) {
+            return totalInFlight;
+        }
+        int count = 0;
+        for (TopicPartition partition : partitions) {
+            count += inFlight.getOrDefault(partition, 0);
+        }
+        return count;
+    }
+
+    private void commitWatermarks(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        Map<TopicPartition, OffsetAndMetadata> commits = new HashMap<>();
+        for (TopicPartition partition : partitions) {
+            OffsetWatermarkTracker tracker = watermarks.get(partition);
+            if (tracker != null) {
+                commits.put(partition, new OffsetAndMetadata(tracker.watermark()));
+            }
+        }
+        if (commits.isEmpty()) {
+            return;
+        }
+        try {
+            consumer.commitSync(commits);
+        } catch (RuntimeException e) {
+            log.warn("Failed to commit the final offsets of revoked partitions {}; their next owner may repeat some sends",
+                commits.keySet(), e);
+        }
+    }
+
+    private static void record(int[] counts, Counter drained, Counter abandoned) {
+        drained.increment(counts[0]);
+        abandoned.increment(counts[1]);
+    }
+
+    private static Counter drainCounter(MeterRegistry meterRegistry, String reason, String result) {
+        return Counter.builder("email.drain.records")
+            .description("Records in flight when their partitions were given up, by whether they finished in time")
+            .tag("reason", reason)
+            .tag("result", result)
+            .register(meterRegistry);
+    }
+
+    private static Counter partitionCounter(MeterRegistry meterRegistry, String change) {
+        return Counter.builder("email.rebalance.partitions")
+            .description("Partitions that changed hands in rebalances")
+            .tag("change", change)
+            .register(meterRegistry);
+    }
+}
@@ -0,0 +1,33 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.model.EmailMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Parses record payloads into {@link EmailMessage}s straight from their bytes.
+ * The {@link ObjectReader} is built once, with its root deserializer already resolved, and
+ * shared across threads; no intermediate String is created for the payload.
+ */
+@Component
+public class EmailMessageReader {
+
+    private final ObjectReader reader;
+
+    public EmailMessageReader(ObjectMapper objectMapper) {
+        this.reader = objectMapper.readerFor(EmailMessage.class);
+    }
+
+    /**
+     * Parses a UTF-8 JSON payload
+     * @param payload the record value
+     * @return the parsed message
+     * @throws IOException if the payload is not valid JSON for an email message
+     */
+    public EmailMessage read(byte[] payload) throws IOException {
+        return reader.readValue(payload);
+    }
+}
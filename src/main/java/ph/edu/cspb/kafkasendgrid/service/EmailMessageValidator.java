@@ -0,0 +1,217 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.model.EmailMessage;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Validates parsed email messages before they are sent.
+ * <p>
+ * The fast path applies the same rules as the Jakarta constraints on {@link EmailMessage}
+ * ({@code @NotBlank} and {@code @Email} on the recipient) plus the template-or-plain-text
+ * content rule, with the same messages, but without reflection or regular expressions: the
+ * recipient is checked by a single pass over its characters that allocates nothing.
+ * Addresses the scanner does not cover itself (internationalized domains, IP literals) are
+ * handed to the Jakarta validator, so the outcome is always the same as the reflective path.
+ * <p>
+ * Setting {@code sendgrid.validation.fast-path=false} validates every message through the
+ * Jakarta {@link Validator} instead.
+ */
+@Component
+@RequiredArgsConstructor
+public class EmailMessageValidator {
+
+    static final String CONTENT_REQUIRED =
+        "Email must have either template ID or plain text content (subject and body)";
+    static final String RECIPIENT_REQUIRED = "Recipient email address is required";
+    static final String RECIPIENT_INVALID = "Invalid recipient email address format";
+
+    private static final int MAX_LOCAL_PART_LENGTH = 64;
+    private static final int MAX_DOMAIN_LENGTH = 255;
+    private static final int MAX_LABEL_LENGTH = 63;
+
+    /**
+     * Valid outside quotes in the local part: letters, digits and {@code !#$%&'*+/=?^_`{|}~-}
+     */
+    private static final boolean[] ATOM = new boolean[128];
+
+    /**
+     * Valid inside quotes in the local part: the atom characters plus {@code .(),<>[]:; @}
+     */
+    private static final boolean[] QUOTED_ATOM = new boolean[128];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            ATOM[c] = true;
+            ATOM[Character.toUpperCase(c)] = true;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            ATOM[c] = true;
+        }
+        for (char c : "!#$%&'*+/=?^_`{|}~-".toCharArray()) {
+            ATOM[c] = true;
+        }
+        System.arraycopy(ATOM, 0, QUOTED_ATOM, 0, ATOM.length);
+        for (char c : ".(),<>[]:; @".toCharArray()) {
+            QUOTED_ATOM[c] = true;
+        }
+    }
+
+    private final Validator validator;
+
+    @Value("${sendgrid.validation.fast-path:true}")
+    private boolean fastPath = true;
+
+    /**
+     * Validates a parsed message
+     * @param emailMessage the parsed message
+     * @return null if the message can be sent, otherwise the violation messages joined by "; "
+     */
+    public String validate(EmailMessage emailMessage) {
+        if (isBlank(emailMessage.getTemplateId())
+                && (isBlank(emailMessage.getSubject()) || isBlank(emailMessage.getBody()))) {
+            return CONTENT_REQUIRED;
+        }
+        return fastPath ? validateRecipient(emailMessage.getTo()) : validateWithJakarta(emailMessage);
+    }
+
+    private String validateRecipient(String to) {
+        if (isBlank(to)) {
+            // A non-empty blank recipient also fails @Email, as it has no '@'
+            return to == null || to.isEmpty() ? RECIPIENT_REQUIRED : RECIPIENT_REQUIRED + "; " + RECIPIENT_INVALID;
+        }
+        return switch (scanAddress(to)) {
+            case VALID -> null;
+            case INVALID -> RECIPIENT_INVALID;
+            case UNSUPPORTED -> joinMessages(validator.validateValue(EmailMessage.class, "to", to));
+        };
+    }
+
+    private String validateWithJakarta(EmailMessage emailMessage) {
+        return joinMessages(validator.validate(emailMessage));
+    }
+
+    private static String joinMessages(Set<? extends ConstraintViolation<?>> violations) {
+        if (violations.isEmpty()) {
+            return null;
+        }
+        return violations.stream()
+            .map(ConstraintViolation::getMessage)
+            .collect(Collectors.joining("; "));
+    }
+
+    enum Scan { VALID, INVALID, UNSUPPORTED }
+
+    /**
+     * Checks an address against the rules of Hibernate Validator's {@code @Email}: it is split at
+     * the last '@'; the local part is at most 64 characters of dot-separated atoms or quoted
+     * strings, and the domain is at most 255 characters of dot-separated labels, each at most 63
+     * characters long and neither starting nor ending with a hyphen. Only domains of letters,
+     * digits, hyphens and dots are decided here; any other domain character, including the
+     * symbols Hibernate Validator also accepts such as '_', is left to Jakarta validation.
+     * @param address a non-blank address
+     * @return whether the address is valid, or UNSUPPORTED if the domain needs IDN or IP parsing
+     *         or holds characters beyond letters, digits and hyphens
+     */
+    static Scan scanAddress(String address) {
+        int at = address.lastIndexOf('@');
+        if (at < 0 || at > MAX_LOCAL_PART_LENGTH || !isValidLocalPart(address, at)) {
+            return Scan.INVALID;
+        }
+        return scanDomain(address, at + 1, address.length());
+    }
+
+    private static boolean isValidLocalPart(String address, int end) {
+        int i = 0;
+        while (true) {
+            if (i < end && address.charAt(i) == '"') {
+                // Quoted string: at least one quoted atom or escaped \\ or \" before the closing quote
+                int start = ++i;
+                while (i < end && address.charAt(i) != '"') {
+                    char c = address.charAt(i);
+                    if (c == '\\') {
+                        if (i + 1 >= end || (address.charAt(i + 1) != '\\' && address.charAt(i + 1) != '"')) {
+                            return false;
+                        }
+                        i += 2;
+                    } else if (c >= 0x80 || QUOTED_ATOM[c]) {
+                        i++;
+                    } else {
+                        return false;
+                    }
+                }
+                if (i == start || i >= end) {
+                    return false;
+                }
+                i++;
+            } else {
+                int start = i;
+                while (i < end && (address.charAt(i) >= 0x80 || ATOM[address.charAt(i)])) {
+                    i++;
+                }
+                if (i == start) {
+                    return false;
+                }
+            }
+            if (i == end) {
+                return true;
+            }
+            if (address.charAt(i) != '.') {
+                return false;
+            }
+            i++;
+        }
+    }
+
+    private static Scan scanDomain(String address, int start, int end) {
+        if (end - start > MAX_DOMAIN_LENGTH) {
+            return Scan.INVALID;
+        }
+        if (start < end && address.charAt(start) == '[') {
+            return Scan.UNSUPPORTED;
+        }
+        int labelStart = start;
+        for (int i = start; i <= end; i++) {
+            char c = i < end ? address.charAt(i) : '.';
+            if (c >= 0x80) {
+                return Scan.UNSUPPORTED;
+            }
+            if (c == '.') {
+                int length = i - labelStart;
+                if (length == 0 || length > MAX_LABEL_LENGTH
+                        || address.charAt(labelStart) == '-' || address.charAt(i - 1) == '-') {
+                    return Scan.INVALID;
+                }
+                labelStart = i + 1;
+            } else if (c != '-' && !isAsciiLetterOrDigit(c)) {
+                return Scan.UNSUPPORTED;
+            }
+        }
+        return Scan.VALID;
+    }
+
+    private static boolean isAsciiLetterOrDigit(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+    }
+
+    /**
+     * Same as {@code value.trim().isEmpty()} without creating the trimmed copy
+     */
+    private static boolean isBlank(String value) {
+        if (value == null) {
+            return true;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
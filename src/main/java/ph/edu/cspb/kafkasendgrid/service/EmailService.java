@@ -1,12 +1,10 @@
 package ph.edu.cspb.kafkasendgrid.service;
 
-import ph.edu.cspb.kafkasendgrid.config.TemplateConfig;
 import ph.edu.cspb.kafkasendgrid.model.EmailMessage;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.sendgrid.Method;
 import com.sendgrid.Request;
 import com.sendgrid.Response;
-import com.sendgrid.SendGrid;
 import com.sendgrid.helpers.mail.Mail;
 import com.sendgrid.helpers.mail.objects.Content;
 import com.sendgrid.helpers.mail.objects.Email;
@@ -16,8 +14,15 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import jakarta.annotation.PreDestroy;
 import java.io.IOException;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Service class for sending emails via SendGrid API.
@@ -28,9 +33,17 @@ import java.util.Map;
 @Slf4j
 public class EmailService {
 
-    private final SendGrid sendGrid;
-    private final TemplateConfig templateConfig;
+    private final SendGridTransport transport;
+    private final SendGridRateLimiter rateLimiter;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final TemplateRegistry templateRegistry;
     private final ObjectMapper objectMapper;
+    private final PipelineMetrics pipelineMetrics;
+    private final MailRequestWriter mailRequestWriter;
+    private final DomainLimiter domainLimiter;
+
+    // Throttled requests are resent from here, since acquiring a concurrency slot may block
+    private final ExecutorService retryThreads = Executors.newVirtualThreadPerTaskExecutor();
 
     @Value("${sendgrid.from-email}")
     private String defaultFromEmail;
@@ -38,6 +51,9 @@ public class EmailService {
     @Value("${sendgrid.from-name:Form 137 System}")
     private String defaultFromName;
 
+    @Value("${sendgrid.serialization.streaming:true}")
+    private boolean streamingSerialization = true;
+
     /**
      * Sends an email using SendGrid API.
      * Automatically detects whether to use template or plain text based on message content.
@@ -46,32 +62,122 @@ public class EmailService {
      * @throws IOException if sending fails
      */
     public void sendEmail(EmailMessage emailMessage) throws IOException {
+        await(sendEmailAsync(emailMessage));
+    }
+    
+    /**
+     * Sends an email without waiting for SendGrid's response.
+     * With a non-blocking transport the calling thread is released as soon as the request is
+     * handed off; the future fails with the same exceptions {@link #sendEmail(EmailMessage)} throws.
+     *
+     * @param emailMessage the email message to send
+     * @return future completed once SendGrid has accepted the email
+     */
+    public CompletableFuture<Void> sendEmailAsync(EmailMessage emailMessage) {
+        return sendEmailAsync(emailMessage, null);
+    }
+
+    /**
+     * Sends an email as part of a SendGrid batch without waiting for SendGrid's response
+     * @param emailMessage the email message to send
+     * @param batchId the batch ID from {@link #createBatchId(EmailMessage)}, or null for none
+     * @return future completed once SendGrid has accepted the email
+     */
+    CompletableFuture<Void> sendEmailAsync(EmailMessage emailMessage, String batchId) {
+        PipelineMetrics.Stages stages = pipelineMetrics.stages(emailMessage);
+
         // Determine if we should use a template
+        long templateStart = System.nanoTime();
         String templateId = determineTemplateId(emailMessage);
+        stages.template().record(System.nanoTime() - templateStart, TimeUnit.NANOSECONDS);
         
         if (templateId != null && !templateId.isEmpty()) {
-            sendTemplateEmail(emailMessage, templateId);
+            return sendTemplateEmail(emailMessage, templateId, batchId, stages);
         } else if (emailMessage.hasPlainTextContent()) {
-            sendPlainTextEmail(emailMessage);
+            return sendPlainTextEmail(emailMessage, batchId, stages);
         } else {
-            throw new IllegalArgumentException("Email must have either a template ID or plain text content (subject and body)");
+            return CompletableFuture.failedFuture(new IllegalArgumentException(
+                "Email must have either a template ID or plain text content (subject and body)"));
         }
     }
     
+    /**
+     * Sends one template email to many recipients as a single SendGrid request,
+     * with one personalization per message.
+     * All messages must resolve to the given template and sender.
+     *
+     * @param templateId the SendGrid template ID shared by every message
+     * @param fromEmail the sender address shared by every message
+     * @param emailMessages the messages to send, at most 1000
+     * @throws IOException if sending fails
+     */
+    void sendTemplateBatch(String templateId, String fromEmail, List<EmailMessage> emailMessages) throws IOException {
+        sendTemplateBatch(templateId, fromEmail, emailMessages, null);
+    }
+    
+    /**
+     * Sends one template email to many recipients as a single SendGrid request that belongs to
+     * a SendGrid batch.
+     *
+     * @param templateId the SendGrid template ID shared by every message
+     * @param fromEmail the sender address shared by every message
+     * @param emailMessages the messages to send, at most 1000
+     * @param batchId the batch ID from {@link #createBatchId(EmailMessage)}, or null for none
+     * @throws IOException if sending fails
+     */
+    void sendTemplateBatch(String templateId, String fromEmail, List<EmailMessage> emailMessages, String batchId)
+            throws IOException {
+        RequestBody body = streamingSerialization
+            ? () -> mailRequestWriter.template(fromEmail, defaultFromName, templateId, emailMessages, batchId)
+            : () -> templateMail(fromEmail, templateId, emailMessages, batchId).build();
+        
+        await(sendMail(body, pipelineMetrics.stages(emailMessages.get(0)), emailMessages, "coalesced template",
+            emailMessages.size() + " recipients", emailMessages.get(0).getNotificationType()));
+    }
+    
+    /**
+     * Creates a SendGrid batch ID, under which scheduled sends can later be paused or cancelled together
+     * @param emailMessage a message of the batch, whose stage timers time the request
+     * @return the new batch ID
+     * @throws IOException if SendGrid cannot be reached or does not return a batch ID
+     */
+    String createBatchId(EmailMessage emailMessage) throws IOException {
+        Request request = new Request();
+        request.setMethod(Method.POST);
+        request.setEndpoint("mail/batch");
+        rateLimiter.acquire();
+        return await(execute(request, 0, pipelineMetrics.stages(emailMessage)).thenApply(response -> {
+            if (response.getStatusCode() < 200 || response.getStatusCode() >= 300) {
+                throw new CompletionException(new IOException(String.format(
+                    "Failed to create SendGrid batch ID. Status: %d, Error: %s", response.getStatusCode(), response.getBody())));
+            }
+            String batchId;
+            try {
+                batchId = objectMapper.readTree(response.getBody()).path("batch_id").asText("");
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+            if (batchId.isEmpty()) {
+                throw new CompletionException(new IOException("SendGrid returned no batch_id: " + response.getBody()));
+            }
+            return batchId;
+        }));
+    }
+    
     /**
      * Determines which template ID to use based on the email message
      * @param emailMessage the email message
      * @return template ID or null if none should be used
      */
-    private String determineTemplateId(EmailMessage emailMessage) {
+    String determineTemplateId(EmailMessage emailMessage) {
         // If template ID is explicitly provided, use it
         if (emailMessage.getTemplateId() != null && !emailMessage.getTemplateId().trim().isEmpty()) {
             return emailMessage.getTemplateId();
         }
         
         // If notification type is provided and templates are enabled, look up template
-        if (templateConfig.isUseTemplatesByDefault() && emailMessage.getNotificationType() != null) {
-            String templateId = templateConfig.getTemplateId(emailMessage.getNotificationType());
+        if (emailMessage.getNotificationType() != null && templateRegistry.isUseTemplatesByDefault()) {
+            String templateId = templateRegistry.getTemplateId(emailMessage.getNotificationType());
             if (templateId != null && !templateId.trim().isEmpty()) {
                 log.debug("Using template {} for notification type {}", templateId, emailMessage.getNotificationType());
                 return templateId;
@@ -85,21 +191,54 @@ public class EmailService {
      * Sends a template-based email using SendGrid dynamic templates
      * @param emailMessage the email message
      * @param templateId the SendGrid template ID
-     * @throws IOException if sending fails
+     * @param stages the message's stage timers
+     * @return future completed once the email is accepted
      */
-    private void sendTemplateEmail(EmailMessage emailMessage, String templateId) throws IOException {
-        Email from = new Email(
-            emailMessage.getFrom() != null ? emailMessage.getFrom() : defaultFromEmail,
-            defaultFromName
-        );
-        Email to = new Email(emailMessage.getTo());
+    private CompletableFuture<Void> sendTemplateEmail(EmailMessage emailMessage, String templateId, String batchId,
+            PipelineMetrics.Stages stages) {
+        String fromEmail = resolveFromEmail(emailMessage);
+        List<EmailMessage> recipients = List.of(emailMessage);
+        RequestBody body = streamingSerialization
+            ? () -> mailRequestWriter.template(fromEmail, defaultFromName, templateId, recipients, batchId)
+            : () -> templateMail(fromEmail, templateId, recipients, batchId).build();
         
+        return sendMail(body, stages, recipients, "template", emailMessage.getTo(), emailMessage.getNotificationType());
+    }
+    
+    /**
+     * Builds the SendGrid client's object graph for a template email.
+     * Used when streaming serialization is disabled; {@link MailRequestWriter} writes the same JSON directly.
+     * @param fromEmail the sender address
+     * @param templateId the SendGrid template ID
+     * @param emailMessages one message per personalization
+     * @return the mail
+     */
+    Mail templateMail(String fromEmail, String templateId, List<EmailMessage> emailMessages) {
+        return templateMail(fromEmail, templateId, emailMessages, null);
+    }
+    
+    Mail templateMail(String fromEmail, String templateId, List<EmailMessage> emailMessages, String batchId) {
         Mail mail = new Mail();
-        mail.setFrom(from);
+        mail.setFrom(new Email(fromEmail, defaultFromName));
         mail.setTemplateId(templateId);
         
+        for (EmailMessage emailMessage : emailMessages) {
+            mail.addPersonalization(buildPersonalization(emailMessage));
+        }
+        if (batchId != null) {
+            mail.setBatchId(batchId);
+        }
+        return mail;
+    }
+    
+    /**
+     * Builds the per-recipient personalization for a template email
+     * @param emailMessage the email message
+     * @return personalization carrying the recipient, template data and subject
+     */
+    private Personalization buildPersonalization(EmailMessage emailMessage) {
         Personalization personalization = new Personalization();
-        personalization.addTo(to);
+        personalization.addTo(new Email(emailMessage.getTo()));
         
         // Add dynamic template data if provided
         if (emailMessage.getTemplateData() != null && !emailMessage.getTemplateData().isEmpty()) {
@@ -113,55 +252,189 @@ public class EmailService {
             personalization.setSubject(emailMessage.getSubject());
         }
         
-        mail.addPersonalization(personalization);
+        if (emailMessage.getSendAt() != null) {
+            personalization.setSendAt(emailMessage.getSendAt());
+        }
         
-        sendMail(mail, emailMessage, "template");
+        return personalization;
     }
     
     /**
      * Sends a plain text email (backward compatibility)
      * @param emailMessage the email message
-     * @throws IOException if sending fails
+     * @param stages the message's stage timers
+     * @return future completed once the email is accepted
+     */
+    private CompletableFuture<Void> sendPlainTextEmail(EmailMessage emailMessage, String batchId,
+            PipelineMetrics.Stages stages) {
+        String fromEmail = resolveFromEmail(emailMessage);
+        RequestBody body = streamingSerialization
+            ? () -> mailRequestWriter.plainText(fromEmail, defaultFromName, emailMessage, batchId)
+            : () -> plainTextMail(fromEmail, emailMessage, batchId).build();
+        
+        return sendMail(body, stages, List.of(emailMessage), "plain text", emailMessage.getTo(),
+            emailMessage.getNotificationType());
+    }
+    
+    /**
+     * Builds the SendGrid client's object graph for a plain text email.
+     * Used when streaming serialization is disabled; {@link MailRequestWriter} writes the same JSON directly.
+     * @param fromEmail the sender address
+     * @param emailMessage the email message
+     * @return the mail
      */
-    private void sendPlainTextEmail(EmailMessage emailMessage) throws IOException {
-        Email from = new Email(
-            emailMessage.getFrom() != null ? emailMessage.getFrom() : defaultFromEmail,
-            defaultFromName
-        );
+    Mail plainTextMail(String fromEmail, EmailMessage emailMessage) {
+        return plainTextMail(fromEmail, emailMessage, null);
+    }
+    
+    Mail plainTextMail(String fromEmail, EmailMessage emailMessage, String batchId) {
+        Email from = new Email(fromEmail, defaultFromName);
         Email to = new Email(emailMessage.getTo());
         Content content = new Content("text/plain", emailMessage.getBody());
         
         Mail mail = new Mail(from, emailMessage.getSubject(), to, content);
-        
-        sendMail(mail, emailMessage, "plain text");
+        if (emailMessage.getSendAt() != null) {
+            mail.getPersonalization().get(0).setSendAt(emailMessage.getSendAt());
+        }
+        if (batchId != null) {
+            mail.setBatchId(batchId);
+        }
+        return mail;
+    }
+    
+    /**
+     * Resolves the sender address for a message, falling back to the configured default
+     * @param emailMessage the email message
+     * @return the sender address
+     */
+    String resolveFromEmail(EmailMessage emailMessage) {
+        return emailMessage.getFrom() != null ? emailMessage.getFrom() : defaultFromEmail;
     }
     
     /**
      * Common method to send mail via SendGrid API
-     * @param mail the Mail object to send
-     * @param emailMessage the original email message for logging
+     * @param body writes the request body
+     * @param stages stage timers for the build and the SendGrid round trip
+     * @param emailMessages the messages the request carries, whose recipient domains limit it
      * @param emailType type of email for logging
-     * @throws IOException if sending fails
+     * @param recipient recipient description for logging
+     * @param notificationType notification type for logging
+     * @return future completed on a 2xx response, or exceptionally with the failure
      */
-    private void sendMail(Mail mail, EmailMessage emailMessage, String emailType) throws IOException {
+    private CompletableFuture<Void> sendMail(RequestBody body, PipelineMetrics.Stages stages,
+            List<EmailMessage> emailMessages, String emailType, String recipient, String notificationType) {
         Request request = new Request();
         request.setMethod(Method.POST);
         request.setEndpoint("mail/send");
-        request.setBody(mail.build());
+        long buildStart = System.nanoTime();
+        try {
+            request.setBody(body.write());
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        stages.build().record(System.nanoTime() - buildStart, TimeUnit.NANOSECONDS);
 
-        Response response = sendGrid.api(request);
-        
-        if (response.getStatusCode() >= 200 && response.getStatusCode() < 300) {
-            log.info("Successfully sent {} email to {} (type: {})", 
-                emailType, emailMessage.getTo(), emailMessage.getNotificationType());
-            log.debug("Response: Status={}, Headers={}", response.getStatusCode(), response.getHeaders());
-        } else {
-            log.error("Failed to send {} email to {}. Status: {}, Body: {}", 
-                emailType, emailMessage.getTo(), response.getStatusCode(), response.getBody());
-            throw new RuntimeException(String.format(
-                "Failed to send %s email via SendGrid. Status: %d, Error: %s", 
-                emailType, response.getStatusCode(), response.getBody()
-            ));
+        DomainLimiter.Permit permit;
+        try {
+            permit = domainLimiter.acquire(emailMessages);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        rateLimiter.acquire();
+        return execute(request, 0, stages).whenComplete((response, error) ->
+            domainLimiter.release(permit, response != null ? response.getStatusCode() : -1)
+        ).thenAccept(response -> {
+            if (response.getStatusCode() >= 200 && response.getStatusCode() < 300) {
+                log.info("Successfully sent {} email to {} (type: {})", 
+                    emailType, recipient, notificationType);
+                log.debug("Response: Status={}, Headers={}", response.getStatusCode(), response.getHeaders());
+            } else {
+                log.error("Failed to send {} email to {}. Status: {}, Body: {}", 
+                    emailType, recipient, response.getStatusCode(), response.getBody());
+                throw new SendGridException(emailType, response.getStatusCode(), response.getBody());
+            }
+        });
+    }
+    
+    /**
+     * Sends a request once the concurrency limiter has room for it, resending it once the rate
+     * limiter allows while SendGrid answers 429
+     * @param request the request to send
+     * @param attempt number of retries already made
+     * @param stages stage timers for the SendGrid round trip
+     * @return future completed with the final response
+     */
+    private CompletableFuture<Response> execute(Request request, int attempt, PipelineMetrics.Stages stages) {
+        long acquiredAt;
+        try {
+            acquiredAt = concurrencyLimiter.acquire();
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        long sentAt = pipelineMetrics.requestStarted();
+        CompletableFuture<Response> sent;
+        try {
+            sent = transport.send(request);
+        } catch (RuntimeException e) {
+            // A transport that throws instead of failing its future must not leak the slot
+            concurrencyLimiter.release(acquiredAt, -1);
+            pipelineMetrics.requestFinished(stages, sentAt, -1);
+            return CompletableFuture.failedFuture(e);
+        }
+        return sent.whenComplete((response, error) -> {
+            int status = response != null ? response.getStatusCode() : -1;
+            concurrencyLimiter.release(acquiredAt, status);
+            pipelineMetrics.requestFinished(stages, sentAt, status);
+        }).thenCompose(response -> {
+            rateLimiter.onResponse(response);
+            if (response.getStatusCode() != 429 || !rateLimiter.shouldRetry(attempt)) {
+                return CompletableFuture.completedFuture(response);
+            }
+            // Wait for a slot on a virtual thread, so neither the transport's threads nor the
+            // common pool are parked while the retry waits for its rate and concurrency slots
+            long waitNanos = rateLimiter.reserve();
+            log.warn("SendGrid throttled request (attempt {}); retrying in {} ms",
+                attempt + 1, TimeUnit.NANOSECONDS.toMillis(waitNanos));
+            return CompletableFuture.supplyAsync(() -> request,
+                    CompletableFuture.delayedExecutor(waitNanos, TimeUnit.NANOSECONDS, retryThreads))
+                .thenCompose(retry -> execute(retry, attempt + 1, stages));
+        });
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        retryThreads.shutdown();
+    }
+
+    /**
+     * Waits for an asynchronous send and rethrows its failure unwrapped
+     * @param result the pending send
+     * @return the send's result
+     * @throws IOException if sending failed with an I/O error
+     */
+    private static <T> T await(CompletableFuture<T> result) throws IOException {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new IOException(cause);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Produces a request body, either through the SendGrid client's object graph or streamed directly
+     */
+    @FunctionalInterface
+    private interface RequestBody {
+        String write() throws IOException;
+    }
+}
@@ -0,0 +1,112 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.config.SendGridTransportConfig;
+import com.sendgrid.Request;
+import com.sendgrid.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Non-blocking transport built on the JDK HTTP client.
+ * Requests are multiplexed over HTTP/2 connections where the server supports it, and at most
+ * {@code sendgrid.transport.max-in-flight} requests are outstanding at any time. Once the window
+ * is full, {@link #send(Request)} blocks the caller until a slot frees up, which gives the
+ * listener natural backpressure without tying a thread to every request.
+ */
+public class HttpClientSendGridTransport implements SendGridTransport, AutoCloseable {
+
+    private static final String API_VERSION = "v3";
+
+    private final HttpClient httpClient;
+    private final String apiKey;
+    private final String baseUrl;
+    private final SendGridTransportConfig transportConfig;
+    private final Semaphore window;
+
+    public HttpClientSendGridTransport(String apiKey, SendGridTransportConfig transportConfig) {
+        this.apiKey = apiKey;
+        this.transportConfig = transportConfig;
+        this.baseUrl = transportConfig.getBaseUrl().endsWith("/")
+            ? transportConfig.getBaseUrl().substring(0, transportConfig.getBaseUrl().length() - 1)
+            : transportConfig.getBaseUrl();
+        this.window = new Semaphore(transportConfig.getMaxInFlight());
+        this.httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(transportConfig.getConnectTimeout())
+            .build();
+    }
+
+    @Override
+    public CompletableFuture<Response> send(Request request) {
+        HttpRequest httpRequest = HttpRequest.newBuilder(URI.create(baseUrl + "/" + API_VERSION + "/" + request.getEndpoint()))
+            .timeout(transportConfig.getRequestTimeout())
+            .header("Authorization", "Bearer " + apiKey)
+            .header("Content-Type", "application/json")
+            .header("Accept", "application/json")
+            .method(request.getMethod().name(), request.getBody() != null
+                ? HttpRequest.BodyPublishers.ofString(request.getBody())
+                : HttpRequest.BodyPublishers.noBody())
+            .build();
+
+        try {
+            window.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(new InterruptedIOException("Interrupted waiting for a SendGrid request slot"));
+        }
+
+        try {
+            return httpClient.sendAsync(httpRequest, HttpResponse.BodyHandlers.ofString())
+                .handle((httpResponse, error) -> {
+                    window.release();
+                    if (error != null) {
+                        Throwable cause = error instanceof CompletionException && error.getCause() != null
+                            ? error.getCause()
+                            : error;
+                        throw new CompletionException(cause instanceof IOException
+                            ? cause
+                            : new IOException("SendGrid request failed", cause));
+                    }
+                    return toResponse(httpResponse);
+                });
+        } catch (RuntimeException e) {
+            window.release();
+            return CompletableFuture.failedFuture(new IOException("SendGrid request could not be started", e));
+        }
+    }
+
+    /**
+     * Number of requests currently awaiting a response
+     * @return requests in flight
+     */
+    public int inFlight() {
+        return transportConfig.getMaxInFlight() - window.availablePermits();
+    }
+
+    @Override
+    public void close() {
+        httpClient.close();
+    }
+
+    private static Response toResponse(HttpResponse<String> httpResponse) {
+        // HTTP/2 header names are lower case; look-ups must not depend on the protocol version
+        Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (Map.Entry<String, List<String>> header : httpResponse.headers().map().entrySet()) {
+            if (!header.getValue().isEmpty()) {
+                headers.put(header.getKey(), header.getValue().get(0));
+            }
+        }
+        return new Response(httpResponse.statusCode(), httpResponse.body(), headers);
+    }
+}
@@ -0,0 +1,282 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.config.IdempotencyConfig;
+import ph.edu.cspb.kafkasendgrid.model.EmailMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Remembers which emails were sent recently so a redelivered record does not email the
+ * recipient twice.
+ * <p>
+ * Emails are identified by a 64-bit hash of their {@code idempotencyKey}, or of their content
+ * when no key is given. Entries live in fixed-size {@code long[]} tables, a key and an expiry
+ * per slot, split into independently locked segments: millions of entries cost two arrays per
+ * segment and no per-entry objects. Lookups and inserts probe a short run of slots; an insert
+ * into a full run replaces the entry closest to expiry, so the cache stays bounded.
+ * <p>
+ * The cache lives in this process's memory only. It is not shared between replicas and is
+ * empty after a restart, so it catches redeliveries to the same pod, such as a nacked batch
+ * or a rewound partition, but not a record redelivered to another pod after a rebalance or a
+ * crash. It narrows duplicate sends; it does not rule them out.
+ */
+@Component
+public class IdempotencyCache {
+
+    private static final int SEGMENTS = 64;
+    private static final int MAX_PROBES = 8;
+    private static final long EMPTY = 0L;
+
+    private final IdempotencyConfig idempotencyConfig;
+    private final LongSupplier clock;
+    private final Segment[] segments;
+    private final long ttlMillis;
+    private final Counter hits;
+    private final Counter misses;
+
+    @Autowired
+    public IdempotencyCache(IdempotencyConfig idempotencyConfig, MeterRegistry meterRegistry) {
+        this(idempotencyConfig, meterRegistry, System::currentTimeMillis);
+    }
+
+    IdempotencyCache(IdempotencyConfig idempotencyConfig, MeterRegistry meterRegistry, LongSupplier clock) {
+        this.idempotencyConfig = idempotencyConfig;
+        this.clock = clock;
+        this.ttlMillis = idempotencyConfig.getTtl().toMillis();
+
+        int requested = Math.max(MAX_PROBES, idempotencyConfig.getCapacity() / SEGMENTS);
+        int perSegment = Integer.highestOneBit(requested - 1) << 1;
+        this.segments = new Segment[idempotencyConfig.isEnabled() ? SEGMENTS : 0];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+
+        this.hits = Counter.builder("email.idempotency.hits")
+            .description("Sends skipped because the same email was already sent")
+            .register(meterRegistry);
+        this.misses = Counter.builder("email.idempotency.misses")
+            .description("Sends not found in the idempotency cache")
+            .register(meterRegistry);
+        Gauge.builder("email.idempotency.size", this, IdempotencyCache::size)
+            .description("Entries currently held by the idempotency cache, including expired ones not yet replaced")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Whether duplicate suppression is enabled
+     * @return true if enabled
+     */
+    public boolean isEnabled() {
+        return idempotencyConfig.isEnabled();
+    }
+
+    /**
+     * Claims an email for sending, unless it was already sent within the TTL or another
+     * delivery of it is being sent right now. A claimed email counts as sent until it is
+     * either {@link #recordSent recorded} or {@link #release released}, so two copies of one
+     * email in the same poll are not both sent.
+     * @param emailMessage the email about to be sent
+     * @return true if the caller should send it, false if it is a duplicate and should be skipped
+     */
+    public boolean claim(EmailMessage emailMessage) {
+        if (!isEnabled()) {
+            return true;
+        }
+        long key = keyOf(emailMessage);
+        long now = clock.getAsLong();
+        boolean claimed = segmentFor(key).putIfAbsent(key, now, now + ttlMillis);
+        (claimed ? misses : hits).increment();
+        return claimed;
+    }
+
+    /**
+     * Gives up a claim whose send failed or was not made, so a later delivery may send the email
+     * @param emailMessage the claimed email
+     */
+    public void release(EmailMessage emailMessage) {
+        if (!isEnabled()) {
+            return;
+        }
+        long key = keyOf(emailMessage);
+        segmentFor(key).remove(key);
+    }
+
+    /**
+     * Checks whether an email was already sent within the TTL, without claiming it
+     * @param emailMessage the email about to be sent
+     * @return true if it was, and should be skipped
+     */
+    public boolean isDuplicate(EmailMessage emailMessage) {
+        if (!isEnabled()) {
+            return false;
+        }
+        long key = keyOf(emailMessage);
+        boolean found = segmentFor(key).contains(key, clock.getAsLong());
+        (found ? hits : misses).increment();
+        return found;
+    }
+
+    /**
+     * Remembers that an email was sent
+     * @param emailMessage the email that SendGrid accepted
+     */
+    public void recordSent(EmailMessage emailMessage) {
+        if (!isEnabled()) {
+            return;
+        }
+        long key = keyOf(emailMessage);
+        segmentFor(key).put(key, clock.getAsLong() + ttlMillis);
+    }
+
+    /**
+     * Number of occupied slots
+     * @return occupied slots across all segments
+     */
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * Computes the 64-bit identity of an email
+     * @param emailMessage the email
+     * @return a non-zero hash of the idempotency key, or of the content if there is none
+     */
+    static long keyOf(EmailMessage emailMessage) {
+        long hash;
+        String idempotencyKey = emailMessage.getIdempotencyKey();
+        if (idempotencyKey != null && !idempotencyKey.isBlank()) {
+            hash = mix(hash(0x1d_ea_9e_7c_00_00_00_01L, idempotencyKey));
+        } else {
+            hash = 0x2c_0e_a1_7a_00_00_00_02L;
+            hash = hash(hash, emailMessage.getTo());
+            hash = hash(hash, emailMessage.getFrom());
+            hash = hash(hash, emailMessage.getSubject());
+            hash = hash(hash, emailMessage.getBody());
+            hash = hash(hash, emailMessage.getTemplateId());
+            hash = hash(hash, emailMessage.getNotificationType());
+            if (emailMessage.getTemplateData() != null) {
+                // Order-independent, so the same data parsed into a differently ordered map matches
+                long data = 0;
+                for (Map.Entry<String, Object> entry : emailMessage.getTemplateData().entrySet()) {
+                    data += mix(hash(hash(0, entry.getKey()), String.valueOf(entry.getValue())));
+                }
+                hash = hash(hash, data);
+            }
+            hash = mix(hash);
+        }
+        return hash == EMPTY ? 1L : hash;
+    }
+
+    private Segment segmentFor(long key) {
+        return segments[(int) (key >>> 58) & (SEGMENTS - 1)];
+    }
+
+    /**
+     * FNV-1a over the characters of a string, with a marker separating absent from empty values
+     */
+    private static long hash(long hash, String value) {
+        if (value == null) {
+            return hash(hash, 0x9e3779b97f4a7c15L);
+        }
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash(hash, value.length());
+    }
+
+    private static long hash(long hash, long value) {
+        return (hash ^ value) * 0x100000001b3L;
+    }
+
+    /**
+     * Murmur3 finalizer, spreading every input bit over the whole hash
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * One independently locked open-addressing table.
+     */
+    private static final class Segment {
+
+        private final long[] keys;
+        private final long[] expiries;
+        private final int mask;
+        private int size;
+
+        Segment(int capacity) {
+            this.keys = new long[capacity];
+            this.expiries = new long[capacity];
+            this.mask = capacity - 1;
+        }
+
+        synchronized boolean contains(long key, long now) {
+            int slot = (int) key & mask;
+            for (int probe = 0; probe < MAX_PROBES; probe++, slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return expiries[slot] > now;
+                }
+            }
+            return false;
+        }
+
+        synchronized void put(long key, long expiry) {
+            int slot = (int) key & mask;
+            int victim = slot;
+            for (int probe = 0; probe < MAX_PROBES; probe++, slot = (slot + 1) & mask) {
+                if (keys[slot] == key || keys[slot] == EMPTY) {
+                    victim = slot;
+                    break;
+                }
+                if (expiries[slot] < expiries[victim]) {
+                    victim = slot;
+                }
+            }
+            if (keys[victim] == EMPTY) {
+                size++;
+            }
+            keys[victim] = key;
+            expiries[victim] = expiry;
+        }
+
+        synchronized boolean putIfAbsent(long key, long now, long expiry) {
+            if (contains(key, now)) {
+                return false;
+            }
+            put(key, expiry);
+            return true;
+        }
+
+        synchronized void remove(long key) {
+            int slot = (int) key & mask;
+            for (int probe = 0; probe < MAX_PROBES; probe++, slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    // Left in place as expired, the first slot an insert replaces
+                    expiries[slot] = 0L;
+                    return;
+                }
+            }
+        }
+
+        synchronized int size() {
+            return size;
+        }
+    }
+}
@@ -1,9 +1,13 @@
 package ph.edu.cspb.kafkasendgrid.service;
 
 import ph.edu.cspb.kafkasendgrid.model.EmailMessage;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.kafka.support.KafkaHeaders;
@@ -11,15 +15,54 @@ import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.stereotype.Service;
 
-import jakarta.validation.ConstraintViolation;
-import jakarta.validation.Validator;
+import jakarta.annotation.PreDestroy;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Service class for consuming messages from Kafka and processing email requests.
  * Supports both plain text emails and template-based emails.
+ * <p>
+ * Records are consumed one at a time by default. Setting {@code spring.kafka.listener.type=batch}
+ * switches to the batch listener, which receives every record from a poll at once. Adding
+ * {@code spring.kafka.listener.virtual-threads.enabled=true} processes the records of each poll
+ * concurrently on virtual threads and commits per partition up to the highest contiguous
+ * completed offset.
+ * <p>
+ * With {@code spring.kafka.listener.retry.enabled=true}, a transiently failed record is moved to
+ * a delay-tiered retry topic (see {@link RetryTopicListener}) and its offset committed, instead of
+ * holding up the rest of its partition. With {@code spring.kafka.listener.dead-letter.enabled=true},
+ * records that fail permanently are published to the dead-letter topic before being committed.
+ * With {@code sendgrid.idempotency.enabled=true}, an email already sent for an earlier delivery
+ * of the same message is skipped, so redeliveries after a rebalance or crash do not send twice.
+ * With {@code sendgrid.priority-lanes.enabled=true}, sends wait for their lane's turn in the
+ * {@link LaneScheduler}, so transactional mail keeps its share of the send stage during bulk campaigns.
+ * With {@code sendgrid.deferred.enabled=true}, messages whose {@code sendAt} is beyond the current
+ * window are handed to the {@link DeferredDeliveryScheduler} and committed once journaled.
+ * With {@code sendgrid.suppression.enabled=true}, emails to recipients on the {@link SuppressionList}
+ * are skipped before any request to SendGrid, and published to the outcome topic if one is set.
+ * <p>
+ * Every record is reported to the {@link DrainCoordinator} while it is processed, so shutdowns
+ * and rebalances wait for it; once a shutdown has begun, records not yet started are left
+ * uncommitted for the partition's next owner.
+ * <p>
+ * Parse and validation times and the outcome of every settled record are recorded through
+ * {@link PipelineMetrics}.
  */
 @Service
 @RequiredArgsConstructor
@@ -27,77 +70,638 @@ import java.util.stream.Collectors;
 public class KafkaConsumerService {
 
     private final EmailService emailService;
-    private final ObjectMapper objectMapper;
-    private final Validator validator;
+    private final EmailMessageReader emailMessageReader;
+    private final EmailMessageValidator emailMessageValidator;
+    private final TemplateEmailCoalescer templateEmailCoalescer;
+    private final RetryPublisher retryPublisher;
+    private final DeadLetterPublisher deadLetterPublisher;
+    private final IdempotencyCache idempotencyCache;
+    private final PipelineMetrics pipelineMetrics;
+    private final LaneScheduler laneScheduler;
+    private final DeferredDeliveryScheduler deferredDeliveryScheduler;
+    private final SuppressionList suppressionList;
+    private final DrainCoordinator drainCoordinator;
 
-    @KafkaListener(topics = "${spring.kafka.topic.name}")
+    @Value("${spring.kafka.listener.batch-retry-backoff:5s}")
+    private Duration batchRetryBackoff;
+
+    @Value("${spring.kafka.listener.virtual-threads.max-concurrency:256}")
+    private int virtualThreadMaxConcurrency;
+
+    @Value("${spring.kafka.listener.virtual-threads.deadline:4m}")
+    private Duration virtualThreadDeadline;
+
+    private final ExecutorService virtualThreads = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * Offsets the batch listener settled past a nack, per partition, to skip when redelivered
+     */
+    private final Map<TopicPartition, Set<Long>> settledAhead = new ConcurrentHashMap<>();
+
+    @KafkaListener(
+        id = "emailListener",
+        idIsGroup = false,
+        topics = "${spring.kafka.topic.name}",
+        autoStartup = "#{!'${spring.kafka.listener.type:single}'.equalsIgnoreCase('batch')}")
     public void consumeEmailMessage(
-            @Payload String message,
+            @Payload byte[] message,
             @Header(KafkaHeaders.RECEIVED_TOPIC) String topic,
             @Header(KafkaHeaders.RECEIVED_PARTITION) int partition,
             @Header(KafkaHeaders.OFFSET) long offset,
             Acknowledgment acknowledgment) {
         
         log.info("Received message from topic: {}, partition: {}, offset: {}", topic, partition, offset);
-        log.debug("Message content: {}", message);
+        log.debug("Message content: {}", new Utf8(message));
+
+        if (drainCoordinator.isDraining()) {
+            log.info("Shutting down; leaving partition: {}, offset: {} for redelivery", partition, offset);
+            return;
+        }
+        TopicPartition topicPartition = new TopicPartition(topic, partition);
+        drainCoordinator.begin(topicPartition);
+        try {
+            ConsumerRecord<String, byte[]> record = new ConsumerRecord<>(topic, partition, offset, null, message);
+            if (settleRecord(record, process(topic, message))) {
+                acknowledgment.acknowledge();
+            }
+            // Otherwise don't acknowledge - let Kafka retry for transient errors
+        } finally {
+            drainCoordinator.end(topicPartition);
+        }
+    }
+
+    /**
+     * Consumes every record returned by a single poll.
+     * The whole batch is decoded and validated before any email is sent, so malformed records
+     * never hold up the rest of the poll. When coalescing is enabled, template emails are handed
+     * to the {@link TemplateEmailCoalescer} and go out as multi-personalization requests; the
+     * rest are sent asynchronously. Every record is then settled (see {@link #settle}); if any
+     * cannot be, the batch is nacked at the first such index, which commits every record before
+     * it and redelivers the rest. Records after that index that were settled anyway, sent ones
+     * included, are remembered and skipped when redelivered, so they are not sent twice.
+     * <p>
+     * Unlike the single-record listener, records that cannot be parsed are treated as invalid
+     * and committed, since redelivering the same bytes can never succeed.
+     *
+     * @param records the records from one poll, in offset order per partition
+     * @param acknowledgment the batch acknowledgment
+     */
+    @KafkaListener(
+        id = "emailBatchListener",
+        idIsGroup = false,
+        topics = "${spring.kafka.topic.name}",
+        containerFactory = "batchKafkaListenerContainerFactory",
+        autoStartup = "#{'${spring.kafka.listener.type:single}'.equalsIgnoreCase('batch')"
+            + " and !${spring.kafka.listener.virtual-threads.enabled:false}}")
+    public void consumeEmailBatch(List<ConsumerRecord<String, byte[]>> records, Acknowledgment acknowledgment) {
+        log.info("Received batch of {} records", records.size());
+        if (drainCoordinator.isDraining()) {
+            log.info("Shutting down; leaving {} records for redelivery", records.size());
+            return;
+        }
+        records.forEach(record -> drainCoordinator.begin(partitionOf(record)));
+        try {
+            processBatch(records, acknowledgment);
+        } finally {
+            records.forEach(record -> drainCoordinator.end(partitionOf(record)));
+        }
+    }
+
+    /**
+     * Processes and settles a poll for {@link #consumeEmailBatch}, which reports its records in flight
+     */
+    private void processBatch(List<ConsumerRecord<String, byte[]>> records, Acknowledgment acknowledgment) {
+        // Decode and validate the whole poll up front
+        List<EmailMessage> messages = new ArrayList<>(records.size());
+        List<ProcessingResult> results = new ArrayList<>(records.size());
+        boolean[] skipped = new boolean[records.size()];
+        for (int i = 0; i < records.size(); i++) {
+            ConsumerRecord<String, byte[]> record = records.get(i);
+            if (wasSettledAhead(record)) {
+                log.info("Skipping partition: {}, offset: {}, already settled before its redelivery",
+                    record.partition(), record.offset());
+                skipped[i] = true;
+                messages.add(null);
+                results.add(null);
+                continue;
+            }
+            ProcessingResult rejection = decode(record, messages);
+            results.add(rejection);
+        }
+
+        sendBatch(records, messages, results);
+        int firstRetry = -1;
+        for (int i = 0; i < results.size(); i++) {
+            if (skipped[i]) {
+                continue;
+            }
+            if (settle(records.get(i), results.get(i))) {
+                if (firstRetry >= 0) {
+                    settledAhead.computeIfAbsent(partitionOf(records.get(i)), key -> ConcurrentHashMap.newKeySet())
+                        .add(records.get(i).offset());
+                }
+            } else if (firstRetry < 0) {
+                firstRetry = i;
+            }
+        }
+
+        if (firstRetry >= 0) {
+            ConsumerRecord<String, byte[]> failed = records.get(firstRetry);
+            log.warn("Transient failure at partition: {}, offset: {}; committing {} of {} records and redelivering the rest",
+                failed.partition(), failed.offset(), firstRetry, records.size());
+            acknowledgment.nack(firstRetry, batchRetryBackoff);
+        } else {
+            acknowledgment.acknowledge();
+        }
+    }
+
+    /**
+     * Whether a redelivered record was already settled by the poll that nacked it. Offsets the
+     * partition has since moved past are forgotten, since they will not be delivered again.
+     */
+    private boolean wasSettledAhead(ConsumerRecord<String, byte[]> record) {
+        if (settledAhead.isEmpty()) {
+            return false;
+        }
+        TopicPartition partition = partitionOf(record);
+        Set<Long> offsets = settledAhead.get(partition);
+        if (offsets == null) {
+            return false;
+        }
+        boolean settled = offsets.remove(record.offset());
+        offsets.removeIf(offset -> offset < record.offset());
+        if (offsets.isEmpty()) {
+            settledAhead.remove(partition);
+        }
+        return settled;
+    }
+
+    /**
+     * Consumes every record of a poll concurrently, one virtual thread per record.
+     * At most {@code spring.kafka.listener.virtual-threads.max-concurrency} records run at once.
+     * Once every record has finished, or the deadline has passed, each partition is committed up
+     * to its highest contiguous completed offset and rewound to its first unfinished record, so
+     * a failure never lets a later success commit past it. When the rewound records come back,
+     * those that already completed, or that are still running past the deadline, are not
+     * processed again; only the records that failed are.
+     *
+     * @param records the records from one poll, in offset order per partition
+     * @param consumer the consumer, used to commit and seek on the listener thread
+     */
+    @KafkaListener(
+        id = "emailConcurrentListener",
+        idIsGroup = false,
+        topics = "${spring.kafka.topic.name}",
+        containerFactory = "batchKafkaListenerContainerFactory",
+        autoStartup = "#{'${spring.kafka.listener.type:single}'.equalsIgnoreCase('batch')"
+            + " and ${spring.kafka.listener.virtual-threads.enabled:false}}")
+    public void consumeEmailBatchConcurrently(List<ConsumerRecord<String, byte[]>> records, Consumer<?, ?> consumer) {
+        log.info("Received batch of {} records for concurrent processing", records.size());
+
+        Semaphore slots = new Semaphore(virtualThreadMaxConcurrency);
+        CountDownLatch finished = new CountDownLatch(records.size());
+        Map<TopicPartition, Long> lastOffsets = new LinkedHashMap<>();
+
+        int next = 0;
+        for (; next < records.size(); next++) {
+            if (drainCoordinator.isDraining()) {
+                log.info("Shutting down; leaving {} records of this poll for redelivery", records.size() - next);
+                break;
+            }
+            ConsumerRecord<String, byte[]> record = records.get(next);
+            TopicPartition partition = partitionOf(record);
+            OffsetWatermarkTracker tracker = drainCoordinator.tracker(partition, record.offset());
+            lastOffsets.put(partition, record.offset());
+            if (!tracker.start(record.offset())) {
+                log.debug("Skipping redelivered record {}-{}@{}: already completed or still running",
+                    record.topic(), record.partition(), record.offset());
+                finished.countDown();
+                continue;
+            }
+
+            slots.acquireUninterruptibly();
+            drainCoordinator.begin(partition);
+            virtualThreads.execute(() -> {
+                boolean settled = false;
+                try {
+                    settled = settleRecord(record, process(record.topic(), record.value()));
+                } finally {
+                    if (settled) {
+                        tracker.complete(record.offset());
+                    } else {
+                        tracker.release(record.offset());
+                    }
+                    slots.release();
+                    drainCoordinator.end(partition);
+                    finished.countDown();
+                }
+            });
+        }
+        for (int i = next; i < records.size(); i++) {
+            finished.countDown();
+        }
+
+        try {
+            if (!drainCoordinator.await(finished, virtualThreadDeadline)) {
+                log.warn("{} of {} records still running after {}; committing completed offsets only",
+                    finished.getCount(), records.size(), virtualThreadDeadline);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        commitWatermarks(lastOffsets, consumer);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        virtualThreads.shutdown();
+    }
+
+    /**
+     * Decides whether a processed record's offset may be committed, handing records off on the
+     * way: transient failures move to the next retry tier, permanent failures and records that
+     * have exhausted every tier go to the dead-letter topic, and suppressed records go to the
+     * suppression outcome topic.
+     * @param record the processed record
+     * @param result the processing result
+     * @return true if the offset may be committed, false if the record must be redelivered
+     */
+    boolean settle(ConsumerRecord<String, byte[]> record, ProcessingResult result) {
+        pipelineMetrics.recordOutcome(result.outcome());
+        if (result.outcome() == ProcessingOutcome.RETRY) {
+            if (retryPublisher.scheduleRetry(record)) {
+                return true;
+            }
+            return retryPublisher.isExhausted(record.headers())
+                && deadLetterPublisher.publish(record, result.retriesExhausted());
+        }
+        if (result.isDeadLetter()) {
+            return deadLetterPublisher.publish(record, result);
+        }
+        if (result.outcome() == ProcessingOutcome.SUPPRESSED) {
+            return suppressionList.publishOutcome(record);
+        }
+        return true;
+    }
+
+    /**
+     * Settles a record of the single-record or concurrent listener. Unparsable records are
+     * dead-lettered like any other invalid record; without a dead-letter topic they are left
+     * unacknowledged, as these listeners always have, rather than dropped.
+     * @param record the processed record
+     * @param result the processing result
+     * @return true if the offset may be committed
+     */
+    private boolean settleRecord(ConsumerRecord<String, byte[]> record, ProcessingResult result) {
+        if (result.stage() == ProcessingResult.Stage.PARSE && result.outcome() == ProcessingOutcome.INVALID
+                && !deadLetterPublisher.isEnabled()) {
+            pipelineMetrics.recordOutcome(result.outcome());
+            log.warn("Not acknowledging unparsable record at partition: {}, offset: {}; enable the dead-letter topic to set it aside",
+                record.partition(), record.offset());
+            return false;
+        }
+        return settle(record, result);
+    }
+
+    /**
+     * Commits each partition up to its watermark and rewinds partitions with unfinished records
+     * @param lastOffsets the highest offset delivered in this poll, per partition
+     * @param consumer the consumer
+     */
+    private void commitWatermarks(Map<TopicPartition, Long> lastOffsets, Consumer<?, ?> consumer) {
+        Map<TopicPartition, OffsetAndMetadata> commits = new HashMap<>();
+        lastOffsets.forEach((partition, lastOffset) -> {
+            long watermark = drainCoordinator.tracker(partition, lastOffset).watermark();
+            commits.put(partition, new OffsetAndMetadata(watermark));
+            if (watermark <= lastOffset) {
+                log.warn("Redelivering partition {} from offset {} ({} records not committed)",
+                    partition, watermark, lastOffset - watermark + 1);
+                consumer.seek(partition, watermark);
+            }
+        });
+        consumer.commitSync(commits);
+    }
+
+    /**
+     * Starts a send for every decoded message of a batch and waits for all of them.
+     * Template emails go through the coalescer when it is enabled; everything else is sent
+     * asynchronously so that, with a non-blocking transport, the whole batch is in flight at once,
+     * less whatever the priority lanes hold back. Coalesced requests bypass the lanes: they carry
+     * many messages at once and are already limited by the coalescer's own batching.
+     * @param records the batch's records, for the topics their lanes are chosen by
+     * @param messages decoded messages, null for skipped records
+     * @param results per-record results, filled in for every message that was sent
+     */
+    private void sendBatch(List<ConsumerRecord<String, byte[]>> records, List<EmailMessage> messages,
+            List<ProcessingResult> results) {
+        boolean coalesce = templateEmailCoalescer.isEnabled();
+        List<CompletableFuture<Void>> pending = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            EmailMessage emailMessage = messages.get(i);
+            if (emailMessage == null) {
+                pending.add(null);
+                continue;
+            }
+            if (isDuplicate(emailMessage)) {
+                pending.add(null);
+                results.set(i, ProcessingResult.DUPLICATE);
+                continue;
+            }
+            if (isSuppressed(emailMessage)) {
+                idempotencyCache.release(emailMessage);
+                pending.add(null);
+                results.set(i, ProcessingResult.SUPPRESSED);
+                continue;
+            }
+            ProcessingResult deferral = defer(emailMessage, records.get(i).value());
+            if (deferral != null) {
+                pending.add(null);
+                results.set(i, released(emailMessage, deferral));
+                continue;
+            }
+            String templateId = coalesce ? emailService.determineTemplateId(emailMessage) : null;
+            pending.add(templateId != null
+                ? templateEmailCoalescer.submit(emailMessage, templateId)
+                : sendInLane(records.get(i).topic(), emailMessage));
+        }
+        if (coalesce) {
+            templateEmailCoalescer.flush();
+        }
+
+        for (int i = 0; i < messages.size(); i++) {
+            if (pending.get(i) != null) {
+                results.set(i, awaitOutcome(messages.get(i), pending.get(i)));
+            }
+        }
+    }
+
+    /**
+     * Sends asynchronously once the message's lane has a slot; the send then runs on a virtual
+     * thread so it never runs on whichever thread freed the slot
+     */
+    private CompletableFuture<Void> sendInLane(String topic, EmailMessage emailMessage) {
+        if (!laneScheduler.isEnabled()) {
+            return sendAsync(emailMessage);
+        }
+        LaneScheduler.Lane lane = laneScheduler.laneFor(topic, emailMessage);
+        return laneScheduler.acquireAsync(lane)
+            .thenComposeAsync(granted -> sendAsync(emailMessage), virtualThreads)
+            .whenComplete((ignored, e) -> laneScheduler.release(lane));
+    }
 
+    private CompletableFuture<Void> sendAsync(EmailMessage emailMessage) {
+        try {
+            return emailService.sendEmailAsync(emailMessage);
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private ProcessingResult awaitOutcome(EmailMessage emailMessage, CompletableFuture<Void> result) {
+        try {
+            result.join();
+        } catch (CompletionException e) {
+            return released(emailMessage, failureOutcome(emailMessage, e.getCause()));
+        }
+        idempotencyCache.recordSent(emailMessage);
+        logSent(emailMessage);
+        return ProcessingResult.SENT;
+    }
+
+    /**
+     * Runs a single raw message through parsing, validation and sending
+     * @param message the raw JSON payload
+     * @return the processing result
+     */
+    ProcessingResult process(byte[] message) {
+        return process(null, message);
+    }
+
+    /**
+     * Runs a single raw message through parsing, validation and sending
+     * @param topic the topic the message was read from, which may decide its lane; null if none
+     * @param message the raw JSON payload
+     * @return the processing result
+     */
+    ProcessingResult process(String topic, byte[] message) {
         try {
             // Parse JSON message
-            EmailMessage emailMessage = objectMapper.readValue(message, EmailMessage.class);
-            
-            // Log message type for debugging
+            long parseStart = System.nanoTime();
+            EmailMessage emailMessage = emailMessageReader.read(message);
+            PipelineMetrics.Stages stages = pipelineMetrics.stages(emailMessage);
+            stages.parse().record(System.nanoTime() - parseStart, TimeUnit.NANOSECONDS);
+
+            ProcessingResult rejection = validate(emailMessage, stages);
+            if (rejection != null) {
+                // Acknowledge even invalid messages to avoid reprocessing
+                return rejection;
+            }
+
+            return send(topic, emailMessage, message);
+        } catch (IOException e) {
+            log.error("Failed to parse email message: {}", new Utf8(message), e);
+            // Redelivering the same bytes can never succeed
+            return new ProcessingResult(ProcessingOutcome.INVALID, ProcessingResult.Stage.PARSE, e);
+        } catch (Exception e) {
+            log.error("Unexpected error processing message: {}", new Utf8(message), e);
+            // Acknowledge to prevent infinite retries for permanently broken messages
+            return new ProcessingResult(ProcessingOutcome.FAILED, ProcessingResult.Stage.PARSE, e);
+        }
+    }
+
+    /**
+     * Parses and validates a record from a batch
+     * @param record the consumer record
+     * @param messages receives the parsed message, or null if the record is unusable
+     * @return null if the message can be sent, otherwise why the record was rejected
+     */
+    private ProcessingResult decode(ConsumerRecord<String, byte[]> record, List<EmailMessage> messages) {
+        try {
+            long parseStart = System.nanoTime();
+            EmailMessage emailMessage = emailMessageReader.read(record.value());
+            PipelineMetrics.Stages stages = pipelineMetrics.stages(emailMessage);
+            stages.parse().record(System.nanoTime() - parseStart, TimeUnit.NANOSECONDS);
+            ProcessingResult rejection = validate(emailMessage, stages);
+            messages.add(rejection == null ? emailMessage : null);
+            return rejection;
+        } catch (Exception e) {
+            log.error("Skipping undecodable record at partition: {}, offset: {}: {}",
+                record.partition(), record.offset(), e.getMessage());
+            messages.add(null);
+            return new ProcessingResult(ProcessingOutcome.INVALID, ProcessingResult.Stage.PARSE, e);
+        }
+    }
+
+    /**
+     * Validates a parsed message, logging the reason if it is rejected
+     * @param emailMessage the parsed message
+     * @param stages the message's stage timers
+     * @return null if the message can be sent, otherwise an invalid result describing why not
+     */
+    private ProcessingResult validate(EmailMessage emailMessage, PipelineMetrics.Stages stages) {
+        // Log message type for debugging
+        if (log.isDebugEnabled()) {
             if (emailMessage.isTemplateEmail()) {
                 log.debug("Processing template email with template ID: {} and type: {}", 
                     emailMessage.getTemplateId(), emailMessage.getNotificationType());
             } else {
                 log.debug("Processing plain text email");
             }
-            
-            // Validate the email message
-            Set<ConstraintViolation<EmailMessage>> violations = validator.validate(emailMessage);
-            
-            // Additional validation for content requirements
-            if (!emailMessage.isTemplateEmail() && !emailMessage.hasPlainTextContent()) {
-                log.error("Email must have either template ID or plain text content (subject and body)");
-                acknowledgment.acknowledge();
-                return;
-            }
-            
-            if (!violations.isEmpty()) {
-                String errors = violations.stream()
-                    .map(ConstraintViolation::getMessage)
-                    .collect(Collectors.joining("; "));
-                log.error("Invalid email message: {}", errors);
-                // Acknowledge even invalid messages to avoid reprocessing
-                acknowledgment.acknowledge();
-                return;
+        }
+
+        long validateStart = System.nanoTime();
+        String errors = emailMessageValidator.validate(emailMessage);
+        stages.validate().record(System.nanoTime() - validateStart, TimeUnit.NANOSECONDS);
+        if (errors != null) {
+            log.error("Invalid email message: {}", errors);
+            return invalid(errors);
+        }
+
+        return null;
+    }
+
+    private static ProcessingResult invalid(String reason) {
+        return new ProcessingResult(ProcessingOutcome.INVALID, ProcessingResult.Stage.VALIDATION,
+            new IllegalArgumentException(reason));
+    }
+
+    /**
+     * Sends a validated message in its lane, unless it is a duplicate, suppressed or deferred,
+     * and classifies the result
+     * @param topic the topic the message was read from, or null
+     * @param emailMessage the validated message
+     * @param payload the raw record value, journaled if the message is deferred
+     * @return the processing result
+     */
+    private ProcessingResult send(String topic, EmailMessage emailMessage, byte[] payload) {
+        if (isDuplicate(emailMessage)) {
+            return ProcessingResult.DUPLICATE;
+        }
+        if (isSuppressed(emailMessage)) {
+            idempotencyCache.release(emailMessage);
+            return ProcessingResult.SUPPRESSED;
+        }
+        ProcessingResult deferral = defer(emailMessage, payload);
+        if (deferral != null) {
+            return released(emailMessage, deferral);
+        }
+        LaneScheduler.Lane lane = laneScheduler.laneFor(topic, emailMessage);
+        try {
+            laneScheduler.acquire(lane);
+            try {
+                emailService.sendEmail(emailMessage);
+            } finally {
+                laneScheduler.release(lane);
             }
+        } catch (Exception e) {
+            return released(emailMessage, failureOutcome(emailMessage, e));
+        }
+        idempotencyCache.recordSent(emailMessage);
+        logSent(emailMessage);
+        return ProcessingResult.SENT;
+    }
 
-            // Send email
-            emailService.sendEmail(emailMessage);
-            
-            // Acknowledge successful processing
-            acknowledgment.acknowledge();
-            
-            if (emailMessage.isTemplateEmail()) {
-                log.info("Successfully processed template email for recipient: {} (template: {}, type: {})", 
-                    emailMessage.getTo(), emailMessage.getTemplateId(), emailMessage.getNotificationType());
-            } else {
-                log.info("Successfully processed plain text email for recipient: {} with subject: {}", 
-                    emailMessage.getTo(), emailMessage.getSubject());
+    /**
+     * Hands a message due after the current window to the deferred delivery scheduler
+     * @param emailMessage the validated message
+     * @param payload the raw record value
+     * @return null if the message should be sent now, otherwise the deferred or failed result
+     */
+    private ProcessingResult defer(EmailMessage emailMessage, byte[] payload) {
+        try {
+            if (!deferredDeliveryScheduler.defer(emailMessage, payload)) {
+                return null;
             }
-            
-        } catch (IllegalArgumentException e) {
+        } catch (IOException e) {
+            log.error("Failed to journal deferred email to {}", emailMessage.getTo(), e);
+            // Don't acknowledge - the record is retried until the journal takes it
+            return new ProcessingResult(ProcessingOutcome.RETRY, ProcessingResult.Stage.SEND, e);
+        }
+        // Remembered now so a redelivery is not deferred a second time
+        idempotencyCache.recordSent(emailMessage);
+        log.info("Deferred email to {} until {} (type: {})",
+            emailMessage.getTo(), emailMessage.getSendAt(), emailMessage.getNotificationType());
+        return ProcessingResult.DEFERRED;
+    }
+
+    /**
+     * Claims a message in the idempotency cache; a claimed message must end up recorded as
+     * sent, or be released if it was not sent
+     * @return true if the message is a duplicate and must be skipped
+     */
+    private boolean isDuplicate(EmailMessage emailMessage) {
+        if (!idempotencyCache.claim(emailMessage)) {
+            log.info("Skipping email to {} already sent, or being sent, for an earlier delivery (type: {})",
+                emailMessage.getTo(), emailMessage.getNotificationType());
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Releases a message's idempotency claim unless it was deferred
+     */
+    private ProcessingResult released(EmailMessage emailMessage, ProcessingResult result) {
+        if (result.outcome() != ProcessingOutcome.DEFERRED) {
+            idempotencyCache.release(emailMessage);
+        }
+        return result;
+    }
+
+    private boolean isSuppressed(EmailMessage emailMessage) {
+        if (suppressionList.isSuppressed(emailMessage.getTo())) {
+            log.info("Skipping email to suppressed recipient {} (type: {})",
+                emailMessage.getTo(), emailMessage.getNotificationType());
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Classifies a send failure
+     * @param emailMessage the message that failed
+     * @param e the failure
+     * @return the processing result
+     */
+    private ProcessingResult failureOutcome(EmailMessage emailMessage, Throwable e) {
+        if (e instanceof IllegalArgumentException) {
             log.error("Invalid email message format: {}", e.getMessage());
             // Acknowledge to prevent infinite retries for invalid messages
-            acknowledgment.acknowledge();
-        } catch (IOException e) {
-            log.error("Failed to parse or send email message: {}", message, e);
+            return new ProcessingResult(ProcessingOutcome.INVALID, ProcessingResult.Stage.SEND, e);
+        }
+        if (e instanceof IOException
+                || (e instanceof SendGridException sendGridException && sendGridException.isTransient())) {
+            log.error("Failed to send email message to {}", emailMessage.getTo(), e);
             // Don't acknowledge - let Kafka retry for transient errors
-        } catch (Exception e) {
-            log.error("Unexpected error processing message: {}", message, e);
-            // Acknowledge to prevent infinite retries for permanently broken messages
-            acknowledgment.acknowledge();
+            return new ProcessingResult(ProcessingOutcome.RETRY, ProcessingResult.Stage.SEND, e);
+        }
+        log.error("Unexpected error sending email to {}", emailMessage.getTo(), e);
+        // Acknowledge to prevent infinite retries for permanently broken messages
+        return new ProcessingResult(ProcessingOutcome.FAILED, ProcessingResult.Stage.SEND, e);
+    }
+
+    private void logSent(EmailMessage emailMessage) {
+        if (emailMessage.isTemplateEmail()) {
+            log.info("Successfully processed template email for recipient: {} (template: {}, type: {})", 
+                emailMessage.getTo(), emailMessage.getTemplateId(), emailMessage.getNotificationType());
+        } else {
+            log.info("Successfully processed plain text email for recipient: {} with subject: {}", 
+                emailMessage.getTo(), emailMessage.getSubject());
+        }
+    }
+
+    private static TopicPartition partitionOf(ConsumerRecord<?, ?> record) {
+        return new TopicPartition(record.topic(), record.partition());
+    }
+
+    /**
+     * Decodes a payload for logging only when the log line is actually written
+     */
+    private record Utf8(byte[] bytes) {
+        @Override
+        public String toString() {
+            return bytes != null ? new String(bytes, StandardCharsets.UTF_8) : "null";
         }
     }
-}
\ No newline at end of file
+}
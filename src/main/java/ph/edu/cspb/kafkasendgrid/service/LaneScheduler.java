@@ -0,0 +1,317 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.config.LaneConfig;
+import ph.edu.cspb.kafkasendgrid.model.EmailMessage;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Shares the send stage between priority lanes by weighted fair queueing.
+ * <p>
+ * At most {@code slots} sends are in flight across every lane. While lanes compete for the
+ * slots, each gets them in proportion to its weight: every request is stamped with a virtual
+ * start time, the later of the scheduler's virtual time and the end of the lane's previous
+ * request, whose virtual length is {@code 1 / weight}, and the waiting request with the
+ * earliest start goes next. A lane that has been idle starts at the current virtual time,
+ * so it cannot save up a burst. A lane never holds more than {@code maxShare} of the slots,
+ * which keeps some free for the others even when it is the only one busy.
+ * <p>
+ * With lanes disabled, acquiring and releasing do nothing.
+ */
+@Component
+@Slf4j
+public class LaneScheduler {
+
+    private final LaneConfig config;
+    private final LongSupplier nanoClock;
+    private final int slots;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, Lane> lanes = new LinkedHashMap<>();
+    private final Map<String, Lane> lanesByTopic = new HashMap<>();
+    private final Map<String, Lane> lanesByType = new HashMap<>();
+    private final Lane defaultLane;
+
+    private int inFlight;
+    private double virtualTime;
+
+    @Autowired
+    public LaneScheduler(LaneConfig config, MeterRegistry meterRegistry) {
+        this(config, meterRegistry, System::nanoTime);
+    }
+
+    LaneScheduler(LaneConfig config, MeterRegistry meterRegistry, LongSupplier nanoClock) {
+        this.config = config;
+        this.nanoClock = nanoClock;
+        this.slots = Math.max(1, config.getSlots());
+
+        config.getLanes().forEach((name, settings) -> {
+            Lane lane = new Lane(name, settings.getWeight(), settings.getMaxShare(), meterRegistry);
+            lanes.put(name, lane);
+            if (settings.getTopic() != null && !settings.getTopic().isBlank()) {
+                lanesByTopic.put(settings.getTopic(), lane);
+            }
+            for (String type : settings.getNotificationTypes()) {
+                lanesByType.putIfAbsent(type.toLowerCase(Locale.ROOT), lane);
+            }
+        });
+        Lane fallback = lanes.get(config.getDefaultLane());
+        if (fallback == null) {
+            fallback = new Lane(config.getDefaultLane(), 1, 1.0, meterRegistry);
+            lanes.put(fallback.name, fallback);
+        }
+        this.defaultLane = fallback;
+        if (config.isEnabled()) {
+            log.info("Priority lanes {} sharing {} send slots (default lane: {})", lanes.keySet(), slots, fallback);
+        }
+    }
+
+    public boolean isEnabled() {
+        return config.isEnabled();
+    }
+
+    /**
+     * Finds the lane a message belongs to
+     * @param topic the topic the message was read from, or null if unknown
+     * @param emailMessage the message
+     * @return the topic's lane, else the lane listing the message's notification type, else the default lane
+     */
+    public Lane laneFor(String topic, EmailMessage emailMessage) {
+        if (topic != null) {
+            Lane lane = lanesByTopic.get(topic);
+            if (lane != null) {
+                return lane;
+            }
+        }
+        String type = emailMessage.getNotificationType();
+        if (type != null) {
+            Lane lane = lanesByType.get(type.toLowerCase(Locale.ROOT));
+            if (lane != null) {
+                return lane;
+            }
+        }
+        return defaultLane;
+    }
+
+    /**
+     * Waits for the lane's turn and takes a slot
+     * @param lane the lane to send in
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    public void acquire(Lane lane) throws InterruptedIOException {
+        if (!config.isEnabled()) {
+            return;
+        }
+        Waiter waiter = enqueue(lane);
+        try {
+            waiter.grant.get();
+        } catch (InterruptedException e) {
+            abandon(lane, waiter);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a send slot in lane " + lane.name);
+        } catch (ExecutionException e) {
+            // Grants are only ever completed normally
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Queues for a slot without blocking
+     * @param lane the lane to send in
+     * @return completes once the slot is taken, on the thread that freed it
+     */
+    public CompletableFuture<Void> acquireAsync(Lane lane) {
+        if (!config.isEnabled()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return enqueue(lane).grant;
+    }
+
+    /**
+     * Frees a slot taken by {@link #acquire} or {@link #acquireAsync} and hands it to the next request due
+     * @param lane the lane the slot was taken in
+     */
+    public void release(Lane lane) {
+        if (!config.isEnabled()) {
+            return;
+        }
+        List<Waiter> granted = new ArrayList<>();
+        lock.lock();
+        try {
+            lane.inFlight--;
+            inFlight--;
+            dispatch(granted);
+        } finally {
+            lock.unlock();
+        }
+        complete(granted);
+    }
+
+    /**
+     * Requests of a lane waiting for a slot
+     * @param lane the lane
+     * @return the queue depth
+     */
+    public int queueDepth(Lane lane) {
+        lock.lock();
+        try {
+            return lane.waiting.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Slots a lane currently holds
+     * @param lane the lane
+     * @return the lane's sends in flight
+     */
+    public int inFlight(Lane lane) {
+        lock.lock();
+        try {
+            return lane.inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Waiter enqueue(Lane lane) {
+        List<Waiter> granted = new ArrayList<>();
+        Waiter waiter;
+        lock.lock();
+        try {
+            double start = Math.max(virtualTime, lane.finishTag);
+            lane.finishTag = start + 1.0 / lane.weight;
+            waiter = new Waiter(start, nanoClock.getAsLong());
+            lane.waiting.addLast(waiter);
+            dispatch(granted);
+        } finally {
+            lock.unlock();
+        }
+        complete(granted);
+        return waiter;
+    }
+
+    /**
+     * Gives up a waiter whose caller was interrupted, freeing its slot if it had already been granted one
+     */
+    private void abandon(Lane lane, Waiter waiter) {
+        lock.lock();
+        try {
+            if (!waiter.granted) {
+                lane.waiting.remove(waiter);
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        release(lane);
+    }
+
+    /**
+     * Grants free slots to the waiting requests with the earliest virtual start, skipping lanes at their cap.
+     * Ties go to the lane configured first. Must hold the lock; the grants are completed after it is released.
+     */
+    private void dispatch(List<Waiter> granted) {
+        while (inFlight < slots) {
+            Lane next = null;
+            for (Lane lane : lanes.values()) {
+                Waiter head = lane.waiting.peekFirst();
+                if (head != null && lane.inFlight < lane.maxInFlight
+                        && (next == null || head.startTag < next.waiting.peekFirst().startTag)) {
+                    next = lane;
+                }
+            }
+            if (next == null) {
+                return;
+            }
+            Waiter waiter = next.waiting.pollFirst();
+            waiter.granted = true;
+            next.inFlight++;
+            inFlight++;
+            virtualTime = Math.max(virtualTime, waiter.startTag);
+            next.waitTimer.record(nanoClock.getAsLong() - waiter.enqueuedNanos, TimeUnit.NANOSECONDS);
+            granted.add(waiter);
+        }
+    }
+
+    private static void complete(List<Waiter> granted) {
+        for (Waiter waiter : granted) {
+            waiter.grant.complete(null);
+        }
+    }
+
+    /**
+     * A priority lane and its share of the send stage
+     */
+    public final class Lane {
+
+        private final String name;
+        private final int weight;
+        private final int maxInFlight;
+        private final ArrayDeque<Waiter> waiting = new ArrayDeque<>();
+        private final Timer waitTimer;
+        private int inFlight;
+        private double finishTag;
+
+        private Lane(String name, int weight, double maxShare, MeterRegistry meterRegistry) {
+            this.name = name;
+            this.weight = Math.max(1, weight);
+            this.maxInFlight = Math.max(1, (int) Math.floor(Math.min(1.0, maxShare) * slots));
+            this.waitTimer = Timer.builder("email.lane.wait")
+                .description("Time sends waited for a slot in their lane")
+                .tag("lane", name)
+                .register(meterRegistry);
+            Gauge.builder("email.lane.queue.depth", this, LaneScheduler.this::queueDepth)
+                .description("Sends waiting for a slot in the lane")
+                .tag("lane", name)
+                .register(meterRegistry);
+            Gauge.builder("email.lane.in.flight", this, LaneScheduler.this::inFlight)
+                .description("Sends in flight in the lane")
+                .tag("lane", name)
+                .register(meterRegistry);
+        }
+
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * A request waiting for a slot
+     */
+    private static final class Waiter {
+
+        private final double startTag;
+        private final long enqueuedNanos;
+        private final CompletableFuture<Void> grant = new CompletableFuture<>();
+        private boolean granted;
+
+        private Waiter(double startTag, long enqueuedNanos) {
+            this.startTag = startTag;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.config.LaneConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.listener.AcknowledgingMessageListener;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Consumes the topics of priority lanes that have one of their own.
+ * <p>
+ * Each lane topic gets its own listener container with the lane's concurrency, so a bulk
+ * backlog waiting in one topic's partitions never sits in front of transactional mail in
+ * another's. Records go through the same single-record path as the main topic; the
+ * {@link LaneScheduler} then places them in their topic's lane.
+ */
+@Service
+@Slf4j
+public class LaneTopicListener implements AcknowledgingMessageListener<String, byte[]>, SmartLifecycle {
+
+    private final KafkaConsumerService kafkaConsumerService;
+    private final LaneConfig laneConfig;
+    private final ConcurrentKafkaListenerContainerFactory<String, byte[]> containerFactory;
+    private final List<ConcurrentMessageListenerContainer<String, byte[]>> containers = new ArrayList<>();
+
+    public LaneTopicListener(
+            KafkaConsumerService kafkaConsumerService,
+            LaneConfig laneConfig,
+            @Qualifier("kafkaListenerContainerFactory")
+            ConcurrentKafkaListenerContainerFactory<String, byte[]> containerFactory) {
+        this.kafkaConsumerService = kafkaConsumerService;
+        this.laneConfig = laneConfig;
+        this.containerFactory = containerFactory;
+    }
+
+    @Override
+    public void onMessage(ConsumerRecord<String, byte[]> record, Acknowledgment acknowledgment) {
+        kafkaConsumerService.consumeEmailMessage(
+            record.value(), record.topic(), record.partition(), record.offset(), acknowledgment);
+    }
+
+    @Override
+    public synchronized void start() {
+        if (!laneConfig.isEnabled() || !containers.isEmpty()) {
+            return;
+        }
+        laneConfig.getLanes().forEach((name, lane) -> {
+            if (lane.getTopic() == null || lane.getTopic().isBlank()) {
+                return;
+            }
+            ConcurrentMessageListenerContainer<String, byte[]> container = containerFactory.createContainer(lane.getTopic());
+            container.setBeanName("emailLaneListener-" + name);
+            container.setConcurrency(lane.getConcurrency());
+            container.setupMessageListener(this);
+            container.start();
+            containers.add(container);
+            log.info("Started listener for lane {} on {} (concurrency {})", name, lane.getTopic(), lane.getConcurrency());
+        });
+    }
+
+    @Override
+    public synchronized void stop() {
+        containers.forEach(ConcurrentMessageListenerContainer::stop);
+        containers.clear();
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return !containers.isEmpty();
+    }
+}
@@ -0,0 +1,281 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.model.EmailMessage;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Writes SendGrid v3 {@code mail/send} request bodies straight from {@link EmailMessage}s.
+ * <p>
+ * The output is the same JSON, byte for byte, that {@code Mail.build()} produces for the
+ * {@code Mail} graph {@link EmailService} would otherwise assemble: same property order, same
+ * omitted properties, same escaping, and template data serialized with map keys sorted the way
+ * the SendGrid client's own mapper does. No {@code Mail}, {@code Personalization},
+ * {@code Email} or {@code Content} objects are created and no bean serializers run.
+ * <p>
+ * Each thread writes into its own reusable buffer. The sender fragment for each sender and the
+ * {@code template_id} fragment for each template are escaped and UTF-8 encoded once and cached,
+ * so a typical template email only encodes the recipient, subject and template data.
+ */
+@Component
+public class MailRequestWriter {
+
+    private static final int MAX_CACHED_FRAGMENTS = 1024;
+    private static final int MAX_RETAINED_BUFFER = 256 * 1024;
+
+    /**
+     * Cache key standing in for a missing sender name
+     */
+    private static final String NO_NAME = "\u0000";
+
+    private static final SerializedString PERSONALIZATIONS_START = new SerializedString(",\"personalizations\":[");
+    private static final SerializedString TO_START = new SerializedString("{\"to\":[{\"email\":");
+    private static final SerializedString TO_WITHOUT_ADDRESS = new SerializedString("{\"to\":[{");
+    private static final SerializedString TO_END = new SerializedString("}]");
+    private static final SerializedString SUBJECT = new SerializedString("\"subject\":");
+    private static final SerializedString TEMPLATE_DATA = new SerializedString(",\"dynamic_template_data\":");
+    private static final SerializedString SEND_AT = new SerializedString(",\"send_at\":");
+    private static final SerializedString BATCH_ID = new SerializedString(",\"batch_id\":");
+    private static final SerializedString CONTENT_START = new SerializedString("],\"content\":[{\"type\":\"text/plain\",\"value\":");
+    private static final SerializedString COMMA = new SerializedString(",");
+    private static final SerializedString OBJECT_END = new SerializedString("}");
+    private static final SerializedString CONTENT_END = new SerializedString("}]");
+    private static final SerializedString PERSONALIZATIONS_END = new SerializedString("]");
+
+    /**
+     * Mirrors the SendGrid client's mapper, which sorts map entries so template data is written
+     * in a stable order
+     */
+    private final ObjectMapper sortedMapper = new ObjectMapper()
+        .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
+    private final ThreadLocal<ByteArrayOutputStream> buffers =
+        ThreadLocal.withInitial(() -> new ByteArrayOutputStream(1024));
+    private final Map<String, Map<String, SerializableString>> fromFragments = new ConcurrentHashMap<>();
+    private final Map<String, SerializableString> templateFragments = new ConcurrentHashMap<>();
+
+    /**
+     * Writes a plain text email
+     * @param fromEmail the sender address
+     * @param fromName the sender name, or null for none
+     * @param emailMessage the message, which must have plain text content
+     * @return the request body
+     * @throws IOException if the body cannot be written
+     */
+    public String plainText(String fromEmail, String fromName, EmailMessage emailMessage) throws IOException {
+        return plainText(fromEmail, fromName, emailMessage, null);
+    }
+
+    /**
+     * Writes a plain text email that belongs to a SendGrid batch
+     * @param fromEmail the sender address
+     * @param fromName the sender name, or null for none
+     * @param emailMessage the message, which must have plain text content
+     * @param batchId the SendGrid batch ID, or null for none
+     * @return the request body
+     * @throws IOException if the body cannot be written
+     */
+    public String plainText(String fromEmail, String fromName, EmailMessage emailMessage, String batchId)
+            throws IOException {
+        ByteArrayOutputStream buffer = buffer();
+        try (JsonGenerator generator = generator(buffer)) {
+            generator.writeRaw(fromFragment(fromEmail, fromName));
+            generator.writeRaw(COMMA);
+            generator.writeRaw(SUBJECT);
+            generator.writeString(emailMessage.getSubject());
+            generator.writeRaw(PERSONALIZATIONS_START);
+            writeTo(generator, emailMessage.getTo());
+            writeSendAt(generator, emailMessage);
+            generator.writeRaw(OBJECT_END);
+            generator.writeRaw(CONTENT_START);
+            generator.writeString(emailMessage.getBody());
+            generator.writeRaw(CONTENT_END);
+            writeBatchId(generator, batchId);
+            generator.writeRaw(OBJECT_END);
+        }
+        return finish(buffer);
+    }
+
+    /**
+     * Writes a template email with one personalization per message
+     * @param fromEmail the sender address
+     * @param fromName the sender name, or null for none
+     * @param templateId the SendGrid dynamic template ID
+     * @param emailMessages the recipients' messages, at least one
+     * @return the request body
+     * @throws IOException if the body cannot be written
+     */
+    public String template(String fromEmail, String fromName, String templateId,
+            List<EmailMessage> emailMessages) throws IOException {
+        return template(fromEmail, fromName, templateId, emailMessages, null);
+    }
+
+    /**
+     * Writes a template email with one personalization per message that belongs to a SendGrid batch
+     * @param fromEmail the sender address
+     * @param fromName the sender name, or null for none
+     * @param templateId the SendGrid dynamic template ID
+     * @param emailMessages the recipients' messages, at least one
+     * @param batchId the SendGrid batch ID, or null for none
+     * @return the request body
+     * @throws IOException if the body cannot be written
+     */
+    public String template(String fromEmail, String fromName, String templateId,
+            List<EmailMessage> emailMessages, String batchId) throws IOException {
+        ByteArrayOutputStream buffer = buffer();
+        try (JsonGenerator generator = generator(buffer)) {
+            generator.writeRaw(fromFragment(fromEmail, fromName));
+            generator.writeRaw(PERSONALIZATIONS_START);
+            for (int i = 0; i < emailMessages.size(); i++) {
+                if (i > 0) {
+                    generator.writeRaw(COMMA);
+                }
+                writePersonalization(generator, emailMessages.get(i));
+            }
+            generator.writeRaw(PERSONALIZATIONS_END);
+            generator.writeRaw(templateFragment(templateId));
+            writeBatchId(generator, batchId);
+            generator.writeRaw(OBJECT_END);
+        }
+        return finish(buffer);
+    }
+
+    private void writePersonalization(JsonGenerator generator, EmailMessage emailMessage) throws IOException {
+        writeTo(generator, emailMessage.getTo());
+        if (emailMessage.getSubject() != null && !emailMessage.getSubject().trim().isEmpty()) {
+            generator.writeRaw(COMMA);
+            generator.writeRaw(SUBJECT);
+            generator.writeString(emailMessage.getSubject());
+        }
+        Map<String, Object> templateData = emailMessage.getTemplateData();
+        if (templateData != null && !templateData.isEmpty()) {
+            generator.writeRaw(TEMPLATE_DATA);
+            sortedMapper.writeValue(generator, templateData);
+        }
+        writeSendAt(generator, emailMessage);
+        generator.writeRaw(OBJECT_END);
+    }
+
+    /**
+     * Per-personalization delivery time, which SendGrid omits when it is unset
+     */
+    private static void writeSendAt(JsonGenerator generator, EmailMessage emailMessage) throws IOException {
+        if (emailMessage.getSendAt() != null && emailMessage.getSendAt() != 0) {
+            generator.writeRaw(SEND_AT);
+            generator.writeNumber(emailMessage.getSendAt().longValue());
+        }
+    }
+
+    private static void writeBatchId(JsonGenerator generator, String batchId) throws IOException {
+        if (batchId != null) {
+            generator.writeRaw(BATCH_ID);
+            generator.writeString(batchId);
+        }
+    }
+
+    /**
+     * Opens a personalization with its recipient; a missing address is omitted, as the SendGrid client does
+     */
+    private static void writeTo(JsonGenerator generator, String to) throws IOException {
+        if (to != null) {
+            generator.writeRaw(TO_START);
+            generator.writeString(to);
+        } else {
+            generator.writeRaw(TO_WITHOUT_ADDRESS);
+        }
+        generator.writeRaw(TO_END);
+    }
+
+    /**
+     * Opening brace and sender, e.g. {@code {"from":{"name":"Form 137 System","email":"no-reply@example.com"}}
+     */
+    private SerializableString fromFragment(String fromEmail, String fromName) {
+        if (fromEmail == null) {
+            return buildFromFragment(null, fromName);
+        }
+        String nameKey = fromName != null ? fromName : NO_NAME;
+        Map<String, SerializableString> byEmail = fromFragments.get(nameKey);
+        SerializableString fragment = byEmail != null ? byEmail.get(fromEmail) : null;
+        if (fragment == null) {
+            fragment = buildFromFragment(fromEmail, fromName);
+            if (byEmail == null && fromFragments.size() < MAX_CACHED_FRAGMENTS) {
+                byEmail = fromFragments.computeIfAbsent(nameKey, name -> new ConcurrentHashMap<>());
+            }
+            if (byEmail != null && byEmail.size() < MAX_CACHED_FRAGMENTS) {
+                byEmail.put(fromEmail, fragment);
+            }
+        }
+        return fragment;
+    }
+
+    private static SerializableString buildFromFragment(String fromEmail, String fromName) {
+        StringBuilder json = new StringBuilder("{\"from\":{");
+        if (fromName != null) {
+            json.append("\"name\":");
+            quote(json, fromName);
+        }
+        if (fromEmail != null) {
+            json.append(fromName != null ? ",\"email\":" : "\"email\":");
+            quote(json, fromEmail);
+        }
+        json.append('}');
+        return new SerializedString(json.toString());
+    }
+
+    /**
+     * Template ID, e.g. {@code ,"template_id":"d-123"}
+     */
+    private SerializableString templateFragment(String templateId) {
+        SerializableString fragment = templateFragments.get(templateId);
+        if (fragment != null) {
+            return fragment;
+        }
+        StringBuilder json = new StringBuilder(",\"template_id\":");
+        quote(json, templateId);
+        fragment = new SerializedString(json.toString());
+        if (templateFragments.size() < MAX_CACHED_FRAGMENTS) {
+            templateFragments.put(templateId, fragment);
+        }
+        return fragment;
+    }
+
+    private static void quote(StringBuilder json, String value) {
+        json.append('"');
+        JsonStringEncoder.getInstance().quoteAsString(value, json);
+        json.append('"');
+    }
+
+    private ByteArrayOutputStream buffer() {
+        ByteArrayOutputStream buffer = buffers.get();
+        buffer.reset();
+        return buffer;
+    }
+
+    private JsonGenerator generator(ByteArrayOutputStream buffer) throws IOException {
+        JsonGenerator generator = sortedMapper.getFactory().createGenerator(buffer);
+        // Values are written back to back at the root; fragments supply every separator
+        generator.setRootValueSeparator(null);
+        return generator;
+    }
+
+    private String finish(ByteArrayOutputStream buffer) {
+        String body = buffer.toString(StandardCharsets.UTF_8);
+        if (buffer.size() > MAX_RETAINED_BUFFER) {
+            // Do not pin a huge batch's buffer to the thread
+            buffers.remove();
+        }
+        return body;
+    }
+}
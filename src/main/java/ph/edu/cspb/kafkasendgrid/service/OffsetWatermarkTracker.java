@@ -0,0 +1,186 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import java.util.Arrays;
+
+/**
+ * Tracks completion of a single partition's offsets when records finish out of order, and
+ * reports the highest offset that is safe to commit.
+ * <p>
+ * State is a ring bitset covering the window of offsets between the watermark and the highest
+ * tracked offset, one bit per offset, so tracking a poll of 500 records costs a few longs
+ * rather than a map of boxed offsets. The ring doubles when the window outgrows it.
+ * <p>
+ * A second ring marks offsets being processed, so that when a partition is rewound to its
+ * watermark, redelivered records that already completed or are still running are not
+ * processed again (see {@link #start}).
+ * <p>
+ * Offsets that are skipped within a partition (compacted records, transaction markers) are
+ * treated as complete, since no record will ever arrive for them.
+ */
+public class OffsetWatermarkTracker {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private long[] words;
+    private long[] running;
+    private int mask;
+
+    /**
+     * Lowest offset that has not completed yet; everything below it may be committed
+     */
+    private long base;
+
+    /**
+     * Highest offset tracked so far, or base - 1 if nothing is outstanding
+     */
+    private long highest;
+
+    public OffsetWatermarkTracker(long startOffset) {
+        this(startOffset, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param startOffset the first offset that will be tracked
+     * @param capacity initial window size in offsets, rounded up to a power of two of at least 64
+     */
+    public OffsetWatermarkTracker(long startOffset, int capacity) {
+        int size = Math.max(64, Integer.highestOneBit(Math.max(1, capacity - 1)) << 1);
+        this.words = new long[size >>> 6];
+        this.running = new long[size >>> 6];
+        this.mask = size - 1;
+        this.base = startOffset;
+        this.highest = startOffset - 1;
+    }
+
+    /**
+     * Registers an offset that is about to be processed.
+     * Offsets must be tracked in increasing order; re-tracking an offset already in the window
+     * is a no-op, and an offset below the watermark (a rewind) restarts tracking from it.
+     * @param offset the record offset
+     */
+    public synchronized void track(long offset) {
+        if (offset < base) {
+            reset(offset);
+        }
+        if (offset <= highest) {
+            return;
+        }
+        if (base > highest) {
+            // Nothing outstanding: jump straight to the new offset instead of filling the gap
+            base = offset;
+            highest = offset;
+            return;
+        }
+        ensureCapacity(offset);
+        for (long skipped = highest + 1; skipped < offset; skipped++) {
+            set(words, skipped);
+        }
+        highest = offset;
+    }
+
+    /**
+     * Tracks an offset and claims it for processing, unless an earlier delivery of the same
+     * record has already completed it or is still processing it
+     * @param offset the record offset
+     * @return true if the caller should process the record and then {@link #complete} or
+     *         {@link #release} it; false if the record must not be processed again
+     */
+    public synchronized boolean start(long offset) {
+        track(offset);
+        if (isSet(words, offset) || isSet(running, offset)) {
+            return false;
+        }
+        set(running, offset);
+        return true;
+    }
+
+    /**
+     * Marks an offset as fully processed. Offsets outside the window are ignored.
+     * @param offset the record offset
+     */
+    public synchronized void complete(long offset) {
+        if (offset >= base && offset <= highest) {
+            set(words, offset);
+            clear(running, offset);
+        }
+    }
+
+    /**
+     * Gives up a claimed offset without completing it, so a redelivery processes it again
+     * @param offset the record offset
+     */
+    public synchronized void release(long offset) {
+        if (offset >= base && offset <= highest) {
+            clear(running, offset);
+        }
+    }
+
+    /**
+     * Advances past every contiguously completed offset
+     * @return the next offset to commit, i.e. one past the highest contiguous completed offset
+     */
+    public synchronized long watermark() {
+        while (base <= highest && isSet(words, base)) {
+            clear(words, base);
+            clear(running, base);
+            base++;
+        }
+        return base;
+    }
+
+    /**
+     * Number of offsets tracked but not yet below the watermark
+     * @return outstanding offsets, including completed ones above a gap
+     */
+    public synchronized long outstanding() {
+        return highest - base + 1;
+    }
+
+    private void reset(long offset) {
+        Arrays.fill(words, 0L);
+        Arrays.fill(running, 0L);
+        base = offset;
+        highest = offset - 1;
+    }
+
+    private void ensureCapacity(long offset) {
+        long required = offset - base + 1;
+        if (required <= mask + 1L) {
+            return;
+        }
+        int size = mask + 1;
+        while (size < required) {
+            size <<= 1;
+        }
+        long[] grown = new long[size >>> 6];
+        long[] grownRunning = new long[size >>> 6];
+        int grownMask = size - 1;
+        for (long o = base; o <= highest; o++) {
+            int index = (int) (o & grownMask);
+            if (isSet(words, o)) {
+                grown[index >>> 6] |= 1L << index;
+            }
+            if (isSet(running, o)) {
+                grownRunning[index >>> 6] |= 1L << index;
+            }
+        }
+        words = grown;
+        running = grownRunning;
+        mask = grownMask;
+    }
+
+    private boolean isSet(long[] bits, long offset) {
+        int index = (int) (offset & mask);
+        return (bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    private void set(long[] bits, long offset) {
+        int index = (int) (offset & mask);
+        bits[index >>> 6] |= 1L << index;
+    }
+
+    private void clear(long[] bits, long offset) {
+        int index = (int) (offset & mask);
+        bits[index >>> 6] &= ~(1L << index);
+    }
+}
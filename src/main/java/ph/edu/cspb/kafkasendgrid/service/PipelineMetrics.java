@@ -0,0 +1,229 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.config.TemplateConfig;
+import ph.edu.cspb.kafkasendgrid.model.EmailMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Micrometer meters for every stage of the parse, validate, build and send pipeline.
+ * <p>
+ * Every meter is registered up front: stage timers for each configured notification type (plus
+ * {@code none} for messages without one and {@code other} for unknown types) and email kind,
+ * a counter per processing outcome and per SendGrid status code, and the in-flight gauge.
+ * The hot path only picks an already registered meter out of a table or array, so recording
+ * never looks a meter up in the registry or allocates tags; notification types are matched
+ * ignoring case without lower-casing them first.
+ * <p>
+ * Meters:
+ * <ul>
+ *   <li>{@code email.pipeline} timer, tagged {@code stage} (parse, validate, template, build,
+ *       sendgrid), {@code notification.type} and {@code kind} (template, plain)</li>
+ *   <li>{@code email.messages} counter, tagged {@code outcome} (sent, duplicate, deferred,
+ *       suppressed, invalid, transient, permanent)</li>
+ *   <li>{@code email.sendgrid.responses} counter, tagged {@code status}; uncommon codes are
+ *       counted under their class (2xx, 4xx, 5xx), transport failures under {@code error}</li>
+ *   <li>{@code email.sendgrid.in.flight} gauge of requests awaiting a SendGrid response</li>
+ * </ul>
+ */
+@Component
+public class PipelineMetrics {
+
+    static final String NO_TYPE = "none";
+    static final String OTHER_TYPE = "other";
+
+    private static final int[] KNOWN_STATUSES = {200, 202, 400, 401, 403, 404, 413, 429, 500, 502, 503, 504};
+
+    private final CaseInsensitiveTable<Stages[]> stagesByType;
+    private final Stages[] noTypeStages;
+    private final Stages[] otherTypeStages;
+    private final Map<ProcessingOutcome, Counter> outcomes = new EnumMap<>(ProcessingOutcome.class);
+    private final Counter[] responses = new Counter[600];
+    private final Counter transportErrors;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public PipelineMetrics(MeterRegistry meterRegistry, TemplateConfig templateConfig) {
+        Set<String> types = new TreeSet<>();
+        templateConfig.getIds().keySet().forEach(type -> types.add(type.toLowerCase()));
+        Map<String, Stages[]> byType = new HashMap<>();
+        for (String type : types) {
+            byType.put(type, stagesFor(meterRegistry, type));
+        }
+        stagesByType = new CaseInsensitiveTable<>(byType);
+        noTypeStages = stagesFor(meterRegistry, NO_TYPE);
+        otherTypeStages = stagesFor(meterRegistry, OTHER_TYPE);
+
+        outcomes.put(ProcessingOutcome.SENT, outcomeCounter(meterRegistry, "sent"));
+        outcomes.put(ProcessingOutcome.DUPLICATE, outcomeCounter(meterRegistry, "duplicate"));
+        outcomes.put(ProcessingOutcome.DEFERRED, outcomeCounter(meterRegistry, "deferred"));
+        outcomes.put(ProcessingOutcome.SUPPRESSED, outcomeCounter(meterRegistry, "suppressed"));
+        outcomes.put(ProcessingOutcome.INVALID, outcomeCounter(meterRegistry, "invalid"));
+        outcomes.put(ProcessingOutcome.RETRY, outcomeCounter(meterRegistry, "transient"));
+        outcomes.put(ProcessingOutcome.FAILED, outcomeCounter(meterRegistry, "permanent"));
+
+        Counter[] classes = new Counter[6];
+        for (int statusClass = 1; statusClass < classes.length; statusClass++) {
+            classes[statusClass] = responseCounter(meterRegistry, statusClass + "xx");
+        }
+        for (int status = 100; status < responses.length; status++) {
+            responses[status] = classes[status / 100];
+        }
+        for (int status : KNOWN_STATUSES) {
+            responses[status] = responseCounter(meterRegistry, String.valueOf(status));
+        }
+        transportErrors = responseCounter(meterRegistry, "error");
+
+        Gauge.builder("email.sendgrid.in.flight", inFlight, AtomicInteger::get)
+            .description("SendGrid requests awaiting a response")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Stage timers for a message, selected by its notification type and kind.
+     * The kind is what the message asks for: template when it names a template or a
+     * notification type, plain otherwise.
+     * @param emailMessage the parsed message
+     * @return the message's stage timers
+     */
+    public Stages stages(EmailMessage emailMessage) {
+        String type = emailMessage.getNotificationType();
+        boolean template = type != null || emailMessage.getTemplateId() != null;
+        Stages[] byKind;
+        if (type == null) {
+            byKind = noTypeStages;
+        } else {
+            byKind = stagesByType.get(type);
+            if (byKind == null) {
+                byKind = otherTypeStages;
+            }
+        }
+        return byKind[template ? 1 : 0];
+    }
+
+    /**
+     * Counts a settled record
+     * @param outcome the record's processing outcome
+     */
+    public void recordOutcome(ProcessingOutcome outcome) {
+        outcomes.get(outcome).increment();
+    }
+
+    /**
+     * Counts a SendGrid response
+     * @param status the HTTP status code
+     */
+    public void recordResponse(int status) {
+        if (status >= 100 && status < responses.length) {
+            responses[status].increment();
+        } else {
+            transportErrors.increment();
+        }
+    }
+
+    /**
+     * Marks a SendGrid request as sent
+     * @return the request's start time, for {@link #requestFinished}
+     */
+    public long requestStarted() {
+        inFlight.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /**
+     * Marks a SendGrid request as answered, or failed without a response, and times its round trip
+     * @param stages the message's stage timers
+     * @param startNanos the value returned by {@link #requestStarted()}
+     * @param status the HTTP status code, or -1 if the transport failed
+     */
+    public void requestFinished(Stages stages, long startNanos, int status) {
+        inFlight.decrementAndGet();
+        stages.sendGrid().record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        recordResponse(status);
+    }
+
+    private static Stages[] stagesFor(MeterRegistry meterRegistry, String type) {
+        return new Stages[] {
+            new Stages(meterRegistry, type, "plain"),
+            new Stages(meterRegistry, type, "template")
+        };
+    }
+
+    private static Counter outcomeCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("email.messages")
+            .description("Records settled, by processing outcome")
+            .tag("outcome", outcome)
+            .register(meterRegistry);
+    }
+
+    private static Counter responseCounter(MeterRegistry meterRegistry, String status) {
+        return Counter.builder("email.sendgrid.responses")
+            .description("SendGrid responses, by HTTP status")
+            .tag("status", status)
+            .register(meterRegistry);
+    }
+
+    /**
+     * Pre-registered stage timers for one notification type and kind
+     */
+    public static final class Stages {
+
+        private final Timer parse;
+        private final Timer validate;
+        private final Timer template;
+        private final Timer build;
+        private final Timer sendGrid;
+
+        private Stages(MeterRegistry meterRegistry, String type, String kind) {
+            this.parse = timer(meterRegistry, "parse", type, kind);
+            this.validate = timer(meterRegistry, "validate", type, kind);
+            this.template = timer(meterRegistry, "template", type, kind);
+            this.build = timer(meterRegistry, "build", type, kind);
+            this.sendGrid = timer(meterRegistry, "sendgrid", type, kind);
+        }
+
+        /** JSON parsing of the record payload */
+        public Timer parse() {
+            return parse;
+        }
+
+        /** Message validation */
+        public Timer validate() {
+            return validate;
+        }
+
+        /** Template ID resolution */
+        public Timer template() {
+            return template;
+        }
+
+        /** Serialization of the request body */
+        public Timer build() {
+            return build;
+        }
+
+        /** SendGrid round trip, per request attempt */
+        public Timer sendGrid() {
+            return sendGrid;
+        }
+
+        private static Timer timer(MeterRegistry meterRegistry, String stage, String type, String kind) {
+            return Timer.builder("email.pipeline")
+                .description("Time spent in each stage of the email pipeline")
+                .tag("stage", stage)
+                .tag("notification.type", type)
+                .tag("kind", kind)
+                .register(meterRegistry);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.config.SendGridTransportConfig;
+import com.sendgrid.Request;
+import com.sendgrid.Response;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.ParseException;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.http.io.support.ClassicRequestBuilder;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Transport built on Apache HttpClient with a pool of keep-alive connections.
+ * <p>
+ * Connections, and with them their TLS sessions, are reused across requests instead of being
+ * set up again on every burst; idle connections are closed after
+ * {@code sendgrid.transport.idle-timeout}. Request bodies of at least
+ * {@code sendgrid.transport.compression-threshold} are sent gzip-compressed, which mostly
+ * matters for coalesced batches with many personalizations. Requests run on the caller's
+ * thread, so the returned future is always already complete.
+ * <p>
+ * Pool state is published through Micrometer's HttpClient binder, under
+ * {@code httpcomponents.httpclient.pool.*} tagged {@code httpclient=sendgrid}: leased and
+ * available (idle) connections, requests pending a connection, and the pool limits.
+ */
+public class PooledSendGridTransport implements SendGridTransport, AutoCloseable {
+
+    private static final String API_VERSION = "v3";
+
+    private final CloseableHttpClient httpClient;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final String apiKey;
+    private final String baseUrl;
+    private final boolean compressionEnabled;
+    private final long compressionThreshold;
+
+    public PooledSendGridTransport(String apiKey, SendGridTransportConfig transportConfig, MeterRegistry meterRegistry) {
+        this.apiKey = apiKey;
+        this.baseUrl = transportConfig.getBaseUrl().endsWith("/")
+            ? transportConfig.getBaseUrl().substring(0, transportConfig.getBaseUrl().length() - 1)
+            : transportConfig.getBaseUrl();
+        this.compressionEnabled = transportConfig.isCompressionEnabled();
+        this.compressionThreshold = transportConfig.getCompressionThreshold().toBytes();
+
+        Timeout connectTimeout = Timeout.ofMilliseconds(transportConfig.getConnectTimeout().toMillis());
+        Timeout requestTimeout = Timeout.ofMilliseconds(transportConfig.getRequestTimeout().toMillis());
+        this.connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+            .setMaxConnTotal(transportConfig.getMaxConnections())
+            .setMaxConnPerRoute(transportConfig.getMaxConnectionsPerRoute())
+            .setDefaultConnectionConfig(ConnectionConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setSocketTimeout(requestTimeout)
+                .build())
+            .build();
+        this.httpClient = HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            .setDefaultRequestConfig(RequestConfig.custom()
+                .setConnectionRequestTimeout(connectTimeout)
+                .setResponseTimeout(requestTimeout)
+                .build())
+            .evictExpiredConnections()
+            .evictIdleConnections(TimeValue.ofMilliseconds(transportConfig.getIdleTimeout().toMillis()))
+            .build();
+
+        new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, "sendgrid").bindTo(meterRegistry);
+    }
+
+    @Override
+    public CompletableFuture<Response> send(Request request) {
+        try {
+            ClassicRequestBuilder builder = ClassicRequestBuilder.create(request.getMethod().name())
+                .setUri(baseUrl + "/" + API_VERSION + "/" + request.getEndpoint())
+                .addHeader("Authorization", "Bearer " + apiKey)
+                .addHeader("Accept", "application/json");
+            if (request.getBody() != null) {
+                builder.setEntity(entity(request.getBody()));
+            }
+            ClassicHttpRequest httpRequest = builder.build();
+            return CompletableFuture.completedFuture(httpClient.execute(httpRequest, PooledSendGridTransport::toResponse));
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(new IOException("SendGrid request failed", e));
+        }
+    }
+
+    /**
+     * Current connection pool usage
+     * @return leased, pending, available and maximum connections
+     */
+    public PoolStats poolStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    @Override
+    public void close() throws IOException {
+        httpClient.close();
+    }
+
+    private HttpEntity entity(String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        if (!compressionEnabled || bytes.length < compressionThreshold) {
+            return new ByteArrayEntity(bytes, ContentType.APPLICATION_JSON);
+        }
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(bytes);
+        }
+        return new ByteArrayEntity(compressed.toByteArray(), ContentType.APPLICATION_JSON, "gzip");
+    }
+
+    private static Response toResponse(ClassicHttpResponse httpResponse) throws IOException {
+        // Header look-ups must not depend on the case the server used
+        Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (Header header : httpResponse.getHeaders()) {
+            headers.putIfAbsent(header.getName(), header.getValue());
+        }
+        String body;
+        try {
+            body = httpResponse.getEntity() != null
+                ? EntityUtils.toString(httpResponse.getEntity(), StandardCharsets.UTF_8)
+                : "";
+        } catch (ParseException e) {
+            throw new IOException("Could not read SendGrid response", e);
+        }
+        return new Response(httpResponse.getCode(), body, headers);
+    }
+}
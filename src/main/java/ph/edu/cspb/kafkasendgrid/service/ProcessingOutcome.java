@@ -0,0 +1,51 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+/**
+ * Result of processing a single Kafka record through the parse, validate and send pipeline.
+ * Listeners use it to decide whether the record's offset may be committed.
+ */
+public enum ProcessingOutcome {
+
+    /**
+     * The email was accepted by SendGrid.
+     */
+    SENT,
+
+    /**
+     * The email was already sent for an earlier delivery of the same message; safe to commit.
+     */
+    DUPLICATE,
+
+    /**
+     * The email is held by the deferred delivery scheduler until shortly before its send time; safe to commit.
+     */
+    DEFERRED,
+
+    /**
+     * The recipient is on the suppression list, so the email was not sent; safe to commit.
+     */
+    SUPPRESSED,
+
+    /**
+     * The message failed validation and will never succeed; safe to commit.
+     */
+    INVALID,
+
+    /**
+     * A transient failure occurred; the record must be redelivered.
+     */
+    RETRY,
+
+    /**
+     * An unexpected, permanent failure occurred; safe to commit.
+     */
+    FAILED;
+
+    /**
+     * Whether the record's offset may be committed after this outcome
+     * @return true unless the record needs to be redelivered
+     */
+    public boolean isCommittable() {
+        return this != RETRY;
+    }
+}
@@ -0,0 +1,59 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+/**
+ * Outcome of processing a record together with where and why it failed.
+ * The failure details end up in the dead-letter envelope.
+ *
+ * @param outcome the processing outcome
+ * @param stage the pipeline stage that failed, null if the email was sent
+ * @param error the failure, null if the email was sent or the failure has no exception
+ */
+public record ProcessingResult(ProcessingOutcome outcome, Stage stage, Throwable error) {
+
+    /**
+     * Pipeline stage a record failed in.
+     */
+    public enum Stage {
+        PARSE,
+        VALIDATION,
+        SEND,
+        RETRIES_EXHAUSTED
+    }
+
+    static final ProcessingResult SENT = new ProcessingResult(ProcessingOutcome.SENT, null, null);
+    static final ProcessingResult DUPLICATE = new ProcessingResult(ProcessingOutcome.DUPLICATE, null, null);
+    static final ProcessingResult DEFERRED = new ProcessingResult(ProcessingOutcome.DEFERRED, null, null);
+    static final ProcessingResult SUPPRESSED = new ProcessingResult(ProcessingOutcome.SUPPRESSED, null, null);
+
+    /**
+     * Whether the record's offset may be committed after this outcome
+     * @return true unless the record needs to be redelivered
+     */
+    public boolean isCommittable() {
+        return outcome.isCommittable();
+    }
+
+    /**
+     * Whether the record failed permanently and belongs on the dead-letter topic
+     * @return true for invalid and permanently failed records
+     */
+    public boolean isDeadLetter() {
+        return outcome == ProcessingOutcome.INVALID || outcome == ProcessingOutcome.FAILED;
+    }
+
+    /**
+     * The HTTP status SendGrid answered with, if the failure came from SendGrid
+     * @return the status code, or null
+     */
+    public Integer sendGridStatus() {
+        return error instanceof SendGridException sendGridException ? sendGridException.getStatusCode() : null;
+    }
+
+    /**
+     * Turns a transient failure into a permanent one once every retry is used up
+     * @return a failed result carrying the last error
+     */
+    ProcessingResult retriesExhausted() {
+        return new ProcessingResult(ProcessingOutcome.FAILED, Stage.RETRIES_EXHAUSTED, error);
+    }
+}
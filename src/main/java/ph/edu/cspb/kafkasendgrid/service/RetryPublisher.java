@@ -0,0 +1,158 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.config.RetryConfig;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves transiently failed records onto the tiered retry topics.
+ * <p>
+ * Retry state travels with the record in headers: the attempt number, the earliest time the
+ * record may be processed again, and the topic, partition and offset it was first consumed from.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RetryPublisher {
+
+    public static final String ATTEMPT_HEADER = "retry-attempt";
+    public static final String NOT_BEFORE_HEADER = "retry-not-before";
+    public static final String ORIGINAL_TOPIC_HEADER = "retry-original-topic";
+    public static final String ORIGINAL_PARTITION_HEADER = "retry-original-partition";
+    public static final String ORIGINAL_OFFSET_HEADER = "retry-original-offset";
+
+    private final KafkaTemplate<String, byte[]> kafkaTemplate;
+    private final RetryConfig retryConfig;
+
+    @Value("${spring.kafka.topic.name}")
+    private String mainTopic;
+
+    /**
+     * Whether transient failures are moved to retry topics
+     * @return true if retry topics are enabled
+     */
+    public boolean isEnabled() {
+        return retryConfig.isEnabled();
+    }
+
+    /**
+     * Schedules another attempt for a consumed record
+     * @param record the record that failed transiently
+     * @return true if the record is now on a retry topic and its offset may be committed
+     */
+    public boolean scheduleRetry(ConsumerRecord<String, byte[]> record) {
+        return scheduleRetry(record.key(), record.value(), record.topic(), record.partition(), record.offset(),
+            record.headers());
+    }
+
+    /**
+     * Schedules another attempt for a consumed message
+     * @param key the record key, may be null
+     * @param message the raw payload
+     * @param topic the topic the message was consumed from
+     * @param partition the partition the message was consumed from
+     * @param offset the offset the message was consumed from
+     * @param headers the record headers, may be null
+     * @return true if the message is now on a retry topic and its offset may be committed;
+     *         false if retries are disabled, exhausted, or the publish failed
+     */
+    public boolean scheduleRetry(String key, byte[] message, String topic, int partition, long offset, Headers headers) {
+        if (!retryConfig.isEnabled()) {
+            return false;
+        }
+
+        int attempt = intHeader(headers, ATTEMPT_HEADER, 0) + 1;
+        if (attempt > retryConfig.getDelays().size()) {
+            log.error("Giving up on message from topic: {}, partition: {}, offset: {} after {} retries",
+                topic, partition, offset, attempt - 1);
+            return false;
+        }
+
+        Duration delay = retryConfig.getDelays().get(attempt - 1);
+        String retryTopic = retryConfig.topicForTier(mainTopic, attempt);
+
+        ProducerRecord<String, byte[]> retry = new ProducerRecord<>(retryTopic, key, message);
+        setHeader(retry, ATTEMPT_HEADER, String.valueOf(attempt));
+        setHeader(retry, NOT_BEFORE_HEADER, String.valueOf(System.currentTimeMillis() + delay.toMillis()));
+        setHeader(retry, ORIGINAL_TOPIC_HEADER, stringHeader(headers, ORIGINAL_TOPIC_HEADER, topic));
+        setHeader(retry, ORIGINAL_PARTITION_HEADER, stringHeader(headers, ORIGINAL_PARTITION_HEADER, String.valueOf(partition)));
+        setHeader(retry, ORIGINAL_OFFSET_HEADER, stringHeader(headers, ORIGINAL_OFFSET_HEADER, String.valueOf(offset)));
+
+        try {
+            kafkaTemplate.send(retry).get(retryConfig.getPublishTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            log.error("Failed to publish retry {} to {}; message will be redelivered in place", attempt, retryTopic, e);
+            return false;
+        }
+
+        log.warn("Scheduled retry {} of message from topic: {}, partition: {}, offset: {} on {} in {}",
+            attempt, topic, partition, offset, retryTopic, delay);
+        return true;
+    }
+
+    /**
+     * Whether a record has used up every retry tier
+     * @param headers the record headers, may be null
+     * @return true if retries are enabled and no further tier is left
+     */
+    public boolean isExhausted(Headers headers) {
+        return retryConfig.isEnabled() && attempt(headers) >= retryConfig.getDelays().size();
+    }
+
+    /**
+     * Reads the attempt number of a consumed record
+     * @param headers the record headers, may be null
+     * @return the number of retries already made, 0 for a record from the main topic
+     */
+    public static int attempt(Headers headers) {
+        return intHeader(headers, ATTEMPT_HEADER, 0);
+    }
+
+    /**
+     * Reads the earliest time a retry record may be processed
+     * @param headers the record headers, may be null
+     * @return epoch milliseconds, or 0 if the record may be processed immediately
+     */
+    public static long notBefore(Headers headers) {
+        String value = stringHeader(headers, NOT_BEFORE_HEADER, null);
+        try {
+            return value != null ? Long.parseLong(value) : 0L;
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+    }
+
+    private static void setHeader(ProducerRecord<String, byte[]> record, String name, String value) {
+        record.headers().add(name, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String stringHeader(Headers headers, String name, String defaultValue) {
+        Header header = headers != null ? headers.lastHeader(name) : null;
+        return header != null && header.value() != null
+            ? new String(header.value(), StandardCharsets.UTF_8)
+            : defaultValue;
+    }
+
+    private static int intHeader(Headers headers, String name, int defaultValue) {
+        String value = stringHeader(headers, name, null);
+        try {
+            return value != null ? Integer.parseInt(value) : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
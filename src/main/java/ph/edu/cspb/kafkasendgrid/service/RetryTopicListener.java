@@ -0,0 +1,116 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.config.RetryConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.listener.AcknowledgingMessageListener;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Consumes the tiered retry topics.
+ * <p>
+ * Each tier gets its own listener container, so a long tier never holds up a short one. A record
+ * that arrives before its {@code retry-not-before} time is nacked with the remaining delay, which
+ * pauses that tier's consumer without blocking its poll loop; records within a tier are in
+ * not-before order, so nothing behind it is ready either. A record that fails transiently again
+ * moves to the next tier; one that has exhausted every tier is dead-lettered, or committed and
+ * dropped if the dead-letter topic is disabled.
+ * <p>
+ * Like the main listeners, retries take part in the graceful drain: once shutdown begins no
+ * new retry is started, and the shutdown waits for those already sending.
+ */
+@Service
+@Slf4j
+public class RetryTopicListener implements AcknowledgingMessageListener<String, byte[]>, SmartLifecycle {
+
+    private final KafkaConsumerService kafkaConsumerService;
+    private final RetryConfig retryConfig;
+    private final DrainCoordinator drainCoordinator;
+    private final ConcurrentKafkaListenerContainerFactory<String, byte[]> containerFactory;
+    private final List<ConcurrentMessageListenerContainer<String, byte[]>> containers = new ArrayList<>();
+
+    @Value("${spring.kafka.topic.name}")
+    private String mainTopic;
+
+    public RetryTopicListener(
+            KafkaConsumerService kafkaConsumerService,
+            RetryConfig retryConfig,
+            DrainCoordinator drainCoordinator,
+            @Qualifier("kafkaListenerContainerFactory")
+            ConcurrentKafkaListenerContainerFactory<String, byte[]> containerFactory) {
+        this.kafkaConsumerService = kafkaConsumerService;
+        this.retryConfig = retryConfig;
+        this.drainCoordinator = drainCoordinator;
+        this.containerFactory = containerFactory;
+    }
+
+    @Override
+    public void onMessage(ConsumerRecord<String, byte[]> record, Acknowledgment acknowledgment) {
+        long wait = RetryPublisher.notBefore(record.headers()) - System.currentTimeMillis();
+        if (wait > 0) {
+            // Not due yet: pause this tier and redeliver the same record once it is
+            acknowledgment.nack(Duration.ofMillis(wait));
+            return;
+        }
+
+        if (drainCoordinator.isDraining()) {
+            log.info("Shutting down; leaving retry topic: {}, partition: {}, offset: {} for redelivery",
+                record.topic(), record.partition(), record.offset());
+            return;
+        }
+        int attempt = RetryPublisher.attempt(record.headers());
+        log.info("Retrying message (attempt {}) from topic: {}, partition: {}, offset: {}",
+            attempt, record.topic(), record.partition(), record.offset());
+
+        TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+        drainCoordinator.begin(partition);
+        try {
+            if (kafkaConsumerService.settle(record, kafkaConsumerService.process(record.value()))) {
+                acknowledgment.acknowledge();
+            } else {
+                // Could not reach the next tier; try this one again after its own delay
+                acknowledgment.nack(retryConfig.getDelays().get(Math.max(0, attempt - 1)));
+            }
+        } finally {
+            drainCoordinator.end(partition);
+        }
+    }
+
+    @Override
+    public synchronized void start() {
+        if (!retryConfig.isEnabled() || !containers.isEmpty()) {
+            return;
+        }
+        for (int tier = 1; tier <= retryConfig.getDelays().size(); tier++) {
+            String topic = retryConfig.topicForTier(mainTopic, tier);
+            ConcurrentMessageListenerContainer<String, byte[]> container = containerFactory.createContainer(topic);
+            container.setBeanName("emailRetryListener-" + tier);
+            container.setupMessageListener(this);
+            container.start();
+            containers.add(container);
+            log.info("Started retry listener for {} (delay {})", topic, retryConfig.getDelays().get(tier - 1));
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        containers.forEach(ConcurrentMessageListenerContainer::stop);
+        containers.clear();
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return !containers.isEmpty();
+    }
+}
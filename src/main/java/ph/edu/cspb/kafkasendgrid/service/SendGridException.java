@@ -0,0 +1,28 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import lombok.Getter;
+
+/**
+ * Thrown when SendGrid answers a request with a non-2xx status.
+ */
+@Getter
+public class SendGridException extends RuntimeException {
+
+    private final int statusCode;
+    private final String responseBody;
+
+    public SendGridException(String emailType, int statusCode, String responseBody) {
+        super(String.format("Failed to send %s email via SendGrid. Status: %d, Error: %s",
+            emailType, statusCode, responseBody));
+        this.statusCode = statusCode;
+        this.responseBody = responseBody;
+    }
+
+    /**
+     * Whether the same request may succeed if it is sent again later
+     * @return true if SendGrid throttled the request or failed to handle it (5xx)
+     */
+    public boolean isTransient() {
+        return statusCode == 429 || statusCode >= 500;
+    }
+}
@@ -0,0 +1,157 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.config.RateLimitConfig;
+import com.sendgrid.Response;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock-free token bucket that paces every SendGrid request.
+ * <p>
+ * The bucket is kept as a single theoretical-arrival time: each request reserves the next slot
+ * with a compare-and-set and then sleeps until that slot, so callers queue up behind one another
+ * instead of failing when the bucket is empty. Idle time accrues up to {@code burst} free slots.
+ * <p>
+ * The rate follows SendGrid's own accounting: {@code X-RateLimit-Remaining} and
+ * {@code X-RateLimit-Reset} spread the remaining quota evenly over the time left in the window,
+ * and a 429 or an exhausted quota pauses everybody until the window resets.
+ */
+@Component
+@Slf4j
+public class SendGridRateLimiter {
+
+    static final String REMAINING_HEADER = "X-RateLimit-Remaining";
+    static final String RESET_HEADER = "X-RateLimit-Reset";
+    static final String RETRY_AFTER_HEADER = "Retry-After";
+
+    private final RateLimitConfig rateLimitConfig;
+    private final long baseIntervalNanos;
+    private final AtomicLong nextSlot = new AtomicLong(System.nanoTime());
+    private volatile long intervalNanos;
+
+    public SendGridRateLimiter(RateLimitConfig rateLimitConfig) {
+        this.rateLimitConfig = rateLimitConfig;
+        this.baseIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rateLimitConfig.getPermitsPerSecond());
+        this.intervalNanos = baseIntervalNanos;
+    }
+
+    /**
+     * Waits until the caller may send a request
+     */
+    public void acquire() {
+        long waitNanos = reserve();
+        long deadline = System.nanoTime() + waitNanos;
+        while (waitNanos > 0) {
+            LockSupport.parkNanos(this, waitNanos);
+            waitNanos = deadline - System.nanoTime();
+        }
+    }
+
+    /**
+     * Reserves the next request slot without waiting for it
+     * @return nanoseconds until the reserved slot
+     */
+    public long reserve() {
+        if (!rateLimitConfig.isEnabled()) {
+            return 0;
+        }
+        long interval = intervalNanos;
+        long burstNanos = interval * Math.max(0, rateLimitConfig.getBurst() - 1);
+        while (true) {
+            long now = System.nanoTime();
+            long current = nextSlot.get();
+            long slot = Math.max(current, now - burstNanos);
+            if (nextSlot.compareAndSet(current, slot + interval)) {
+                return Math.max(0, slot - now);
+            }
+        }
+    }
+
+    /**
+     * Adjusts the rate from a SendGrid response
+     * @param response the response to a paced request
+     */
+    public void onResponse(Response response) {
+        Map<String, String> headers = response.getHeaders();
+        Long resetInNanos = resetInNanos(headers);
+
+        if (response.getStatusCode() == 429) {
+            long pause = resetInNanos != null ? resetInNanos : retryAfterNanos(headers);
+            log.warn("SendGrid throttled a request; pausing sends for {} ms", TimeUnit.NANOSECONDS.toMillis(pause));
+            pause(pause);
+            return;
+        }
+
+        Long remaining = longHeader(headers, REMAINING_HEADER);
+        if (remaining == null || resetInNanos == null) {
+            return;
+        }
+        if (remaining <= 0) {
+            log.info("SendGrid rate limit exhausted; pausing sends for {} ms", TimeUnit.NANOSECONDS.toMillis(resetInNanos));
+            pause(resetInNanos);
+        } else {
+            // Spread what is left of the window evenly, never faster than the configured ceiling
+            intervalNanos = Math.max(baseIntervalNanos, resetInNanos / remaining);
+        }
+    }
+
+    /**
+     * Whether a throttled request should be sent again; never while the limiter is disabled,
+     * since nothing would then wait before the retry
+     * @param attempt number of retries already made
+     * @return true if another retry is allowed
+     */
+    public boolean shouldRetry(int attempt) {
+        return rateLimitConfig.isEnabled() && attempt < rateLimitConfig.getMaxRetries();
+    }
+
+    /**
+     * Current pacing interval
+     * @return effective permits per second
+     */
+    public double currentRate() {
+        return (double) TimeUnit.SECONDS.toNanos(1) / intervalNanos;
+    }
+
+    private void pause(long nanos) {
+        long until = System.nanoTime() + Math.min(nanos, rateLimitConfig.getMaxBackoff().toNanos());
+        nextSlot.accumulateAndGet(until, Math::max);
+    }
+
+    private Long resetInNanos(Map<String, String> headers) {
+        Long resetEpochSeconds = longHeader(headers, RESET_HEADER);
+        if (resetEpochSeconds == null) {
+            return null;
+        }
+        long millis = TimeUnit.SECONDS.toMillis(resetEpochSeconds) - System.currentTimeMillis();
+        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, millis));
+    }
+
+    private long retryAfterNanos(Map<String, String> headers) {
+        Long seconds = longHeader(headers, RETRY_AFTER_HEADER);
+        return seconds != null
+            ? TimeUnit.SECONDS.toNanos(seconds)
+            : rateLimitConfig.getDefaultBackoff().toNanos();
+    }
+
+    private static Long longHeader(Map<String, String> headers, String name) {
+        if (headers == null) {
+            return null;
+        }
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey())) {
+                try {
+                    return Long.parseLong(header.getValue().trim());
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+}
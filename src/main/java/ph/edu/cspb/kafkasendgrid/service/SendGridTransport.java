@@ -0,0 +1,21 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import com.sendgrid.Request;
+import com.sendgrid.Response;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Carries SendGrid API requests to the server.
+ * Implementations may complete on the caller's thread or asynchronously; callers must not
+ * assume either.
+ */
+public interface SendGridTransport {
+
+    /**
+     * Sends a request to the SendGrid API
+     * @param request the request; its endpoint is relative to the API version root
+     * @return future completed with the response, or exceptionally with an IOException on I/O failure
+     */
+    CompletableFuture<Response> send(Request request);
+}
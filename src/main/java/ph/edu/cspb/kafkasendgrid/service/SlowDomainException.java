@@ -0,0 +1,20 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import lombok.Getter;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a request to a recipient domain in the slow lane could not get a slot in time.
+ * It is an {@link IOException}, so the record is retried later like any transient failure.
+ */
+@Getter
+public class SlowDomainException extends IOException {
+
+    private final String domain;
+
+    public SlowDomainException(String domain) {
+        super("No slow-lane slot free for recipient domain " + domain);
+        this.domain = domain;
+    }
+}
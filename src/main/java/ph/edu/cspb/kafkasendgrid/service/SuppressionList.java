@@ -0,0 +1,362 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.config.SuppressionConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local cache of suppressed recipients, checked before an email costs a SendGrid request.
+ * <p>
+ * A lookup first asks a {@link BloomFilter}, which rules out almost every unsuppressed address
+ * without a lock or an allocation. Only the few addresses it lets through are normalized and
+ * looked up exactly: first in the entries from the suppression topic, then in the snapshot
+ * file's {@link AddressSet}, one open-addressing array of strings without per-entry map nodes.
+ * <p>
+ * The snapshot file is checked every {@code refresh-interval} and reloaded in full when its
+ * size or modification time changes; a file that cannot be read leaves the current list in
+ * place. The topic is applied on top, one address at a time: a record suppresses its key, a
+ * tombstone lifts it. Reloading the file rebuilds the Bloom filter, which also drops the bits
+ * of lifted addresses.
+ * <p>
+ * Meters:
+ * <ul>
+ *   <li>{@code email.suppression.addresses} gauge, tagged {@code source} (file, topic)</li>
+ *   <li>{@code email.suppression.reloads} counter, tagged {@code source} (file, topic)</li>
+ *   <li>{@code email.suppression.false.positives} counter, addresses the Bloom filter let
+ *       through that turned out not to be suppressed</li>
+ * </ul>
+ */
+@Component
+@Slf4j
+public class SuppressionList {
+
+    /**
+     * Header naming the outcome of records published to the outcome topic
+     */
+    public static final String OUTCOME_HEADER = "email-outcome";
+
+    private final SuppressionConfig config;
+    private final KafkaTemplate<String, byte[]> kafkaTemplate;
+    private final Counter fileReloads;
+    private final Counter topicReloads;
+    private final Counter falsePositives;
+    private volatile Snapshot snapshot;
+
+    /**
+     * Addresses set by the topic: true if suppressed, false if the suppression was lifted
+     */
+    private final Map<String, Boolean> topicAddresses = new ConcurrentHashMap<>();
+
+    // Guarded by this
+    private long fileSize = -1;
+    private long fileModified = -1;
+    private boolean fileMissing;
+    private int topicSuppressed;
+    private ScheduledExecutorService watcher;
+
+    public SuppressionList(SuppressionConfig config, KafkaTemplate<String, byte[]> kafkaTemplate,
+            MeterRegistry meterRegistry) {
+        this.config = config;
+        this.kafkaTemplate = kafkaTemplate;
+        this.fileReloads = reloadCounter(meterRegistry, "file");
+        this.topicReloads = reloadCounter(meterRegistry, "topic");
+        this.falsePositives = Counter.builder("email.suppression.false.positives")
+            .description("Recipients the Bloom filter let through that were not suppressed")
+            .register(meterRegistry);
+        this.snapshot = new Snapshot(new AddressSet(List.of()), newFilter(0));
+
+        Gauge.builder("email.suppression.addresses", this, list -> list.snapshot.addresses().size())
+            .description("Suppressed addresses, by source")
+            .tag("source", "file")
+            .register(meterRegistry);
+        Gauge.builder("email.suppression.addresses", this, SuppressionList::topicSuppressed)
+            .description("Suppressed addresses, by source")
+            .tag("source", "topic")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Loads the snapshot file, if any, and starts watching it
+     */
+    @PostConstruct
+    public synchronized void start() {
+        String file = config.getFile();
+        if (!config.isEnabled() || file == null || file.isBlank() || watcher != null) {
+            return;
+        }
+        reloadFile();
+        watcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "suppression-reload");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = Math.max(1, config.getRefreshInterval().toMillis());
+        watcher.scheduleWithFixedDelay(this::reloadFile, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        log.info("Watching {} for suppression list changes every {}", file, config.getRefreshInterval());
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (watcher != null) {
+            watcher.shutdownNow();
+            watcher = null;
+        }
+    }
+
+    /**
+     * Whether checks are made at all
+     * @return true if the suppression list is enabled
+     */
+    public boolean isEnabled() {
+        return config.isEnabled();
+    }
+
+    /**
+     * Checks a recipient against the suppression list
+     * @param address the recipient address, matched ignoring case and surrounding whitespace
+     * @return true if emails to the address must not be sent
+     */
+    public boolean isSuppressed(String address) {
+        if (!config.isEnabled() || address == null) {
+            return false;
+        }
+        Snapshot current = snapshot;
+        if (!current.filter().mightContain(address)) {
+            return false;
+        }
+        String normalized = normalize(address);
+        Boolean fromTopic = topicAddresses.get(normalized);
+        boolean suppressed = fromTopic != null ? fromTopic : current.addresses().contains(normalized);
+        if (!suppressed) {
+            falsePositives.increment();
+        }
+        return suppressed;
+    }
+
+    /**
+     * Applies one record of the suppression topic
+     * @param address the address
+     * @param suppressed true to suppress it, false to lift the suppression
+     */
+    public synchronized void apply(String address, boolean suppressed) {
+        if (address == null || address.isBlank()) {
+            log.warn("Ignoring suppression record without an address");
+            return;
+        }
+        String normalized = normalize(address);
+        Boolean previous = topicAddresses.put(normalized, suppressed);
+        if (suppressed) {
+            snapshot.filter().put(normalized);
+        }
+        if (suppressed && !Boolean.TRUE.equals(previous)) {
+            topicSuppressed++;
+        } else if (!suppressed && Boolean.TRUE.equals(previous)) {
+            topicSuppressed--;
+        }
+        topicReloads.increment();
+        log.debug("Suppression of {} {}", normalized, suppressed ? "added" : "lifted");
+    }
+
+    /**
+     * Publishes a skipped record to the outcome topic, if one is configured
+     * @param record the skipped record
+     * @return true if the record's offset may be committed: it was published, or there is no
+     *         outcome topic; false if the publish failed
+     */
+    public boolean publishOutcome(ConsumerRecord<String, byte[]> record) {
+        String topic = config.getOutcomeTopic();
+        if (topic == null || topic.isBlank()) {
+            return true;
+        }
+        ProducerRecord<String, byte[]> outcome = new ProducerRecord<>(topic, record.key(), record.value());
+        outcome.headers().add(OUTCOME_HEADER, "suppressed".getBytes(StandardCharsets.UTF_8));
+        try {
+            kafkaTemplate.send(outcome).get(config.getPublishTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            log.error("Failed to publish suppressed record from topic: {}, partition: {}, offset: {}; it will be redelivered",
+                record.topic(), record.partition(), record.offset(), e);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Re-reads the snapshot file if its size or modification time changed
+     * @return true if a new list was published
+     */
+    synchronized boolean reloadFile() {
+        Path path = Path.of(config.getFile());
+        List<String> addresses = new ArrayList<>();
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            if (attributes.size() == fileSize && attributes.lastModifiedTime().toMillis() == fileModified) {
+                return false;
+            }
+            try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    String address = parseLine(line);
+                    if (address != null) {
+                        addresses.add(normalize(address));
+                    }
+                }
+            }
+        } catch (NoSuchFileException e) {
+            if (!fileMissing) {
+                log.warn("Suppression file {} does not exist; keeping the current list", path);
+                fileMissing = true;
+            }
+            return false;
+        } catch (IOException e) {
+            log.error("Failed to read suppression file {}; keeping the current list", path, e);
+            return false;
+        }
+        fileMissing = false;
+        fileSize = attributes.size();
+        fileModified = attributes.lastModifiedTime().toMillis();
+
+        AddressSet fileAddresses = new AddressSet(addresses);
+        BloomFilter filter = newFilter(fileAddresses.size() + topicAddresses.size());
+        addresses.forEach(filter::put);
+        topicAddresses.forEach((address, suppressed) -> {
+            if (suppressed) {
+                filter.put(address);
+            }
+        });
+        snapshot = new Snapshot(fileAddresses, filter);
+        fileReloads.increment();
+        log.info("Loaded {} suppressed addresses from {}", fileAddresses.size(), path);
+        return true;
+    }
+
+    /**
+     * Normalizes an address for the exact lookup: surrounding whitespace removed, lowercased
+     * char by char, the same way {@link BloomFilter#hash} reads it
+     */
+    static String normalize(String address) {
+        int start = 0;
+        int end = address.length();
+        while (start < end && Character.isWhitespace(address.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(address.charAt(end - 1))) {
+            end--;
+        }
+        char[] chars = new char[end - start];
+        for (int i = start; i < end; i++) {
+            chars[i - start] = Character.toLowerCase(address.charAt(i));
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Reads the address from one line of the snapshot file
+     * @return the address, or null for blank lines, comments and headers
+     */
+    private static String parseLine(String line) {
+        int comma = line.indexOf(',');
+        String address = (comma >= 0 ? line.substring(0, comma) : line).strip();
+        if (address.length() >= 2 && address.startsWith("\"") && address.endsWith("\"")) {
+            address = address.substring(1, address.length() - 1).strip();
+        }
+        if (address.isEmpty() || address.startsWith("#") || address.indexOf('@') < 0) {
+            return null;
+        }
+        return address;
+    }
+
+    private BloomFilter newFilter(int addresses) {
+        return new BloomFilter(Math.max(config.getExpectedAddresses(), addresses), config.getFalsePositiveRate());
+    }
+
+    private synchronized int topicSuppressed() {
+        return topicSuppressed;
+    }
+
+    private static Counter reloadCounter(MeterRegistry meterRegistry, String source) {
+        return Counter.builder("email.suppression.reloads")
+            .description("Suppression list changes applied, by source")
+            .tag("source", source)
+            .register(meterRegistry);
+    }
+
+    /**
+     * The snapshot file's addresses and the filter over them and the topic's
+     */
+    private record Snapshot(AddressSet addresses, BloomFilter filter) {
+    }
+
+    /**
+     * Immutable set of normalized addresses in a single open-addressing array
+     */
+    static final class AddressSet {
+
+        private final String[] slots;
+        private final int mask;
+        private final int size;
+
+        AddressSet(List<String> addresses) {
+            // At most half full, so probe sequences stay short
+            int capacity = Math.max(2, Integer.highestOneBit(Math.max(1, addresses.size() * 2 - 1)) << 1);
+            this.slots = new String[capacity];
+            this.mask = capacity - 1;
+
+            int count = 0;
+            for (String address : addresses) {
+                int slot = slot(address);
+                while (slots[slot] != null && !slots[slot].equals(address)) {
+                    slot = (slot + 1) & mask;
+                }
+                if (slots[slot] == null) {
+                    slots[slot] = address;
+                    count++;
+                }
+            }
+            this.size = count;
+        }
+
+        boolean contains(String address) {
+            for (int slot = slot(address); slots[slot] != null; slot = (slot + 1) & mask) {
+                if (slots[slot].equals(address)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        int size() {
+            return size;
+        }
+
+        private int slot(String address) {
+            int hash = address.hashCode();
+            return (hash ^ (hash >>> 16)) & mask;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.config.SuppressionConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.PartitionInfo;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.MessageListener;
+import org.springframework.kafka.support.TopicPartitionOffset;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Feeds the {@link SuppressionList} from a compacted topic of suppressed addresses.
+ * <p>
+ * Every replica needs every address, so the topic's partitions are assigned directly rather than
+ * shared through the consumer group, and read from the beginning on each start; compaction keeps
+ * that replay down to the latest record per address. No offsets are committed. Until the replay
+ * has caught up, only the snapshot file's addresses are suppressed.
+ */
+@Service
+@Slf4j
+public class SuppressionTopicListener implements MessageListener<String, byte[]>, SmartLifecycle {
+
+    private final SuppressionList suppressionList;
+    private final SuppressionConfig suppressionConfig;
+    private final ConcurrentKafkaListenerContainerFactory<String, byte[]> containerFactory;
+    private ConcurrentMessageListenerContainer<String, byte[]> container;
+
+    public SuppressionTopicListener(
+            SuppressionList suppressionList,
+            SuppressionConfig suppressionConfig,
+            @Qualifier("kafkaListenerContainerFactory")
+            ConcurrentKafkaListenerContainerFactory<String, byte[]> containerFactory) {
+        this.suppressionList = suppressionList;
+        this.suppressionConfig = suppressionConfig;
+        this.containerFactory = containerFactory;
+    }
+
+    @Override
+    public void onMessage(ConsumerRecord<String, byte[]> record) {
+        suppressionList.apply(record.key(), record.value() != null);
+    }
+
+    @Override
+    public synchronized void start() {
+        String topic = suppressionConfig.getTopic();
+        if (!suppressionConfig.isEnabled() || topic == null || topic.isBlank() || container != null) {
+            return;
+        }
+        List<PartitionInfo> partitions;
+        try (Consumer<?, ?> consumer = containerFactory.getConsumerFactory().createConsumer()) {
+            partitions = consumer.partitionsFor(topic);
+        }
+        if (partitions == null || partitions.isEmpty()) {
+            log.warn("Suppression topic {} has no partitions; suppressions will not be read from it", topic);
+            return;
+        }
+        TopicPartitionOffset[] offsets = partitions.stream()
+            .map(partition -> new TopicPartitionOffset(topic, partition.partition(), TopicPartitionOffset.SeekPosition.BEGINNING))
+            .toArray(TopicPartitionOffset[]::new);
+        container = containerFactory.createContainer(offsets);
+        container.setBeanName("suppressionListListener");
+        container.setConcurrency(1);
+        container.setupMessageListener(this);
+        container.start();
+        log.info("Reading suppressed addresses from {} ({} partitions)", topic, offsets.length);
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (container != null) {
+            container.stop();
+            container = null;
+        }
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return container != null;
+    }
+}
@@ -0,0 +1,174 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.config.CoalescingConfig;
+import ph.edu.cspb.kafkasendgrid.model.EmailMessage;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Groups template emails that share a template ID and sender into a single SendGrid request
+ * with one personalization per message.
+ * <p>
+ * A group is flushed as soon as it reaches {@code sendgrid.coalescing.max-personalizations}
+ * or when its oldest message has waited {@code sendgrid.coalescing.max-delay}, whichever
+ * comes first. Every submitted message gets its own future, so results map back to the
+ * record it came from: a transient failure fails every message of the request, while a
+ * rejected request is resent one message at a time to isolate the records SendGrid refuses.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TemplateEmailCoalescer {
+
+    private final EmailService emailService;
+    private final CoalescingConfig coalescingConfig;
+
+    private final Map<GroupKey, PendingGroup> pending = new HashMap<>();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "template-coalescer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Whether template emails should be routed through the coalescer
+     * @return true if coalescing is enabled
+     */
+    public boolean isEnabled() {
+        return coalescingConfig.isEnabled();
+    }
+
+    /**
+     * Queues a template email for a coalesced send
+     * @param emailMessage the validated email message
+     * @param templateId the template ID resolved for the message
+     * @return future completed when the message is sent, or exceptionally with the send failure
+     */
+    public CompletableFuture<Void> submit(EmailMessage emailMessage, String templateId) {
+        GroupKey key = new GroupKey(templateId, emailService.resolveFromEmail(emailMessage));
+        PendingEmail pendingEmail = new PendingEmail(emailMessage, new CompletableFuture<>());
+        List<PendingEmail> full = null;
+
+        synchronized (pending) {
+            PendingGroup group = pending.get(key);
+            if (group == null) {
+                group = new PendingGroup();
+                PendingGroup scheduled = group;
+                group.timer = scheduler.schedule(() -> flush(key, scheduled),
+                    coalescingConfig.getMaxDelay().toMillis(), TimeUnit.MILLISECONDS);
+                pending.put(key, group);
+            }
+            group.emails.add(pendingEmail);
+            if (group.emails.size() >= coalescingConfig.getMaxPersonalizations()) {
+                pending.remove(key);
+                group.timer.cancel(false);
+                full = group.emails;
+            }
+        }
+
+        if (full != null) {
+            send(key, full);
+        }
+        return pendingEmail.future();
+    }
+
+    /**
+     * Sends every pending group immediately, on the calling thread
+     */
+    public void flush() {
+        Map<GroupKey, PendingGroup> groups;
+        synchronized (pending) {
+            groups = new HashMap<>(pending);
+            pending.clear();
+        }
+        groups.forEach((key, group) -> {
+            group.timer.cancel(false);
+            send(key, group.emails);
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+        scheduler.shutdownNow();
+    }
+
+    private void flush(GroupKey key, PendingGroup group) {
+        synchronized (pending) {
+            // The group may already have been flushed by size or by an explicit flush
+            if (pending.get(key) != group) {
+                return;
+            }
+            pending.remove(key);
+        }
+        send(key, group.emails);
+    }
+
+    private void send(GroupKey key, List<PendingEmail> emails) {
+        List<EmailMessage> emailMessages = new ArrayList<>(emails.size());
+        for (PendingEmail email : emails) {
+            emailMessages.add(email.emailMessage());
+        }
+
+        try {
+            emailService.sendTemplateBatch(key.templateId(), key.fromEmail(), emailMessages);
+            emails.forEach(email -> email.future().complete(null));
+        } catch (IOException e) {
+            // Transient: nothing was accepted, every record has to be retried
+            emails.forEach(email -> email.future().completeExceptionally(e));
+        } catch (Exception e) {
+            if (emails.size() == 1 || !isRejection(e)) {
+                // Throttling, outages and unexpected errors fail the whole group; sending each
+                // email on its own would only multiply the load on an already struggling SendGrid
+                emails.forEach(email -> email.future().completeExceptionally(e));
+                return;
+            }
+            log.warn("Coalesced request for template {} with {} personalizations was rejected; resending individually: {}",
+                key.templateId(), emails.size(), e.getMessage());
+            for (PendingEmail email : emails) {
+                try {
+                    emailService.sendEmail(email.emailMessage());
+                    email.future().complete(null);
+                } catch (Exception individual) {
+                    email.future().completeExceptionally(individual);
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether SendGrid rejected the request itself, which may be down to a single bad
+     * personalization, rather than throttling it or failing to handle it
+     */
+    private static boolean isRejection(Exception e) {
+        return e instanceof SendGridException sendGridException
+            && sendGridException.getStatusCode() >= 400
+            && sendGridException.getStatusCode() < 500
+            && !sendGridException.isTransient();
+    }
+
+    private record GroupKey(String templateId, String fromEmail) {
+    }
+
+    private record PendingEmail(EmailMessage emailMessage, CompletableFuture<Void> future) {
+    }
+
+    private static class PendingGroup {
+        private final List<PendingEmail> emails = new ArrayList<>();
+        private ScheduledFuture<?> timer;
+    }
+}
@@ -0,0 +1,283 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.config.TemplateConfig;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves notification types to SendGrid template IDs, and reloads the mapping while running.
+ * <p>
+ * Lookups read a single immutable {@link Snapshot} through a volatile field, so they take no
+ * lock and allocate nothing: the snapshot is an open-addressing table hashed and compared
+ * case-insensitively char by char, instead of lowercasing every notification type into a new
+ * string. Reloading builds a new snapshot and swaps it in whole, so a lookup sees either the
+ * old mapping or the new one, never a mix.
+ * <p>
+ * The mapping is layered: the {@code sendgrid.templates} properties bound at startup, replaced
+ * by the reload file when one is configured (checked every {@code reload.interval}, e.g. a
+ * mounted ConfigMap), then overridden entry by entry from the reload topic. A file that cannot
+ * be read or parsed leaves the current mapping in place.
+ * <p>
+ * Meters:
+ * <ul>
+ *   <li>{@code email.templates.mappings} gauge, notification types in the current mapping</li>
+ *   <li>{@code email.templates.reloads} counter, tagged {@code source} (file, topic)</li>
+ * </ul>
+ * The {@code notification.type} tags of the pipeline timers are still fixed at startup, so a
+ * type added by a reload is timed as {@code other} until the next restart.
+ */
+@Component
+@Slf4j
+public class TemplateRegistry {
+
+    /**
+     * Topic key whose value is the default template ID
+     */
+    static final String DEFAULT_KEY = "*";
+
+    private final TemplateConfig templateConfig;
+    private final ObjectMapper objectMapper;
+    private final Counter fileReloads;
+    private final Counter topicReloads;
+    private volatile Snapshot snapshot;
+
+    // Guarded by this
+    private byte[] fileContents;
+    private boolean fileMissing;
+    private Map<String, String> fileIds;
+    private String fileDefaultTemplateId;
+    private Boolean fileUseTemplatesByDefault;
+    private final Map<String, String> topicIds = new LinkedHashMap<>();
+    private ScheduledExecutorService watcher;
+
+    public TemplateRegistry(TemplateConfig templateConfig, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.templateConfig = templateConfig;
+        this.objectMapper = objectMapper;
+        this.fileReloads = reloadCounter(meterRegistry, "file");
+        this.topicReloads = reloadCounter(meterRegistry, "topic");
+        this.snapshot = new Snapshot(templateConfig.getIds(), templateConfig.getDefaultTemplateId(),
+            templateConfig.isUseTemplatesByDefault());
+
+        Gauge.builder("email.templates.mappings", this, registry -> registry.snapshot.size())
+            .description("Notification types mapped to a SendGrid template")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Loads the reload file, if any, and starts watching it
+     */
+    @PostConstruct
+    public synchronized void start() {
+        String file = templateConfig.getReload().getFile();
+        if (file == null || file.isBlank() || watcher != null) {
+            return;
+        }
+        reloadFile();
+        watcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "template-reload");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = Math.max(1, templateConfig.getReload().getInterval().toMillis());
+        watcher.scheduleWithFixedDelay(this::reloadFile, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        log.info("Watching {} for template changes every {}", file, templateConfig.getReload().getInterval());
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (watcher != null) {
+            watcher.shutdownNow();
+            watcher = null;
+        }
+    }
+
+    /**
+     * Get template ID for a specific notification type
+     * @param notificationType the type of notification, matched ignoring case
+     * @return template ID, the default template ID if the type is not mapped, or null if there is none
+     */
+    public String getTemplateId(String notificationType) {
+        return snapshot.getTemplateId(notificationType);
+    }
+
+    /**
+     * Check if a template exists for the given notification type
+     * @param notificationType the type of notification, matched ignoring case
+     * @return true if template exists
+     */
+    public boolean hasTemplate(String notificationType) {
+        return snapshot.hasTemplate(notificationType);
+    }
+
+    /**
+     * Whether to use templates by default when available
+     * @return true if notification types are resolved to templates
+     */
+    public boolean isUseTemplatesByDefault() {
+        return snapshot.useTemplatesByDefault;
+    }
+
+    /**
+     * Notification types in the current mapping
+     * @return the number of mapped types
+     */
+    public int size() {
+        return snapshot.size();
+    }
+
+    /**
+     * Re-reads the reload file and publishes a new mapping if its contents changed
+     * @return true if a new mapping was published
+     */
+    synchronized boolean reloadFile() {
+        Path path = Path.of(templateConfig.getReload().getFile());
+        byte[] contents;
+        try {
+            contents = Files.readAllBytes(path);
+        } catch (NoSuchFileException e) {
+            if (!fileMissing) {
+                log.warn("Template file {} does not exist; keeping the current templates", path);
+                fileMissing = true;
+            }
+            return false;
+        } catch (IOException e) {
+            log.error("Failed to read template file {}; keeping the current templates", path, e);
+            return false;
+        }
+        fileMissing = false;
+        if (Arrays.equals(contents, fileContents)) {
+            return false;
+        }
+        fileContents = contents;
+
+        JsonNode document;
+        try {
+            document = objectMapper.readTree(contents);
+        } catch (IOException e) {
+            log.error("Template file {} is not valid JSON; keeping the current templates: {}", path, e.getMessage());
+            return false;
+        }
+        if (document == null || !document.isObject()) {
+            log.error("Template file {} is not a JSON object; keeping the current templates", path);
+            return false;
+        }
+        Map<String, String> ids = new LinkedHashMap<>();
+        for (Map.Entry<String, JsonNode> field : document.path("ids").properties()) {
+            if (field.getValue().isTextual()) {
+                ids.put(field.getKey(), field.getValue().asText());
+            }
+        }
+        fileIds = document.has("ids") ? ids : null;
+        fileDefaultTemplateId = document.hasNonNull("defaultTemplateId") ? document.get("defaultTemplateId").asText() : null;
+        fileUseTemplatesByDefault = document.has("useTemplatesByDefault")
+            ? document.get("useTemplatesByDefault").asBoolean(true) : null;
+        publish();
+        fileReloads.increment();
+        log.info("Reloaded {} templates from {}", snapshot.size(), path);
+        return true;
+    }
+
+    /**
+     * Applies one record of the reload topic
+     * @param notificationType the notification type, or {@value #DEFAULT_KEY} for the default template
+     * @param templateId the template ID, or null to remove the override
+     */
+    public synchronized void applyOverride(String notificationType, String templateId) {
+        if (notificationType == null || notificationType.isBlank()) {
+            log.warn("Ignoring template override without a notification type");
+            return;
+        }
+        String key = notificationType.toLowerCase(Locale.ROOT);
+        if (templateId == null) {
+            topicIds.remove(key);
+        } else {
+            topicIds.put(key, templateId);
+        }
+        publish();
+        topicReloads.increment();
+        log.info("Template for {} {}", notificationType, templateId == null ? "override removed" : "set to " + templateId);
+    }
+
+    /**
+     * Builds the layered mapping and swaps it in; must hold the monitor
+     */
+    private void publish() {
+        Map<String, String> ids = new LinkedHashMap<>();
+        Map<String, String> base = fileIds != null ? fileIds : templateConfig.getIds();
+        base.forEach((type, templateId) -> ids.put(type.toLowerCase(Locale.ROOT), templateId));
+        topicIds.forEach((type, templateId) -> {
+            if (!DEFAULT_KEY.equals(type)) {
+                ids.put(type, templateId);
+            }
+        });
+
+        String defaultTemplateId = topicIds.containsKey(DEFAULT_KEY) ? topicIds.get(DEFAULT_KEY)
+            : fileDefaultTemplateId != null ? fileDefaultTemplateId
+            : templateConfig.getDefaultTemplateId();
+        boolean useTemplatesByDefault = fileUseTemplatesByDefault != null
+            ? fileUseTemplatesByDefault : templateConfig.isUseTemplatesByDefault();
+        snapshot = new Snapshot(ids, defaultTemplateId, useTemplatesByDefault);
+    }
+
+    private static Counter reloadCounter(MeterRegistry meterRegistry, String source) {
+        return Counter.builder("email.templates.reloads")
+            .description("Template mappings published after a change, by source")
+            .tag("source", source)
+            .register(meterRegistry);
+    }
+
+    /**
+     * Immutable template mapping with allocation-free, case-insensitive lookups
+     */
+    static final class Snapshot {
+
+        private final CaseInsensitiveTable<String> ids;
+        private final String defaultTemplateId;
+        private final boolean useTemplatesByDefault;
+
+        Snapshot(Map<String, String> ids, String defaultTemplateId, boolean useTemplatesByDefault) {
+            this.ids = new CaseInsensitiveTable<>(ids);
+            this.defaultTemplateId = defaultTemplateId;
+            this.useTemplatesByDefault = useTemplatesByDefault;
+        }
+
+        String getTemplateId(String notificationType) {
+            if (notificationType == null || notificationType.isBlank()) {
+                return defaultTemplateId;
+            }
+            String templateId = ids.get(notificationType);
+            return templateId != null ? templateId : defaultTemplateId;
+        }
+
+        boolean hasTemplate(String notificationType) {
+            if (notificationType == null || notificationType.isBlank()) {
+                return defaultTemplateId != null && !defaultTemplateId.isBlank();
+            }
+            String templateId = ids.get(notificationType);
+            return templateId != null && !templateId.isBlank();
+        }
+
+        int size() {
+            return ids.size();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.config.TemplateConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.PartitionInfo;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.MessageListener;
+import org.springframework.kafka.support.TopicPartitionOffset;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Feeds the {@link TemplateRegistry} from a compacted topic of template IDs keyed by notification type.
+ * <p>
+ * Every replica needs every mapping, so the topic's partitions are assigned directly rather than
+ * shared through the consumer group, and read from the beginning on each start; compaction keeps
+ * that replay down to the latest ID per type. No offsets are committed.
+ */
+@Service
+@Slf4j
+public class TemplateTopicListener implements MessageListener<String, byte[]>, SmartLifecycle {
+
+    private final TemplateRegistry templateRegistry;
+    private final TemplateConfig templateConfig;
+    private final ConcurrentKafkaListenerContainerFactory<String, byte[]> containerFactory;
+    private ConcurrentMessageListenerContainer<String, byte[]> container;
+
+    public TemplateTopicListener(
+            TemplateRegistry templateRegistry,
+            TemplateConfig templateConfig,
+            @Qualifier("kafkaListenerContainerFactory")
+            ConcurrentKafkaListenerContainerFactory<String, byte[]> containerFactory) {
+        this.templateRegistry = templateRegistry;
+        this.templateConfig = templateConfig;
+        this.containerFactory = containerFactory;
+    }
+
+    @Override
+    public void onMessage(ConsumerRecord<String, byte[]> record) {
+        String templateId = record.value() == null ? null : new String(record.value(), StandardCharsets.UTF_8).trim();
+        templateRegistry.applyOverride(record.key(), templateId == null || templateId.isEmpty() ? null : templateId);
+    }
+
+    @Override
+    public synchronized void start() {
+        String topic = templateConfig.getReload().getTopic();
+        if (topic == null || topic.isBlank() || container != null) {
+            return;
+        }
+        List<PartitionInfo> partitions;
+        try (Consumer<?, ?> consumer = containerFactory.getConsumerFactory().createConsumer()) {
+            partitions = consumer.partitionsFor(topic);
+        }
+        if (partitions == null || partitions.isEmpty()) {
+            log.warn("Template topic {} has no partitions; templates will not be reloaded from it", topic);
+            return;
+        }
+        TopicPartitionOffset[] offsets = partitions.stream()
+            .map(partition -> new TopicPartitionOffset(topic, partition.partition(), TopicPartitionOffset.SeekPosition.BEGINNING))
+            .toArray(TopicPartitionOffset[]::new);
+        container = containerFactory.createContainer(offsets);
+        container.setBeanName("templateRegistryListener");
+        container.setConcurrency(1);
+        container.setupMessageListener(this);
+        container.start();
+        log.info("Reloading templates from {} ({} partitions)", topic, offsets.length);
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (container != null) {
+            container.stop();
+            container = null;
+        }
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return container != null;
+    }
+}
@@ -0,0 +1,127 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel holding items until their due time.
+ * <p>
+ * Each level is a ring of {@code wheelSize} buckets, each covering one tick of that level. An
+ * item due within the level's span goes into the bucket for its due time; a later one goes up
+ * to the next level, whose ticks are as long as the whole span of the level below. When the
+ * clock reaches a higher-level bucket, its items cascade down into the finer levels, so
+ * adding and expiring cost O(1) however far ahead items are due, and only levels that are
+ * needed are ever created. Items come out up to one tick early, never late.
+ * <p>
+ * Not thread-safe; callers synchronize.
+ *
+ * @param <T> the item type
+ */
+final class TimingWheel<T> {
+
+    private final long tickMillis;
+    private final int wheelSize;
+    private final long spanMillis;
+    private final List<List<Entry<T>>> buckets;
+    private long currentTime;
+    private TimingWheel<T> overflow;
+
+    /**
+     * @param tickMillis length of one bucket of the finest level
+     * @param wheelSize buckets per level
+     * @param startMillis the current time
+     */
+    TimingWheel(long tickMillis, int wheelSize, long startMillis) {
+        this.tickMillis = tickMillis;
+        this.wheelSize = wheelSize;
+        this.spanMillis = tickMillis * wheelSize;
+        this.currentTime = startMillis - Math.floorMod(startMillis, tickMillis);
+        this.buckets = new ArrayList<>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) {
+            buckets.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Adds an item unless it is already due
+     * @param dueMillis when the item is due
+     * @param item the item
+     * @return false if the item is due within the current tick and was not added
+     */
+    boolean add(long dueMillis, T item) {
+        return add(new Entry<>(dueMillis, item));
+    }
+
+    /**
+     * Moves the clock forward and hands out every item that has come due, in due order
+     * to the tick
+     * @param nowMillis the current time
+     * @param due receives the items that have come due
+     */
+    void advance(long nowMillis, Consumer<T> due) {
+        long target = nowMillis - Math.floorMod(nowMillis, tickMillis);
+        List<Entry<T>> cascaded = new ArrayList<>();
+        while (currentTime < target) {
+            currentTime += tickMillis;
+            for (TimingWheel<T> level = overflow; level != null; level = level.overflow) {
+                level.advanceTo(currentTime, cascaded);
+            }
+            for (Entry<T> entry : cascaded) {
+                if (!add(entry)) {
+                    due.accept(entry.item);
+                }
+            }
+            cascaded.clear();
+
+            List<Entry<T>> bucket = buckets.get(index(currentTime));
+            for (Entry<T> entry : bucket) {
+                due.accept(entry.item);
+            }
+            bucket.clear();
+        }
+    }
+
+    /**
+     * Levels in use, including the finest
+     * @return the number of levels
+     */
+    int levels() {
+        return overflow == null ? 1 : 1 + overflow.levels();
+    }
+
+    private boolean add(Entry<T> entry) {
+        if (entry.dueMillis < currentTime + tickMillis) {
+            return false;
+        }
+        if (entry.dueMillis < currentTime + spanMillis) {
+            buckets.get(index(entry.dueMillis)).add(entry);
+            return true;
+        }
+        if (overflow == null) {
+            overflow = new TimingWheel<>(spanMillis, wheelSize, currentTime);
+        }
+        return overflow.add(entry);
+    }
+
+    /**
+     * Moves this level's clock to the tick containing the given time, taking out the items of
+     * every bucket it passes so they can be placed again in the finer levels
+     */
+    private void advanceTo(long timeMillis, List<Entry<T>> cascaded) {
+        long target = timeMillis - Math.floorMod(timeMillis, tickMillis);
+        while (currentTime < target) {
+            currentTime += tickMillis;
+            List<Entry<T>> bucket = buckets.get(index(currentTime));
+            cascaded.addAll(bucket);
+            bucket.clear();
+        }
+    }
+
+    private int index(long timeMillis) {
+        return (int) Math.floorMod(Math.floorDiv(timeMillis, tickMillis), (long) wheelSize);
+    }
+
+    private record Entry<T>(long dueMillis, T item) {
+    }
+}
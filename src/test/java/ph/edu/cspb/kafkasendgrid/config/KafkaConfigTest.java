@@ -1,14 +1,28 @@
 package ph.edu.cspb.kafkasendgrid.config;
 
+import ph.edu.cspb.kafkasendgrid.service.DrainCoordinator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.CooperativeStickyAssignor;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
 import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.support.TopicPartitionOffset;
 import org.springframework.test.util.ReflectionTestUtils;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.time.Duration;
+import java.util.List;
 import java.util.Map;
 
 import static org.testng.Assert.*;
@@ -19,10 +33,14 @@ import static org.testng.Assert.*;
 public class KafkaConfigTest {
 
     private KafkaConfig kafkaConfig;
+    private DrainConfig drainConfig;
+    private DrainCoordinator drainCoordinator;
 
     @BeforeMethod
     public void setUp() {
         kafkaConfig = new KafkaConfig();
+        drainConfig = new DrainConfig();
+        drainCoordinator = new DrainCoordinator(drainConfig, null, new SimpleMeterRegistry());
         // Set default test values
         ReflectionTestUtils.setField(kafkaConfig, "bootstrapServers", "localhost:9092");
         ReflectionTestUtils.setField(kafkaConfig, "groupId", "test-group");
@@ -32,7 +50,7 @@ public class KafkaConfigTest {
     @Test
     public void testConsumerFactory() {
         // Act
-        ConsumerFactory<String, String> consumerFactory = kafkaConfig.consumerFactory();
+        ConsumerFactory<String, byte[]> consumerFactory = kafkaConfig.consumerFactory();
 
         // Assert
         assertNotNull(consumerFactory);
@@ -43,7 +61,7 @@ public class KafkaConfigTest {
         assertEquals(configProps.get(ConsumerConfig.GROUP_ID_CONFIG), "test-group");
         assertEquals(configProps.get(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG), "earliest");
         assertEquals(configProps.get(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG), StringDeserializer.class);
-        assertEquals(configProps.get(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG), StringDeserializer.class);
+        assertEquals(configProps.get(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG), ByteArrayDeserializer.class);
         assertEquals(configProps.get(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG), false);
     }
 
@@ -53,7 +71,7 @@ public class KafkaConfigTest {
         ReflectionTestUtils.setField(kafkaConfig, "bootstrapServers", "kafka1:9092,kafka2:9092,kafka3:9092");
 
         // Act
-        ConsumerFactory<String, String> consumerFactory = kafkaConfig.consumerFactory();
+        ConsumerFactory<String, byte[]> consumerFactory = kafkaConfig.consumerFactory();
 
         // Assert
         assertNotNull(consumerFactory);
@@ -67,7 +85,7 @@ public class KafkaConfigTest {
         ReflectionTestUtils.setField(kafkaConfig, "groupId", "custom-consumer-group");
 
         // Act
-        ConsumerFactory<String, String> consumerFactory = kafkaConfig.consumerFactory();
+        ConsumerFactory<String, byte[]> consumerFactory = kafkaConfig.consumerFactory();
 
         // Assert
         assertNotNull(consumerFactory);
@@ -81,7 +99,7 @@ public class KafkaConfigTest {
         ReflectionTestUtils.setField(kafkaConfig, "autoOffsetReset", "latest");
 
         // Act
-        ConsumerFactory<String, String> consumerFactory = kafkaConfig.consumerFactory();
+        ConsumerFactory<String, byte[]> consumerFactory = kafkaConfig.consumerFactory();
 
         // Assert
         assertNotNull(consumerFactory);
@@ -89,10 +107,98 @@ public class KafkaConfigTest {
         assertEquals(configProps.get(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG), "latest");
     }
 
+    @Test
+    public void testConsumerFactoryUsesCooperativeRebalancing() {
+        // Act
+        ConsumerFactory<String, byte[]> consumerFactory = kafkaConfig.consumerFactory();
+
+        // Assert
+        Map<String, Object> configProps = consumerFactory.getConfigurationProperties();
+        assertEquals(configProps.get(ConsumerConfig.PARTITION_ASSIGNMENT_STRATEGY_CONFIG), List.of(CooperativeStickyAssignor.class));
+        assertEquals(configProps.get(ConsumerConfig.SESSION_TIMEOUT_MS_CONFIG), 45_000);
+        assertNull(configProps.get(ConsumerConfig.GROUP_INSTANCE_ID_CONFIG));
+    }
+
+    @Test
+    public void testConsumerFactoryKeepsKafkaDefaultAssignorsWhenCooperativeRebalancingIsOff() {
+        // Arrange
+        ReflectionTestUtils.setField(kafkaConfig, "cooperativeRebalancing", false);
+        ReflectionTestUtils.setField(kafkaConfig, "sessionTimeout", Duration.ofMinutes(2));
+
+        // Act
+        ConsumerFactory<String, byte[]> consumerFactory = kafkaConfig.consumerFactory();
+
+        // Assert
+        Map<String, Object> configProps = consumerFactory.getConfigurationProperties();
+        assertFalse(configProps.containsKey(ConsumerConfig.PARTITION_ASSIGNMENT_STRATEGY_CONFIG));
+        assertEquals(configProps.get(ConsumerConfig.SESSION_TIMEOUT_MS_CONFIG), 120_000);
+    }
+
+    @Test
+    public void testConsumerFactoryExportsClientMetrics() {
+        // Arrange
+        ReflectionTestUtils.setField(kafkaConfig, "meterRegistry", new SimpleMeterRegistry());
+
+        // Act
+        ConsumerFactory<String, byte[]> consumerFactory = kafkaConfig.consumerFactory();
+
+        // Assert
+        assertEquals(((DefaultKafkaConsumerFactory<String, byte[]>) consumerFactory).getListeners().size(), 1);
+    }
+
+    @Test
+    public void testStaticMemberIdIsUniquePerSubscribingContainer() {
+        // Arrange
+        ReflectionTestUtils.setField(kafkaConfig, "groupInstanceId", "kafka-sendgrid-0");
+        ConcurrentMessageListenerContainer<String, byte[]> mainContainer = new ConcurrentMessageListenerContainer<>(
+            kafkaConfig.consumerFactory(), new ContainerProperties("emails"));
+        ConcurrentMessageListenerContainer<String, byte[]> retryContainer = new ConcurrentMessageListenerContainer<>(
+            kafkaConfig.consumerFactory(), new ContainerProperties("emails-retry-1"));
+
+        // Act
+        kafkaConfig.joinAsStaticMember(mainContainer);
+        kafkaConfig.joinAsStaticMember(retryContainer);
+
+        // Assert
+        assertEquals(mainContainer.getContainerProperties().getKafkaConsumerProperties()
+            .getProperty(ConsumerConfig.GROUP_INSTANCE_ID_CONFIG), "kafka-sendgrid-0-emails");
+        assertEquals(retryContainer.getContainerProperties().getKafkaConsumerProperties()
+            .getProperty(ConsumerConfig.GROUP_INSTANCE_ID_CONFIG), "kafka-sendgrid-0-emails-retry-1");
+    }
+
+    @Test
+    public void testNoStaticMemberIdWithoutGroupInstanceId() {
+        // Arrange
+        ConcurrentMessageListenerContainer<String, byte[]> container = new ConcurrentMessageListenerContainer<>(
+            kafkaConfig.consumerFactory(), new ContainerProperties("emails"));
+
+        // Act
+        kafkaConfig.joinAsStaticMember(container);
+
+        // Assert
+        assertNull(container.getContainerProperties().getKafkaConsumerProperties()
+            .getProperty(ConsumerConfig.GROUP_INSTANCE_ID_CONFIG));
+    }
+
+    @Test
+    public void testNoStaticMemberIdForAssignedPartitions() {
+        // Arrange
+        ReflectionTestUtils.setField(kafkaConfig, "groupInstanceId", "kafka-sendgrid-0");
+        ConcurrentMessageListenerContainer<String, byte[]> container = new ConcurrentMessageListenerContainer<>(
+            kafkaConfig.consumerFactory(), new ContainerProperties(new TopicPartitionOffset("templates", 0)));
+
+        // Act
+        kafkaConfig.joinAsStaticMember(container);
+
+        // Assert
+        assertNull(container.getContainerProperties().getKafkaConsumerProperties()
+            .getProperty(ConsumerConfig.GROUP_INSTANCE_ID_CONFIG));
+    }
+
     @Test
     public void testKafkaListenerContainerFactory() {
         // Act
-        ConcurrentKafkaListenerContainerFactory<String, String> factory = kafkaConfig.kafkaListenerContainerFactory();
+        ConcurrentKafkaListenerContainerFactory<String, byte[]> factory = kafkaConfig.kafkaListenerContainerFactory(drainCoordinator, drainConfig);
 
         // Assert
         assertNotNull(factory);
@@ -100,13 +206,30 @@ public class KafkaConfigTest {
         assertEquals(factory.getContainerProperties().getAckMode(), ContainerProperties.AckMode.MANUAL_IMMEDIATE);
     }
 
+    @Test
+    public void testContainerFactoriesDrainOnShutdown() {
+        // Arrange
+        drainConfig.setDeadline(Duration.ofSeconds(20));
+        drainConfig.setCloseTimeout(Duration.ofSeconds(10));
+
+        // Act
+        ConcurrentKafkaListenerContainerFactory<String, byte[]> factory = kafkaConfig.kafkaListenerContainerFactory(drainCoordinator, drainConfig);
+        ConcurrentKafkaListenerContainerFactory<String, byte[]> batchFactory = kafkaConfig.batchKafkaListenerContainerFactory(drainCoordinator, drainConfig);
+
+        // Assert
+        assertSame(factory.getContainerProperties().getConsumerRebalanceListener(), drainCoordinator);
+        assertSame(batchFactory.getContainerProperties().getConsumerRebalanceListener(), drainCoordinator);
+        assertEquals(factory.getContainerProperties().getShutdownTimeout(), 30_000L);
+        assertEquals(batchFactory.getContainerProperties().getShutdownTimeout(), 30_000L);
+    }
+
     @Test
     public void testKafkaListenerContainerFactoryUsesCorrectConsumerFactory() {
         // Arrange
-        ConsumerFactory<String, String> expectedConsumerFactory = kafkaConfig.consumerFactory();
+        ConsumerFactory<String, byte[]> expectedConsumerFactory = kafkaConfig.consumerFactory();
 
         // Act
-        ConcurrentKafkaListenerContainerFactory<String, String> factory = kafkaConfig.kafkaListenerContainerFactory();
+        ConcurrentKafkaListenerContainerFactory<String, byte[]> factory = kafkaConfig.kafkaListenerContainerFactory(drainCoordinator, drainConfig);
 
         // Assert
         assertNotNull(factory);
@@ -124,8 +247,8 @@ public class KafkaConfigTest {
     @Test
     public void testConsumerFactoryReturnsNewInstance() {
         // Act
-        ConsumerFactory<String, String> factory1 = kafkaConfig.consumerFactory();
-        ConsumerFactory<String, String> factory2 = kafkaConfig.consumerFactory();
+        ConsumerFactory<String, byte[]> factory1 = kafkaConfig.consumerFactory();
+        ConsumerFactory<String, byte[]> factory2 = kafkaConfig.consumerFactory();
 
         // Assert
         assertNotNull(factory1);
@@ -136,8 +259,8 @@ public class KafkaConfigTest {
     @Test
     public void testKafkaListenerContainerFactoryReturnsNewInstance() {
         // Act
-        ConcurrentKafkaListenerContainerFactory<String, String> factory1 = kafkaConfig.kafkaListenerContainerFactory();
-        ConcurrentKafkaListenerContainerFactory<String, String> factory2 = kafkaConfig.kafkaListenerContainerFactory();
+        ConcurrentKafkaListenerContainerFactory<String, byte[]> factory1 = kafkaConfig.kafkaListenerContainerFactory(drainCoordinator, drainConfig);
+        ConcurrentKafkaListenerContainerFactory<String, byte[]> factory2 = kafkaConfig.kafkaListenerContainerFactory(drainCoordinator, drainConfig);
 
         // Assert
         assertNotNull(factory1);
@@ -160,7 +283,7 @@ public class KafkaConfigTest {
         ReflectionTestUtils.setField(kafkaConfig, "bootstrapServers", "");
 
         // Act
-        ConsumerFactory<String, String> consumerFactory = kafkaConfig.consumerFactory();
+        ConsumerFactory<String, byte[]> consumerFactory = kafkaConfig.consumerFactory();
 
         // Assert
         assertNotNull(consumerFactory);
@@ -177,7 +300,7 @@ public class KafkaConfigTest {
 
         // Act & Assert - This should not throw an exception
         try {
-            ConsumerFactory<String, String> consumerFactory = kafkaConfig.consumerFactory();
+            ConsumerFactory<String, byte[]> consumerFactory = kafkaConfig.consumerFactory();
             assertNotNull(consumerFactory);
             Map<String, Object> configProps = consumerFactory.getConfigurationProperties();
             assertNotNull(configProps);
@@ -190,7 +313,7 @@ public class KafkaConfigTest {
     @Test
     public void testConsumerFactoryHasRequiredProperties() {
         // Act
-        ConsumerFactory<String, String> consumerFactory = kafkaConfig.consumerFactory();
+        ConsumerFactory<String, byte[]> consumerFactory = kafkaConfig.consumerFactory();
 
         // Assert
         assertNotNull(consumerFactory);
@@ -208,7 +331,7 @@ public class KafkaConfigTest {
     @Test
     public void testKafkaListenerContainerFactoryAckMode() {
         // Act
-        ConcurrentKafkaListenerContainerFactory<String, String> factory = kafkaConfig.kafkaListenerContainerFactory();
+        ConcurrentKafkaListenerContainerFactory<String, byte[]> factory = kafkaConfig.kafkaListenerContainerFactory(drainCoordinator, drainConfig);
 
         // Assert
         assertNotNull(factory);
@@ -223,7 +346,7 @@ public class KafkaConfigTest {
         ReflectionTestUtils.setField(kafkaConfig, "autoOffsetReset", "earliest");
 
         // Act
-        ConsumerFactory<String, String> consumerFactory = kafkaConfig.consumerFactory();
+        ConsumerFactory<String, byte[]> consumerFactory = kafkaConfig.consumerFactory();
 
         // Assert
         assertNotNull(consumerFactory);
@@ -231,4 +354,41 @@ public class KafkaConfigTest {
         assertEquals(configProps.get(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG), "kafka-cluster.example.com:9092");
         assertEquals(configProps.get(ConsumerConfig.GROUP_ID_CONFIG), "consumer-group-with-dashes_and_underscores");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testBatchKafkaListenerContainerFactory() {
+        // Act
+        ConcurrentKafkaListenerContainerFactory<String, byte[]> factory = kafkaConfig.batchKafkaListenerContainerFactory(drainCoordinator, drainConfig);
+
+        // Assert
+        assertNotNull(factory);
+        assertNotNull(factory.getConsumerFactory());
+        assertTrue(factory.isBatchListener());
+        assertEquals(factory.getContainerProperties().getAckMode(), ContainerProperties.AckMode.MANUAL_IMMEDIATE);
+    }
+
+    @Test
+    public void testProducerFactory() {
+        // Act
+        ProducerFactory<String, byte[]> producerFactory = kafkaConfig.producerFactory();
+
+        // Assert
+        Map<String, Object> configProps = producerFactory.getConfigurationProperties();
+        assertEquals(configProps.get(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG), "localhost:9092");
+        assertEquals(configProps.get(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG), StringSerializer.class);
+        assertEquals(configProps.get(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG), ByteArraySerializer.class);
+        assertEquals(configProps.get(ProducerConfig.ACKS_CONFIG), "all");
+        assertEquals(configProps.get(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG), true);
+    }
+
+    @Test
+    public void testKafkaTemplate() {
+        // Act
+        KafkaTemplate<String, byte[]> kafkaTemplate = kafkaConfig.kafkaTemplate();
+
+        // Assert
+        assertNotNull(kafkaTemplate);
+        assertEquals(kafkaTemplate.getProducerFactory().getConfigurationProperties()
+            .get(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG), "localhost:9092");
+    }
+}
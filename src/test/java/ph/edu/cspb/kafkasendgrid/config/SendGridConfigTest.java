@@ -1,6 +1,15 @@
 package ph.edu.cspb.kafkasendgrid.config;
 
+import ph.edu.cspb.kafkasendgrid.fake.FakeSendGridServer;
+import ph.edu.cspb.kafkasendgrid.service.BlockingSendGridTransport;
+import ph.edu.cspb.kafkasendgrid.service.HttpClientSendGridTransport;
+import ph.edu.cspb.kafkasendgrid.service.PooledSendGridTransport;
+import ph.edu.cspb.kafkasendgrid.service.SendGridTransport;
+import com.sendgrid.Method;
+import com.sendgrid.Request;
+import com.sendgrid.Response;
 import com.sendgrid.SendGrid;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.springframework.test.util.ReflectionTestUtils;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
@@ -25,7 +34,7 @@ public class SendGridConfigTest {
         ReflectionTestUtils.setField(sendGridConfig, "apiKey", "test-api-key");
 
         // Act
-        SendGrid sendGrid = sendGridConfig.sendGrid();
+        SendGrid sendGrid = sendGridConfig.sendGrid(new SendGridTransportConfig());
 
         // Assert
         assertNotNull(sendGrid);
@@ -42,7 +51,7 @@ public class SendGridConfigTest {
             ReflectionTestUtils.setField(sendGridConfig, "apiKey", apiKey);
 
             // Act
-            SendGrid sendGrid = sendGridConfig.sendGrid();
+            SendGrid sendGrid = sendGridConfig.sendGrid(new SendGridTransportConfig());
 
             // Assert
             assertNotNull(sendGrid);
@@ -56,7 +65,7 @@ public class SendGridConfigTest {
         ReflectionTestUtils.setField(sendGridConfig, "apiKey", null);
 
         // Act
-        SendGrid sendGrid = sendGridConfig.sendGrid();
+        SendGrid sendGrid = sendGridConfig.sendGrid(new SendGridTransportConfig());
 
         // Assert
         assertNotNull(sendGrid);
@@ -69,8 +78,8 @@ public class SendGridConfigTest {
         ReflectionTestUtils.setField(sendGridConfig, "apiKey", "test-api-key");
 
         // Act
-        SendGrid sendGrid1 = sendGridConfig.sendGrid();
-        SendGrid sendGrid2 = sendGridConfig.sendGrid();
+        SendGrid sendGrid1 = sendGridConfig.sendGrid(new SendGridTransportConfig());
+        SendGrid sendGrid2 = sendGridConfig.sendGrid(new SendGridTransportConfig());
 
         // Assert
         assertNotNull(sendGrid1);
@@ -95,7 +104,7 @@ public class SendGridConfigTest {
         ReflectionTestUtils.setField(sendGridConfig, "apiKey", validApiKey);
 
         // Act
-        SendGrid sendGrid = sendGridConfig.sendGrid();
+        SendGrid sendGrid = sendGridConfig.sendGrid(new SendGridTransportConfig());
 
         // Assert
         assertNotNull(sendGrid);
@@ -109,7 +118,7 @@ public class SendGridConfigTest {
         ReflectionTestUtils.setField(sendGridConfig, "apiKey", apiKeyWithSpecialChars);
 
         // Act
-        SendGrid sendGrid = sendGridConfig.sendGrid();
+        SendGrid sendGrid = sendGridConfig.sendGrid(new SendGridTransportConfig());
 
         // Assert
         assertNotNull(sendGrid);
@@ -126,7 +135,7 @@ public class SendGridConfigTest {
         ReflectionTestUtils.setField(sendGridConfig, "apiKey", longApiKey.toString());
 
         // Act
-        SendGrid sendGrid = sendGridConfig.sendGrid();
+        SendGrid sendGrid = sendGridConfig.sendGrid(new SendGridTransportConfig());
 
         // Assert
         assertNotNull(sendGrid);
@@ -140,9 +149,77 @@ public class SendGridConfigTest {
 
         // Act & Assert - Multiple calls should not throw exceptions
         for (int i = 0; i < 5; i++) {
-            SendGrid sendGrid = sendGridConfig.sendGrid();
+            SendGrid sendGrid = sendGridConfig.sendGrid(new SendGridTransportConfig());
             assertNotNull(sendGrid);
             assertTrue(sendGrid instanceof SendGrid);
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testSendGridTransportDefaultsToBlocking() {
+        // Arrange
+        ReflectionTestUtils.setField(sendGridConfig, "apiKey", "test-api-key");
+
+        // Act
+        SendGridTransport transport = sendGridConfig.sendGridTransport(sendGridConfig.sendGrid(new SendGridTransportConfig()), new SendGridTransportConfig(),
+            new SimpleMeterRegistry());
+
+        // Assert
+        assertTrue(transport instanceof BlockingSendGridTransport);
+    }
+
+    @Test
+    public void testSendGridTransportHttp2() throws Exception {
+        // Arrange
+        ReflectionTestUtils.setField(sendGridConfig, "apiKey", "test-api-key");
+        SendGridTransportConfig transportConfig = new SendGridTransportConfig();
+        transportConfig.setType(SendGridTransportConfig.Type.HTTP2);
+
+        // Act
+        SendGridTransport transport = sendGridConfig.sendGridTransport(sendGridConfig.sendGrid(new SendGridTransportConfig()), transportConfig,
+            new SimpleMeterRegistry());
+
+        // Assert
+        assertTrue(transport instanceof HttpClientSendGridTransport);
+        ((HttpClientSendGridTransport) transport).close();
+    }
+
+    @Test
+    public void testSendGridTransportPooled() throws Exception {
+        // Arrange
+        ReflectionTestUtils.setField(sendGridConfig, "apiKey", "test-api-key");
+        SendGridTransportConfig transportConfig = new SendGridTransportConfig();
+        transportConfig.setType(SendGridTransportConfig.Type.POOLED);
+
+        // Act
+        SendGridTransport transport = sendGridConfig.sendGridTransport(sendGridConfig.sendGrid(new SendGridTransportConfig()), transportConfig,
+            new SimpleMeterRegistry());
+
+        // Assert
+        assertTrue(transport instanceof PooledSendGridTransport);
+        ((PooledSendGridTransport) transport).close();
+    }
+
+    @Test
+    public void testSendGridBeanFollowsBaseUrl() throws Exception {
+        // Arrange
+        ReflectionTestUtils.setField(sendGridConfig, "apiKey", "test-api-key");
+        try (FakeSendGridServer server = FakeSendGridServer.start("test-api-key")) {
+            SendGridTransportConfig transportConfig = new SendGridTransportConfig();
+            transportConfig.setBaseUrl(server.baseUrl());
+            Request request = new Request();
+            request.setMethod(Method.POST);
+            request.setEndpoint("mail/send");
+            request.setBody("{\"from\":{\"email\":\"no-reply@example.com\"},"
+                + "\"personalizations\":[{\"to\":[{\"email\":\"student@example.com\"}]}],\"template_id\":\"d-123\"}");
+
+            // Act
+            Response response = sendGridConfig.sendGrid(transportConfig).api(request);
+
+            // Assert
+            assertEquals(response.getStatusCode(), 202);
+            assertEquals(server.requests().size(), 1);
+            assertEquals(server.requests().get(0).path(), "/v3/mail/send");
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package ph.edu.cspb.kafkasendgrid.controller;
+
+import ph.edu.cspb.kafkasendgrid.service.DeadLetterRedriver;
+import ph.edu.cspb.kafkasendgrid.service.DeadLetterRedriver.RedriveStatus;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.*;
+
+/**
+ * Unit tests for DeadLetterRedriveEndpoint class.
+ */
+public class DeadLetterRedriveEndpointTest {
+
+    @Mock
+    private DeadLetterRedriver deadLetterRedriver;
+
+    @InjectMocks
+    private DeadLetterRedriveEndpoint deadLetterRedriveEndpoint;
+
+    @BeforeMethod
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    public void testStartReturnsAccepted() {
+        // Arrange
+        RedriveStatus status = mock(RedriveStatus.class);
+        when(deadLetterRedriver.start(0, 10L, 20L, 5.0)).thenReturn(status);
+
+        // Act
+        WebEndpointResponse<Object> response = deadLetterRedriveEndpoint.start(0, 10L, 20L, 5.0);
+
+        // Assert
+        assertEquals(response.getStatus(), 202);
+        assertSame(response.getBody(), status);
+    }
+
+    @Test
+    public void testStartWithInvalidRangeReturnsBadRequest() {
+        // Arrange
+        when(deadLetterRedriver.start(0, 20L, 10L, null)).thenThrow(new IllegalArgumentException("bad range"));
+
+        // Act
+        WebEndpointResponse<Object> response = deadLetterRedriveEndpoint.start(0, 20L, 10L, null);
+
+        // Assert
+        assertEquals(response.getStatus(), 400);
+    }
+
+    @Test
+    public void testStartWhileRunningReturnsConflict() {
+        // Arrange
+        when(deadLetterRedriver.start(0, 10L, 20L, null)).thenThrow(new IllegalStateException("running"));
+
+        // Act
+        WebEndpointResponse<Object> response = deadLetterRedriveEndpoint.start(0, 10L, 20L, null);
+
+        // Assert
+        assertEquals(response.getStatus(), 409);
+    }
+
+    @Test
+    public void testStatusWithoutRedriveReturnsNotFound() {
+        // Act
+        WebEndpointResponse<RedriveStatus> response = deadLetterRedriveEndpoint.status();
+
+        // Assert
+        assertEquals(response.getStatus(), 404);
+    }
+
+    @Test
+    public void testCancel() {
+        // Arrange
+        when(deadLetterRedriver.cancel()).thenReturn(true);
+
+        // Act & Assert
+        assertEquals(deadLetterRedriveEndpoint.cancel().getStatus(), 202);
+    }
+}
@@ -0,0 +1,58 @@
+package ph.edu.cspb.kafkasendgrid.controller;
+
+import ph.edu.cspb.kafkasendgrid.controller.DomainsEndpoint.DomainsReport;
+import ph.edu.cspb.kafkasendgrid.service.DomainLimiter;
+import ph.edu.cspb.kafkasendgrid.service.DomainLimiter.DomainStats;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.*;
+
+/**
+ * Unit tests for DomainsEndpoint class.
+ */
+public class DomainsEndpointTest {
+
+    @Mock
+    private DomainLimiter domainLimiter;
+
+    @InjectMocks
+    private DomainsEndpoint domainsEndpoint;
+
+    @BeforeMethod
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    public void testReportsTopAndSlowDomains() {
+        // Arrange
+        DomainStats busy = new DomainStats("example.com", 120, 0, 3, 85.0, 0.0, false);
+        DomainStats slow = new DomainStats("slow.org", 40, 0, 1, 4200.0, 0.1, true);
+        when(domainLimiter.topDomains(5)).thenReturn(List.of(busy, slow));
+        when(domainLimiter.slowDomains()).thenReturn(List.of(slow));
+
+        // Act
+        DomainsReport report = domainsEndpoint.domains(5);
+
+        // Assert
+        assertEquals(report.top(), List.of(busy, slow));
+        assertEquals(report.slow(), List.of(slow));
+    }
+
+    @Test
+    public void testMissingLimitUsesDefault() {
+        // Act
+        domainsEndpoint.domains(null);
+        domainsEndpoint.domains(0);
+
+        // Assert
+        verify(domainLimiter, times(2)).topDomains(20);
+    }
+}
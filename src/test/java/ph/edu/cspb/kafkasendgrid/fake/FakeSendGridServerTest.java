@@ -0,0 +1,324 @@
+package ph.edu.cspb.kafkasendgrid.fake;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import static org.testng.Assert.*;
+
+/**
+ * Unit tests for FakeSendGridServer.
+ */
+public class FakeSendGridServerTest {
+
+    private static final String API_KEY = "SG.fake-key";
+    private static final String PLAIN_TEXT_MAIL = "{\"from\":{\"email\":\"no-reply@example.com\"},\"subject\":\"Test\","
+        + "\"personalizations\":[{\"to\":[{\"email\":\"student@example.com\"}]}],"
+        + "\"content\":[{\"type\":\"text/plain\",\"value\":\"Hello\"}]}";
+    private static final String TEMPLATE_MAIL = "{\"from\":{\"email\":\"no-reply@example.com\"},"
+        + "\"personalizations\":[{\"to\":[{\"email\":\"student@example.com\"}],\"dynamic_template_data\":{\"n\":1}}],"
+        + "\"template_id\":\"d-template-123\"}";
+
+    private FakeSendGridServer server;
+    private HttpClient httpClient;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        server = FakeSendGridServer.start(API_KEY);
+        httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void testAcceptsAndRecordsValidMail() throws Exception {
+        // Act
+        HttpResponse<String> plainText = post(PLAIN_TEXT_MAIL);
+        HttpResponse<String> template = post(TEMPLATE_MAIL);
+
+        // Assert
+        assertEquals(plainText.statusCode(), 202);
+        assertEquals(template.statusCode(), 202);
+        assertTrue(plainText.headers().firstValue("X-Message-Id").isPresent());
+        assertNotEquals(plainText.headers().firstValue("X-Message-Id"), template.headers().firstValue("X-Message-Id"));
+        List<RecordedRequest> requests = server.requests();
+        assertEquals(requests.size(), 2);
+        assertEquals(requests.get(0).path(), "/v3/mail/send");
+        assertEquals(requests.get(0).header("Authorization"), "Bearer " + API_KEY);
+        assertEquals(requests.get(0).status(), 202);
+        assertEquals(requests.get(0).json().path("subject").asText(), "Test");
+        assertEquals(server.statusCount(202), 2);
+    }
+
+    @Test
+    public void testAcceptsGzipCompressedBody() throws Exception {
+        // Arrange
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(TEMPLATE_MAIL.getBytes(StandardCharsets.UTF_8));
+        }
+        HttpRequest request = mailSend(API_KEY)
+            .header("Content-Encoding", "gzip")
+            .POST(HttpRequest.BodyPublishers.ofByteArray(compressed.toByteArray()))
+            .build();
+
+        // Act
+        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+        // Assert
+        assertEquals(response.statusCode(), 202);
+        assertEquals(server.requests().get(0).body(), TEMPLATE_MAIL);
+    }
+
+    @Test
+    public void testCreatesBatchIds() throws Exception {
+        // Arrange
+        HttpRequest request = HttpRequest.newBuilder(URI.create(server.baseUrl() + "/v3/mail/batch"))
+            .header("Authorization", "Bearer " + API_KEY)
+            .POST(HttpRequest.BodyPublishers.noBody())
+            .build();
+
+        // Act
+        HttpResponse<String> first = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        HttpResponse<String> second = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+        // Assert
+        assertEquals(first.statusCode(), 201);
+        assertTrue(first.body().contains("\"batch_id\":\"fake-batch-"));
+        assertNotEquals(first.body(), second.body());
+    }
+
+    @Test
+    public void testRejectsWrongApiKey() throws Exception {
+        // Arrange
+        HttpRequest request = mailSend("SG.wrong-key")
+            .POST(HttpRequest.BodyPublishers.ofString(PLAIN_TEXT_MAIL))
+            .build();
+
+        // Act
+        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+        // Assert
+        assertEquals(response.statusCode(), 401);
+        assertTrue(response.body().contains("\"errors\""));
+    }
+
+    @Test
+    public void testRejectsInvalidMailWithField() throws Exception {
+        // Act
+        HttpResponse<String> noPersonalizations = post(
+            "{\"from\":{\"email\":\"no-reply@example.com\"},\"template_id\":\"d-1\"}");
+        HttpResponse<String> badRecipient = post(TEMPLATE_MAIL.replace("student@example.com", "student"));
+        HttpResponse<String> noSubject = post(PLAIN_TEXT_MAIL.replace("\"subject\":\"Test\",", ""));
+        HttpResponse<String> notJson = post("not json");
+
+        // Assert
+        assertEquals(noPersonalizations.statusCode(), 400);
+        assertTrue(noPersonalizations.body().contains("\"field\":\"personalizations\""));
+        assertEquals(badRecipient.statusCode(), 400);
+        assertTrue(badRecipient.body().contains("\"field\":\"personalizations.0.to.0.email\""));
+        assertEquals(noSubject.statusCode(), 400);
+        assertTrue(noSubject.body().contains("\"field\":\"subject\""));
+        assertEquals(notJson.statusCode(), 400);
+        assertEquals(server.statusCount(400), 4);
+    }
+
+    @Test
+    public void testThrottlingSendsRateLimitHeaders() throws Exception {
+        // Arrange
+        server.setFaults(FaultProfile.builder().throttleRate(1).build());
+
+        // Act
+        HttpResponse<String> response = post(TEMPLATE_MAIL);
+
+        // Assert
+        assertEquals(response.statusCode(), 429);
+        assertEquals(response.headers().firstValue("X-RateLimit-Remaining").orElse(null), "0");
+        long resetEpochSeconds = Long.parseLong(response.headers().firstValue("X-RateLimit-Reset").orElseThrow());
+        assertTrue(resetEpochSeconds > TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()));
+    }
+
+    @Test
+    public void testRateLimitWindowThrottlesExcessRequests() throws Exception {
+        // Arrange
+        server.setFaults(FaultProfile.builder().rateLimit(2).rateLimitWindow(Duration.ofHours(1)).build());
+
+        // Act
+        HttpResponse<String> first = post(TEMPLATE_MAIL);
+        HttpResponse<String> second = post(TEMPLATE_MAIL);
+        HttpResponse<String> third = post(TEMPLATE_MAIL);
+
+        // Assert
+        assertEquals(first.statusCode(), 202);
+        assertEquals(first.headers().firstValue("X-RateLimit-Limit").orElse(null), "2");
+        assertEquals(first.headers().firstValue("X-RateLimit-Remaining").orElse(null), "1");
+        assertEquals(second.statusCode(), 202);
+        assertEquals(second.headers().firstValue("X-RateLimit-Remaining").orElse(null), "0");
+        assertEquals(third.statusCode(), 429);
+    }
+
+    @Test
+    public void testServerErrorsUseConfiguredStatus() throws Exception {
+        // Arrange
+        server.setFaults(FaultProfile.builder().serverErrorRate(1).serverErrorStatus(502).build());
+
+        // Act
+        HttpResponse<String> response = post(TEMPLATE_MAIL);
+
+        // Assert
+        assertEquals(response.statusCode(), 502);
+        assertEquals(server.statusCount(502), 1);
+    }
+
+    @Test
+    public void testFaultRatesApplyToAShareOfRequests() throws Exception {
+        // Arrange
+        server.setFaults(FaultProfile.builder().serverErrorRate(0.3).seed(42).build());
+
+        // Act
+        for (int i = 0; i < 200; i++) {
+            post(TEMPLATE_MAIL);
+        }
+
+        // Assert
+        assertEquals(server.statusCount(202) + server.statusCount(503), 200);
+        assertTrue(server.statusCount(503) > 30 && server.statusCount(503) < 90, "errors: " + server.statusCount(503));
+    }
+
+    @Test
+    public void testResetDropsConnection() throws Exception {
+        // Arrange
+        server.setFaults(FaultProfile.builder().resetRate(1).build());
+
+        // Act & Assert
+        assertThrows(IOException.class, () -> post(TEMPLATE_MAIL));
+        assertTrue(server.statusCount(-1) >= 1);
+    }
+
+    @Test
+    public void testLatencyDelaysResponse() throws Exception {
+        // Arrange
+        server.setFaults(FaultProfile.builder().latency(LatencyDistribution.fixed(Duration.ofMillis(200))).build());
+        long start = System.nanoTime();
+
+        // Act
+        HttpResponse<String> response = post(TEMPLATE_MAIL);
+
+        // Assert
+        assertEquals(response.statusCode(), 202);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200));
+    }
+
+    @Test
+    public void testSlowBodyTricklesAfterHeaders() throws Exception {
+        // Arrange
+        server.setFaults(FaultProfile.builder().slowBodyRate(1).slowBodyDelay(Duration.ofMillis(150)).build());
+        long start = System.nanoTime();
+
+        // Act
+        HttpResponse<String> response = post(TEMPLATE_MAIL);
+
+        // Assert - the empty accepted body becomes "{}", one byte per delay
+        assertEquals(response.statusCode(), 202);
+        assertEquals(response.body(), "{}");
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(300));
+    }
+
+    @Test
+    public void testTracksPeakConcurrency() throws Exception {
+        // Arrange
+        server.setFaults(FaultProfile.builder().latency(LatencyDistribution.fixed(Duration.ofMillis(300))).build());
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+
+        // Act
+        for (int i = 0; i < 4; i++) {
+            HttpRequest request = mailSend(API_KEY).POST(HttpRequest.BodyPublishers.ofString(TEMPLATE_MAIL)).build();
+            responses.add(httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+        }
+        CompletableFuture.allOf(responses.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertEquals(server.requestCount(), 4);
+        assertTrue(server.maxConcurrentRequests() >= 2, "peak: " + server.maxConcurrentRequests());
+    }
+
+    @Test
+    public void testResetClearsRecordingsAndCounters() throws Exception {
+        // Arrange
+        post(TEMPLATE_MAIL);
+
+        // Act
+        server.reset();
+
+        // Assert
+        assertTrue(server.requests().isEmpty());
+        assertEquals(server.requestCount(), 0);
+        assertEquals(server.statusCount(202), 0);
+    }
+
+    @Test
+    public void testListenerSeesRequestsWhenRecordingIsOff() throws Exception {
+        // Arrange
+        List<RecordedRequest> seen = new CopyOnWriteArrayList<>();
+        server.setRecording(false);
+        server.setListener(seen::add);
+
+        // Act
+        post(TEMPLATE_MAIL);
+
+        // Assert
+        assertTrue(server.requests().isEmpty());
+        assertEquals(seen.size(), 1);
+        assertEquals(seen.get(0).status(), 202);
+        assertEquals(server.requestCount(), 1);
+    }
+
+    @Test
+    public void testFaultProfileFromOptions() {
+        // Act
+        FaultProfile faults = FakeSendGridServer.faultProfile(Map.of(
+            "latency", "250ms",
+            "throttle-rate", "0.05",
+            "rate-limit", "600",
+            "error-status", "500",
+            "slow-body-delay", "2s"));
+
+        // Assert
+        assertEquals(faults.getLatency().sampleNanos(null), TimeUnit.MILLISECONDS.toNanos(250));
+        assertEquals(faults.getThrottleRate(), 0.05);
+        assertEquals(faults.getRateLimit(), 600);
+        assertEquals(faults.getServerErrorStatus(), 500);
+        assertEquals(faults.getSlowBodyDelay(), Duration.ofSeconds(2));
+        assertEquals(faults.getResetRate(), 0.0);
+    }
+
+    private HttpResponse<String> post(String body) throws IOException, InterruptedException {
+        HttpRequest request = mailSend(API_KEY).POST(HttpRequest.BodyPublishers.ofString(body)).build();
+        return httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpRequest.Builder mailSend(String apiKey) {
+        return HttpRequest.newBuilder(URI.create(server.baseUrl() + "/v3/mail/send"))
+            .header("Authorization", "Bearer " + apiKey)
+            .header("Content-Type", "application/json");
+    }
+}
@@ -124,7 +124,7 @@ public class KafkaIntegrationTest extends AbstractTestNGSpringContextTests {
             .body("Test Body")
             .from("from@example.com")
             .build();
-        String jsonMessage = objectMapper.writeValueAsString(emailMessage);
+        byte[] jsonMessage = objectMapper.writeValueAsBytes(emailMessage);
         
         // Mock the email service to not throw exceptions
         doNothing().when(emailService).sendEmail(any(EmailMessage.class));
@@ -143,7 +143,7 @@ public class KafkaIntegrationTest extends AbstractTestNGSpringContextTests {
     @Test
     public void testKafkaConsumerServiceHandlesInvalidJson() throws Exception {
         // Arrange
-        String invalidJson = "invalid-json-message";
+        byte[] invalidJson = "invalid-json-message".getBytes(java.nio.charset.StandardCharsets.UTF_8);
         
         // Create a mock acknowledgment
         org.springframework.kafka.support.Acknowledgment mockAck = mock(org.springframework.kafka.support.Acknowledgment.class);
@@ -165,7 +165,7 @@ public class KafkaIntegrationTest extends AbstractTestNGSpringContextTests {
             .body("Test Body")
             .from("from@example.com")
             .build();
-        String jsonMessage = objectMapper.writeValueAsString(emailMessage);
+        byte[] jsonMessage = objectMapper.writeValueAsBytes(emailMessage);
         
         // Mock the email service to throw an IOException
         doThrow(new java.io.IOException("SendGrid API error")).when(emailService).sendEmail(any(EmailMessage.class));
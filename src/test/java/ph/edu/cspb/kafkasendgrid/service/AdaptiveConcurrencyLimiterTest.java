@@ -0,0 +1,188 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.config.ConcurrencyLimitConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.testng.Assert.*;
+
+/**
+ * Unit tests for AdaptiveConcurrencyLimiter.
+ */
+public class AdaptiveConcurrencyLimiterTest {
+
+    private static final long RTT = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private ConcurrencyLimitConfig config;
+    private SimpleMeterRegistry meterRegistry;
+    private AtomicLong now;
+
+    @BeforeMethod
+    public void setUp() {
+        config = new ConcurrencyLimitConfig();
+        config.setEnabled(true);
+        config.setInitialLimit(4);
+        config.setMinLimit(1);
+        config.setMaxLimit(8);
+        meterRegistry = new SimpleMeterRegistry();
+        now = new AtomicLong(TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    public void testLimitGrowsAdditivelyWithSuccesses() throws Exception {
+        // Arrange
+        AdaptiveConcurrencyLimiter limiter = limiter();
+
+        // Act
+        roundTrip(limiter, 4, 202);
+        double afterFirstWindow = limiter.limit();
+        roundTrip(limiter, 4, 202);
+
+        // Assert
+        // At most one increase per full window of successes
+        assertTrue(afterFirstWindow > 4.5 && afterFirstWindow <= 5.0, "limit after one window: " + afterFirstWindow);
+        assertTrue(limiter.limit() > afterFirstWindow && limiter.limit() <= 6.0, "limit after two windows: " + limiter.limit());
+        assertEquals(meterRegistry.get("email.sendgrid.concurrency.limit").gauge().value(), limiter.limit());
+    }
+
+    @Test
+    public void testIdleWindowDoesNotGrow() throws Exception {
+        // Arrange
+        AdaptiveConcurrencyLimiter limiter = limiter();
+
+        // Act
+        for (int i = 0; i < 10; i++) {
+            roundTrip(limiter, 1, 202);
+        }
+
+        // Assert
+        assertEquals(limiter.limit(), 4.0);
+    }
+
+    @Test
+    public void testThrottlingHalvesLimitOncePerRoundTrip() throws Exception {
+        // Arrange
+        AdaptiveConcurrencyLimiter limiter = limiter();
+        roundTrip(limiter, 4, 202);
+        double before = limiter.limit();
+
+        // Act
+        roundTrip(limiter, 3, 429);
+        double afterBurst = limiter.limit();
+        now.addAndGet(RTT);
+        roundTrip(limiter, 1, 503);
+
+        // Assert
+        assertEquals(afterBurst, before / 2, 1e-9);
+        assertEquals(limiter.limit(), Math.max(1, afterBurst / 2), 1e-9);
+        assertEquals(meterRegistry.get("email.sendgrid.concurrency.drops").tag("reason", "throttled").counter().count(), 3.0);
+        assertEquals(meterRegistry.get("email.sendgrid.concurrency.drops").tag("reason", "server_error").counter().count(), 1.0);
+    }
+
+    @Test
+    public void testLimitStaysWithinBounds() throws Exception {
+        // Arrange
+        AdaptiveConcurrencyLimiter limiter = limiter();
+
+        // Act
+        for (int i = 0; i < 100; i++) {
+            roundTrip(limiter, (int) limiter.limit(), 202);
+        }
+        double grown = limiter.limit();
+        for (int i = 0; i < 10; i++) {
+            now.addAndGet(RTT);
+            roundTrip(limiter, 1, -1);
+        }
+
+        // Assert
+        assertEquals(grown, 8.0);
+        assertEquals(limiter.limit(), 1.0);
+    }
+
+    @Test
+    public void testLatencySpikeCutsLimitAndRebasesLatency() throws Exception {
+        // Arrange
+        AdaptiveConcurrencyLimiter limiter = limiter();
+        for (int i = 0; i < 30; i++) {
+            roundTrip(limiter, 1, 202);
+        }
+        double before = limiter.limit();
+
+        // Act
+        for (int i = 0; i < 10 && limiter.limit() == before; i++) {
+            roundTrip(limiter, 1, 202, RTT * 10);
+        }
+
+        // Assert
+        assertEquals(limiter.limit(), before / 2, 1e-9);
+        assertEquals(meterRegistry.get("email.sendgrid.concurrency.drops").tag("reason", "latency").counter().count(), 1.0);
+        assertEquals(limiter.gradient(), 1.0, 1e-9);
+    }
+
+    @Test
+    public void testAcquireWaitsForFreeSlot() throws Exception {
+        // Arrange
+        config.setInitialLimit(1);
+        AdaptiveConcurrencyLimiter limiter = limiter();
+        long first = limiter.acquire();
+
+        // Act
+        CompletableFuture<Long> second = CompletableFuture.supplyAsync(() -> {
+            try {
+                return limiter.acquire();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        // Assert
+        assertThrows(TimeoutException.class, () -> second.get(100, TimeUnit.MILLISECONDS));
+        limiter.release(first, 202);
+        assertNotNull(second.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testDisabledLimiterNeverWaits() throws Exception {
+        // Arrange
+        config.setEnabled(false);
+        config.setInitialLimit(1);
+        AdaptiveConcurrencyLimiter limiter = limiter();
+
+        // Act
+        for (int i = 0; i < 10; i++) {
+            limiter.acquire();
+        }
+        limiter.release(now.get(), 429);
+
+        // Assert
+        assertEquals(limiter.limit(), 1.0);
+    }
+
+    private AdaptiveConcurrencyLimiter limiter() {
+        return new AdaptiveConcurrencyLimiter(config, meterRegistry, now::get);
+    }
+
+    private void roundTrip(AdaptiveConcurrencyLimiter limiter, int concurrent, int status) throws Exception {
+        roundTrip(limiter, concurrent, status, RTT);
+    }
+
+    /**
+     * Sends a wave of concurrent requests that all take the same time and share a status
+     */
+    private void roundTrip(AdaptiveConcurrencyLimiter limiter, int concurrent, int status, long rttNanos) throws Exception {
+        long[] starts = new long[concurrent];
+        for (int i = 0; i < concurrent; i++) {
+            starts[i] = limiter.acquire();
+        }
+        now.addAndGet(rttNanos);
+        for (long start : starts) {
+            limiter.release(start, status);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * Unit tests for BloomFilter.
+ */
+public class BloomFilterTest {
+
+    @Test
+    public void testAddedAddressesAreAlwaysFound() {
+        // Arrange
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("user" + i + "@example.com");
+        }
+
+        // Act
+        int found = 0;
+        for (int i = 0; i < 10_000; i++) {
+            found += filter.mightContain("user" + i + "@example.com") ? 1 : 0;
+        }
+
+        // Assert
+        assertEquals(found, 10_000);
+    }
+
+    @Test
+    public void testFalsePositiveRateStaysNearTarget() {
+        // Arrange
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("user" + i + "@example.com");
+        }
+
+        // Act
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            falsePositives += filter.mightContain("other" + i + "@example.org") ? 1 : 0;
+        }
+
+        // Assert
+        assertTrue(falsePositives < 2_000, "false positives: " + falsePositives);
+    }
+
+    @Test
+    public void testLookupIgnoresCaseAndSurroundingWhitespace() {
+        // Arrange
+        BloomFilter filter = new BloomFilter(100, 0.01);
+        filter.put(SuppressionList.normalize(" Bounced@Example.COM "));
+
+        // Act
+        boolean found = filter.mightContain("\tBOUNCED@example.com\n");
+
+        // Assert
+        assertTrue(found);
+        assertEquals(BloomFilter.hash("Bounced@Example.COM "), BloomFilter.hash("bounced@example.com"));
+    }
+
+    @Test
+    public void testSizedForExpectedAddresses() {
+        // Act
+        BloomFilter filter = new BloomFilter(1_000_000, 0.01);
+
+        // Assert
+        assertTrue(filter.bits() >= 9_585_059L);
+        assertTrue(filter.bits() < 9_585_059L + 64);
+    }
+}
@@ -0,0 +1,65 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import org.testng.annotations.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.testng.Assert.*;
+
+/**
+ * Unit tests for CaseInsensitiveTable.
+ */
+public class CaseInsensitiveTableTest {
+
+    @Test
+    public void testLookupsIgnoreCase() {
+        // Arrange
+        CaseInsensitiveTable<String> table = new CaseInsensitiveTable<>(Map.of("Submission", "d-submission"));
+
+        // Act & Assert
+        assertEquals(table.get("submission"), "d-submission");
+        assertEquals(table.get("SUBMISSION"), "d-submission");
+        assertEquals(table.get("Submission"), "d-submission");
+        assertNull(table.get("submissions"));
+        assertNull(table.get(""));
+    }
+
+    @Test
+    public void testKeysEqualIgnoringCaseKeepTheLastValue() {
+        // Arrange
+        Map<String, String> entries = new LinkedHashMap<>();
+        entries.put("approval", "d-first");
+        entries.put("APPROVAL", "d-second");
+        entries.put(null, "d-null");
+        entries.put("rejection", null);
+
+        // Act
+        CaseInsensitiveTable<String> table = new CaseInsensitiveTable<>(entries);
+
+        // Assert
+        assertEquals(table.size(), 1);
+        assertEquals(table.get("Approval"), "d-second");
+        assertNull(table.get("rejection"));
+    }
+
+    @Test
+    public void testEveryKeyIsFoundWhenProbesCollide() {
+        // Arrange
+        Map<String, Integer> entries = new HashMap<>();
+        for (int i = 0; i < 500; i++) {
+            entries.put("type-" + i, i);
+        }
+
+        // Act
+        CaseInsensitiveTable<Integer> table = new CaseInsensitiveTable<>(entries);
+
+        // Assert
+        assertEquals(table.size(), 500);
+        for (int i = 0; i < 500; i++) {
+            assertEquals(table.get("TYPE-" + i), Integer.valueOf(i));
+        }
+        assertNull(table.get("type-500"));
+    }
+}
@@ -0,0 +1,95 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.config.ConsumerLagConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+/**
+ * Unit tests for ConsumerLagMonitor.
+ */
+public class ConsumerLagMonitorTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private ConsumerLagConfig consumerLagConfig;
+    private SimpleMeterRegistry meterRegistry;
+    private ConsumerLagMonitor monitor;
+
+    @BeforeMethod
+    public void setUp() {
+        consumerLagConfig = new ConsumerLagConfig();
+        consumerLagConfig.setRateSmoothing(0.5);
+        meterRegistry = new SimpleMeterRegistry();
+        monitor = new ConsumerLagMonitor(null, consumerLagConfig, meterRegistry);
+    }
+
+    @Test
+    public void testLagIsExportedPerPartitionAndInTotal() {
+        // Act
+        monitor.record(Map.of(0, 120L, 1, 30L), 1_000L, 10 * SECOND);
+
+        // Assert
+        assertEquals(meterRegistry.get("email.consumer.partition.lag").tag("partition", "0").gauge().value(), 120.0);
+        assertEquals(meterRegistry.get("email.consumer.partition.lag").tag("partition", "1").gauge().value(), 30.0);
+        assertEquals(meterRegistry.get("email.consumer.group.lag").gauge().value(), 150.0);
+    }
+
+    @Test
+    public void testDrainRateFollowsCommittedOffsets() {
+        // Arrange
+        monitor.record(Map.of(0, 1_000L), 5_000L, 0);
+
+        // Act
+        monitor.record(Map.of(0, 800L), 5_200L, 10 * SECOND);
+        double firstRate = monitor.drainRate();
+        monitor.record(Map.of(0, 400L), 5_600L, 20 * SECOND);
+
+        // Assert
+        assertEquals(firstRate, 20.0, 1e-9);
+        // Smoothed halfway between 20/s and 40/s
+        assertEquals(monitor.drainRate(), 30.0, 1e-9);
+        assertEquals(monitor.timeToDrainSeconds(), 400 / 30.0, 1e-9);
+        assertEquals(meterRegistry.get("email.consumer.time.to.drain").timeGauge().value(TimeUnit.SECONDS), 400 / 30.0, 1e-9);
+    }
+
+    @Test
+    public void testTimeToDrainIsInfiniteWhileNothingIsCommitted() {
+        // Arrange
+        monitor.record(Map.of(0, 100L), 5_000L, 0);
+
+        // Act
+        monitor.record(Map.of(0, 250L), 5_000L, 10 * SECOND);
+
+        // Assert
+        assertEquals(monitor.drainRate(), 0.0);
+        assertEquals(monitor.timeToDrainSeconds(), Double.POSITIVE_INFINITY);
+    }
+
+    @Test
+    public void testTimeToDrainIsZeroWithoutLag() {
+        // Act
+        monitor.record(Map.of(0, 0L, 1, 0L), 5_000L, 0);
+
+        // Assert
+        assertEquals(monitor.timeToDrainSeconds(), 0.0);
+    }
+
+    @Test
+    public void testOffsetResetDoesNotSkewDrainRate() {
+        // Arrange
+        monitor.record(Map.of(0, 1_000L), 5_000L, 0);
+        monitor.record(Map.of(0, 900L), 5_100L, 10 * SECOND);
+
+        // Act
+        monitor.record(Map.of(0, 5_900L), 100L, 20 * SECOND);
+
+        // Assert
+        assertEquals(monitor.drainRate(), 10.0, 1e-9);
+    }
+}
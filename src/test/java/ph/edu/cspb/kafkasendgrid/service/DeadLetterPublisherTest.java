@@ -0,0 +1,149 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.config.DeadLetterConfig;
+import ph.edu.cspb.kafkasendgrid.model.FailureEnvelope;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.*;
+
+/**
+ * Unit tests for DeadLetterPublisher.
+ */
+public class DeadLetterPublisherTest {
+
+    @Mock
+    private KafkaTemplate<String, byte[]> kafkaTemplate;
+
+    private DeadLetterConfig deadLetterConfig;
+    private DeadLetterPublisher deadLetterPublisher;
+
+    @BeforeMethod
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        deadLetterConfig = new DeadLetterConfig();
+        deadLetterConfig.setEnabled(true);
+        deadLetterPublisher = new DeadLetterPublisher(kafkaTemplate, deadLetterConfig, new ObjectMapper());
+        ReflectionTestUtils.setField(deadLetterPublisher, "mainTopic", "emails");
+        when(kafkaTemplate.send(any(ProducerRecord.class)))
+            .thenReturn(CompletableFuture.completedFuture(mock(SendResult.class)));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testPublishesOriginalPayloadWithEnvelope() {
+        // Arrange
+        ConsumerRecord<String, byte[]> record = new ConsumerRecord<>("emails", 3, 42L, "key", "{\"to\":\"x\"}".getBytes(StandardCharsets.UTF_8));
+        ProcessingResult result = new ProcessingResult(ProcessingOutcome.FAILED, ProcessingResult.Stage.SEND,
+            new SendGridException("template", 400, "Bad Request"));
+
+        // Act
+        boolean committable = deadLetterPublisher.publish(record, result);
+
+        // Assert
+        assertTrue(committable);
+        ArgumentCaptor<ProducerRecord<String, byte[]>> captor = ArgumentCaptor.forClass(ProducerRecord.class);
+        verify(kafkaTemplate).send(captor.capture());
+        ProducerRecord<String, byte[]> deadLetter = captor.getValue();
+        assertEquals(deadLetter.topic(), "emails-dlt");
+        assertEquals(deadLetter.key(), "key");
+        assertEquals(new String(deadLetter.value(), StandardCharsets.UTF_8), "{\"to\":\"x\"}");
+
+        FailureEnvelope envelope = deadLetterPublisher.readEnvelope(deadLetter.headers());
+        assertNotNull(envelope);
+        assertEquals(envelope.getStage(), "SEND");
+        assertEquals(envelope.getErrorClass(), SendGridException.class.getName());
+        assertEquals(envelope.getSendGridStatus(), Integer.valueOf(400));
+        assertEquals(envelope.getSourceTopic(), "emails");
+        assertEquals(envelope.getSourcePartition(), Integer.valueOf(3));
+        assertEquals(envelope.getSourceOffset(), Long.valueOf(42L));
+        assertEquals(envelope.getAttempts(), Integer.valueOf(0));
+        assertNotNull(envelope.getFailedAt());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testEnvelopeKeepsOriginalSourceOfRetriedRecord() {
+        // Arrange
+        ConsumerRecord<String, byte[]> record = new ConsumerRecord<>("emails-retry-3", 0, 7L, null, "{}".getBytes(StandardCharsets.UTF_8));
+        record.headers().add(RetryPublisher.ATTEMPT_HEADER, "3".getBytes(StandardCharsets.UTF_8));
+        record.headers().add(RetryPublisher.ORIGINAL_TOPIC_HEADER, "emails".getBytes(StandardCharsets.UTF_8));
+        record.headers().add(RetryPublisher.ORIGINAL_PARTITION_HEADER, "1".getBytes(StandardCharsets.UTF_8));
+        record.headers().add(RetryPublisher.ORIGINAL_OFFSET_HEADER, "99".getBytes(StandardCharsets.UTF_8));
+        ProcessingResult result = new ProcessingResult(ProcessingOutcome.RETRY, ProcessingResult.Stage.SEND,
+            new IOException("timeout")).retriesExhausted();
+
+        // Act
+        deadLetterPublisher.publish(record, result);
+
+        // Assert
+        ArgumentCaptor<ProducerRecord<String, byte[]>> captor = ArgumentCaptor.forClass(ProducerRecord.class);
+        verify(kafkaTemplate).send(captor.capture());
+        FailureEnvelope envelope = deadLetterPublisher.readEnvelope(captor.getValue().headers());
+        assertEquals(envelope.getStage(), "RETRIES_EXHAUSTED");
+        assertEquals(envelope.getErrorClass(), IOException.class.getName());
+        assertNull(envelope.getSendGridStatus());
+        assertEquals(envelope.getSourceTopic(), "emails");
+        assertEquals(envelope.getSourcePartition(), Integer.valueOf(1));
+        assertEquals(envelope.getSourceOffset(), Long.valueOf(99L));
+        assertEquals(envelope.getAttempts(), Integer.valueOf(3));
+    }
+
+    @Test
+    public void testDisabledCommitsWithoutPublishing() {
+        // Arrange
+        deadLetterConfig.setEnabled(false);
+        ConsumerRecord<String, byte[]> record = new ConsumerRecord<>("emails", 0, 1L, null, "not json".getBytes(StandardCharsets.UTF_8));
+
+        // Act & Assert
+        assertTrue(deadLetterPublisher.publish(record,
+            new ProcessingResult(ProcessingOutcome.INVALID, ProcessingResult.Stage.PARSE, null)));
+        verifyNoInteractions(kafkaTemplate);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testPublishFailureKeepsRecordUncommitted() {
+        // Arrange
+        when(kafkaTemplate.send(any(ProducerRecord.class)))
+            .thenReturn(CompletableFuture.failedFuture(new RuntimeException("broker unavailable")));
+        ConsumerRecord<String, byte[]> record = new ConsumerRecord<>("emails", 0, 1L, null, "not json".getBytes(StandardCharsets.UTF_8));
+
+        // Act & Assert
+        assertFalse(deadLetterPublisher.publish(record,
+            new ProcessingResult(ProcessingOutcome.INVALID, ProcessingResult.Stage.PARSE, null)));
+    }
+
+    @Test
+    public void testLongErrorMessagesAreTruncated() {
+        // Arrange
+        ConsumerRecord<String, byte[]> record = new ConsumerRecord<>("emails", 0, 1L, null, "{}".getBytes(StandardCharsets.UTF_8));
+        ProcessingResult result = new ProcessingResult(ProcessingOutcome.FAILED, ProcessingResult.Stage.SEND,
+            new RuntimeException("x".repeat(5000)));
+
+        // Act
+        deadLetterPublisher.publish(record, result);
+
+        // Assert
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<ProducerRecord<String, byte[]>> captor = ArgumentCaptor.forClass(ProducerRecord.class);
+        verify(kafkaTemplate).send(captor.capture());
+        assertEquals(deadLetterPublisher.readEnvelope(captor.getValue().headers()).getErrorMessage().length(), 500);
+    }
+}
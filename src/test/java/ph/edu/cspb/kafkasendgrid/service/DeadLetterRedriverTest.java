@@ -0,0 +1,165 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.config.DeadLetterConfig;
+import ph.edu.cspb.kafkasendgrid.service.DeadLetterRedriver.RedriveState;
+import ph.edu.cspb.kafkasendgrid.service.DeadLetterRedriver.RedriveStatus;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.*;
+
+/**
+ * Unit tests for DeadLetterRedriver.
+ */
+public class DeadLetterRedriverTest {
+
+    private static final TopicPartition DLT_PARTITION = new TopicPartition("emails-dlt", 0);
+
+    @Mock
+    private ConsumerFactory<String, byte[]> consumerFactory;
+
+    @Mock
+    private KafkaTemplate<String, byte[]> kafkaTemplate;
+
+    @Mock
+    private DeadLetterPublisher deadLetterPublisher;
+
+    private DeadLetterConfig deadLetterConfig;
+    private MockConsumer<String, byte[]> consumer;
+    private DeadLetterRedriver deadLetterRedriver;
+
+    @BeforeMethod
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        deadLetterConfig = new DeadLetterConfig();
+        deadLetterConfig.setRedriveRate(1000);
+        deadLetterConfig.setMaxRedriveRate(1000);
+
+        consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        consumer.updateBeginningOffsets(Map.of(DLT_PARTITION, 0L));
+        consumer.updateEndOffsets(Map.of(DLT_PARTITION, 5L));
+        consumer.schedulePollTask(() -> {
+            for (long offset = 0; offset < 5; offset++) {
+                consumer.addRecord(new ConsumerRecord<>("emails-dlt", 0, offset, "key-" + offset, ("payload-" + offset).getBytes(StandardCharsets.UTF_8)));
+            }
+        });
+
+        when(consumerFactory.createConsumer(eq("sendgrid-consumer-dlt-redrive"), isNull(), anyString(),
+            argThat(overrides -> "false".equals(overrides.getProperty(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG)))))
+            .thenReturn(consumer);
+        when(deadLetterPublisher.topic()).thenReturn("emails-dlt");
+        when(kafkaTemplate.send(any(ProducerRecord.class)))
+            .thenReturn(CompletableFuture.completedFuture(mock(SendResult.class)));
+
+        deadLetterRedriver = new DeadLetterRedriver(consumerFactory, kafkaTemplate, deadLetterPublisher, deadLetterConfig);
+        ReflectionTestUtils.setField(deadLetterRedriver, "mainTopic", "emails");
+        ReflectionTestUtils.setField(deadLetterRedriver, "groupId", "sendgrid-consumer");
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        deadLetterRedriver.shutdown();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testReplaysRangeOntoMainTopic() throws InterruptedException {
+        // Act
+        RedriveStatus status = deadLetterRedriver.start(0, 1L, 4L, null);
+        awaitFinished(status);
+
+        // Assert
+        assertEquals(status.getState(), RedriveState.COMPLETED);
+        assertEquals(status.getReplayed(), 3L);
+        assertEquals(status.getNextOffset(), 4L);
+
+        ArgumentCaptor<ProducerRecord<String, byte[]>> captor = ArgumentCaptor.forClass(ProducerRecord.class);
+        verify(kafkaTemplate, times(3)).send(captor.capture());
+        List<ProducerRecord<String, byte[]>> replays = captor.getAllValues();
+        assertEquals(replays.get(0).topic(), "emails");
+        assertEquals(replays.get(0).key(), "key-1");
+        assertEquals(new String(replays.get(0).value(), StandardCharsets.UTF_8), "payload-1");
+        assertEquals(new String(replays.get(0).headers().lastHeader(DeadLetterRedriver.REDRIVE_HEADER).value(),
+            StandardCharsets.UTF_8), "0:1");
+        assertEquals(new String(replays.get(2).value(), StandardCharsets.UTF_8), "payload-3");
+    }
+
+    @Test
+    public void testRangeIsCappedAtPartitionEnd() throws InterruptedException {
+        // Act
+        RedriveStatus status = deadLetterRedriver.start(0, 3L, 100L, null);
+        awaitFinished(status);
+
+        // Assert
+        assertEquals(status.getState(), RedriveState.COMPLETED);
+        assertEquals(status.getReplayed(), 2L);
+    }
+
+    @Test
+    public void testRateIsCappedByConfiguration() {
+        // Arrange
+        deadLetterConfig.setMaxRedriveRate(20);
+
+        // Act
+        RedriveStatus status = deadLetterRedriver.start(0, 0L, 1L, 500.0);
+
+        // Assert
+        assertEquals(status.getRate(), 20.0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testRejectsEmptyRange() {
+        deadLetterRedriver.start(0, 5L, 5L, null);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testRejectsNonPositiveRate() {
+        deadLetterRedriver.start(0, 0L, 5L, 0.0);
+    }
+
+    @Test
+    public void testOnlyOneRedriveRunsAtATime() {
+        // Arrange - a slow re-drive that is still running
+        deadLetterRedriver.start(0, 0L, 5L, 0.5);
+
+        // Act & Assert
+        expectThrows(IllegalStateException.class, () -> deadLetterRedriver.start(0, 0L, 5L, null));
+        assertTrue(deadLetterRedriver.cancel());
+    }
+
+    @Test
+    public void testStatusIsNullBeforeFirstRedrive() {
+        assertNull(deadLetterRedriver.status());
+        assertFalse(deadLetterRedriver.cancel());
+    }
+
+    private static void awaitFinished(RedriveStatus status) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000L;
+        while (status.getState() == RedriveState.RUNNING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.testng.Assert.*;
+
+/**
+ * Unit tests for DeferredDeliveryJournal.
+ */
+public class DeferredDeliveryJournalTest {
+
+    private Path directory;
+    private Path path;
+    private DeferredDeliveryJournal journal;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("deferred-journal");
+        path = directory.resolve("deferred.journal");
+        journal = new DeferredDeliveryJournal(path, false);
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        journal.close();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testAppendedPayloadIsReadBack() throws IOException {
+        // Arrange
+        byte[] payload = bytes("{\"to\":\"a@example.com\"}");
+
+        // Act
+        long offset = journal.append(1L, 1_700_000_000L, payload);
+
+        // Assert
+        assertEquals(journal.read(offset), payload);
+    }
+
+    @Test
+    public void testRecoverReturnsOnlyMessagesNotDone() throws IOException {
+        // Arrange
+        journal.append(1L, 100L, bytes("one"));
+        journal.append(2L, 200L, bytes("two"));
+        journal.append(3L, 300L, bytes("three"));
+        journal.complete(List.of(2L));
+        journal.close();
+        journal = new DeferredDeliveryJournal(path, false);
+
+        // Act
+        List<DeferredDeliveryJournal.Entry> pending = journal.recover();
+
+        // Assert
+        assertEquals(pending.stream().map(DeferredDeliveryJournal.Entry::id).toList(), List.of(1L, 3L));
+        assertEquals(pending.get(1).sendAt(), 300L);
+        assertEquals(journal.read(pending.get(0).offset()), bytes("one"));
+        assertEquals(journal.read(pending.get(1).offset()), bytes("three"));
+    }
+
+    @Test
+    public void testRecoverCompactsAwayDoneMessages() throws IOException {
+        // Arrange
+        journal.append(1L, 100L, bytes("one"));
+        journal.append(2L, 200L, bytes("two"));
+        journal.complete(List.of(1L));
+        long before = journal.size();
+
+        // Act
+        List<DeferredDeliveryJournal.Entry> pending = journal.recover();
+
+        // Assert
+        assertEquals(pending.size(), 1);
+        assertTrue(journal.size() < before);
+        assertEquals(journal.read(pending.get(0).offset()), bytes("two"));
+        assertFalse(Files.exists(path.resolveSibling(path.getFileName() + ".compact")));
+    }
+
+    @Test
+    public void testCompactKeepsOnlyTheGivenMessagesAtNewOffsets() throws IOException {
+        // Arrange
+        journal.append(1L, 100L, bytes("one"));
+        long kept = journal.append(2L, 200L, bytes("two"));
+        journal.complete(List.of(1L));
+
+        // Act
+        List<DeferredDeliveryJournal.Entry> moved = journal.compact(List.of(kept));
+
+        // Assert
+        assertEquals(moved, List.of(new DeferredDeliveryJournal.Entry(2L, 200L, 0L,
+            DeferredDeliveryJournal.recordLength(3))));
+        assertEquals(journal.size(), DeferredDeliveryJournal.recordLength(3));
+        assertEquals(journal.read(0L), bytes("two"));
+        assertEquals(journal.recover(), moved);
+    }
+
+    @Test
+    public void testRecoverDropsTornRecordAtTheEnd() throws IOException {
+        // Arrange
+        journal.append(1L, 100L, bytes("kept"));
+        long torn = journal.append(2L, 200L, bytes("torn by a crash"));
+        journal.close();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(torn + 5);
+        }
+        journal = new DeferredDeliveryJournal(path, false);
+
+        // Act
+        List<DeferredDeliveryJournal.Entry> pending = journal.recover();
+
+        // Assert
+        assertEquals(pending.size(), 1);
+        assertEquals(pending.get(0).id(), 1L);
+        assertEquals(journal.size(), torn);
+    }
+
+    @Test
+    public void testClearEmptiesTheJournal() throws IOException {
+        // Arrange
+        journal.append(1L, 100L, bytes("one"));
+
+        // Act
+        journal.clear();
+
+        // Assert
+        assertEquals(journal.size(), 0L);
+        assertTrue(journal.recover().isEmpty());
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,289 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.config.DeferredDeliveryConfig;
+import ph.edu.cspb.kafkasendgrid.model.EmailMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.util.unit.DataSize;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.*;
+
+/**
+ * Unit tests for DeferredDeliveryScheduler.
+ */
+public class DeferredDeliverySchedulerTest {
+
+    private static final long START_MILLIS = 1_700_000_000_000L;
+    private static final long IN_AN_HOUR = START_MILLIS / 1000 + 3600;
+
+    @Mock
+    private EmailService emailService;
+
+    @Mock
+    private EmailMessageReader emailMessageReader;
+
+    private final AtomicLong clock = new AtomicLong(START_MILLIS);
+    private Path directory;
+    private DeferredDeliveryConfig config;
+    private SimpleMeterRegistry meterRegistry;
+    private DeferredDeliveryScheduler scheduler;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        MockitoAnnotations.openMocks(this);
+        clock.set(START_MILLIS);
+        directory = Files.createTempDirectory("deferred-delivery");
+        config = new DeferredDeliveryConfig();
+        config.setEnabled(true);
+        config.setSync(false);
+        config.setJournalPath(directory.resolve("deferred.journal").toString());
+        scheduler = newScheduler();
+        scheduler.recover();
+
+        when(emailService.resolveFromEmail(any(EmailMessage.class))).thenReturn("no-reply@example.com");
+        when(emailService.createBatchId(any(EmailMessage.class))).thenReturn("batch-1");
+        when(emailService.sendEmailAsync(any(EmailMessage.class), any()))
+            .thenReturn(CompletableFuture.completedFuture(null));
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        scheduler.shutdown();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testPastSendAtIsClearedAndSentNow() throws IOException {
+        // Arrange
+        EmailMessage emailMessage = plain("late@example.com", START_MILLIS / 1000 - 10);
+
+        // Act
+        boolean deferred = scheduler.defer(emailMessage, payload(emailMessage));
+
+        // Assert
+        assertFalse(deferred);
+        assertNull(emailMessage.getSendAt());
+    }
+
+    @Test
+    public void testSendAtWithinTheNextWindowIsSentNow() throws IOException {
+        // Arrange
+        EmailMessage emailMessage = plain("soon@example.com", START_MILLIS / 1000 + 30);
+
+        // Act
+        boolean deferred = scheduler.defer(emailMessage, payload(emailMessage));
+
+        // Assert
+        assertFalse(deferred);
+        assertEquals(emailMessage.getSendAt(), Long.valueOf(START_MILLIS / 1000 + 30));
+        assertEquals(scheduler.pending(), 0);
+    }
+
+    @Test
+    public void testDisabledNeverDefers() throws IOException {
+        // Arrange
+        config.setEnabled(false);
+        EmailMessage emailMessage = plain("later@example.com", IN_AN_HOUR);
+
+        // Act
+        boolean deferred = scheduler.defer(emailMessage, payload(emailMessage));
+
+        // Assert
+        assertFalse(deferred);
+        assertEquals(emailMessage.getSendAt(), Long.valueOf(IN_AN_HOUR));
+    }
+
+    @Test
+    public void testTemplateMessagesOfAWindowAreReleasedTogether() throws IOException {
+        // Arrange
+        EmailMessage first = template("first@example.com", IN_AN_HOUR);
+        EmailMessage second = template("second@example.com", IN_AN_HOUR + 5);
+        when(emailService.determineTemplateId(any(EmailMessage.class))).thenReturn("d-reminder");
+        scheduler.defer(first, payload(first));
+        scheduler.defer(second, payload(second));
+
+        // Act
+        clock.set(scheduler.releaseAt(IN_AN_HOUR) - 1000);
+        scheduler.tick();
+        verify(emailService, never()).sendTemplateBatch(anyString(), anyString(), anyList(), any());
+        clock.set(scheduler.releaseAt(IN_AN_HOUR));
+        scheduler.tick();
+
+        // Assert
+        verify(emailService, times(1))
+            .sendTemplateBatch("d-reminder", "no-reply@example.com", List.of(first, second), "batch-1");
+        assertEquals(first.getSendAt(), Long.valueOf(IN_AN_HOUR));
+        assertEquals(second.getSendAt(), Long.valueOf(IN_AN_HOUR + 5));
+        assertEquals(scheduler.pending(), 0);
+        assertEquals(meterRegistry.get("email.deferred.released").tag("result", "sent").counter().count(), 2.0);
+    }
+
+    @Test
+    public void testPlainMessageIsReleasedWithTheBatchId() throws IOException {
+        // Arrange
+        EmailMessage emailMessage = plain("later@example.com", IN_AN_HOUR);
+        scheduler.defer(emailMessage, payload(emailMessage));
+
+        // Act
+        clock.set(scheduler.releaseAt(IN_AN_HOUR));
+        scheduler.tick();
+
+        // Assert
+        verify(emailService, times(1)).sendEmailAsync(emailMessage, "batch-1");
+        assertEquals(scheduler.pending(), 0);
+    }
+
+    @Test
+    public void testMessagesBeyondTheMemoryLimitAreReadBackFromTheJournal() throws IOException {
+        // Arrange
+        config.setMaxInMemory(1);
+        EmailMessage kept = plain("kept@example.com", IN_AN_HOUR);
+        EmailMessage spilled = plain("spilled@example.com", IN_AN_HOUR);
+        EmailMessage readBack = plain("spilled@example.com", IN_AN_HOUR);
+        when(emailMessageReader.read(payload(spilled))).thenReturn(readBack);
+        scheduler.defer(kept, payload(kept));
+        scheduler.defer(spilled, payload(spilled));
+        int spilledBeforeRelease = scheduler.spilled();
+
+        // Act
+        clock.set(scheduler.releaseAt(IN_AN_HOUR));
+        scheduler.tick();
+
+        // Assert
+        assertEquals(spilledBeforeRelease, 1);
+        verify(emailService, times(1)).sendEmailAsync(kept, "batch-1");
+        verify(emailService, times(1)).sendEmailAsync(readBack, "batch-1");
+        assertEquals(scheduler.spilled(), 0);
+    }
+
+    @Test
+    public void testPendingMessagesAreRecoveredAfterRestart() throws IOException {
+        // Arrange
+        EmailMessage emailMessage = plain("later@example.com", IN_AN_HOUR);
+        EmailMessage recovered = plain("later@example.com", IN_AN_HOUR);
+        when(emailMessageReader.read(payload(emailMessage))).thenReturn(recovered);
+        scheduler.defer(emailMessage, payload(emailMessage));
+        scheduler.shutdown();
+
+        // Act
+        scheduler = newScheduler();
+        scheduler.recover();
+        int pendingAfterRestart = scheduler.pending();
+        clock.set(scheduler.releaseAt(IN_AN_HOUR));
+        scheduler.tick();
+
+        // Assert
+        assertEquals(pendingAfterRestart, 1);
+        verify(emailService, times(1)).sendEmailAsync(recovered, "batch-1");
+        assertEquals(scheduler.pending(), 0);
+    }
+
+    @Test
+    public void testTransientFailureIsRetriedLater() throws IOException {
+        // Arrange
+        EmailMessage emailMessage = plain("later@example.com", IN_AN_HOUR);
+        when(emailService.sendEmailAsync(emailMessage, "batch-1"))
+            .thenReturn(CompletableFuture.failedFuture(new SendGridException("plain text", 429, "Too Many Requests")))
+            .thenReturn(CompletableFuture.completedFuture(null));
+        scheduler.defer(emailMessage, payload(emailMessage));
+
+        // Act
+        clock.set(scheduler.releaseAt(IN_AN_HOUR));
+        scheduler.tick();
+        int pendingAfterFailure = scheduler.pending();
+        clock.addAndGet(config.getRetryDelay().toMillis() + config.getTick().toMillis());
+        scheduler.tick();
+
+        // Assert
+        assertEquals(pendingAfterFailure, 1);
+        verify(emailService, times(2)).sendEmailAsync(emailMessage, "batch-1");
+        assertEquals(scheduler.pending(), 0);
+        assertEquals(meterRegistry.get("email.deferred.released").tag("result", "retry").counter().count(), 1.0);
+    }
+
+    @Test
+    public void testRejectedMessageIsDropped() throws IOException {
+        // Arrange
+        EmailMessage emailMessage = plain("later@example.com", IN_AN_HOUR);
+        when(emailService.sendEmailAsync(emailMessage, "batch-1"))
+            .thenReturn(CompletableFuture.failedFuture(new SendGridException("plain text", 400, "Bad Request")));
+        scheduler.defer(emailMessage, payload(emailMessage));
+
+        // Act
+        clock.set(scheduler.releaseAt(IN_AN_HOUR));
+        scheduler.tick();
+
+        // Assert
+        assertEquals(scheduler.pending(), 0);
+        assertEquals(meterRegistry.get("email.deferred.released").tag("result", "failed").counter().count(), 1.0);
+    }
+
+    @Test
+    public void testJournalIsCompactedOnceMostOfItIsSent() throws IOException {
+        // Arrange
+        config.setMaxInMemory(0);
+        config.setCompactMinSize(DataSize.ofBytes(0));
+        long later = IN_AN_HOUR + 7200;
+        EmailMessage first = plain("first@example.com", IN_AN_HOUR);
+        EmailMessage second = plain("second@example.com", later);
+        EmailMessage firstReadBack = plain("first@example.com", IN_AN_HOUR);
+        EmailMessage secondReadBack = plain("second@example.com", later);
+        when(emailMessageReader.read(payload(first))).thenReturn(firstReadBack);
+        when(emailMessageReader.read(payload(second))).thenReturn(secondReadBack);
+        scheduler.defer(first, payload(first));
+        scheduler.defer(second, payload(second));
+
+        // Act
+        clock.set(scheduler.releaseAt(IN_AN_HOUR));
+        scheduler.tick();
+        long compactedSize = Files.size(Path.of(config.getJournalPath()));
+        clock.set(scheduler.releaseAt(later));
+        scheduler.tick();
+
+        // Assert - the second message is read back from where compaction moved it
+        assertEquals(compactedSize, DeferredDeliveryJournal.recordLength(payload(second).length));
+        verify(emailService, times(1)).sendEmailAsync(firstReadBack, "batch-1");
+        verify(emailService, times(1)).sendEmailAsync(secondReadBack, "batch-1");
+        assertEquals(scheduler.pending(), 0);
+    }
+
+    private DeferredDeliveryScheduler newScheduler() {
+        meterRegistry = new SimpleMeterRegistry();
+        return new DeferredDeliveryScheduler(config, emailService, emailMessageReader, meterRegistry,
+            clock::get, Runnable::run);
+    }
+
+    private static EmailMessage plain(String to, long sendAt) {
+        return EmailMessage.builder().to(to).subject("Reminder").body("See you soon").sendAt(sendAt).build();
+    }
+
+    private static EmailMessage template(String to, long sendAt) {
+        return EmailMessage.builder().to(to).notificationType("reminder").sendAt(sendAt).build();
+    }
+
+    private static byte[] payload(EmailMessage emailMessage) {
+        return ("{\"to\":\"" + emailMessage.getTo() + "\"}").getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,232 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.config.DomainLimitConfig;
+import ph.edu.cspb.kafkasendgrid.model.EmailMessage;
+import ph.edu.cspb.kafkasendgrid.service.DomainLimiter.DomainStats;
+import ph.edu.cspb.kafkasendgrid.service.DomainLimiter.Permit;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.testng.Assert.*;
+
+/**
+ * Unit tests for DomainLimiter.
+ */
+public class DomainLimiterTest {
+
+    private DomainLimitConfig config;
+    private SimpleMeterRegistry meterRegistry;
+    private AtomicLong nanoClock;
+    private DomainLimiter domainLimiter;
+
+    @BeforeMethod
+    public void setUp() {
+        config = new DomainLimitConfig();
+        config.setEnabled(true);
+        config.setMaxInFlightPerDomain(2);
+        config.setSlowLaneSlots(1);
+        config.setSlowLaneWait(Duration.ZERO);
+        config.setSlowLatency(Duration.ofSeconds(1));
+        config.setMinSamples(3);
+        meterRegistry = new SimpleMeterRegistry();
+        nanoClock = new AtomicLong();
+        domainLimiter = new DomainLimiter(config, meterRegistry, nanoClock::get);
+    }
+
+    @Test
+    public void testDomainOf() {
+        // Assert
+        assertEquals(DomainLimiter.domainOf("Juan@Example.COM"), "example.com");
+        assertEquals(DomainLimiter.domainOf("\"a@b\"@mail.example.org "), "mail.example.org");
+        assertNull(DomainLimiter.domainOf("no-domain"));
+        assertNull(DomainLimiter.domainOf("trailing@"));
+        assertNull(DomainLimiter.domainOf(null));
+    }
+
+    @Test
+    public void testDisabledHandsOutNoLimit() throws Exception {
+        // Arrange
+        config.setEnabled(false);
+
+        // Act
+        Permit permit = domainLimiter.acquire(message("a@example.com"));
+        domainLimiter.release(permit, 202);
+
+        // Assert
+        assertSame(permit, Permit.NONE);
+        assertTrue(domainLimiter.topDomains(10).isEmpty());
+    }
+
+    @Test
+    public void testDomainBeyondCapWaitsForRelease() throws Exception {
+        // Arrange
+        Permit first = domainLimiter.acquire(message("a@example.com"));
+        domainLimiter.acquire(message("b@example.com"));
+        Permit other = domainLimiter.acquire(message("c@other.org"));
+        CompletableFuture<Permit> third = CompletableFuture.supplyAsync(() -> acquireUnchecked("d@example.com"));
+
+        // Act
+        assertThrows(TimeoutException.class, () -> third.get(200, TimeUnit.MILLISECONDS));
+        domainLimiter.release(first, 202);
+
+        // Assert
+        assertNotSame(other, Permit.NONE);
+        assertNotNull(third.get(5, TimeUnit.SECONDS));
+        assertEquals(domainLimiter.topDomains(1).get(0).inFlight(), 2);
+    }
+
+    @Test
+    public void testSlowDomainIsMovedToSlowLane() throws Exception {
+        // Act
+        sendSlowly("example.com", 3, Duration.ofSeconds(5));
+
+        // Assert
+        List<DomainStats> slow = domainLimiter.slowDomains();
+        assertEquals(slow.size(), 1);
+        assertEquals(slow.get(0).domain(), "example.com");
+        assertEquals(slow.get(0).latencyMillis(), 5000.0, 0.001);
+        assertEquals(meterRegistry.get("email.domain.isolations").counter().count(), 1.0);
+        assertEquals(meterRegistry.get("email.domain.slow").gauge().value(), 1.0);
+    }
+
+    @Test
+    public void testFailingDomainIsMovedToSlowLane() throws Exception {
+        // Arrange
+        for (int i = 0; i < 3; i++) {
+            // Act
+            domainLimiter.release(domainLimiter.acquire(message("a@failing.org")), i == 0 ? 500 : -1);
+        }
+
+        // Assert
+        assertTrue(domainLimiter.slowDomains().get(0).slow());
+        assertEquals(domainLimiter.slowDomains().get(0).errorRate(), 1.0, 0.001);
+    }
+
+    @Test
+    public void testThrottledResponsesAreNotHeldAgainstDomain() throws Exception {
+        // Act
+        for (int i = 0; i < 5; i++) {
+            Permit permit = domainLimiter.acquire(message("a@example.com"));
+            nanoClock.addAndGet(Duration.ofSeconds(5).toNanos());
+            domainLimiter.release(permit, 429);
+        }
+
+        // Assert
+        assertTrue(domainLimiter.slowDomains().isEmpty());
+    }
+
+    @Test
+    public void testSlowLaneWithoutFreeSlotRejects() throws Exception {
+        // Arrange
+        sendSlowly("slow.org", 3, Duration.ofSeconds(5));
+        Permit held = domainLimiter.acquire(message("a@slow.org"));
+
+        // Act
+        SlowDomainException exception = expectThrows(SlowDomainException.class,
+            () -> domainLimiter.acquire(message("b@slow.org")));
+        Permit healthy = domainLimiter.acquire(message("a@fast.org"));
+
+        // Assert
+        assertEquals(exception.getDomain(), "slow.org");
+        assertNotSame(healthy, Permit.NONE);
+        assertEquals(meterRegistry.get("email.domain.slow.lane.rejections").counter().count(), 1.0);
+        assertEquals(meterRegistry.get("email.domain.slow.lane.in.flight").gauge().value(), 1.0);
+        domainLimiter.release(held, 202);
+        assertEquals(meterRegistry.get("email.domain.slow.lane.in.flight").gauge().value(), 0.0);
+    }
+
+    @Test
+    public void testSlowDomainRecovers() throws Exception {
+        // Arrange
+        sendSlowly("example.com", 3, Duration.ofSeconds(5));
+
+        // Act
+        sendSlowly("example.com", 40, Duration.ofMillis(10));
+
+        // Assert
+        assertTrue(domainLimiter.slowDomains().isEmpty());
+        assertEquals(meterRegistry.get("email.domain.slow").gauge().value(), 0.0);
+    }
+
+    @Test
+    public void testMixedDomainRequestIsCountedButNotLimited() throws Exception {
+        // Arrange
+        List<EmailMessage> emailMessages = List.of(message("a@example.com"), message("b@other.org"), message("c@example.com"));
+
+        // Act
+        Permit permit = domainLimiter.acquire(emailMessages);
+
+        // Assert
+        assertSame(permit, Permit.NONE);
+        List<DomainStats> top = domainLimiter.topDomains(10);
+        assertEquals(top.get(0).domain(), "example.com");
+        assertEquals(top.get(0).messages(), 2);
+        assertEquals(top.get(1).domain(), "other.org");
+        assertEquals(top.get(1).inFlight(), 0);
+    }
+
+    @Test
+    public void testSharedDomainRequestIsLimited() throws Exception {
+        // Act
+        Permit permit = domainLimiter.acquire(List.of(message("a@example.com"), message("B@Example.com")));
+
+        // Assert
+        assertNotSame(permit, Permit.NONE);
+        assertEquals(domainLimiter.topDomains(1).get(0).messages(), 2);
+        assertEquals(domainLimiter.topDomains(1).get(0).inFlight(), 1);
+    }
+
+    @Test
+    public void testHeavyHittersKeepBusiestDomains() throws Exception {
+        // Arrange
+        config.setHeavyHitterCapacity(2);
+        for (int i = 0; i < 10; i++) {
+            domainLimiter.release(domainLimiter.acquire(message("a@busy.com")), 202);
+        }
+        domainLimiter.release(domainLimiter.acquire(message("a@rare.org")), 202);
+
+        // Act
+        domainLimiter.release(domainLimiter.acquire(message("a@newcomer.net")), 202);
+
+        // Assert
+        List<DomainStats> top = domainLimiter.topDomains(10);
+        assertEquals(top.size(), 2);
+        assertEquals(top.get(0).domain(), "busy.com");
+        assertEquals(top.get(0).messages(), 10);
+        assertEquals(top.get(1).domain(), "newcomer.net");
+        assertEquals(top.get(1).messages(), 2);
+        assertEquals(top.get(1).overcount(), 1);
+    }
+
+    private void sendSlowly(String domain, int requests, Duration roundTrip) throws Exception {
+        for (int i = 0; i < requests; i++) {
+            Permit permit = domainLimiter.acquire(message("user" + i + "@" + domain));
+            nanoClock.addAndGet(roundTrip.toNanos());
+            domainLimiter.release(permit, 202);
+        }
+    }
+
+    private Permit acquireUnchecked(String to) {
+        try {
+            return domainLimiter.acquire(message(to));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static EmailMessage message(String to) {
+        return EmailMessage.builder()
+            .to(to)
+            .subject("Subject")
+            .body("Body")
+            .build();
+    }
+}
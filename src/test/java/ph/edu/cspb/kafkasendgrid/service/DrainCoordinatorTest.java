@@ -0,0 +1,222 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.config.DrainConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.*;
+
+/**
+ * Unit tests for DrainCoordinator.
+ */
+public class DrainCoordinatorTest {
+
+    private static final TopicPartition PARTITION_0 = new TopicPartition("test-topic", 0);
+    private static final TopicPartition PARTITION_1 = new TopicPartition("test-topic", 1);
+
+    private DrainConfig config;
+    private SimpleMeterRegistry meterRegistry;
+    private KafkaListenerEndpointRegistry endpointRegistry;
+    private DrainCoordinator drainCoordinator;
+
+    @BeforeMethod
+    public void setUp() {
+        config = new DrainConfig();
+        config.setDeadline(Duration.ofSeconds(5));
+        meterRegistry = new SimpleMeterRegistry();
+        endpointRegistry = mock(KafkaListenerEndpointRegistry.class);
+        drainCoordinator = new DrainCoordinator(config, endpointRegistry, meterRegistry);
+        drainCoordinator.start();
+    }
+
+    @Test
+    public void testStopPausesContainersAndWaitsForInFlightRecords() throws Exception {
+        // Arrange
+        MessageListenerContainer container = mock(MessageListenerContainer.class);
+        when(endpointRegistry.getListenerContainers()).thenReturn(List.of(container));
+        drainCoordinator.begin(PARTITION_0);
+        drainCoordinator.begin(PARTITION_1);
+
+        // Act
+        CompletableFuture<Void> stopped = CompletableFuture.runAsync(drainCoordinator::stop);
+        Thread.sleep(100);
+        boolean stoppedEarly = stopped.isDone();
+        drainCoordinator.end(PARTITION_0);
+        drainCoordinator.end(PARTITION_1);
+        stopped.get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertFalse(stoppedEarly);
+        assertTrue(drainCoordinator.isDraining());
+        assertFalse(drainCoordinator.isRunning());
+        verify(container, times(1)).pause();
+        assertEquals(drainCount("shutdown", "drained"), 2.0);
+        assertEquals(drainCount("shutdown", "abandoned"), 0.0);
+    }
+
+    @Test
+    public void testStopAbandonsRecordsStillInFlightAtDeadline() {
+        // Arrange
+        config.setDeadline(Duration.ofMillis(50));
+        drainCoordinator.begin(PARTITION_0);
+
+        // Act
+        drainCoordinator.stop();
+
+        // Assert
+        assertEquals(drainCount("shutdown", "drained"), 0.0);
+        assertEquals(drainCount("shutdown", "abandoned"), 1.0);
+        assertEquals(drainCoordinator.inFlight(), 1);
+    }
+
+    @Test
+    public void testStopWhenDisabledDoesNotWait() {
+        // Arrange
+        config.setEnabled(false);
+        drainCoordinator.begin(PARTITION_0);
+
+        // Act
+        drainCoordinator.stop();
+
+        // Assert
+        assertFalse(drainCoordinator.isDraining());
+        verifyNoInteractions(endpointRegistry);
+        assertEquals(drainCount("shutdown", "abandoned"), 0.0);
+    }
+
+    @Test
+    public void testRevocationCommitsWatermarksOfRevokedPartitions() {
+        // Arrange
+        Consumer<?, ?> consumer = mock(Consumer.class);
+        OffsetWatermarkTracker revoked = drainCoordinator.tracker(PARTITION_0, 100L);
+        revoked.track(100L);
+        revoked.track(101L);
+        revoked.complete(100L);
+        drainCoordinator.tracker(PARTITION_1, 7L).track(7L);
+
+        // Act
+        drainCoordinator.onPartitionsRevokedBeforeCommit(consumer, List.of(PARTITION_0));
+
+        // Assert
+        verify(consumer, times(1)).commitSync(Map.of(PARTITION_0, new OffsetAndMetadata(101L)));
+        assertNotSame(drainCoordinator.tracker(PARTITION_0, 200L), revoked);
+    }
+
+    @Test
+    public void testRebalancesCountPartitionsThatChangeHands() {
+        // Arrange
+        Consumer<?, ?> consumer = mock(Consumer.class);
+
+        // Act
+        drainCoordinator.onPartitionsAssigned(consumer, List.of(PARTITION_0, PARTITION_1));
+        drainCoordinator.onPartitionsRevokedBeforeCommit(consumer, List.of(PARTITION_0));
+        drainCoordinator.onPartitionsRevokedBeforeCommit(consumer, List.of());
+        drainCoordinator.onPartitionsLost(consumer, List.of(PARTITION_1));
+
+        // Assert
+        assertEquals(partitionCount("assigned"), 2.0);
+        assertEquals(partitionCount("revoked"), 1.0);
+        assertEquals(partitionCount("lost"), 1.0);
+        assertEquals(meterRegistry.get("email.rebalance.revocation").timer().count(), 1L);
+    }
+
+    @Test
+    public void testRevocationWaitsOnlyForRevokedPartitions() throws Exception {
+        // Arrange
+        Consumer<?, ?> consumer = mock(Consumer.class);
+        drainCoordinator.begin(PARTITION_0);
+        drainCoordinator.begin(PARTITION_1);
+
+        // Act
+        CompletableFuture<Void> revoked = CompletableFuture.runAsync(
+            () -> drainCoordinator.onPartitionsRevokedBeforeCommit(consumer, List.of(PARTITION_0)));
+        Thread.sleep(100);
+        boolean revokedEarly = revoked.isDone();
+        drainCoordinator.end(PARTITION_0);
+        revoked.get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertFalse(revokedEarly);
+        assertEquals(drainCount("rebalance", "drained"), 1.0);
+        assertEquals(drainCoordinator.inFlight(), 1);
+    }
+
+    @Test
+    public void testRevocationWithoutTrackersCommitsNothing() {
+        // Arrange
+        Consumer<?, ?> consumer = mock(Consumer.class);
+
+        // Act
+        drainCoordinator.onPartitionsRevokedBeforeCommit(consumer, List.of(PARTITION_0));
+
+        // Assert
+        verify(consumer, never()).commitSync(anyMap());
+    }
+
+    @Test
+    public void testLostPartitionsAreForgottenWithoutCommit() {
+        // Arrange
+        Consumer<?, ?> consumer = mock(Consumer.class);
+        OffsetWatermarkTracker lost = drainCoordinator.tracker(PARTITION_0, 100L);
+
+        // Act
+        drainCoordinator.onPartitionsLost(consumer, List.of(PARTITION_0));
+
+        // Assert
+        verifyNoInteractions(consumer);
+        assertNotSame(drainCoordinator.tracker(PARTITION_0, 200L), lost);
+    }
+
+    @Test
+    public void testAwaitGivesUpOnceShutdownDrainExpires() throws Exception {
+        // Arrange
+        config.setDeadline(Duration.ofMillis(50));
+        drainCoordinator.stop();
+        CountDownLatch latch = new CountDownLatch(1);
+
+        // Act
+        long start = System.nanoTime();
+        boolean finished = drainCoordinator.await(latch, Duration.ofSeconds(30));
+        long elapsed = System.nanoTime() - start;
+
+        // Assert
+        assertFalse(finished);
+        assertTrue(elapsed < TimeUnit.SECONDS.toNanos(5));
+    }
+
+    @Test
+    public void testAwaitReturnsOnceLatchIsCountedDown() throws Exception {
+        // Arrange
+        CountDownLatch latch = new CountDownLatch(1);
+        latch.countDown();
+
+        // Act
+        boolean finished = drainCoordinator.await(latch, Duration.ofSeconds(5));
+
+        // Assert
+        assertTrue(finished);
+    }
+
+    private double partitionCount(String change) {
+        return meterRegistry.get("email.rebalance.partitions").tag("change", change).counter().count();
+    }
+
+    private double drainCount(String reason, String result) {
+        return meterRegistry.get("email.drain.records").tag("reason", reason).tag("result", result).counter().count();
+    }
+}
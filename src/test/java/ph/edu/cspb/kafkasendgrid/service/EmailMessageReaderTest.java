@@ -0,0 +1,56 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.model.EmailMessage;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.testng.Assert.*;
+
+/**
+ * Test class for EmailMessageReader using TestNG.
+ */
+public class EmailMessageReaderTest {
+
+    private EmailMessageReader emailMessageReader;
+
+    @BeforeMethod
+    public void setUp() {
+        emailMessageReader = new EmailMessageReader(new ObjectMapper());
+    }
+
+    @Test
+    public void testReadParsesUtf8Payload() throws Exception {
+        // Arrange
+        byte[] payload = "{\"to\":\"estudyante@example.com\",\"subject\":\"Pagbati – ñ\",\"templateData\":{\"name\":\"José\"}}"
+            .getBytes(StandardCharsets.UTF_8);
+
+        // Act
+        EmailMessage message = emailMessageReader.read(payload);
+
+        // Assert
+        assertEquals(message.getTo(), "estudyante@example.com");
+        assertEquals(message.getSubject(), "Pagbati – ñ");
+        assertEquals(message.getTemplateData().get("name"), "José");
+    }
+
+    @Test(expectedExceptions = JsonParseException.class)
+    public void testReadRejectsMalformedPayload() throws Exception {
+        // Act
+        emailMessageReader.read("invalid-json".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testReadIsReusableAcrossPayloads() throws Exception {
+        // Act
+        EmailMessage first = emailMessageReader.read("{\"to\":\"a@example.com\"}".getBytes(StandardCharsets.UTF_8));
+        EmailMessage second = emailMessageReader.read("{\"to\":\"b@example.com\"}".getBytes(StandardCharsets.UTF_8));
+
+        // Assert
+        assertEquals(first.getTo(), "a@example.com");
+        assertEquals(second.getTo(), "b@example.com");
+    }
+}
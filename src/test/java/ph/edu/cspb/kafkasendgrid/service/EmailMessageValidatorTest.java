@@ -0,0 +1,132 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.model.EmailMessage;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.testng.Assert.*;
+
+/**
+ * Test class for EmailMessageValidator using TestNG.
+ */
+public class EmailMessageValidatorTest {
+
+    private Validator jakartaValidator;
+    private EmailMessageValidator emailMessageValidator;
+    private EmailMessageValidator fallbackValidator;
+
+    @BeforeMethod
+    public void setUp() {
+        jakartaValidator = Validation.buildDefaultValidatorFactory().getValidator();
+        emailMessageValidator = new EmailMessageValidator(jakartaValidator);
+        fallbackValidator = new EmailMessageValidator(jakartaValidator);
+        ReflectionTestUtils.setField(fallbackValidator, "fastPath", false);
+    }
+
+    @DataProvider
+    public Object[][] recipients() {
+        return new Object[][] {
+            {"student@example.com"},
+            {"first.last+tag@school.edu.ph"},
+            {"o'brien@example.com"},
+            {"user@sub-domain.example.co"},
+            {"x@localhost"},
+            {"\"quoted name\"@example.com"},
+            {"\"with\\\"escape\"@example.com"},
+            {"josé@example.com"},
+            {"user@exämple.com"},
+            {"user@[192.168.0.1]"},
+            {"plainaddress"},
+            {"@example.com"},
+            {"user@"},
+            {"user@example."},
+            {"user@.example.com"},
+            {"user..dots@example.com"},
+            {".user@example.com"},
+            {"user.@example.com"},
+            {"user@-example.com"},
+            {"user@example-.com"},
+            {"user@exa_mple.com"},
+            {"user@exa!mple.com"},
+            {"user@exa mple.com"},
+            {"user@exa,mple.com"},
+            {"us er@example.com"},
+            {"\"\"@example.com"},
+            {"\"bad\\x\"@example.com"},
+            {"a".repeat(64) + "@example.com"},
+            {"a".repeat(65) + "@example.com"},
+            {"user@" + "a".repeat(63) + ".com"},
+            {"user@" + "a".repeat(64) + ".com"},
+            {"user@" + ("a".repeat(50) + ".").repeat(5) + "com"},
+            {"user@a@example.com"},
+            {""},
+            {"   "},
+            {null}
+        };
+    }
+
+    @Test(dataProvider = "recipients")
+    public void testFastPathMatchesJakartaValidation(String to) {
+        // Arrange
+        EmailMessage message = EmailMessage.builder().to(to).subject("Subject").body("Body").build();
+
+        // Act
+        String fast = emailMessageValidator.validate(message);
+        String jakarta = fallbackValidator.validate(message);
+
+        // Assert - violations from a Set have no defined order
+        assertEquals(messages(fast), messages(jakarta), "recipient: " + to);
+    }
+
+    @Test
+    public void testValidPlainTextMessage() {
+        // Arrange
+        EmailMessage message = EmailMessage.builder().to("test@example.com").subject("Subject").body("Body").build();
+
+        // Act & Assert
+        assertNull(emailMessageValidator.validate(message));
+    }
+
+    @Test
+    public void testValidTemplateMessageWithoutPlainText() {
+        // Arrange
+        EmailMessage message = EmailMessage.builder().to("test@example.com").templateId("d-template-123").build();
+
+        // Act & Assert
+        assertNull(emailMessageValidator.validate(message));
+    }
+
+    @Test
+    public void testMessageWithoutTemplateOrContentIsRejected() {
+        // Arrange
+        EmailMessage blankBody = EmailMessage.builder().to("test@example.com").subject("Subject").body(" \t").build();
+        EmailMessage blankTemplate = EmailMessage.builder().to("not-an-address").templateId("  ").build();
+
+        // Act & Assert - the content rule is reported on its own, before any recipient violation
+        assertEquals(emailMessageValidator.validate(blankBody), EmailMessageValidator.CONTENT_REQUIRED);
+        assertEquals(emailMessageValidator.validate(blankTemplate), EmailMessageValidator.CONTENT_REQUIRED);
+        assertEquals(fallbackValidator.validate(blankTemplate), EmailMessageValidator.CONTENT_REQUIRED);
+    }
+
+    @Test
+    public void testInvalidRecipientMessages() {
+        // Arrange
+        EmailMessage missing = EmailMessage.builder().subject("Subject").body("Body").build();
+        EmailMessage malformed = EmailMessage.builder().to("plainaddress").subject("Subject").body("Body").build();
+
+        // Act & Assert
+        assertEquals(emailMessageValidator.validate(missing), EmailMessageValidator.RECIPIENT_REQUIRED);
+        assertEquals(emailMessageValidator.validate(malformed), EmailMessageValidator.RECIPIENT_INVALID);
+    }
+
+    private static HashSet<String> messages(String joined) {
+        return joined == null ? new HashSet<>() : new HashSet<>(Arrays.asList(joined.split("; ")));
+    }
+}
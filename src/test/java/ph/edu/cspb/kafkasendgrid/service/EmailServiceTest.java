@@ -1,12 +1,16 @@
 package ph.edu.cspb.kafkasendgrid.service;
 
+import ph.edu.cspb.kafkasendgrid.config.ConcurrencyLimitConfig;
+import ph.edu.cspb.kafkasendgrid.config.DomainLimitConfig;
 import ph.edu.cspb.kafkasendgrid.config.TemplateConfig;
 import ph.edu.cspb.kafkasendgrid.model.EmailMessage;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.sendgrid.Method;
 import com.sendgrid.Request;
 import com.sendgrid.Response;
 import com.sendgrid.SendGrid;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
@@ -17,7 +21,11 @@ import org.testng.annotations.Test;
 
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
@@ -33,7 +41,10 @@ public class EmailServiceTest {
     private SendGrid sendGrid;
     
     @Mock
-    private TemplateConfig templateConfig;
+    private SendGridRateLimiter rateLimiter;
+    
+    @Mock
+    private TemplateRegistry templateRegistry;
     
     @Mock
     private ObjectMapper objectMapper;
@@ -41,12 +52,21 @@ public class EmailServiceTest {
     @InjectMocks
     private EmailService emailService;
 
+    private SimpleMeterRegistry meterRegistry;
+
     private final String defaultFromEmail = "default@example.com";
     private final String defaultFromName = "Form 137 System";
 
     @BeforeMethod
     public void setUp() {
         MockitoAnnotations.openMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+        ReflectionTestUtils.setField(emailService, "pipelineMetrics", new PipelineMetrics(meterRegistry, new TemplateConfig()));
+        ReflectionTestUtils.setField(emailService, "concurrencyLimiter",
+            new AdaptiveConcurrencyLimiter(new ConcurrencyLimitConfig(), meterRegistry));
+        ReflectionTestUtils.setField(emailService, "mailRequestWriter", new MailRequestWriter());
+        ReflectionTestUtils.setField(emailService, "domainLimiter", new DomainLimiter(new DomainLimitConfig(), meterRegistry));
+        ReflectionTestUtils.setField(emailService, "transport", new BlockingSendGridTransport(sendGrid));
         ReflectionTestUtils.setField(emailService, "defaultFromEmail", defaultFromEmail);
         ReflectionTestUtils.setField(emailService, "defaultFromName", defaultFromName);
     }
@@ -73,6 +93,33 @@ public class EmailServiceTest {
         assertEquals(capturedRequest.getMethod(), Method.POST);
         assertEquals(capturedRequest.getEndpoint(), "mail/send");
         assertNotNull(capturedRequest.getBody());
+        assertEquals(meterRegistry.get("email.sendgrid.responses").tag("status", "202").counter().count(), 1.0);
+        assertEquals(meterRegistry.get("email.pipeline").tags("stage", "sendgrid", "kind", "plain").timer().count(), 1L);
+    }
+
+    @Test
+    public void testThrottledRequestIsResentOnVirtualThread() throws IOException {
+        // Arrange
+        EmailMessage emailMessage = EmailMessage.builder().to("test@example.com").subject("Test Subject").body("Test Body").build();
+        Response throttled = mock(Response.class);
+        when(throttled.getStatusCode()).thenReturn(429);
+        Response accepted = mock(Response.class);
+        when(accepted.getStatusCode()).thenReturn(202);
+        List<Thread> senders = new CopyOnWriteArrayList<>();
+        when(sendGrid.api(any(Request.class))).thenAnswer(invocation -> {
+            senders.add(Thread.currentThread());
+            return senders.size() == 1 ? throttled : accepted;
+        });
+        when(rateLimiter.shouldRetry(0)).thenReturn(true);
+        when(rateLimiter.reserve()).thenReturn(0L);
+
+        // Act
+        emailService.sendEmail(emailMessage);
+
+        // Assert
+        verify(sendGrid, times(2)).api(any(Request.class));
+        assertFalse(senders.get(0).isVirtual());
+        assertTrue(senders.get(1).isVirtual());
     }
 
     @Test
@@ -330,8 +377,8 @@ public class EmailServiceTest {
             .templateData(templateData)
             .build();
         
-        when(templateConfig.isUseTemplatesByDefault()).thenReturn(true);
-        when(templateConfig.getTemplateId("submission")).thenReturn("d-submission-template");
+        when(templateRegistry.isUseTemplatesByDefault()).thenReturn(true);
+        when(templateRegistry.getTemplateId("submission")).thenReturn("d-submission-template");
         
         Response mockResponse = mock(Response.class);
         when(mockResponse.getStatusCode()).thenReturn(202);
@@ -342,7 +389,7 @@ public class EmailServiceTest {
         emailService.sendEmail(emailMessage);
 
         // Assert
-        verify(templateConfig).getTemplateId("submission");
+        verify(templateRegistry).getTemplateId("submission");
         
         ArgumentCaptor<Request> requestCaptor = ArgumentCaptor.forClass(Request.class);
         verify(sendGrid, times(1)).api(requestCaptor.capture());
@@ -408,8 +455,8 @@ public class EmailServiceTest {
             .notificationType("unknown_type")
             .build();
         
-        when(templateConfig.isUseTemplatesByDefault()).thenReturn(true);
-        when(templateConfig.getTemplateId("unknown_type")).thenReturn(null);
+        when(templateRegistry.isUseTemplatesByDefault()).thenReturn(true);
+        when(templateRegistry.getTemplateId("unknown_type")).thenReturn(null);
         
         Response mockResponse = mock(Response.class);
         when(mockResponse.getStatusCode()).thenReturn(202);
@@ -438,8 +485,8 @@ public class EmailServiceTest {
             .notificationType("unknown_type")
             .build();
         
-        when(templateConfig.isUseTemplatesByDefault()).thenReturn(true);
-        when(templateConfig.getTemplateId("unknown_type")).thenReturn(null);
+        when(templateRegistry.isUseTemplatesByDefault()).thenReturn(true);
+        when(templateRegistry.getTemplateId("unknown_type")).thenReturn(null);
 
         // Act - should throw exception
         emailService.sendEmail(emailMessage);
@@ -473,8 +520,8 @@ public class EmailServiceTest {
             .templateData(Map.of("name", "John"))
             .build();
         
-        when(templateConfig.isUseTemplatesByDefault()).thenReturn(true);
-        when(templateConfig.getTemplateId("submission")).thenReturn("d-submission-template");
+        when(templateRegistry.isUseTemplatesByDefault()).thenReturn(true);
+        when(templateRegistry.getTemplateId("submission")).thenReturn("d-submission-template");
         
         Response mockResponse = mock(Response.class);
         when(mockResponse.getStatusCode()).thenReturn(202);
@@ -491,7 +538,137 @@ public class EmailServiceTest {
         assertTrue(requestBody.contains("d-explicit-template"));
         assertFalse(requestBody.contains("d-submission-template"));
         
-        // Should not call templateConfig when explicit template ID is provided
-        verify(templateConfig, never()).getTemplateId(any());
+        // Should not call templateRegistry when explicit template ID is provided
+        verify(templateRegistry, never()).getTemplateId(any());
+    }
+
+    @Test
+    public void testSendTemplateBatchUsesOnePersonalizationPerMessage() throws Exception {
+        // Arrange
+        List<EmailMessage> emailMessages = List.of(
+            EmailMessage.builder().to("first@example.com").notificationType("reminder")
+                .templateData(Map.of("student_name", "John Doe")).build(),
+            EmailMessage.builder().to("second@example.com").notificationType("reminder")
+                .templateData(Map.of("student_name", "Jane Doe")).build());
+
+        Response mockResponse = mock(Response.class);
+        when(mockResponse.getStatusCode()).thenReturn(202);
+        when(sendGrid.api(any(Request.class))).thenReturn(mockResponse);
+
+        // Act
+        emailService.sendTemplateBatch("d-reminder-template", defaultFromEmail, emailMessages);
+
+        // Assert - a single request carries both recipients
+        ArgumentCaptor<Request> requestCaptor = ArgumentCaptor.forClass(Request.class);
+        verify(sendGrid, times(1)).api(requestCaptor.capture());
+
+        JsonNode body = new ObjectMapper().readTree(requestCaptor.getValue().getBody());
+        assertEquals(body.get("template_id").asText(), "d-reminder-template");
+        assertEquals(body.get("from").get("email").asText(), defaultFromEmail);
+        assertEquals(body.get("personalizations").size(), 2);
+        assertEquals(body.get("personalizations").get(0).get("to").get(0).get("email").asText(), "first@example.com");
+        assertEquals(body.get("personalizations").get(1).get("dynamic_template_data").get("student_name").asText(), "Jane Doe");
+    }
+
+    @Test(expectedExceptions = RuntimeException.class)
+    public void testSendTemplateBatchFailure() throws IOException {
+        // Arrange
+        List<EmailMessage> emailMessages = List.of(
+            EmailMessage.builder().to("first@example.com").notificationType("reminder").build());
+
+        Response mockResponse = mock(Response.class);
+        when(mockResponse.getStatusCode()).thenReturn(400);
+        when(mockResponse.getBody()).thenReturn("Bad Request");
+        when(sendGrid.api(any(Request.class))).thenReturn(mockResponse);
+
+        // Act
+        emailService.sendTemplateBatch("d-reminder-template", defaultFromEmail, emailMessages);
+    }
+
+    @Test
+    public void testSendEmailAsyncCompletesWithTransportResponse() throws Exception {
+        // Arrange
+        EmailMessage emailMessage = EmailMessage.builder().to("test@example.com").subject("Test Subject").body("Test Body").build();
+        SendGridTransport transport = mock(SendGridTransport.class);
+        ReflectionTestUtils.setField(emailService, "transport", transport);
+        CompletableFuture<Response> pending = new CompletableFuture<>();
+        when(transport.send(any(Request.class))).thenReturn(pending);
+
+        // Act
+        CompletableFuture<Void> result = emailService.sendEmailAsync(emailMessage);
+
+        // Assert - the caller is released before SendGrid answers
+        assertFalse(result.isDone());
+        pending.complete(new Response(202, "", Map.of()));
+        result.get(1, TimeUnit.SECONDS);
+        assertTrue(result.isDone());
+    }
+
+    @Test
+    public void testSendEmailAsyncFailsOnErrorStatus() {
+        // Arrange
+        EmailMessage emailMessage = EmailMessage.builder().to("test@example.com").subject("Test Subject").body("Test Body").build();
+        SendGridTransport transport = mock(SendGridTransport.class);
+        ReflectionTestUtils.setField(emailService, "transport", transport);
+        when(transport.send(any(Request.class)))
+            .thenReturn(CompletableFuture.completedFuture(new Response(500, "Internal Server Error", Map.of())));
+
+        // Act
+        CompletableFuture<Void> result = emailService.sendEmailAsync(emailMessage);
+
+        // Assert
+        assertTrue(result.isCompletedExceptionally());
+    }
+
+    @Test
+    public void testSendEmailAsyncReleasesSlotWhenTransportThrows() throws Exception {
+        // Arrange
+        EmailMessage emailMessage = EmailMessage.builder().to("test@example.com").subject("Test Subject").body("Test Body").build();
+        SendGridTransport transport = mock(SendGridTransport.class);
+        AdaptiveConcurrencyLimiter concurrencyLimiter = mock(AdaptiveConcurrencyLimiter.class);
+        ReflectionTestUtils.setField(emailService, "transport", transport);
+        ReflectionTestUtils.setField(emailService, "concurrencyLimiter", concurrencyLimiter);
+        when(concurrencyLimiter.acquire()).thenReturn(42L);
+        when(transport.send(any(Request.class))).thenThrow(new IllegalStateException("client closed"));
+
+        // Act
+        CompletableFuture<Void> result = emailService.sendEmailAsync(emailMessage);
+
+        // Assert
+        assertTrue(result.isCompletedExceptionally());
+        verify(concurrencyLimiter).release(42L, -1);
+        assertEquals(meterRegistry.get("email.sendgrid.in.flight").gauge().value(), 0.0);
+    }
+
+    @Test
+    public void testSendEmailRetriesThrottledRequest() throws IOException {
+        // Arrange
+        EmailMessage emailMessage = EmailMessage.builder().to("test@example.com").subject("Test Subject").body("Test Body").build();
+        when(rateLimiter.shouldRetry(0)).thenReturn(true);
+        when(sendGrid.api(any(Request.class)))
+            .thenReturn(new Response(429, "Too Many Requests", Map.of()))
+            .thenReturn(new Response(202, "Accepted", Map.of()));
+
+        // Act
+        emailService.sendEmail(emailMessage);
+
+        // Assert
+        verify(rateLimiter, times(1)).acquire();
+        verify(rateLimiter, times(1)).reserve();
+        verify(rateLimiter, times(2)).onResponse(any(Response.class));
+        verify(sendGrid, times(2)).api(any(Request.class));
+    }
+
+    @Test
+    public void testSendEmailThrottledRetriesExhausted() throws IOException {
+        // Arrange
+        EmailMessage emailMessage = EmailMessage.builder().to("test@example.com").subject("Test Subject").body("Test Body").build();
+        when(sendGrid.api(any(Request.class))).thenReturn(new Response(429, "Too Many Requests", Map.of()));
+
+        // Act & Assert
+        SendGridException exception = expectThrows(SendGridException.class, () -> emailService.sendEmail(emailMessage));
+        assertEquals(exception.getStatusCode(), 429);
+        assertTrue(exception.isTransient());
+        verify(sendGrid, times(1)).api(any(Request.class));
     }
-}
\ No newline at end of file
+}
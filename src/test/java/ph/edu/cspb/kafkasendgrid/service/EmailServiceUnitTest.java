@@ -1,10 +1,15 @@
 package ph.edu.cspb.kafkasendgrid.service;
 
+import ph.edu.cspb.kafkasendgrid.config.ConcurrencyLimitConfig;
+import ph.edu.cspb.kafkasendgrid.config.DomainLimitConfig;
+import ph.edu.cspb.kafkasendgrid.config.TemplateConfig;
 import ph.edu.cspb.kafkasendgrid.model.EmailMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.sendgrid.Method;
 import com.sendgrid.Request;
 import com.sendgrid.Response;
 import com.sendgrid.SendGrid;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
@@ -26,15 +31,27 @@ public class EmailServiceUnitTest {
 
     @Mock
     private SendGrid sendGrid;
+    
+    @Mock
+    private SendGridRateLimiter rateLimiter;
 
     @InjectMocks
     private EmailService emailService;
 
+    private SimpleMeterRegistry meterRegistry;
+
     private final String defaultFromEmail = "default@example.com";
 
     @BeforeMethod
     public void setUp() {
         MockitoAnnotations.openMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+        ReflectionTestUtils.setField(emailService, "pipelineMetrics", new PipelineMetrics(meterRegistry, new TemplateConfig()));
+        ReflectionTestUtils.setField(emailService, "concurrencyLimiter",
+            new AdaptiveConcurrencyLimiter(new ConcurrencyLimitConfig(), meterRegistry));
+        ReflectionTestUtils.setField(emailService, "mailRequestWriter", new MailRequestWriter());
+        ReflectionTestUtils.setField(emailService, "domainLimiter", new DomainLimiter(new DomainLimitConfig(), meterRegistry));
+        ReflectionTestUtils.setField(emailService, "transport", new BlockingSendGridTransport(sendGrid));
         ReflectionTestUtils.setField(emailService, "defaultFromEmail", defaultFromEmail);
     }
 
@@ -139,4 +156,43 @@ public class EmailServiceUnitTest {
         // Assert
         verify(sendGrid, times(1)).api(any(Request.class));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testCreateBatchIdReturnsTheNewId() throws IOException {
+        // Arrange
+        EmailMessage emailMessage = EmailMessage.builder().to("test@example.com").subject("Test Subject").body("Test Body").build();
+        ReflectionTestUtils.setField(emailService, "objectMapper", new ObjectMapper());
+
+        Response mockResponse = mock(Response.class);
+        when(mockResponse.getStatusCode()).thenReturn(201);
+        when(mockResponse.getBody()).thenReturn("{\"batch_id\":\"batch-123\"}");
+        when(sendGrid.api(any(Request.class))).thenReturn(mockResponse);
+
+        // Act
+        String batchId = emailService.createBatchId(emailMessage);
+
+        // Assert
+        ArgumentCaptor<Request> requestCaptor = ArgumentCaptor.forClass(Request.class);
+        verify(sendGrid, times(1)).api(requestCaptor.capture());
+        assertEquals(requestCaptor.getValue().getMethod(), Method.POST);
+        assertEquals(requestCaptor.getValue().getEndpoint(), "mail/batch");
+        assertEquals(batchId, "batch-123");
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testCreateBatchIdFailureThrowsIOException() throws IOException {
+        // Arrange
+        EmailMessage emailMessage = EmailMessage.builder().to("test@example.com").subject("Test Subject").body("Test Body").build();
+        ReflectionTestUtils.setField(emailService, "objectMapper", new ObjectMapper());
+
+        Response mockResponse = mock(Response.class);
+        when(mockResponse.getStatusCode()).thenReturn(401);
+        when(mockResponse.getBody()).thenReturn("Unauthorized");
+        when(sendGrid.api(any(Request.class))).thenReturn(mockResponse);
+
+        // Act
+        emailService.createBatchId(emailMessage);
+
+        // Assert - IOException should be thrown
+    }
+}
@@ -0,0 +1,136 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.config.SendGridTransportConfig;
+import com.sendgrid.Method;
+import com.sendgrid.Request;
+import com.sendgrid.Response;
+import com.sun.net.httpserver.HttpServer;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.testng.Assert.*;
+
+/**
+ * Unit tests for HttpClientSendGridTransport against a local HTTP server.
+ */
+public class HttpClientSendGridTransportTest {
+
+    private HttpServer server;
+    private HttpClientSendGridTransport transport;
+    private SendGridTransportConfig transportConfig;
+
+    private final AtomicReference<String> receivedPath = new AtomicReference<>();
+    private final AtomicReference<String> receivedAuthorization = new AtomicReference<>();
+    private final AtomicReference<String> receivedBody = new AtomicReference<>();
+    private CountDownLatch release;
+    private volatile boolean holdResponses;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        release = new CountDownLatch(1);
+        holdResponses = false;
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/v3/", exchange -> {
+            receivedPath.set(exchange.getRequestURI().getPath());
+            receivedAuthorization.set(exchange.getRequestHeaders().getFirst("Authorization"));
+            try (InputStream body = exchange.getRequestBody()) {
+                receivedBody.set(new String(body.readAllBytes(), StandardCharsets.UTF_8));
+            }
+            if (holdResponses) {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            exchange.getResponseHeaders().add("X-Message-Id", "abc123");
+            exchange.sendResponseHeaders(202, -1);
+            exchange.close();
+        });
+        server.start();
+
+        transportConfig = new SendGridTransportConfig();
+        transportConfig.setType(SendGridTransportConfig.Type.HTTP2);
+        transportConfig.setBaseUrl("http://localhost:" + server.getAddress().getPort());
+        transportConfig.setMaxInFlight(2);
+        transport = new HttpClientSendGridTransport("test-api-key", transportConfig);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        release.countDown();
+        transport.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void testSendPostsToVersionedEndpoint() throws Exception {
+        // Act
+        Response response = transport.send(mailSendRequest()).get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertEquals(response.getStatusCode(), 202);
+        assertEquals(response.getHeaders().get("x-message-id"), "abc123");
+        assertEquals(receivedPath.get(), "/v3/mail/send");
+        assertEquals(receivedAuthorization.get(), "Bearer test-api-key");
+        assertEquals(receivedBody.get(), "{\"subject\":\"Test\"}");
+    }
+
+    @Test
+    public void testInFlightCountTracksOutstandingRequests() throws Exception {
+        // Arrange
+        holdResponses = true;
+
+        // Act
+        CompletableFuture<Response> first = transport.send(mailSendRequest());
+        CompletableFuture<Response> second = transport.send(mailSendRequest());
+
+        // Assert - both slots of the window are taken until the server answers
+        assertEquals(transport.inFlight(), 2);
+        release.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+        assertEquals(transport.inFlight(), 0);
+    }
+
+    @Test
+    public void testConnectionFailureCompletesWithIOException() throws Exception {
+        // Arrange - nothing listens on port 1
+        transportConfig.setBaseUrl("http://localhost:1");
+
+        try (HttpClientSendGridTransport unreachable = new HttpClientSendGridTransport("test-api-key", transportConfig)) {
+            // Act
+            CompletableFuture<Response> result = unreachable.send(mailSendRequest());
+
+            // Assert
+            try {
+                result.get(5, TimeUnit.SECONDS);
+                fail("Expected the request to fail");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IOException);
+            }
+            assertEquals(unreachable.inFlight(), 0);
+        }
+    }
+
+    private Request mailSendRequest() {
+        Request request = new Request();
+        request.setMethod(Method.POST);
+        request.setEndpoint("mail/send");
+        request.setBody("{\"subject\":\"Test\"}");
+        return request;
+    }
+}
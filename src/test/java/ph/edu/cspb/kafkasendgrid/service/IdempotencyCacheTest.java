@@ -0,0 +1,167 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.config.IdempotencyConfig;
+import ph.edu.cspb.kafkasendgrid.model.EmailMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.testng.Assert.*;
+
+/**
+ * Unit tests for IdempotencyCache.
+ */
+public class IdempotencyCacheTest {
+
+    private IdempotencyConfig idempotencyConfig;
+    private SimpleMeterRegistry meterRegistry;
+    private AtomicLong now;
+
+    @BeforeMethod
+    public void setUp() {
+        idempotencyConfig = new IdempotencyConfig();
+        idempotencyConfig.setEnabled(true);
+        idempotencyConfig.setCapacity(4096);
+        idempotencyConfig.setTtl(Duration.ofMinutes(10));
+        meterRegistry = new SimpleMeterRegistry();
+        now = new AtomicLong(1_000_000L);
+    }
+
+    @Test
+    public void testSentEmailIsDuplicateUntilTtlExpires() {
+        // Arrange
+        IdempotencyCache cache = new IdempotencyCache(idempotencyConfig, meterRegistry, now::get);
+        EmailMessage email = plainText("test@example.com", "Hello");
+
+        // Act & Assert
+        assertFalse(cache.isDuplicate(email));
+        cache.recordSent(email);
+        assertTrue(cache.isDuplicate(email));
+
+        now.addAndGet(Duration.ofMinutes(10).toMillis() + 1);
+        assertFalse(cache.isDuplicate(email));
+    }
+
+    @Test
+    public void testClaimedEmailIsDuplicateUntilReleased() {
+        // Arrange
+        IdempotencyCache cache = new IdempotencyCache(idempotencyConfig, meterRegistry, now::get);
+        EmailMessage email = plainText("test@example.com", "Hello");
+
+        // Act & Assert
+        assertTrue(cache.claim(email));
+        assertFalse(cache.claim(email));
+        assertTrue(cache.isDuplicate(email));
+
+        cache.release(email);
+        assertFalse(cache.isDuplicate(email));
+        assertTrue(cache.claim(email));
+        cache.recordSent(email);
+        assertFalse(cache.claim(email));
+    }
+
+    @Test
+    public void testHitAndMissMetrics() {
+        // Arrange
+        IdempotencyCache cache = new IdempotencyCache(idempotencyConfig, meterRegistry, now::get);
+        EmailMessage email = plainText("test@example.com", "Hello");
+
+        // Act
+        cache.isDuplicate(email);
+        cache.recordSent(email);
+        cache.isDuplicate(email);
+        cache.isDuplicate(email);
+
+        // Assert
+        assertEquals(meterRegistry.get("email.idempotency.hits").counter().count(), 2.0);
+        assertEquals(meterRegistry.get("email.idempotency.misses").counter().count(), 1.0);
+        assertEquals(meterRegistry.get("email.idempotency.size").gauge().value(), 1.0);
+    }
+
+    @Test
+    public void testExplicitKeyIdentifiesEmail() {
+        // Arrange
+        IdempotencyCache cache = new IdempotencyCache(idempotencyConfig, meterRegistry, now::get);
+        EmailMessage first = plainText("test@example.com", "Hello");
+        first.setIdempotencyKey("order-42");
+        EmailMessage reworded = plainText("test@example.com", "Hello again");
+        reworded.setIdempotencyKey("order-42");
+        EmailMessage sameContentOtherKey = plainText("test@example.com", "Hello");
+        sameContentOtherKey.setIdempotencyKey("order-43");
+
+        // Act
+        cache.recordSent(first);
+
+        // Assert
+        assertTrue(cache.isDuplicate(reworded));
+        assertFalse(cache.isDuplicate(sameContentOtherKey));
+    }
+
+    @Test
+    public void testContentKeyDistinguishesFieldsAndIgnoresMapOrder() {
+        // Arrange
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("student_name", "John Doe");
+        data.put("form_id", "F137-001");
+        Map<String, Object> reordered = new LinkedHashMap<>();
+        reordered.put("form_id", "F137-001");
+        reordered.put("student_name", "John Doe");
+
+        // Act & Assert
+        assertEquals(IdempotencyCache.keyOf(template(data)), IdempotencyCache.keyOf(template(reordered)));
+        assertNotEquals(IdempotencyCache.keyOf(plainText("a@example.com", "Hello")),
+            IdempotencyCache.keyOf(plainText("b@example.com", "Hello")));
+        // Moving text between fields must change the key
+        EmailMessage shifted = EmailMessage.builder().to("a@example.com").subject("Hel").body("loBody").build();
+        EmailMessage original = EmailMessage.builder().to("a@example.com").subject("Hello").body("Body").build();
+        assertNotEquals(IdempotencyCache.keyOf(shifted), IdempotencyCache.keyOf(original));
+    }
+
+    @Test
+    public void testCacheStaysBoundedAndEvictsOldestFirst() {
+        // Arrange
+        idempotencyConfig.setCapacity(64 * 8);
+        IdempotencyCache cache = new IdempotencyCache(idempotencyConfig, meterRegistry, now::get);
+
+        // Act
+        for (int i = 0; i < 10_000; i++) {
+            now.incrementAndGet();
+            cache.recordSent(plainText("user" + i + "@example.com", "Hello"));
+        }
+
+        // Assert
+        assertTrue(cache.size() <= 64 * 8, "size was " + cache.size());
+        assertTrue(cache.isDuplicate(plainText("user9999@example.com", "Hello")));
+    }
+
+    @Test
+    public void testDisabledNeverReportsDuplicates() {
+        // Arrange
+        idempotencyConfig.setEnabled(false);
+        IdempotencyCache cache = new IdempotencyCache(idempotencyConfig, meterRegistry, now::get);
+        EmailMessage email = plainText("test@example.com", "Hello");
+
+        // Act
+        cache.recordSent(email);
+
+        // Assert
+        assertFalse(cache.isDuplicate(email));
+        assertTrue(cache.claim(email));
+        assertTrue(cache.claim(email));
+        assertEquals(cache.size(), 0L);
+    }
+
+    private static EmailMessage plainText(String to, String subject) {
+        return EmailMessage.builder().to(to).subject(subject).body("Body").build();
+    }
+
+    private static EmailMessage template(Map<String, Object> data) {
+        return EmailMessage.builder().to("student@example.com").templateId("d-template-123")
+            .notificationType("submission").templateData(data).build();
+    }
+}
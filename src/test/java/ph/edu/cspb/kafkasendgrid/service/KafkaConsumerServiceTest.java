@@ -1,24 +1,37 @@
 package ph.edu.cspb.kafkasendgrid.service;
 
+import ph.edu.cspb.kafkasendgrid.config.DrainConfig;
+import ph.edu.cspb.kafkasendgrid.config.IdempotencyConfig;
+import ph.edu.cspb.kafkasendgrid.config.LaneConfig;
+import ph.edu.cspb.kafkasendgrid.config.TemplateConfig;
 import ph.edu.cspb.kafkasendgrid.model.EmailMessage;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonParseException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.mockito.InOrder;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
-import jakarta.validation.ConstraintViolation;
-import jakarta.validation.Validator;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.*;
 import static org.testng.Assert.*;
 
@@ -31,10 +44,28 @@ public class KafkaConsumerServiceTest {
     private EmailService emailService;
 
     @Mock
-    private ObjectMapper objectMapper;
+    private EmailMessageReader emailMessageReader;
 
     @Mock
-    private Validator validator;
+    private EmailMessageValidator emailMessageValidator;
+
+    @Mock
+    private TemplateEmailCoalescer templateEmailCoalescer;
+
+    @Mock
+    private RetryPublisher retryPublisher;
+
+    @Mock
+    private DeadLetterPublisher deadLetterPublisher;
+
+    @Mock
+    private IdempotencyCache idempotencyCache;
+
+    @Mock
+    private DeferredDeliveryScheduler deferredDeliveryScheduler;
+
+    @Mock
+    private SuppressionList suppressionList;
 
     @Mock
     private Acknowledgment acknowledgment;
@@ -42,14 +73,22 @@ public class KafkaConsumerServiceTest {
     @InjectMocks
     private KafkaConsumerService kafkaConsumerService;
 
+    private SimpleMeterRegistry meterRegistry;
+
     private EmailMessage validEmailMessage;
     private EmailMessage validTemplateEmailMessage;
-    private String validJsonMessage;
-    private String validTemplateJsonMessage;
+    private byte[] validJsonMessage;
+    private byte[] validTemplateJsonMessage;
 
     @BeforeMethod
     public void setUp() {
         MockitoAnnotations.openMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+        ReflectionTestUtils.setField(kafkaConsumerService, "pipelineMetrics", new PipelineMetrics(meterRegistry, new TemplateConfig()));
+        ReflectionTestUtils.setField(kafkaConsumerService, "laneScheduler", new LaneScheduler(new LaneConfig(), meterRegistry));
+        ReflectionTestUtils.setField(kafkaConsumerService, "drainCoordinator", new DrainCoordinator(new DrainConfig(), null, meterRegistry));
+        when(deadLetterPublisher.publish(any(), any())).thenReturn(true);
+        when(idempotencyCache.claim(any(EmailMessage.class))).thenReturn(true);
         
         // Plain text email message
         validEmailMessage = EmailMessage.builder()
@@ -58,7 +97,7 @@ public class KafkaConsumerServiceTest {
             .body("Test Body")
             .from("sender@example.com")
             .build();
-        validJsonMessage = "{\"to\":\"test@example.com\",\"subject\":\"Test Subject\",\"body\":\"Test Body\",\"from\":\"sender@example.com\"}";
+        validJsonMessage = "{\"to\":\"test@example.com\",\"subject\":\"Test Subject\",\"body\":\"Test Body\",\"from\":\"sender@example.com\"}".getBytes(StandardCharsets.UTF_8);
         
         // Template email message
         validTemplateEmailMessage = EmailMessage.builder()
@@ -67,22 +106,22 @@ public class KafkaConsumerServiceTest {
             .notificationType("submission")
             .templateData(Map.of("student_name", "John Doe", "form_id", "F137-001"))
             .build();
-        validTemplateJsonMessage = "{\"to\":\"student@example.com\",\"templateId\":\"d-template-123\",\"notificationType\":\"submission\",\"templateData\":{\"student_name\":\"John Doe\",\"form_id\":\"F137-001\"}}";
+        validTemplateJsonMessage = "{\"to\":\"student@example.com\",\"templateId\":\"d-template-123\",\"notificationType\":\"submission\",\"templateData\":{\"student_name\":\"John Doe\",\"form_id\":\"F137-001\"}}".getBytes(StandardCharsets.UTF_8);
     }
 
     @Test
     public void testConsumeEmailMessageSuccess() throws IOException {
         // Arrange
-        when(objectMapper.readValue(validJsonMessage, EmailMessage.class)).thenReturn(validEmailMessage);
-        when(validator.validate(validEmailMessage)).thenReturn(Collections.emptySet());
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(validEmailMessage);
+        when(emailMessageValidator.validate(validEmailMessage)).thenReturn(null);
         doNothing().when(emailService).sendEmail(validEmailMessage);
 
         // Act
         kafkaConsumerService.consumeEmailMessage(validJsonMessage, "test-topic", 0, 100L, acknowledgment);
 
         // Assert
-        verify(objectMapper, times(1)).readValue(validJsonMessage, EmailMessage.class);
-        verify(validator, times(1)).validate(validEmailMessage);
+        verify(emailMessageReader, times(1)).read(validJsonMessage);
+        verify(emailMessageValidator, times(1)).validate(validEmailMessage);
         verify(emailService, times(1)).sendEmail(validEmailMessage);
         verify(acknowledgment, times(1)).acknowledge();
     }
@@ -95,18 +134,18 @@ public class KafkaConsumerServiceTest {
             .subject("Test Subject")
             .body("Test Body")
             .build();
-        String jsonWithNullFrom = "{\"to\":\"test@example.com\",\"subject\":\"Test Subject\",\"body\":\"Test Body\"}";
+        byte[] jsonWithNullFrom = "{\"to\":\"test@example.com\",\"subject\":\"Test Subject\",\"body\":\"Test Body\"}".getBytes(StandardCharsets.UTF_8);
         
-        when(objectMapper.readValue(jsonWithNullFrom, EmailMessage.class)).thenReturn(messageWithNullFrom);
-        when(validator.validate(messageWithNullFrom)).thenReturn(Collections.emptySet());
+        when(emailMessageReader.read(jsonWithNullFrom)).thenReturn(messageWithNullFrom);
+        when(emailMessageValidator.validate(messageWithNullFrom)).thenReturn(null);
         doNothing().when(emailService).sendEmail(messageWithNullFrom);
 
         // Act
         kafkaConsumerService.consumeEmailMessage(jsonWithNullFrom, "test-topic", 0, 100L, acknowledgment);
 
         // Assert
-        verify(objectMapper, times(1)).readValue(jsonWithNullFrom, EmailMessage.class);
-        verify(validator, times(1)).validate(messageWithNullFrom);
+        verify(emailMessageReader, times(1)).read(jsonWithNullFrom);
+        verify(emailMessageValidator, times(1)).validate(messageWithNullFrom);
         verify(emailService, times(1)).sendEmail(messageWithNullFrom);
         verify(acknowledgment, times(1)).acknowledge();
     }
@@ -114,20 +153,15 @@ public class KafkaConsumerServiceTest {
     @Test
     public void testConsumeEmailMessageValidationFailure() throws IOException {
         // Arrange
-        Set<ConstraintViolation<EmailMessage>> violations = new HashSet<>();
-        ConstraintViolation<EmailMessage> violation = mock(ConstraintViolation.class);
-        when(violation.getMessage()).thenReturn("Email address is invalid");
-        violations.add(violation);
-
-        when(objectMapper.readValue(validJsonMessage, EmailMessage.class)).thenReturn(validEmailMessage);
-        when(validator.validate(validEmailMessage)).thenReturn(violations);
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(validEmailMessage);
+        when(emailMessageValidator.validate(validEmailMessage)).thenReturn("Email address is invalid");
 
         // Act
         kafkaConsumerService.consumeEmailMessage(validJsonMessage, "test-topic", 0, 100L, acknowledgment);
 
         // Assert
-        verify(objectMapper, times(1)).readValue(validJsonMessage, EmailMessage.class);
-        verify(validator, times(1)).validate(validEmailMessage);
+        verify(emailMessageReader, times(1)).read(validJsonMessage);
+        verify(emailMessageValidator, times(1)).validate(validEmailMessage);
         verify(emailService, never()).sendEmail(any(EmailMessage.class));
         verify(acknowledgment, times(1)).acknowledge(); // Should acknowledge even invalid messages
     }
@@ -135,23 +169,16 @@ public class KafkaConsumerServiceTest {
     @Test
     public void testConsumeEmailMessageMultipleValidationFailures() throws IOException {
         // Arrange
-        Set<ConstraintViolation<EmailMessage>> violations = new HashSet<>();
-        ConstraintViolation<EmailMessage> violation1 = mock(ConstraintViolation.class);
-        when(violation1.getMessage()).thenReturn("Email address is invalid");
-        ConstraintViolation<EmailMessage> violation2 = mock(ConstraintViolation.class);
-        when(violation2.getMessage()).thenReturn("Subject is required");
-        violations.add(violation1);
-        violations.add(violation2);
-
-        when(objectMapper.readValue(validJsonMessage, EmailMessage.class)).thenReturn(validEmailMessage);
-        when(validator.validate(validEmailMessage)).thenReturn(violations);
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(validEmailMessage);
+        when(emailMessageValidator.validate(validEmailMessage))
+            .thenReturn("Email address is invalid; Subject is required");
 
         // Act
         kafkaConsumerService.consumeEmailMessage(validJsonMessage, "test-topic", 0, 100L, acknowledgment);
 
         // Assert
-        verify(objectMapper, times(1)).readValue(validJsonMessage, EmailMessage.class);
-        verify(validator, times(1)).validate(validEmailMessage);
+        verify(emailMessageReader, times(1)).read(validJsonMessage);
+        verify(emailMessageValidator, times(1)).validate(validEmailMessage);
         verify(emailService, never()).sendEmail(any(EmailMessage.class));
         verify(acknowledgment, times(1)).acknowledge();
     }
@@ -159,32 +186,51 @@ public class KafkaConsumerServiceTest {
     @Test
     public void testConsumeEmailMessageJsonParsingFailure() throws IOException {
         // Arrange
-        String invalidJson = "invalid-json";
-        when(objectMapper.readValue(invalidJson, EmailMessage.class)).thenThrow(new IOException("JSON parsing failed"));
+        byte[] invalidJson = "invalid-json".getBytes(StandardCharsets.UTF_8);
+        when(emailMessageReader.read(invalidJson)).thenThrow(new IOException("JSON parsing failed"));
 
         // Act
         kafkaConsumerService.consumeEmailMessage(invalidJson, "test-topic", 0, 100L, acknowledgment);
 
         // Assert
-        verify(objectMapper, times(1)).readValue(invalidJson, EmailMessage.class);
-        verify(validator, never()).validate(any(EmailMessage.class));
+        verify(emailMessageReader, times(1)).read(invalidJson);
+        verify(emailMessageValidator, never()).validate(any(EmailMessage.class));
         verify(emailService, never()).sendEmail(any(EmailMessage.class));
         verify(acknowledgment, never()).acknowledge(); // Should not acknowledge parsing failures
     }
 
+    @Test
+    public void testConsumeEmailMessageDeadLettersUnparsableRecord() throws IOException {
+        // Arrange
+        byte[] invalidJson = "invalid-json".getBytes(StandardCharsets.UTF_8);
+        when(emailMessageReader.read(invalidJson)).thenThrow(new IOException("JSON parsing failed"));
+        when(deadLetterPublisher.isEnabled()).thenReturn(true);
+        ArgumentCaptor<ProcessingResult> result = ArgumentCaptor.forClass(ProcessingResult.class);
+
+        // Act
+        kafkaConsumerService.consumeEmailMessage(invalidJson, "test-topic", 0, 100L, acknowledgment);
+
+        // Assert
+        verify(deadLetterPublisher, times(1)).publish(any(), result.capture());
+        assertEquals(result.getValue().outcome(), ProcessingOutcome.INVALID);
+        assertEquals(result.getValue().stage(), ProcessingResult.Stage.PARSE);
+        verify(retryPublisher, never()).scheduleRetry(any());
+        verify(acknowledgment, times(1)).acknowledge();
+    }
+
     @Test
     public void testConsumeEmailMessageEmailServiceIOException() throws IOException {
         // Arrange
-        when(objectMapper.readValue(validJsonMessage, EmailMessage.class)).thenReturn(validEmailMessage);
-        when(validator.validate(validEmailMessage)).thenReturn(Collections.emptySet());
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(validEmailMessage);
+        when(emailMessageValidator.validate(validEmailMessage)).thenReturn(null);
         doThrow(new IOException("SendGrid API error")).when(emailService).sendEmail(validEmailMessage);
 
         // Act
         kafkaConsumerService.consumeEmailMessage(validJsonMessage, "test-topic", 0, 100L, acknowledgment);
 
         // Assert
-        verify(objectMapper, times(1)).readValue(validJsonMessage, EmailMessage.class);
-        verify(validator, times(1)).validate(validEmailMessage);
+        verify(emailMessageReader, times(1)).read(validJsonMessage);
+        verify(emailMessageValidator, times(1)).validate(validEmailMessage);
         verify(emailService, times(1)).sendEmail(validEmailMessage);
         verify(acknowledgment, never()).acknowledge(); // Should not acknowledge on IOException
     }
@@ -192,33 +238,82 @@ public class KafkaConsumerServiceTest {
     @Test
     public void testConsumeEmailMessageEmailServiceRuntimeException() throws IOException {
         // Arrange
-        when(objectMapper.readValue(validJsonMessage, EmailMessage.class)).thenReturn(validEmailMessage);
-        when(validator.validate(validEmailMessage)).thenReturn(Collections.emptySet());
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(validEmailMessage);
+        when(emailMessageValidator.validate(validEmailMessage)).thenReturn(null);
         doThrow(new RuntimeException("SendGrid API rate limit")).when(emailService).sendEmail(validEmailMessage);
 
         // Act
         kafkaConsumerService.consumeEmailMessage(validJsonMessage, "test-topic", 0, 100L, acknowledgment);
 
         // Assert
-        verify(objectMapper, times(1)).readValue(validJsonMessage, EmailMessage.class);
-        verify(validator, times(1)).validate(validEmailMessage);
+        verify(emailMessageReader, times(1)).read(validJsonMessage);
+        verify(emailMessageValidator, times(1)).validate(validEmailMessage);
         verify(emailService, times(1)).sendEmail(validEmailMessage);
         verify(acknowledgment, never()).acknowledge(); // Should not acknowledge on RuntimeException from email service
     }
 
+    @Test
+    public void testConsumeEmailMessageThrottledNotAcknowledged() throws IOException {
+        // Arrange
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(validEmailMessage);
+        when(emailMessageValidator.validate(validEmailMessage)).thenReturn(null);
+        doThrow(new SendGridException("plain text", 429, "Too Many Requests")).when(emailService).sendEmail(validEmailMessage);
+
+        // Act
+        kafkaConsumerService.consumeEmailMessage(validJsonMessage, "test-topic", 0, 100L, acknowledgment);
+
+        // Assert
+        verify(emailService, times(1)).sendEmail(validEmailMessage);
+        verify(acknowledgment, never()).acknowledge(); // Throttled sends are redelivered rather than dropped
+    }
+
+    @Test
+    public void testConsumeEmailMessageServerErrorMovedToRetryTopic() throws IOException {
+        // Arrange
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(validEmailMessage);
+        when(emailMessageValidator.validate(validEmailMessage)).thenReturn(null);
+        doThrow(new SendGridException("plain text", 503, "Service Unavailable")).when(emailService).sendEmail(validEmailMessage);
+        when(retryPublisher.scheduleRetry(any())).thenReturn(true);
+
+        // Act
+        kafkaConsumerService.consumeEmailMessage(validJsonMessage, "test-topic", 0, 100L, acknowledgment);
+
+        // Assert - a SendGrid outage is retried, not dead-lettered
+        verify(retryPublisher, times(1)).scheduleRetry(any());
+        verify(deadLetterPublisher, never()).publish(any(), any());
+        verify(acknowledgment, times(1)).acknowledge();
+        assertEquals(meterRegistry.get("email.messages").tag("outcome", "transient").counter().count(), 1.0);
+    }
+
+    @Test
+    public void testConsumeEmailMessageTransientFailureMovedToRetryTopic() throws IOException {
+        // Arrange
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(validEmailMessage);
+        when(emailMessageValidator.validate(validEmailMessage)).thenReturn(null);
+        doThrow(new IOException("SendGrid API error")).when(emailService).sendEmail(validEmailMessage);
+        when(retryPublisher.scheduleRetry(any())).thenReturn(true);
+
+        // Act
+        kafkaConsumerService.consumeEmailMessage(validJsonMessage, "test-topic", 0, 100L, acknowledgment);
+
+        // Assert - the record now lives on a retry topic, so the partition moves on
+        verify(retryPublisher, times(1)).scheduleRetry(any());
+        verify(acknowledgment, times(1)).acknowledge();
+    }
+
     @Test
     public void testConsumeEmailMessageUnexpectedException() throws IOException {
         // Arrange
-        when(objectMapper.readValue(validJsonMessage, EmailMessage.class)).thenReturn(validEmailMessage);
-        when(validator.validate(validEmailMessage)).thenReturn(Collections.emptySet());
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(validEmailMessage);
+        when(emailMessageValidator.validate(validEmailMessage)).thenReturn(null);
         doThrow(new NullPointerException("Unexpected error")).when(emailService).sendEmail(validEmailMessage);
 
         // Act
         kafkaConsumerService.consumeEmailMessage(validJsonMessage, "test-topic", 0, 100L, acknowledgment);
 
         // Assert
-        verify(objectMapper, times(1)).readValue(validJsonMessage, EmailMessage.class);
-        verify(validator, times(1)).validate(validEmailMessage);
+        verify(emailMessageReader, times(1)).read(validJsonMessage);
+        verify(emailMessageValidator, times(1)).validate(validEmailMessage);
         verify(emailService, times(1)).sendEmail(validEmailMessage);
         verify(acknowledgment, times(1)).acknowledge(); // Should acknowledge unexpected exceptions to prevent infinite retries
     }
@@ -226,16 +321,16 @@ public class KafkaConsumerServiceTest {
     @Test
     public void testConsumeEmailMessageWithDifferentTopicAndPartition() throws IOException {
         // Arrange
-        when(objectMapper.readValue(validJsonMessage, EmailMessage.class)).thenReturn(validEmailMessage);
-        when(validator.validate(validEmailMessage)).thenReturn(Collections.emptySet());
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(validEmailMessage);
+        when(emailMessageValidator.validate(validEmailMessage)).thenReturn(null);
         doNothing().when(emailService).sendEmail(validEmailMessage);
 
         // Act
         kafkaConsumerService.consumeEmailMessage(validJsonMessage, "different-topic", 3, 999L, acknowledgment);
 
         // Assert
-        verify(objectMapper, times(1)).readValue(validJsonMessage, EmailMessage.class);
-        verify(validator, times(1)).validate(validEmailMessage);
+        verify(emailMessageReader, times(1)).read(validJsonMessage);
+        verify(emailMessageValidator, times(1)).validate(validEmailMessage);
         verify(emailService, times(1)).sendEmail(validEmailMessage);
         verify(acknowledgment, times(1)).acknowledge();
     }
@@ -243,15 +338,15 @@ public class KafkaConsumerServiceTest {
     @Test
     public void testConsumeEmailMessageWithEmptyMessage() throws IOException {
         // Arrange
-        String emptyMessage = "";
-        when(objectMapper.readValue(emptyMessage, EmailMessage.class)).thenThrow(new IOException("Empty message"));
+        byte[] emptyMessage = "".getBytes(StandardCharsets.UTF_8);
+        when(emailMessageReader.read(emptyMessage)).thenThrow(new IOException("Empty message"));
 
         // Act
         kafkaConsumerService.consumeEmailMessage(emptyMessage, "test-topic", 0, 100L, acknowledgment);
 
         // Assert
-        verify(objectMapper, times(1)).readValue(emptyMessage, EmailMessage.class);
-        verify(validator, never()).validate(any(EmailMessage.class));
+        verify(emailMessageReader, times(1)).read(emptyMessage);
+        verify(emailMessageValidator, never()).validate(any(EmailMessage.class));
         verify(emailService, never()).sendEmail(any(EmailMessage.class));
         verify(acknowledgment, never()).acknowledge();
     }
@@ -259,30 +354,30 @@ public class KafkaConsumerServiceTest {
     @Test
     public void testConsumeEmailMessageWithNullMessage() throws IOException {
         // Arrange
-        when(objectMapper.readValue((String) null, EmailMessage.class)).thenThrow(new IOException("Null message"));
+        when(emailMessageReader.read(null)).thenThrow(new IOException("Null message"));
 
         // Act
         kafkaConsumerService.consumeEmailMessage(null, "test-topic", 0, 100L, acknowledgment);
 
         // Assert
-        verify(objectMapper, times(1)).readValue((String) null, EmailMessage.class);
-        verify(validator, never()).validate(any(EmailMessage.class));
+        verify(emailMessageReader, times(1)).read(null);
+        verify(emailMessageValidator, never()).validate(any(EmailMessage.class));
         verify(emailService, never()).sendEmail(any(EmailMessage.class));
         verify(acknowledgment, never()).acknowledge();
     }
 
     @Test
-    public void testConsumeEmailMessageObjectMapperThrowsRuntimeException() throws IOException {
+    public void testConsumeEmailMessageReaderThrowsRuntimeException() throws IOException {
         // Arrange
-        when(objectMapper.readValue(anyString(), eq(EmailMessage.class)))
-            .thenThrow(new RuntimeException("ObjectMapper internal error"));
+        when(emailMessageReader.read(any(byte[].class)))
+            .thenThrow(new RuntimeException("Reader internal error"));
 
         // Act
         kafkaConsumerService.consumeEmailMessage(validJsonMessage, "test-topic", 0, 100L, acknowledgment);
 
         // Assert
-        verify(objectMapper, times(1)).readValue(validJsonMessage, EmailMessage.class);
-        verify(validator, never()).validate(any(EmailMessage.class));
+        verify(emailMessageReader, times(1)).read(validJsonMessage);
+        verify(emailMessageValidator, never()).validate(any(EmailMessage.class));
         verify(emailService, never()).sendEmail(any(EmailMessage.class));
         verify(acknowledgment, times(1)).acknowledge(); // Should acknowledge unexpected exceptions
     }
@@ -290,15 +385,15 @@ public class KafkaConsumerServiceTest {
     @Test
     public void testConsumeEmailMessageValidatorThrowsException() throws IOException {
         // Arrange
-        when(objectMapper.readValue(validJsonMessage, EmailMessage.class)).thenReturn(validEmailMessage);
-        when(validator.validate(validEmailMessage)).thenThrow(new RuntimeException("Validator error"));
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(validEmailMessage);
+        when(emailMessageValidator.validate(validEmailMessage)).thenThrow(new RuntimeException("Validator error"));
 
         // Act
         kafkaConsumerService.consumeEmailMessage(validJsonMessage, "test-topic", 0, 100L, acknowledgment);
 
         // Assert
-        verify(objectMapper, times(1)).readValue(validJsonMessage, EmailMessage.class);
-        verify(validator, times(1)).validate(validEmailMessage);
+        verify(emailMessageReader, times(1)).read(validJsonMessage);
+        verify(emailMessageValidator, times(1)).validate(validEmailMessage);
         verify(emailService, never()).sendEmail(any(EmailMessage.class));
         verify(acknowledgment, times(1)).acknowledge(); // Should acknowledge unexpected exceptions
     }
@@ -308,16 +403,16 @@ public class KafkaConsumerServiceTest {
     @Test
     public void testConsumeTemplateEmailMessageSuccess() throws IOException {
         // Arrange
-        when(objectMapper.readValue(validTemplateJsonMessage, EmailMessage.class)).thenReturn(validTemplateEmailMessage);
-        when(validator.validate(validTemplateEmailMessage)).thenReturn(Collections.emptySet());
+        when(emailMessageReader.read(validTemplateJsonMessage)).thenReturn(validTemplateEmailMessage);
+        when(emailMessageValidator.validate(validTemplateEmailMessage)).thenReturn(null);
         doNothing().when(emailService).sendEmail(validTemplateEmailMessage);
 
         // Act
         kafkaConsumerService.consumeEmailMessage(validTemplateJsonMessage, "test-topic", 0, 100L, acknowledgment);
 
         // Assert
-        verify(objectMapper, times(1)).readValue(validTemplateJsonMessage, EmailMessage.class);
-        verify(validator, times(1)).validate(validTemplateEmailMessage);
+        verify(emailMessageReader, times(1)).read(validTemplateJsonMessage);
+        verify(emailMessageValidator, times(1)).validate(validTemplateEmailMessage);
         verify(emailService, times(1)).sendEmail(validTemplateEmailMessage);
         verify(acknowledgment, times(1)).acknowledge();
     }
@@ -330,18 +425,18 @@ public class KafkaConsumerServiceTest {
             .notificationType("submission")
             .templateData(Map.of("student_name", "Jane Doe"))
             .build();
-        String notificationJson = "{\"to\":\"student@example.com\",\"notificationType\":\"submission\",\"templateData\":{\"student_name\":\"Jane Doe\"}}";
+        byte[] notificationJson = "{\"to\":\"student@example.com\",\"notificationType\":\"submission\",\"templateData\":{\"student_name\":\"Jane Doe\"}}".getBytes(StandardCharsets.UTF_8);
         
-        when(objectMapper.readValue(notificationJson, EmailMessage.class)).thenReturn(notificationOnlyMessage);
-        when(validator.validate(notificationOnlyMessage)).thenReturn(Collections.emptySet());
+        when(emailMessageReader.read(notificationJson)).thenReturn(notificationOnlyMessage);
+        when(emailMessageValidator.validate(notificationOnlyMessage)).thenReturn(null);
         doNothing().when(emailService).sendEmail(notificationOnlyMessage);
 
         // Act
         kafkaConsumerService.consumeEmailMessage(notificationJson, "test-topic", 0, 100L, acknowledgment);
 
         // Assert
-        verify(objectMapper, times(1)).readValue(notificationJson, EmailMessage.class);
-        verify(validator, times(1)).validate(notificationOnlyMessage);
+        verify(emailMessageReader, times(1)).read(notificationJson);
+        verify(emailMessageValidator, times(1)).validate(notificationOnlyMessage);
         verify(emailService, times(1)).sendEmail(notificationOnlyMessage);
         verify(acknowledgment, times(1)).acknowledge();
     }
@@ -353,17 +448,17 @@ public class KafkaConsumerServiceTest {
             .to("student@example.com")
             .notificationType("unknown")
             .build();
-        String invalidJson = "{\"to\":\"student@example.com\",\"notificationType\":\"unknown\"}";
+        byte[] invalidJson = "{\"to\":\"student@example.com\",\"notificationType\":\"unknown\"}".getBytes(StandardCharsets.UTF_8);
         
-        when(objectMapper.readValue(invalidJson, EmailMessage.class)).thenReturn(invalidMessage);
-        when(validator.validate(invalidMessage)).thenReturn(Collections.emptySet());
+        when(emailMessageReader.read(invalidJson)).thenReturn(invalidMessage);
+        when(emailMessageValidator.validate(invalidMessage)).thenReturn(EmailMessageValidator.CONTENT_REQUIRED);
 
         // Act
         kafkaConsumerService.consumeEmailMessage(invalidJson, "test-topic", 0, 100L, acknowledgment);
 
         // Assert
-        verify(objectMapper, times(1)).readValue(invalidJson, EmailMessage.class);
-        verify(validator, times(1)).validate(invalidMessage);
+        verify(emailMessageReader, times(1)).read(invalidJson);
+        verify(emailMessageValidator, times(1)).validate(invalidMessage);
         verify(emailService, never()).sendEmail(any(EmailMessage.class));
         verify(acknowledgment, times(1)).acknowledge(); // Should acknowledge to prevent reprocessing
     }
@@ -371,16 +466,16 @@ public class KafkaConsumerServiceTest {
     @Test
     public void testConsumeEmailMessageTemplateServiceFailure() throws IOException {
         // Arrange
-        when(objectMapper.readValue(validTemplateJsonMessage, EmailMessage.class)).thenReturn(validTemplateEmailMessage);
-        when(validator.validate(validTemplateEmailMessage)).thenReturn(Collections.emptySet());
+        when(emailMessageReader.read(validTemplateJsonMessage)).thenReturn(validTemplateEmailMessage);
+        when(emailMessageValidator.validate(validTemplateEmailMessage)).thenReturn(null);
         doThrow(new IllegalArgumentException("Template not found")).when(emailService).sendEmail(validTemplateEmailMessage);
 
         // Act
         kafkaConsumerService.consumeEmailMessage(validTemplateJsonMessage, "test-topic", 0, 100L, acknowledgment);
 
         // Assert
-        verify(objectMapper, times(1)).readValue(validTemplateJsonMessage, EmailMessage.class);
-        verify(validator, times(1)).validate(validTemplateEmailMessage);
+        verify(emailMessageReader, times(1)).read(validTemplateJsonMessage);
+        verify(emailMessageValidator, times(1)).validate(validTemplateEmailMessage);
         verify(emailService, times(1)).sendEmail(validTemplateEmailMessage);
         verify(acknowledgment, times(1)).acknowledge(); // Should acknowledge IllegalArgumentException
     }
@@ -395,18 +490,18 @@ public class KafkaConsumerServiceTest {
             .templateId("d-template-123")
             .templateData(Map.of("name", "John"))
             .build();
-        String mixedJson = "{\"to\":\"student@example.com\",\"subject\":\"Plain Text Subject\",\"body\":\"Plain text body\",\"templateId\":\"d-template-123\",\"templateData\":{\"name\":\"John\"}}";
+        byte[] mixedJson = "{\"to\":\"student@example.com\",\"subject\":\"Plain Text Subject\",\"body\":\"Plain text body\",\"templateId\":\"d-template-123\",\"templateData\":{\"name\":\"John\"}}".getBytes(StandardCharsets.UTF_8);
         
-        when(objectMapper.readValue(mixedJson, EmailMessage.class)).thenReturn(mixedMessage);
-        when(validator.validate(mixedMessage)).thenReturn(Collections.emptySet());
+        when(emailMessageReader.read(mixedJson)).thenReturn(mixedMessage);
+        when(emailMessageValidator.validate(mixedMessage)).thenReturn(null);
         doNothing().when(emailService).sendEmail(mixedMessage);
 
         // Act
         kafkaConsumerService.consumeEmailMessage(mixedJson, "test-topic", 0, 100L, acknowledgment);
 
         // Assert
-        verify(objectMapper, times(1)).readValue(mixedJson, EmailMessage.class);
-        verify(validator, times(1)).validate(mixedMessage);
+        verify(emailMessageReader, times(1)).read(mixedJson);
+        verify(emailMessageValidator, times(1)).validate(mixedMessage);
         verify(emailService, times(1)).sendEmail(mixedMessage);
         verify(acknowledgment, times(1)).acknowledge();
     }
@@ -419,19 +514,785 @@ public class KafkaConsumerServiceTest {
             .templateId("d-template-123")
             .templateData(Collections.emptyMap())
             .build();
-        String emptyDataJson = "{\"to\":\"student@example.com\",\"templateId\":\"d-template-123\",\"templateData\":{}}";
+        byte[] emptyDataJson = "{\"to\":\"student@example.com\",\"templateId\":\"d-template-123\",\"templateData\":{}}".getBytes(StandardCharsets.UTF_8);
         
-        when(objectMapper.readValue(emptyDataJson, EmailMessage.class)).thenReturn(emptyDataMessage);
-        when(validator.validate(emptyDataMessage)).thenReturn(Collections.emptySet());
+        when(emailMessageReader.read(emptyDataJson)).thenReturn(emptyDataMessage);
+        when(emailMessageValidator.validate(emptyDataMessage)).thenReturn(null);
         doNothing().when(emailService).sendEmail(emptyDataMessage);
 
         // Act
         kafkaConsumerService.consumeEmailMessage(emptyDataJson, "test-topic", 0, 100L, acknowledgment);
 
         // Assert
-        verify(objectMapper, times(1)).readValue(emptyDataJson, EmailMessage.class);
-        verify(validator, times(1)).validate(emptyDataMessage);
+        verify(emailMessageReader, times(1)).read(emptyDataJson);
+        verify(emailMessageValidator, times(1)).validate(emptyDataMessage);
         verify(emailService, times(1)).sendEmail(emptyDataMessage);
         verify(acknowledgment, times(1)).acknowledge();
     }
-}
\ No newline at end of file
+
+    // Batch listener tests
+
+    @Test
+    public void testConsumeEmailBatchSuccess() throws IOException {
+        // Arrange
+        List<ConsumerRecord<String, byte[]>> records = List.of(
+            new ConsumerRecord<>("test-topic", 0, 100L, null, validJsonMessage),
+            new ConsumerRecord<>("test-topic", 0, 101L, null, validTemplateJsonMessage));
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(validEmailMessage);
+        when(emailMessageReader.read(validTemplateJsonMessage)).thenReturn(validTemplateEmailMessage);
+        when(emailMessageValidator.validate(any(EmailMessage.class))).thenReturn(null);
+        when(emailService.sendEmailAsync(any(EmailMessage.class))).thenReturn(CompletableFuture.completedFuture(null));
+
+        // Act
+        kafkaConsumerService.consumeEmailBatch(records, acknowledgment);
+
+        // Assert
+        verify(emailService, times(1)).sendEmailAsync(validEmailMessage);
+        verify(emailService, times(1)).sendEmailAsync(validTemplateEmailMessage);
+        verify(acknowledgment, times(1)).acknowledge();
+        verify(acknowledgment, never()).nack(anyInt(), any(Duration.class));
+    }
+
+    @Test
+    public void testConsumeEmailBatchSkipsInvalidRecords() throws IOException {
+        // Arrange
+        byte[] invalidJson = "invalid-json".getBytes(StandardCharsets.UTF_8);
+        List<ConsumerRecord<String, byte[]>> records = List.of(
+            new ConsumerRecord<>("test-topic", 0, 100L, null, invalidJson),
+            new ConsumerRecord<>("test-topic", 0, 101L, null, validJsonMessage));
+        when(emailMessageReader.read(invalidJson)).thenThrow(new JsonParseException(null, "JSON parsing failed"));
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(validEmailMessage);
+        when(emailMessageValidator.validate(validEmailMessage)).thenReturn(null);
+        when(emailService.sendEmailAsync(validEmailMessage)).thenReturn(CompletableFuture.completedFuture(null));
+
+        // Act
+        kafkaConsumerService.consumeEmailBatch(records, acknowledgment);
+
+        // Assert
+        verify(emailService, times(1)).sendEmailAsync(validEmailMessage);
+        verify(acknowledgment, times(1)).acknowledge(); // Undecodable records can never succeed
+    }
+
+    @Test
+    public void testConsumeEmailBatchValidatesBeforeSending() throws IOException {
+        // Arrange
+        List<ConsumerRecord<String, byte[]>> records = List.of(
+            new ConsumerRecord<>("test-topic", 0, 100L, null, validJsonMessage),
+            new ConsumerRecord<>("test-topic", 0, 101L, null, validTemplateJsonMessage));
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(validEmailMessage);
+        when(emailMessageReader.read(validTemplateJsonMessage)).thenReturn(validTemplateEmailMessage);
+        when(emailMessageValidator.validate(any(EmailMessage.class))).thenReturn(null);
+        when(emailService.sendEmailAsync(any(EmailMessage.class))).thenReturn(CompletableFuture.completedFuture(null));
+
+        // Act
+        kafkaConsumerService.consumeEmailBatch(records, acknowledgment);
+
+        // Assert - every record is decoded and validated before the first send
+        InOrder inOrder = inOrder(emailMessageValidator, emailService);
+        inOrder.verify(emailMessageValidator, times(2)).validate(any(EmailMessage.class));
+        inOrder.verify(emailService, times(2)).sendEmailAsync(any(EmailMessage.class));
+    }
+
+    @Test
+    public void testConsumeEmailBatchNacksAtFirstTransientFailure() throws IOException {
+        // Arrange
+        Duration backoff = Duration.ofSeconds(2);
+        ReflectionTestUtils.setField(kafkaConsumerService, "batchRetryBackoff", backoff);
+        List<ConsumerRecord<String, byte[]>> records = List.of(
+            new ConsumerRecord<>("test-topic", 0, 100L, null, validJsonMessage),
+            new ConsumerRecord<>("test-topic", 0, 101L, null, validTemplateJsonMessage));
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(validEmailMessage);
+        when(emailMessageReader.read(validTemplateJsonMessage)).thenReturn(validTemplateEmailMessage);
+        when(emailMessageValidator.validate(any(EmailMessage.class))).thenReturn(null);
+        when(emailService.sendEmailAsync(validEmailMessage)).thenReturn(CompletableFuture.completedFuture(null));
+        when(emailService.sendEmailAsync(validTemplateEmailMessage))
+            .thenReturn(CompletableFuture.failedFuture(new IOException("SendGrid API error")));
+
+        // Act
+        kafkaConsumerService.consumeEmailBatch(records, acknowledgment);
+
+        // Assert - the first record is committed, the failed one is redelivered
+        verify(acknowledgment, times(1)).nack(1, backoff);
+        verify(acknowledgment, never()).acknowledge();
+    }
+
+    @Test
+    public void testConsumeEmailBatchSkipsRecordsSentAfterNackWhenRedelivered() throws IOException {
+        // Arrange
+        Duration backoff = Duration.ofSeconds(2);
+        ReflectionTestUtils.setField(kafkaConsumerService, "batchRetryBackoff", backoff);
+        List<ConsumerRecord<String, byte[]>> records = List.of(
+            new ConsumerRecord<>("test-topic", 0, 100L, null, validTemplateJsonMessage),
+            new ConsumerRecord<>("test-topic", 0, 101L, null, validJsonMessage));
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(validEmailMessage);
+        when(emailMessageReader.read(validTemplateJsonMessage)).thenReturn(validTemplateEmailMessage);
+        when(emailMessageValidator.validate(any(EmailMessage.class))).thenReturn(null);
+        when(emailService.sendEmailAsync(validEmailMessage)).thenReturn(CompletableFuture.completedFuture(null));
+        when(emailService.sendEmailAsync(validTemplateEmailMessage))
+            .thenReturn(CompletableFuture.failedFuture(new IOException("SendGrid API error")))
+            .thenReturn(CompletableFuture.completedFuture(null));
+
+        // Act - the nack redelivers both records
+        kafkaConsumerService.consumeEmailBatch(records, acknowledgment);
+        kafkaConsumerService.consumeEmailBatch(records, acknowledgment);
+
+        // Assert - the record SendGrid accepted the first time is not sent again
+        verify(acknowledgment, times(1)).nack(0, backoff);
+        verify(emailService, times(1)).sendEmailAsync(validEmailMessage);
+        verify(emailService, times(2)).sendEmailAsync(validTemplateEmailMessage);
+        verify(acknowledgment, times(1)).acknowledge();
+    }
+
+    @Test
+    public void testConsumeEmailBatchAcknowledgesPermanentFailures() throws IOException {
+        // Arrange
+        List<ConsumerRecord<String, byte[]>> records = List.of(
+            new ConsumerRecord<>("test-topic", 0, 100L, null, validJsonMessage));
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(validEmailMessage);
+        when(emailMessageValidator.validate(validEmailMessage)).thenReturn(null);
+        when(emailService.sendEmailAsync(validEmailMessage))
+            .thenReturn(CompletableFuture.failedFuture(new IllegalArgumentException("Template not found")));
+
+        // Act
+        kafkaConsumerService.consumeEmailBatch(records, acknowledgment);
+
+        // Assert
+        verify(acknowledgment, times(1)).acknowledge();
+        verify(acknowledgment, never()).nack(anyInt(), any(Duration.class));
+    }
+
+    @Test
+    public void testConsumeEmailBatchCoalescesTemplateEmails() throws IOException {
+        // Arrange
+        List<ConsumerRecord<String, byte[]>> records = List.of(
+            new ConsumerRecord<>("test-topic", 0, 100L, null, validJsonMessage),
+            new ConsumerRecord<>("test-topic", 0, 101L, null, validTemplateJsonMessage));
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(validEmailMessage);
+        when(emailMessageReader.read(validTemplateJsonMessage)).thenReturn(validTemplateEmailMessage);
+        when(emailMessageValidator.validate(any(EmailMessage.class))).thenReturn(null);
+        when(templateEmailCoalescer.isEnabled()).thenReturn(true);
+        when(emailService.determineTemplateId(validTemplateEmailMessage)).thenReturn("d-template-123");
+        when(emailService.sendEmailAsync(validEmailMessage)).thenReturn(CompletableFuture.completedFuture(null));
+        when(templateEmailCoalescer.submit(validTemplateEmailMessage, "d-template-123"))
+            .thenReturn(CompletableFuture.completedFuture(null));
+
+        // Act
+        kafkaConsumerService.consumeEmailBatch(records, acknowledgment);
+
+        // Assert - template email goes through the coalescer, plain text is sent directly
+        verify(templateEmailCoalescer, times(1)).submit(validTemplateEmailMessage, "d-template-123");
+        verify(templateEmailCoalescer, times(1)).flush();
+        verify(emailService, times(1)).sendEmailAsync(validEmailMessage);
+        verify(emailService, never()).sendEmailAsync(validTemplateEmailMessage);
+        verify(acknowledgment, times(1)).acknowledge();
+    }
+
+    @Test
+    public void testConsumeEmailBatchNacksCoalescedTransientFailure() throws IOException {
+        // Arrange
+        Duration backoff = Duration.ofSeconds(2);
+        ReflectionTestUtils.setField(kafkaConsumerService, "batchRetryBackoff", backoff);
+        List<ConsumerRecord<String, byte[]>> records = List.of(
+            new ConsumerRecord<>("test-topic", 0, 100L, null, validJsonMessage),
+            new ConsumerRecord<>("test-topic", 0, 101L, null, validTemplateJsonMessage));
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(validEmailMessage);
+        when(emailMessageReader.read(validTemplateJsonMessage)).thenReturn(validTemplateEmailMessage);
+        when(emailMessageValidator.validate(any(EmailMessage.class))).thenReturn(null);
+        when(templateEmailCoalescer.isEnabled()).thenReturn(true);
+        when(emailService.determineTemplateId(validTemplateEmailMessage)).thenReturn("d-template-123");
+        when(emailService.sendEmailAsync(validEmailMessage)).thenReturn(CompletableFuture.completedFuture(null));
+        when(templateEmailCoalescer.submit(validTemplateEmailMessage, "d-template-123"))
+            .thenReturn(CompletableFuture.failedFuture(new IOException("SendGrid API error")));
+
+        // Act
+        kafkaConsumerService.consumeEmailBatch(records, acknowledgment);
+
+        // Assert
+        verify(acknowledgment, times(1)).nack(1, backoff);
+        verify(acknowledgment, never()).acknowledge();
+    }
+
+    // Concurrent (virtual thread) listener tests
+
+    @Test
+    public void testConsumeEmailBatchConcurrentlyCommitsEveryPartition() throws IOException {
+        // Arrange
+        ReflectionTestUtils.setField(kafkaConsumerService, "virtualThreadMaxConcurrency", 8);
+        ReflectionTestUtils.setField(kafkaConsumerService, "virtualThreadDeadline", Duration.ofSeconds(5));
+        Consumer<?, ?> consumer = mock(Consumer.class);
+        List<ConsumerRecord<String, byte[]>> records = List.of(
+            new ConsumerRecord<>("test-topic", 0, 100L, null, validJsonMessage),
+            new ConsumerRecord<>("test-topic", 0, 101L, null, validJsonMessage),
+            new ConsumerRecord<>("test-topic", 1, 7L, null, validTemplateJsonMessage));
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(validEmailMessage);
+        when(emailMessageReader.read(validTemplateJsonMessage)).thenReturn(validTemplateEmailMessage);
+        when(emailMessageValidator.validate(any(EmailMessage.class))).thenReturn(null);
+
+        // Act
+        kafkaConsumerService.consumeEmailBatchConcurrently(records, consumer);
+
+        // Assert
+        verify(emailService, times(2)).sendEmail(validEmailMessage);
+        verify(emailService, times(1)).sendEmail(validTemplateEmailMessage);
+        verify(consumer, times(1)).commitSync(Map.of(
+            new TopicPartition("test-topic", 0), new OffsetAndMetadata(102L),
+            new TopicPartition("test-topic", 1), new OffsetAndMetadata(8L)));
+        verify(consumer, never()).seek(any(TopicPartition.class), anyLong());
+    }
+
+    @Test
+    public void testConsumeEmailBatchConcurrentlyStopsWatermarkAtTransientFailure() throws IOException {
+        // Arrange
+        ReflectionTestUtils.setField(kafkaConsumerService, "virtualThreadMaxConcurrency", 8);
+        ReflectionTestUtils.setField(kafkaConsumerService, "virtualThreadDeadline", Duration.ofSeconds(5));
+        Consumer<?, ?> consumer = mock(Consumer.class);
+        byte[] failingJson = "{\"to\":\"fail@example.com\",\"subject\":\"S\",\"body\":\"B\"}".getBytes(StandardCharsets.UTF_8);
+        EmailMessage failingMessage = EmailMessage.builder().to("fail@example.com").subject("S").body("B").build();
+        List<ConsumerRecord<String, byte[]>> records = List.of(
+            new ConsumerRecord<>("test-topic", 0, 100L, null, validJsonMessage),
+            new ConsumerRecord<>("test-topic", 0, 101L, null, failingJson),
+            new ConsumerRecord<>("test-topic", 0, 102L, null, validJsonMessage));
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(validEmailMessage);
+        when(emailMessageReader.read(failingJson)).thenReturn(failingMessage);
+        when(emailMessageValidator.validate(any(EmailMessage.class))).thenReturn(null);
+        doThrow(new IOException("SendGrid API error")).when(emailService).sendEmail(failingMessage);
+
+        // Act
+        kafkaConsumerService.consumeEmailBatchConcurrently(records, consumer);
+
+        // Assert - offset 102 succeeded but must not be committed past the failure at 101
+        TopicPartition partition = new TopicPartition("test-topic", 0);
+        verify(consumer, times(1)).commitSync(Map.of(partition, new OffsetAndMetadata(101L)));
+        verify(consumer, times(1)).seek(partition, 101L);
+    }
+
+    @Test
+    public void testConsumeEmailBatchConcurrentlySkipsCompletedRecordsWhenRedelivered() throws IOException {
+        // Arrange
+        ReflectionTestUtils.setField(kafkaConsumerService, "virtualThreadMaxConcurrency", 8);
+        ReflectionTestUtils.setField(kafkaConsumerService, "virtualThreadDeadline", Duration.ofSeconds(5));
+        Consumer<?, ?> consumer = mock(Consumer.class);
+        byte[] failingJson = "{\"to\":\"fail@example.com\",\"subject\":\"S\",\"body\":\"B\"}".getBytes(StandardCharsets.UTF_8);
+        EmailMessage failingMessage = EmailMessage.builder().to("fail@example.com").subject("S").body("B").build();
+        List<ConsumerRecord<String, byte[]>> records = List.of(
+            new ConsumerRecord<>("test-topic", 0, 100L, null, validJsonMessage),
+            new ConsumerRecord<>("test-topic", 0, 101L, null, failingJson),
+            new ConsumerRecord<>("test-topic", 0, 102L, null, validJsonMessage));
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(validEmailMessage);
+        when(emailMessageReader.read(failingJson)).thenReturn(failingMessage);
+        when(emailMessageValidator.validate(any(EmailMessage.class))).thenReturn(null);
+        doThrow(new IOException("SendGrid API error")).doNothing().when(emailService).sendEmail(failingMessage);
+        kafkaConsumerService.consumeEmailBatchConcurrently(records, consumer);
+
+        // Act - the partition was rewound to 101, so 101 and 102 come back
+        kafkaConsumerService.consumeEmailBatchConcurrently(records.subList(1, 3), consumer);
+
+        // Assert - 102 already succeeded and is not sent again
+        TopicPartition partition = new TopicPartition("test-topic", 0);
+        verify(emailService, times(2)).sendEmail(validEmailMessage);
+        verify(emailService, times(2)).sendEmail(failingMessage);
+        verify(consumer, times(1)).commitSync(Map.of(partition, new OffsetAndMetadata(103L)));
+        verify(consumer, times(1)).seek(partition, 101L);
+    }
+
+    @Test
+    public void testConsumeEmailBatchMovesTransientFailuresToRetryTopic() throws IOException {
+        // Arrange
+        List<ConsumerRecord<String, byte[]>> records = List.of(
+            new ConsumerRecord<>("test-topic", 0, 100L, null, validJsonMessage),
+            new ConsumerRecord<>("test-topic", 0, 101L, null, validTemplateJsonMessage));
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(validEmailMessage);
+        when(emailMessageReader.read(validTemplateJsonMessage)).thenReturn(validTemplateEmailMessage);
+        when(emailMessageValidator.validate(any(EmailMessage.class))).thenReturn(null);
+        when(emailService.sendEmailAsync(validEmailMessage)).thenReturn(CompletableFuture.completedFuture(null));
+        when(emailService.sendEmailAsync(validTemplateEmailMessage))
+            .thenReturn(CompletableFuture.failedFuture(new IOException("SendGrid API error")));
+        when(retryPublisher.scheduleRetry(records.get(1))).thenReturn(true);
+
+        // Act
+        kafkaConsumerService.consumeEmailBatch(records, acknowledgment);
+
+        // Assert
+        verify(retryPublisher, never()).scheduleRetry(records.get(0));
+        verify(acknowledgment, times(1)).acknowledge();
+        verify(acknowledgment, never()).nack(anyInt(), any(Duration.class));
+    }
+
+    @Test
+    public void testConsumeEmailBatchConcurrentlyCommitsPastRetriedRecord() throws IOException {
+        // Arrange
+        ReflectionTestUtils.setField(kafkaConsumerService, "virtualThreadMaxConcurrency", 8);
+        ReflectionTestUtils.setField(kafkaConsumerService, "virtualThreadDeadline", Duration.ofSeconds(5));
+        Consumer<?, ?> consumer = mock(Consumer.class);
+        byte[] failingJson = "{\"to\":\"fail@example.com\",\"subject\":\"S\",\"body\":\"B\"}".getBytes(StandardCharsets.UTF_8);
+        EmailMessage failingMessage = EmailMessage.builder().to("fail@example.com").subject("S").body("B").build();
+        List<ConsumerRecord<String, byte[]>> records = List.of(
+            new ConsumerRecord<>("test-topic", 0, 100L, null, validJsonMessage),
+            new ConsumerRecord<>("test-topic", 0, 101L, null, failingJson));
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(validEmailMessage);
+        when(emailMessageReader.read(failingJson)).thenReturn(failingMessage);
+        when(emailMessageValidator.validate(any(EmailMessage.class))).thenReturn(null);
+        doThrow(new IOException("SendGrid API error")).when(emailService).sendEmail(failingMessage);
+        when(retryPublisher.scheduleRetry(records.get(1))).thenReturn(true);
+
+        // Act
+        kafkaConsumerService.consumeEmailBatchConcurrently(records, consumer);
+
+        // Assert
+        TopicPartition partition = new TopicPartition("test-topic", 0);
+        verify(consumer, times(1)).commitSync(Map.of(partition, new OffsetAndMetadata(102L)));
+        verify(consumer, never()).seek(any(TopicPartition.class), anyLong());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testConsumeEmailMessageDeadLettersInvalidMessage() throws IOException {
+        // Arrange
+        EmailMessage noContent = EmailMessage.builder().to("test@example.com").build();
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(noContent);
+        when(emailMessageValidator.validate(noContent)).thenReturn(EmailMessageValidator.CONTENT_REQUIRED);
+
+        // Act
+        kafkaConsumerService.consumeEmailMessage(validJsonMessage, "test-topic", 0, 100L, acknowledgment);
+
+        // Assert
+        ArgumentCaptor<ConsumerRecord<String, byte[]>> record = ArgumentCaptor.forClass(ConsumerRecord.class);
+        ArgumentCaptor<ProcessingResult> result = ArgumentCaptor.forClass(ProcessingResult.class);
+        verify(deadLetterPublisher, times(1)).publish(record.capture(), result.capture());
+        assertEquals(record.getValue().value(), validJsonMessage);
+        assertEquals(record.getValue().offset(), 100L);
+        assertEquals(result.getValue().outcome(), ProcessingOutcome.INVALID);
+        assertEquals(result.getValue().stage(), ProcessingResult.Stage.VALIDATION);
+        verify(acknowledgment, times(1)).acknowledge();
+    }
+
+    @Test
+    public void testConsumeEmailMessageDeadLettersPermanentSendGridFailure() throws IOException {
+        // Arrange
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(validEmailMessage);
+        when(emailMessageValidator.validate(validEmailMessage)).thenReturn(null);
+        doThrow(new SendGridException("plain text", 400, "Bad Request")).when(emailService).sendEmail(validEmailMessage);
+
+        // Act
+        kafkaConsumerService.consumeEmailMessage(validJsonMessage, "test-topic", 0, 100L, acknowledgment);
+
+        // Assert
+        ArgumentCaptor<ProcessingResult> result = ArgumentCaptor.forClass(ProcessingResult.class);
+        verify(deadLetterPublisher, times(1)).publish(any(), result.capture());
+        assertEquals(result.getValue().stage(), ProcessingResult.Stage.SEND);
+        assertEquals(result.getValue().sendGridStatus(), Integer.valueOf(400));
+        verify(acknowledgment, times(1)).acknowledge();
+    }
+
+    @Test
+    public void testConsumeEmailMessageNotAcknowledgedWhenDeadLetterFails() throws IOException {
+        // Arrange
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(validEmailMessage);
+        when(emailMessageValidator.validate(validEmailMessage)).thenReturn(null);
+        doThrow(new NullPointerException("Unexpected error")).when(emailService).sendEmail(validEmailMessage);
+        when(deadLetterPublisher.publish(any(), any())).thenReturn(false);
+
+        // Act
+        kafkaConsumerService.consumeEmailMessage(validJsonMessage, "test-topic", 0, 100L, acknowledgment);
+
+        // Assert - the payload must not be lost
+        verify(acknowledgment, never()).acknowledge();
+    }
+
+    @Test
+    public void testSettleDeadLettersRecordThatExhaustedRetries() {
+        // Arrange
+        ConsumerRecord<String, byte[]> record = new ConsumerRecord<>("test-topic-retry-3", 0, 5L, null, validJsonMessage);
+        ProcessingResult transientFailure = new ProcessingResult(ProcessingOutcome.RETRY, ProcessingResult.Stage.SEND,
+            new IOException("SendGrid API error"));
+        when(retryPublisher.isExhausted(record.headers())).thenReturn(true);
+
+        // Act
+        boolean committable = kafkaConsumerService.settle(record, transientFailure);
+
+        // Assert
+        assertTrue(committable);
+        ArgumentCaptor<ProcessingResult> result = ArgumentCaptor.forClass(ProcessingResult.class);
+        verify(deadLetterPublisher, times(1)).publish(eq(record), result.capture());
+        assertEquals(result.getValue().stage(), ProcessingResult.Stage.RETRIES_EXHAUSTED);
+        assertEquals(result.getValue().outcome(), ProcessingOutcome.FAILED);
+    }
+
+    @Test
+    public void testSettleRedeliversTransientFailureWithoutRetryTopics() {
+        // Arrange
+        ConsumerRecord<String, byte[]> record = new ConsumerRecord<>("test-topic", 0, 5L, null, validJsonMessage);
+        ProcessingResult transientFailure = new ProcessingResult(ProcessingOutcome.RETRY, ProcessingResult.Stage.SEND,
+            new IOException("SendGrid API error"));
+
+        // Act & Assert
+        assertFalse(kafkaConsumerService.settle(record, transientFailure));
+        verify(deadLetterPublisher, never()).publish(any(), any());
+    }
+
+    @Test
+    public void testConsumeEmailMessageSkipsDuplicateSend() throws IOException {
+        // Arrange
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(validEmailMessage);
+        when(emailMessageValidator.validate(validEmailMessage)).thenReturn(null);
+        when(idempotencyCache.claim(validEmailMessage)).thenReturn(false);
+
+        // Act
+        kafkaConsumerService.consumeEmailMessage(validJsonMessage, "test-topic", 0, 100L, acknowledgment);
+
+        // Assert
+        verify(emailService, never()).sendEmail(any(EmailMessage.class));
+        verify(idempotencyCache, never()).recordSent(any(EmailMessage.class));
+        verify(acknowledgment, times(1)).acknowledge();
+    }
+
+    @Test
+    public void testConsumeEmailMessageRecordsSuccessfulSend() throws IOException {
+        // Arrange
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(validEmailMessage);
+        when(emailMessageValidator.validate(validEmailMessage)).thenReturn(null);
+
+        // Act
+        kafkaConsumerService.consumeEmailMessage(validJsonMessage, "test-topic", 0, 100L, acknowledgment);
+
+        // Assert
+        InOrder inOrder = inOrder(idempotencyCache, emailService);
+        inOrder.verify(idempotencyCache).claim(validEmailMessage);
+        inOrder.verify(emailService).sendEmail(validEmailMessage);
+        inOrder.verify(idempotencyCache).recordSent(validEmailMessage);
+    }
+
+    @Test
+    public void testConsumeEmailMessageDoesNotRecordFailedSend() throws IOException {
+        // Arrange
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(validEmailMessage);
+        when(emailMessageValidator.validate(validEmailMessage)).thenReturn(null);
+        doThrow(new IOException("SendGrid API error")).when(emailService).sendEmail(validEmailMessage);
+
+        // Act
+        kafkaConsumerService.consumeEmailMessage(validJsonMessage, "test-topic", 0, 100L, acknowledgment);
+
+        // Assert
+        verify(idempotencyCache, never()).recordSent(any(EmailMessage.class));
+        verify(idempotencyCache, times(1)).release(validEmailMessage);
+    }
+
+    @Test
+    public void testConsumeEmailBatchSendsIdenticalMessagesOfOnePollOnce() throws IOException {
+        // Arrange
+        IdempotencyConfig idempotencyConfig = new IdempotencyConfig();
+        idempotencyConfig.setEnabled(true);
+        ReflectionTestUtils.setField(kafkaConsumerService, "idempotencyCache",
+            new IdempotencyCache(idempotencyConfig, meterRegistry));
+        List<ConsumerRecord<String, byte[]>> records = List.of(
+            new ConsumerRecord<>("test-topic", 0, 100L, null, validJsonMessage),
+            new ConsumerRecord<>("test-topic", 0, 101L, null, validJsonMessage));
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(validEmailMessage);
+        when(emailMessageValidator.validate(any(EmailMessage.class))).thenReturn(null);
+        when(emailService.sendEmailAsync(validEmailMessage)).thenReturn(CompletableFuture.completedFuture(null));
+
+        // Act
+        kafkaConsumerService.consumeEmailBatch(records, acknowledgment);
+
+        // Assert
+        verify(emailService, times(1)).sendEmailAsync(validEmailMessage);
+        assertEquals(meterRegistry.get("email.messages").tag("outcome", "duplicate").counter().count(), 1.0);
+        verify(acknowledgment, times(1)).acknowledge();
+    }
+
+    @Test
+    public void testConsumeEmailBatchSkipsDuplicates() throws IOException {
+        // Arrange
+        List<ConsumerRecord<String, byte[]>> records = List.of(
+            new ConsumerRecord<>("test-topic", 0, 100L, null, validJsonMessage),
+            new ConsumerRecord<>("test-topic", 0, 101L, null, validTemplateJsonMessage));
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(validEmailMessage);
+        when(emailMessageReader.read(validTemplateJsonMessage)).thenReturn(validTemplateEmailMessage);
+        when(emailMessageValidator.validate(any(EmailMessage.class))).thenReturn(null);
+        when(idempotencyCache.claim(validEmailMessage)).thenReturn(false);
+        when(emailService.sendEmailAsync(validTemplateEmailMessage)).thenReturn(CompletableFuture.completedFuture(null));
+
+        // Act
+        kafkaConsumerService.consumeEmailBatch(records, acknowledgment);
+
+        // Assert
+        verify(emailService, never()).sendEmailAsync(validEmailMessage);
+        verify(emailService, times(1)).sendEmailAsync(validTemplateEmailMessage);
+        verify(idempotencyCache, times(1)).recordSent(validTemplateEmailMessage);
+        verify(acknowledgment, times(1)).acknowledge();
+    }
+
+    @Test
+    public void testConsumeEmailMessageRecordsStageTimersAndOutcome() throws IOException {
+        // Arrange
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(validEmailMessage);
+        when(emailMessageReader.read(validTemplateJsonMessage)).thenReturn(validTemplateEmailMessage);
+        when(emailMessageValidator.validate(validTemplateEmailMessage)).thenReturn("Invalid recipient email address format");
+
+        // Act
+        kafkaConsumerService.consumeEmailMessage(validJsonMessage, "test-topic", 0, 100L, acknowledgment);
+        kafkaConsumerService.consumeEmailMessage(validTemplateJsonMessage, "test-topic", 0, 101L, acknowledgment);
+
+        // Assert
+        assertEquals(meterRegistry.get("email.pipeline").tags("stage", "parse", "notification.type", "none", "kind", "plain")
+            .timer().count(), 1L);
+        assertEquals(meterRegistry.get("email.pipeline").tags("stage", "validate", "notification.type", "other", "kind", "template")
+            .timer().count(), 1L);
+        assertEquals(meterRegistry.get("email.messages").tag("outcome", "sent").counter().count(), 1.0);
+        assertEquals(meterRegistry.get("email.messages").tag("outcome", "invalid").counter().count(), 1.0);
+    }
+
+    @Test
+    public void testConsumeEmailMessageSendsInTopicLane() throws IOException {
+        // Arrange
+        SimpleMeterRegistry laneRegistry = new SimpleMeterRegistry();
+        LaneScheduler laneScheduler = new LaneScheduler(enabledLanes(), laneRegistry);
+        ReflectionTestUtils.setField(kafkaConsumerService, "laneScheduler", laneScheduler);
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(validEmailMessage);
+        when(emailMessageValidator.validate(validEmailMessage)).thenReturn(null);
+        double[] inFlightDuringSend = new double[1];
+        doAnswer(invocation -> {
+            inFlightDuringSend[0] = laneRegistry.get("email.lane.in.flight").tag("lane", "transactional").gauge().value();
+            return null;
+        }).when(emailService).sendEmail(validEmailMessage);
+
+        // Act
+        kafkaConsumerService.consumeEmailMessage(validJsonMessage, "urgent-emails", 0, 100L, acknowledgment);
+
+        // Assert
+        assertEquals(inFlightDuringSend[0], 1.0);
+        assertEquals(laneRegistry.get("email.lane.in.flight").tag("lane", "transactional").gauge().value(), 0.0);
+        assertEquals(laneRegistry.get("email.lane.wait").tag("lane", "transactional").timer().count(), 1L);
+        verify(acknowledgment, times(1)).acknowledge();
+    }
+
+    @Test
+    public void testConsumeEmailBatchReleasesLaneSlots() throws IOException {
+        // Arrange
+        SimpleMeterRegistry laneRegistry = new SimpleMeterRegistry();
+        ReflectionTestUtils.setField(kafkaConsumerService, "laneScheduler", new LaneScheduler(enabledLanes(), laneRegistry));
+        List<ConsumerRecord<String, byte[]>> records = List.of(
+            new ConsumerRecord<>("test-topic", 0, 100L, null, validJsonMessage),
+            new ConsumerRecord<>("test-topic", 0, 101L, null, validTemplateJsonMessage));
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(validEmailMessage);
+        when(emailMessageReader.read(validTemplateJsonMessage)).thenReturn(validTemplateEmailMessage);
+        when(emailMessageValidator.validate(any(EmailMessage.class))).thenReturn(null);
+        when(emailService.sendEmailAsync(validEmailMessage)).thenReturn(CompletableFuture.completedFuture(null));
+        when(emailService.sendEmailAsync(validTemplateEmailMessage))
+            .thenReturn(CompletableFuture.failedFuture(new IOException("Connection reset")));
+        when(retryPublisher.scheduleRetry(any())).thenReturn(true);
+
+        // Act
+        kafkaConsumerService.consumeEmailBatch(records, acknowledgment);
+
+        // Assert
+        verify(emailService, times(1)).sendEmailAsync(validEmailMessage);
+        verify(emailService, times(1)).sendEmailAsync(validTemplateEmailMessage);
+        assertEquals(laneRegistry.get("email.lane.wait").timers().stream().mapToLong(timer -> timer.count()).sum(), 2L);
+        assertEquals(laneRegistry.get("email.lane.in.flight").gauges().stream().mapToDouble(gauge -> gauge.value()).sum(), 0.0);
+        verify(acknowledgment, times(1)).acknowledge();
+    }
+
+    @Test
+    public void testConsumeEmailMessageDeferredIsCommittedWithoutSending() throws IOException {
+        // Arrange
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(validEmailMessage);
+        when(emailMessageValidator.validate(validEmailMessage)).thenReturn(null);
+        when(deferredDeliveryScheduler.defer(validEmailMessage, validJsonMessage)).thenReturn(true);
+
+        // Act
+        kafkaConsumerService.consumeEmailMessage(validJsonMessage, "test-topic", 0, 100L, acknowledgment);
+
+        // Assert
+        verify(emailService, never()).sendEmail(any(EmailMessage.class));
+        verify(idempotencyCache, times(1)).recordSent(validEmailMessage);
+        verify(acknowledgment, times(1)).acknowledge();
+        assertEquals(meterRegistry.get("email.messages").tag("outcome", "deferred").counter().count(), 1.0);
+    }
+
+    @Test
+    public void testConsumeEmailMessageJournalFailureIsRetried() throws IOException {
+        // Arrange
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(validEmailMessage);
+        when(emailMessageValidator.validate(validEmailMessage)).thenReturn(null);
+        when(deferredDeliveryScheduler.defer(validEmailMessage, validJsonMessage)).thenThrow(new IOException("Disk full"));
+
+        // Act
+        kafkaConsumerService.consumeEmailMessage(validJsonMessage, "test-topic", 0, 100L, acknowledgment);
+
+        // Assert
+        verify(emailService, never()).sendEmail(any(EmailMessage.class));
+        verify(acknowledgment, never()).acknowledge();
+    }
+
+    @Test
+    public void testConsumeEmailBatchSendsOnlyMessagesNotDeferred() throws IOException {
+        // Arrange
+        List<ConsumerRecord<String, byte[]>> records = List.of(
+            new ConsumerRecord<>("test-topic", 0, 100L, null, validJsonMessage),
+            new ConsumerRecord<>("test-topic", 0, 101L, null, validTemplateJsonMessage));
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(validEmailMessage);
+        when(emailMessageReader.read(validTemplateJsonMessage)).thenReturn(validTemplateEmailMessage);
+        when(emailMessageValidator.validate(any(EmailMessage.class))).thenReturn(null);
+        when(deferredDeliveryScheduler.defer(validTemplateEmailMessage, validTemplateJsonMessage)).thenReturn(true);
+        when(emailService.sendEmailAsync(validEmailMessage)).thenReturn(CompletableFuture.completedFuture(null));
+
+        // Act
+        kafkaConsumerService.consumeEmailBatch(records, acknowledgment);
+
+        // Assert
+        verify(emailService, times(1)).sendEmailAsync(validEmailMessage);
+        verify(emailService, never()).sendEmailAsync(validTemplateEmailMessage);
+        verify(acknowledgment, times(1)).acknowledge();
+    }
+
+    @Test
+    public void testConsumeEmailMessageSuppressedIsCommittedWithoutSending() throws IOException {
+        // Arrange
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(validEmailMessage);
+        when(emailMessageValidator.validate(validEmailMessage)).thenReturn(null);
+        when(suppressionList.isSuppressed("test@example.com")).thenReturn(true);
+        when(suppressionList.publishOutcome(any())).thenReturn(true);
+
+        // Act
+        kafkaConsumerService.consumeEmailMessage(validJsonMessage, "test-topic", 0, 100L, acknowledgment);
+
+        // Assert
+        verify(emailService, never()).sendEmail(any(EmailMessage.class));
+        verify(deferredDeliveryScheduler, never()).defer(any(), any());
+        verify(suppressionList, times(1)).publishOutcome(any());
+        verify(acknowledgment, times(1)).acknowledge();
+        assertEquals(meterRegistry.get("email.messages").tag("outcome", "suppressed").counter().count(), 1.0);
+    }
+
+    @Test
+    public void testConsumeEmailMessageSuppressedIsRedeliveredWhenOutcomeNotPublished() throws IOException {
+        // Arrange
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(validEmailMessage);
+        when(emailMessageValidator.validate(validEmailMessage)).thenReturn(null);
+        when(suppressionList.isSuppressed("test@example.com")).thenReturn(true);
+        when(suppressionList.publishOutcome(any())).thenReturn(false);
+
+        // Act
+        kafkaConsumerService.consumeEmailMessage(validJsonMessage, "test-topic", 0, 100L, acknowledgment);
+
+        // Assert
+        verify(emailService, never()).sendEmail(any(EmailMessage.class));
+        verify(acknowledgment, never()).acknowledge();
+    }
+
+    @Test
+    public void testConsumeEmailBatchSkipsSuppressedRecipients() throws IOException {
+        // Arrange
+        List<ConsumerRecord<String, byte[]>> records = List.of(
+            new ConsumerRecord<>("test-topic", 0, 100L, null, validJsonMessage),
+            new ConsumerRecord<>("test-topic", 0, 101L, null, validTemplateJsonMessage));
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(validEmailMessage);
+        when(emailMessageReader.read(validTemplateJsonMessage)).thenReturn(validTemplateEmailMessage);
+        when(emailMessageValidator.validate(any(EmailMessage.class))).thenReturn(null);
+        when(suppressionList.isSuppressed("student@example.com")).thenReturn(true);
+        when(suppressionList.publishOutcome(any())).thenReturn(true);
+        when(emailService.sendEmailAsync(validEmailMessage)).thenReturn(CompletableFuture.completedFuture(null));
+
+        // Act
+        kafkaConsumerService.consumeEmailBatch(records, acknowledgment);
+
+        // Assert
+        verify(emailService, times(1)).sendEmailAsync(validEmailMessage);
+        verify(emailService, never()).sendEmailAsync(validTemplateEmailMessage);
+        verify(suppressionList, times(1)).publishOutcome(records.get(1));
+        verify(acknowledgment, times(1)).acknowledge();
+    }
+
+    // Shutdown drain tests
+
+    @Test
+    public void testConsumeEmailMessageReportsRecordInFlight() throws IOException {
+        // Arrange
+        DrainCoordinator drainCoordinator = new DrainCoordinator(new DrainConfig(), null, meterRegistry);
+        ReflectionTestUtils.setField(kafkaConsumerService, "drainCoordinator", drainCoordinator);
+        int[] inFlightDuringSend = new int[1];
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(validEmailMessage);
+        when(emailMessageValidator.validate(validEmailMessage)).thenReturn(null);
+        doAnswer(invocation -> {
+            inFlightDuringSend[0] = drainCoordinator.inFlight();
+            return null;
+        }).when(emailService).sendEmail(validEmailMessage);
+
+        // Act
+        kafkaConsumerService.consumeEmailMessage(validJsonMessage, "test-topic", 0, 100L, acknowledgment);
+
+        // Assert
+        assertEquals(inFlightDuringSend[0], 1);
+        assertEquals(drainCoordinator.inFlight(), 0);
+        verify(acknowledgment, times(1)).acknowledge();
+    }
+
+    @Test
+    public void testConsumeEmailMessageWhileDrainingLeavesRecordForRedelivery() throws IOException {
+        // Arrange
+        DrainCoordinator drainCoordinator = new DrainCoordinator(new DrainConfig(), null, meterRegistry);
+        drainCoordinator.stop();
+        ReflectionTestUtils.setField(kafkaConsumerService, "drainCoordinator", drainCoordinator);
+
+        // Act
+        kafkaConsumerService.consumeEmailMessage(validJsonMessage, "test-topic", 0, 100L, acknowledgment);
+
+        // Assert
+        verify(emailMessageReader, never()).read(any(byte[].class));
+        verify(emailService, never()).sendEmail(any(EmailMessage.class));
+        verify(acknowledgment, never()).acknowledge();
+    }
+
+    @Test
+    public void testConsumeEmailBatchWhileDrainingLeavesRecordsForRedelivery() throws IOException {
+        // Arrange
+        DrainCoordinator drainCoordinator = new DrainCoordinator(new DrainConfig(), null, meterRegistry);
+        drainCoordinator.stop();
+        ReflectionTestUtils.setField(kafkaConsumerService, "drainCoordinator", drainCoordinator);
+        List<ConsumerRecord<String, byte[]>> records = List.of(
+            new ConsumerRecord<>("test-topic", 0, 100L, null, validJsonMessage),
+            new ConsumerRecord<>("test-topic", 0, 101L, null, validTemplateJsonMessage));
+
+        // Act
+        kafkaConsumerService.consumeEmailBatch(records, acknowledgment);
+
+        // Assert
+        verify(emailService, never()).sendEmailAsync(any(EmailMessage.class));
+        verify(acknowledgment, never()).acknowledge();
+        verify(acknowledgment, never()).nack(anyInt(), any(Duration.class));
+    }
+
+    @Test
+    public void testConsumeEmailBatchConcurrentlyWhileDrainingStartsNothing() throws IOException {
+        // Arrange
+        ReflectionTestUtils.setField(kafkaConsumerService, "virtualThreadMaxConcurrency", 8);
+        ReflectionTestUtils.setField(kafkaConsumerService, "virtualThreadDeadline", Duration.ofSeconds(5));
+        DrainCoordinator drainCoordinator = new DrainCoordinator(new DrainConfig(), null, meterRegistry);
+        drainCoordinator.stop();
+        ReflectionTestUtils.setField(kafkaConsumerService, "drainCoordinator", drainCoordinator);
+        Consumer<?, ?> consumer = mock(Consumer.class);
+        List<ConsumerRecord<String, byte[]>> records = List.of(
+            new ConsumerRecord<>("test-topic", 0, 100L, null, validJsonMessage),
+            new ConsumerRecord<>("test-topic", 1, 7L, null, validTemplateJsonMessage));
+
+        // Act
+        kafkaConsumerService.consumeEmailBatchConcurrently(records, consumer);
+
+        // Assert
+        verify(emailService, never()).sendEmail(any(EmailMessage.class));
+        verify(consumer, never()).seek(any(TopicPartition.class), anyLong());
+        assertEquals(drainCoordinator.inFlight(), 0);
+    }
+
+    private static LaneConfig enabledLanes() {
+        LaneConfig.Lane transactional = new LaneConfig.Lane();
+        transactional.setWeight(8);
+        transactional.setTopic("urgent-emails");
+        LaneConfig laneConfig = new LaneConfig();
+        laneConfig.setEnabled(true);
+        laneConfig.setSlots(1);
+        laneConfig.setLanes(Map.of("transactional", transactional));
+        return laneConfig;
+    }
+}
@@ -1,23 +1,22 @@
 package ph.edu.cspb.kafkasendgrid.service;
 
+import ph.edu.cspb.kafkasendgrid.config.DrainConfig;
+import ph.edu.cspb.kafkasendgrid.config.LaneConfig;
+import ph.edu.cspb.kafkasendgrid.config.TemplateConfig;
 import ph.edu.cspb.kafkasendgrid.model.EmailMessage;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
-import jakarta.validation.ConstraintViolation;
-import jakarta.validation.Validator;
 import java.io.IOException;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.Set;
+import java.nio.charset.StandardCharsets;
 
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 import static org.testng.Assert.*;
 
@@ -30,10 +29,25 @@ public class KafkaConsumerServiceUnitTest {
     private EmailService emailService;
 
     @Mock
-    private ObjectMapper objectMapper;
+    private EmailMessageReader emailMessageReader;
 
     @Mock
-    private Validator validator;
+    private EmailMessageValidator emailMessageValidator;
+
+    @Mock
+    private RetryPublisher retryPublisher;
+
+    @Mock
+    private DeadLetterPublisher deadLetterPublisher;
+
+    @Mock
+    private IdempotencyCache idempotencyCache;
+
+    @Mock
+    private DeferredDeliveryScheduler deferredDeliveryScheduler;
+
+    @Mock
+    private SuppressionList suppressionList;
 
     @Mock
     private Acknowledgment acknowledgment;
@@ -41,30 +55,38 @@ public class KafkaConsumerServiceUnitTest {
     @InjectMocks
     private KafkaConsumerService kafkaConsumerService;
 
+    private SimpleMeterRegistry meterRegistry;
+
     private EmailMessage validEmailMessage;
-    private String validJsonMessage;
+    private byte[] validJsonMessage;
 
     @BeforeMethod
     public void setUp() {
         MockitoAnnotations.openMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+        ReflectionTestUtils.setField(kafkaConsumerService, "pipelineMetrics", new PipelineMetrics(meterRegistry, new TemplateConfig()));
+        ReflectionTestUtils.setField(kafkaConsumerService, "laneScheduler", new LaneScheduler(new LaneConfig(), meterRegistry));
+        ReflectionTestUtils.setField(kafkaConsumerService, "drainCoordinator", new DrainCoordinator(new DrainConfig(), null, meterRegistry));
+        when(deadLetterPublisher.publish(any(), any())).thenReturn(true);
+        when(idempotencyCache.claim(any(EmailMessage.class))).thenReturn(true);
         
         validEmailMessage = EmailMessage.builder().to("test@example.com").subject("Test Subject").body("Test Body").build();
-        validJsonMessage = "{\"to\":\"test@example.com\",\"subject\":\"Test Subject\",\"body\":\"Test Body\",\"from\":\"sender@example.com\"}";
+        validJsonMessage = "{\"to\":\"test@example.com\",\"subject\":\"Test Subject\",\"body\":\"Test Body\",\"from\":\"sender@example.com\"}".getBytes(StandardCharsets.UTF_8);
     }
 
     @Test
     public void testConsumeEmailMessageSuccess() throws IOException {
         // Arrange
-        when(objectMapper.readValue(validJsonMessage, EmailMessage.class)).thenReturn(validEmailMessage);
-        when(validator.validate(validEmailMessage)).thenReturn(Collections.emptySet());
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(validEmailMessage);
+        when(emailMessageValidator.validate(validEmailMessage)).thenReturn(null);
         doNothing().when(emailService).sendEmail(validEmailMessage);
 
         // Act
         kafkaConsumerService.consumeEmailMessage(validJsonMessage, "test-topic", 0, 100L, acknowledgment);
 
         // Assert
-        verify(objectMapper, times(1)).readValue(validJsonMessage, EmailMessage.class);
-        verify(validator, times(1)).validate(validEmailMessage);
+        verify(emailMessageReader, times(1)).read(validJsonMessage);
+        verify(emailMessageValidator, times(1)).validate(validEmailMessage);
         verify(emailService, times(1)).sendEmail(validEmailMessage);
         verify(acknowledgment, times(1)).acknowledge();
     }
@@ -72,20 +94,15 @@ public class KafkaConsumerServiceUnitTest {
     @Test
     public void testConsumeEmailMessageValidationFailure() throws IOException {
         // Arrange
-        Set<ConstraintViolation<EmailMessage>> violations = new HashSet<>();
-        ConstraintViolation<EmailMessage> violation = mock(ConstraintViolation.class);
-        when(violation.getMessage()).thenReturn("Email address is invalid");
-        violations.add(violation);
-
-        when(objectMapper.readValue(validJsonMessage, EmailMessage.class)).thenReturn(validEmailMessage);
-        when(validator.validate(validEmailMessage)).thenReturn(violations);
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(validEmailMessage);
+        when(emailMessageValidator.validate(validEmailMessage)).thenReturn("Email address is invalid");
 
         // Act
         kafkaConsumerService.consumeEmailMessage(validJsonMessage, "test-topic", 0, 100L, acknowledgment);
 
         // Assert
-        verify(objectMapper, times(1)).readValue(validJsonMessage, EmailMessage.class);
-        verify(validator, times(1)).validate(validEmailMessage);
+        verify(emailMessageReader, times(1)).read(validJsonMessage);
+        verify(emailMessageValidator, times(1)).validate(validEmailMessage);
         verify(emailService, never()).sendEmail(any(EmailMessage.class));
         verify(acknowledgment, times(1)).acknowledge(); // Should acknowledge even invalid messages
     }
@@ -93,15 +110,15 @@ public class KafkaConsumerServiceUnitTest {
     @Test
     public void testConsumeEmailMessageJsonParsingFailure() throws IOException {
         // Arrange
-        String invalidJson = "invalid-json";
-        when(objectMapper.readValue(invalidJson, EmailMessage.class)).thenThrow(new IOException("JSON parsing failed"));
+        byte[] invalidJson = "invalid-json".getBytes(StandardCharsets.UTF_8);
+        when(emailMessageReader.read(invalidJson)).thenThrow(new IOException("JSON parsing failed"));
 
         // Act
         kafkaConsumerService.consumeEmailMessage(invalidJson, "test-topic", 0, 100L, acknowledgment);
 
         // Assert
-        verify(objectMapper, times(1)).readValue(invalidJson, EmailMessage.class);
-        verify(validator, never()).validate(any(EmailMessage.class));
+        verify(emailMessageReader, times(1)).read(invalidJson);
+        verify(emailMessageValidator, never()).validate(any(EmailMessage.class));
         verify(emailService, never()).sendEmail(any(EmailMessage.class));
         verify(acknowledgment, never()).acknowledge(); // Should not acknowledge parsing failures
     }
@@ -109,16 +126,16 @@ public class KafkaConsumerServiceUnitTest {
     @Test
     public void testConsumeEmailMessageEmailServiceIOException() throws IOException {
         // Arrange
-        when(objectMapper.readValue(validJsonMessage, EmailMessage.class)).thenReturn(validEmailMessage);
-        when(validator.validate(validEmailMessage)).thenReturn(Collections.emptySet());
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(validEmailMessage);
+        when(emailMessageValidator.validate(validEmailMessage)).thenReturn(null);
         doThrow(new IOException("SendGrid API error")).when(emailService).sendEmail(validEmailMessage);
 
         // Act
         kafkaConsumerService.consumeEmailMessage(validJsonMessage, "test-topic", 0, 100L, acknowledgment);
 
         // Assert
-        verify(objectMapper, times(1)).readValue(validJsonMessage, EmailMessage.class);
-        verify(validator, times(1)).validate(validEmailMessage);
+        verify(emailMessageReader, times(1)).read(validJsonMessage);
+        verify(emailMessageValidator, times(1)).validate(validEmailMessage);
         verify(emailService, times(1)).sendEmail(validEmailMessage);
         verify(acknowledgment, never()).acknowledge(); // Should not acknowledge on IOException
     }
@@ -126,16 +143,16 @@ public class KafkaConsumerServiceUnitTest {
     @Test
     public void testConsumeEmailMessageUnexpectedException() throws IOException {
         // Arrange
-        when(objectMapper.readValue(validJsonMessage, EmailMessage.class)).thenReturn(validEmailMessage);
-        when(validator.validate(validEmailMessage)).thenReturn(Collections.emptySet());
+        when(emailMessageReader.read(validJsonMessage)).thenReturn(validEmailMessage);
+        when(emailMessageValidator.validate(validEmailMessage)).thenReturn(null);
         doThrow(new NullPointerException("Unexpected error")).when(emailService).sendEmail(validEmailMessage);
 
         // Act
         kafkaConsumerService.consumeEmailMessage(validJsonMessage, "test-topic", 0, 100L, acknowledgment);
 
         // Assert
-        verify(objectMapper, times(1)).readValue(validJsonMessage, EmailMessage.class);
-        verify(validator, times(1)).validate(validEmailMessage);
+        verify(emailMessageReader, times(1)).read(validJsonMessage);
+        verify(emailMessageValidator, times(1)).validate(validEmailMessage);
         verify(emailService, times(1)).sendEmail(validEmailMessage);
         verify(acknowledgment, times(1)).acknowledge(); // Should acknowledge unexpected exceptions to prevent infinite retries
     }
@@ -144,18 +161,18 @@ public class KafkaConsumerServiceUnitTest {
     public void testConsumeEmailMessageWithNullFromAddress() throws IOException {
         // Arrange
         EmailMessage messageWithNullFrom = EmailMessage.builder().to("test@example.com").subject("Test Subject").body("Test Body").build();
-        String jsonWithNullFrom = "{\"to\":\"test@example.com\",\"subject\":\"Test Subject\",\"body\":\"Test Body\"}";
+        byte[] jsonWithNullFrom = "{\"to\":\"test@example.com\",\"subject\":\"Test Subject\",\"body\":\"Test Body\"}".getBytes(StandardCharsets.UTF_8);
         
-        when(objectMapper.readValue(jsonWithNullFrom, EmailMessage.class)).thenReturn(messageWithNullFrom);
-        when(validator.validate(messageWithNullFrom)).thenReturn(Collections.emptySet());
+        when(emailMessageReader.read(jsonWithNullFrom)).thenReturn(messageWithNullFrom);
+        when(emailMessageValidator.validate(messageWithNullFrom)).thenReturn(null);
         doNothing().when(emailService).sendEmail(messageWithNullFrom);
 
         // Act
         kafkaConsumerService.consumeEmailMessage(jsonWithNullFrom, "test-topic", 0, 100L, acknowledgment);
 
         // Assert
-        verify(objectMapper, times(1)).readValue(jsonWithNullFrom, EmailMessage.class);
-        verify(validator, times(1)).validate(messageWithNullFrom);
+        verify(emailMessageReader, times(1)).read(jsonWithNullFrom);
+        verify(emailMessageValidator, times(1)).validate(messageWithNullFrom);
         verify(emailService, times(1)).sendEmail(messageWithNullFrom);
         verify(acknowledgment, times(1)).acknowledge();
     }
@@ -0,0 +1,198 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.config.LaneConfig;
+import ph.edu.cspb.kafkasendgrid.model.EmailMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.testng.Assert.*;
+
+/**
+ * Unit tests for LaneScheduler.
+ */
+public class LaneSchedulerTest {
+
+    private LaneConfig config;
+    private SimpleMeterRegistry meterRegistry;
+    private AtomicLong now;
+
+    @BeforeMethod
+    public void setUp() {
+        LaneConfig.Lane transactional = new LaneConfig.Lane();
+        transactional.setWeight(3);
+        transactional.setNotificationTypes(List.of("approval", "Status_Update"));
+        LaneConfig.Lane bulk = new LaneConfig.Lane();
+        bulk.setNotificationTypes(List.of("reminder"));
+        bulk.setTopic("bulk-emails");
+        Map<String, LaneConfig.Lane> lanes = new LinkedHashMap<>();
+        lanes.put("transactional", transactional);
+        lanes.put("bulk", bulk);
+
+        config = new LaneConfig();
+        config.setEnabled(true);
+        config.setSlots(1);
+        config.setDefaultLane("other");
+        config.setLanes(lanes);
+        meterRegistry = new SimpleMeterRegistry();
+        now = new AtomicLong(TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    public void testLaneForPrefersTopicThenNotificationTypeThenDefault() {
+        // Arrange
+        LaneScheduler scheduler = scheduler();
+
+        // Act & Assert
+        assertEquals(scheduler.laneFor("bulk-emails", message("approval")).name(), "bulk");
+        assertEquals(scheduler.laneFor("emails", message("approval")).name(), "transactional");
+        assertEquals(scheduler.laneFor(null, message("STATUS_UPDATE")).name(), "transactional");
+        assertEquals(scheduler.laneFor("emails", message("reminder")).name(), "bulk");
+        assertEquals(scheduler.laneFor("emails", message("newsletter")).name(), "other");
+        assertEquals(scheduler.laneFor("emails", message(null)).name(), "other");
+    }
+
+    @Test
+    public void testLanesShareSlotsByWeightUnderContention() throws Exception {
+        // Arrange
+        LaneScheduler scheduler = scheduler();
+        LaneScheduler.Lane transactional = scheduler.laneFor(null, message("approval"));
+        LaneScheduler.Lane bulk = scheduler.laneFor(null, message("reminder"));
+        List<LaneScheduler.Lane> grants = Collections.synchronizedList(new ArrayList<>());
+        scheduler.acquire(bulk);
+        for (int i = 0; i < 6; i++) {
+            scheduler.acquireAsync(bulk).thenRun(() -> grants.add(bulk));
+        }
+        for (int i = 0; i < 6; i++) {
+            scheduler.acquireAsync(transactional).thenRun(() -> grants.add(transactional));
+        }
+
+        // Act
+        scheduler.release(bulk);
+        for (int i = 0; i < 7; i++) {
+            scheduler.release(grants.get(i));
+        }
+
+        // Assert
+        // Weight 3 against 1: six transactional sends go out with two bulk ones, not after all six
+        List<LaneScheduler.Lane> firstEight = grants.subList(0, 8);
+        assertEquals(firstEight.stream().filter(lane -> lane == transactional).count(), 6L);
+        assertEquals(firstEight.stream().filter(lane -> lane == bulk).count(), 2L);
+        assertEquals(scheduler.queueDepth(transactional), 0);
+        assertEquals(scheduler.queueDepth(bulk), 4);
+    }
+
+    @Test
+    public void testMaxShareCapsLaneEvenWhenOthersAreIdle() throws Exception {
+        // Arrange
+        config.setSlots(4);
+        config.getLanes().get("bulk").setMaxShare(0.5);
+        LaneScheduler scheduler = scheduler();
+        LaneScheduler.Lane transactional = scheduler.laneFor(null, message("approval"));
+        LaneScheduler.Lane bulk = scheduler.laneFor(null, message("reminder"));
+
+        // Act
+        scheduler.acquire(bulk);
+        scheduler.acquire(bulk);
+        CompletableFuture<Void> thirdBulk = scheduler.acquireAsync(bulk);
+        CompletableFuture<Void> firstTransactional = scheduler.acquireAsync(transactional);
+
+        // Assert
+        assertFalse(thirdBulk.isDone());
+        assertTrue(firstTransactional.isDone());
+        assertEquals(scheduler.inFlight(bulk), 2);
+
+        scheduler.release(bulk);
+        assertTrue(thirdBulk.isDone());
+        assertEquals(scheduler.inFlight(bulk), 2);
+    }
+
+    @Test
+    public void testQueueDepthAndWaitAreExported() throws Exception {
+        // Arrange
+        LaneScheduler scheduler = scheduler();
+        LaneScheduler.Lane transactional = scheduler.laneFor(null, message("approval"));
+        LaneScheduler.Lane bulk = scheduler.laneFor(null, message("reminder"));
+        scheduler.acquire(transactional);
+
+        // Act
+        CompletableFuture<Void> waiting = scheduler.acquireAsync(bulk);
+        double depthWhileWaiting = meterRegistry.get("email.lane.queue.depth").tag("lane", "bulk").gauge().value();
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(50));
+        scheduler.release(transactional);
+
+        // Assert
+        assertTrue(waiting.isDone());
+        assertEquals(depthWhileWaiting, 1.0);
+        assertEquals(meterRegistry.get("email.lane.queue.depth").tag("lane", "bulk").gauge().value(), 0.0);
+        assertEquals(meterRegistry.get("email.lane.in.flight").tag("lane", "bulk").gauge().value(), 1.0);
+        assertEquals(meterRegistry.get("email.lane.in.flight").tag("lane", "transactional").gauge().value(), 0.0);
+        assertEquals(meterRegistry.get("email.lane.wait").tag("lane", "bulk").timer().totalTime(TimeUnit.MILLISECONDS), 50.0);
+        assertEquals(meterRegistry.get("email.lane.wait").tag("lane", "transactional").timer().totalTime(TimeUnit.MILLISECONDS), 0.0);
+    }
+
+    @Test
+    public void testDisabledNeverWaits() throws Exception {
+        // Arrange
+        config.setEnabled(false);
+        LaneScheduler scheduler = scheduler();
+        LaneScheduler.Lane bulk = scheduler.laneFor(null, message("reminder"));
+
+        // Act
+        scheduler.acquire(bulk);
+        scheduler.acquire(bulk);
+        CompletableFuture<Void> third = scheduler.acquireAsync(bulk);
+
+        // Assert
+        assertTrue(third.isDone());
+        assertEquals(scheduler.inFlight(bulk), 0);
+    }
+
+    @Test
+    public void testInterruptedAcquireLeavesTheQueue() throws Exception {
+        // Arrange
+        LaneScheduler scheduler = scheduler();
+        LaneScheduler.Lane transactional = scheduler.laneFor(null, message("approval"));
+        LaneScheduler.Lane bulk = scheduler.laneFor(null, message("reminder"));
+        scheduler.acquire(transactional);
+
+        // Act
+        Thread.currentThread().interrupt();
+        try {
+            scheduler.acquire(bulk);
+            fail("Expected the acquire to be interrupted");
+        } catch (InterruptedIOException expected) {
+            // Expected
+        } finally {
+            Thread.interrupted();
+        }
+        scheduler.release(transactional);
+
+        // Assert
+        assertEquals(scheduler.queueDepth(bulk), 0);
+        assertEquals(scheduler.inFlight(bulk), 0);
+        assertTrue(scheduler.acquireAsync(transactional).isDone());
+    }
+
+    private LaneScheduler scheduler() {
+        return new LaneScheduler(config, meterRegistry, now::get);
+    }
+
+    private static EmailMessage message(String notificationType) {
+        return EmailMessage.builder()
+            .to("user@example.com")
+            .templateId("d-123")
+            .notificationType(notificationType)
+            .build();
+    }
+}
@@ -0,0 +1,87 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.config.LaneConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.support.Acknowledgment;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.*;
+
+/**
+ * Unit tests for LaneTopicListener.
+ */
+public class LaneTopicListenerTest {
+
+    @Mock
+    private KafkaConsumerService kafkaConsumerService;
+
+    @Mock
+    private ConcurrentKafkaListenerContainerFactory<String, byte[]> containerFactory;
+
+    @Mock
+    private Acknowledgment acknowledgment;
+
+    private LaneConfig laneConfig;
+    private LaneTopicListener laneTopicListener;
+
+    @BeforeMethod
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        laneConfig = new LaneConfig();
+        laneTopicListener = new LaneTopicListener(kafkaConsumerService, laneConfig, containerFactory);
+    }
+
+    @Test
+    public void testRecordIsConsumedWithItsTopic() {
+        // Arrange
+        byte[] payload = "{}".getBytes(StandardCharsets.UTF_8);
+        ConsumerRecord<String, byte[]> record = new ConsumerRecord<>("urgent-emails", 2, 7L, null, payload);
+
+        // Act
+        laneTopicListener.onMessage(record, acknowledgment);
+
+        // Assert
+        verify(kafkaConsumerService, times(1)).consumeEmailMessage(payload, "urgent-emails", 2, 7L, acknowledgment);
+    }
+
+    @Test
+    public void testDisabledStartsNoContainers() {
+        // Arrange
+        laneConfig.setLanes(Map.of("transactional", laneWithTopic("urgent-emails")));
+
+        // Act
+        laneTopicListener.start();
+
+        // Assert
+        assertFalse(laneTopicListener.isRunning());
+        verifyNoInteractions(containerFactory);
+    }
+
+    @Test
+    public void testLanesWithoutTopicsStartNoContainers() {
+        // Arrange
+        laneConfig.setEnabled(true);
+        laneConfig.setLanes(Map.of("transactional", new LaneConfig.Lane()));
+
+        // Act
+        laneTopicListener.start();
+
+        // Assert
+        assertFalse(laneTopicListener.isRunning());
+        verifyNoInteractions(containerFactory);
+    }
+
+    private static LaneConfig.Lane laneWithTopic(String topic) {
+        LaneConfig.Lane lane = new LaneConfig.Lane();
+        lane.setTopic(topic);
+        return lane;
+    }
+}
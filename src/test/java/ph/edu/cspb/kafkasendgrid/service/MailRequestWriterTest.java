@@ -0,0 +1,170 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.model.EmailMessage;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.testng.Assert.*;
+
+/**
+ * Unit tests for MailRequestWriter.
+ * Every body is compared with what {@code Mail.build()} produces for the same email.
+ */
+public class MailRequestWriterTest {
+
+    private static final String FROM_NAME = "Form 137 System";
+
+    private MailRequestWriter mailRequestWriter;
+    private EmailService emailService;
+
+    @BeforeMethod
+    public void setUp() {
+        mailRequestWriter = new MailRequestWriter();
+        emailService = new EmailService(null, null, null, null, null, null, mailRequestWriter, null);
+        ReflectionTestUtils.setField(emailService, "defaultFromName", FROM_NAME);
+    }
+
+    @DataProvider
+    public Object[][] plainTextMessages() {
+        return new Object[][] {
+            { plainText("test@example.com", "Test Subject", "Test Body") },
+            { plainText("juan.dela.cruz@example.com", "Ñoño's \"quoted\" subject", "Line 1\nLine 2\t\u0001 \\ / </script>") },
+            { plainText("student@example.com", "Unicode ✓ 日本語 😀", "Body with   separator and \r\n endings") }
+        };
+    }
+
+    @Test(dataProvider = "plainTextMessages")
+    public void testPlainTextMatchesMailBuild(EmailMessage emailMessage) throws IOException {
+        // Arrange
+        String expected = emailService.plainTextMail("sender@example.com", emailMessage).build();
+
+        // Act
+        String actual = mailRequestWriter.plainText("sender@example.com", FROM_NAME, emailMessage);
+
+        // Assert
+        assertEquals(actual, expected);
+    }
+
+    @DataProvider
+    public Object[][] templateMessages() {
+        Map<String, Object> nested = new LinkedHashMap<>();
+        nested.put("zeta", List.of(1, 2.5, true, "x"));
+        nested.put("alpha", Map.of("b", "2", "a", "1"));
+        nested.put("missing", null);
+
+        Map<String, Object> templateData = new HashMap<>();
+        templateData.put("student_name", "John \"JD\" Doe");
+        templateData.put("form_id", "F137-001");
+        templateData.put("count", 3);
+        templateData.put("details", nested);
+
+        return new Object[][] {
+            { List.of(template("student@example.com", null, Map.of("student_name", "John Doe", "form_id", "F137-001"))) },
+            { List.of(template("student@example.com", "Your request", templateData)) },
+            { List.of(template("student@example.com", "  ", null)) },
+            { List.of(template("student@example.com", null, Map.of())) },
+            { Arrays.asList(
+                template("a@example.com", "First", Map.of("n", 1)),
+                template("b@example.com", null, Map.of("n", 2)),
+                template("c@example.com", "Third", null)) }
+        };
+    }
+
+    @Test(dataProvider = "templateMessages")
+    public void testTemplateMatchesMailBuild(List<EmailMessage> emailMessages) throws IOException {
+        // Arrange
+        String expected = emailService.templateMail("no-reply@example.com", "d-template-123", emailMessages).build();
+
+        // Act
+        String actual = mailRequestWriter.template("no-reply@example.com", FROM_NAME, "d-template-123", emailMessages);
+
+        // Assert
+        assertEquals(actual, expected);
+    }
+
+    @Test
+    public void testScheduledPlainTextMatchesMailBuild() throws IOException {
+        // Arrange
+        EmailMessage emailMessage = plainText("test@example.com", "Test Subject", "Test Body");
+        emailMessage.setSendAt(1_700_003_600L);
+        String expected = emailService.plainTextMail("sender@example.com", emailMessage, "batch-1").build();
+
+        // Act
+        String actual = mailRequestWriter.plainText("sender@example.com", FROM_NAME, emailMessage, "batch-1");
+
+        // Assert
+        assertEquals(actual, expected);
+    }
+
+    @Test
+    public void testScheduledTemplateMatchesMailBuild() throws IOException {
+        // Arrange
+        EmailMessage first = template("a@example.com", "First", Map.of("n", 1));
+        EmailMessage second = template("b@example.com", null, null);
+        first.setSendAt(1_700_003_600L);
+        second.setSendAt(1_700_003_605L);
+        List<EmailMessage> emailMessages = List.of(first, second);
+        String expected = emailService.templateMail("no-reply@example.com", "d-template-123", emailMessages, "batch-1").build();
+
+        // Act
+        String actual = mailRequestWriter.template("no-reply@example.com", FROM_NAME, "d-template-123", emailMessages, "batch-1");
+
+        // Assert
+        assertEquals(actual, expected);
+    }
+
+    @Test
+    public void testCachedFragmentsDoNotLeakBetweenSenders() throws IOException {
+        // Arrange
+        EmailMessage emailMessage = template("student@example.com", null, Map.of("n", 1));
+        ReflectionTestUtils.setField(emailService, "defaultFromName", null);
+        String expectedWithoutName = emailService.templateMail("other@example.com", "d-other", List.of(emailMessage)).build();
+
+        // Act
+        mailRequestWriter.template("no-reply@example.com", FROM_NAME, "d-template-123", List.of(emailMessage));
+        String withoutName = mailRequestWriter.template("other@example.com", null, "d-other", List.of(emailMessage));
+
+        // Assert
+        assertEquals(withoutName, expectedWithoutName);
+    }
+
+    @Test
+    public void testBufferIsReusedAcrossCalls() throws IOException {
+        // Arrange
+        EmailMessage longMessage = plainText("test@example.com", "Subject", "x".repeat(10_000));
+        EmailMessage shortMessage = plainText("test@example.com", "Subject", "Body");
+
+        // Act
+        mailRequestWriter.plainText("sender@example.com", FROM_NAME, longMessage);
+        String actual = mailRequestWriter.plainText("sender@example.com", FROM_NAME, shortMessage);
+
+        // Assert
+        assertEquals(actual, emailService.plainTextMail("sender@example.com", shortMessage).build());
+    }
+
+    private static EmailMessage plainText(String to, String subject, String body) {
+        return EmailMessage.builder()
+            .to(to)
+            .subject(subject)
+            .body(body)
+            .build();
+    }
+
+    private static EmailMessage template(String to, String subject, Map<String, Object> templateData) {
+        return EmailMessage.builder()
+            .to(to)
+            .subject(subject)
+            .templateId("d-template-123")
+            .templateData(templateData)
+            .build();
+    }
+}
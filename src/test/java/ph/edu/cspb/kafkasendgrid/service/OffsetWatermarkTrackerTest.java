@@ -0,0 +1,153 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * Unit tests for OffsetWatermarkTracker.
+ */
+public class OffsetWatermarkTrackerTest {
+
+    @Test
+    public void testWatermarkStartsAtFirstOffset() {
+        OffsetWatermarkTracker tracker = new OffsetWatermarkTracker(100L);
+        tracker.track(100L);
+
+        assertEquals(tracker.watermark(), 100L);
+        assertEquals(tracker.outstanding(), 1L);
+    }
+
+    @Test
+    public void testWatermarkAdvancesOverContiguousCompletions() {
+        OffsetWatermarkTracker tracker = new OffsetWatermarkTracker(100L);
+        for (long offset = 100L; offset < 105L; offset++) {
+            tracker.track(offset);
+        }
+
+        tracker.complete(100L);
+        tracker.complete(101L);
+        tracker.complete(103L);
+
+        // 102 is still running, so 103 must not be committed
+        assertEquals(tracker.watermark(), 102L);
+
+        tracker.complete(102L);
+        assertEquals(tracker.watermark(), 104L);
+
+        tracker.complete(104L);
+        assertEquals(tracker.watermark(), 105L);
+        assertEquals(tracker.outstanding(), 0L);
+    }
+
+    @Test
+    public void testSkippedOffsetsCountAsComplete() {
+        OffsetWatermarkTracker tracker = new OffsetWatermarkTracker(10L);
+        tracker.track(10L);
+        tracker.track(13L); // 11 and 12 were compacted away
+
+        tracker.complete(10L);
+        assertEquals(tracker.watermark(), 13L);
+
+        tracker.complete(13L);
+        assertEquals(tracker.watermark(), 14L);
+    }
+
+    @Test
+    public void testRetrackingKeepsCompletedOffsets() {
+        OffsetWatermarkTracker tracker = new OffsetWatermarkTracker(0L);
+        tracker.track(0L);
+        tracker.track(1L);
+        tracker.complete(1L);
+        assertEquals(tracker.watermark(), 0L);
+
+        // The partition is rewound to 0 and both records are redelivered
+        tracker.track(0L);
+        tracker.track(1L);
+        tracker.complete(0L);
+
+        assertEquals(tracker.watermark(), 2L);
+    }
+
+    @Test
+    public void testStartRefusesCompletedAndRunningOffsets() {
+        OffsetWatermarkTracker tracker = new OffsetWatermarkTracker(0L);
+        assertTrue(tracker.start(0L));
+        assertTrue(tracker.start(1L));
+        assertTrue(tracker.start(2L));
+        tracker.release(0L);  // failed
+        tracker.complete(2L); // succeeded, 1 still running
+
+        // The partition is rewound to 0 and all three records are redelivered
+        assertTrue(tracker.start(0L));
+        assertFalse(tracker.start(1L));
+        assertFalse(tracker.start(2L));
+
+        tracker.complete(0L);
+        tracker.complete(1L);
+        assertEquals(tracker.watermark(), 3L);
+    }
+
+    @Test
+    public void testRunningOffsetsSurviveGrowth() {
+        OffsetWatermarkTracker tracker = new OffsetWatermarkTracker(0L, 64);
+        assertTrue(tracker.start(0L));
+        for (long offset = 1L; offset < 200L; offset++) {
+            tracker.track(offset);
+        }
+
+        assertFalse(tracker.start(0L));
+        assertTrue(tracker.start(150L));
+    }
+
+    @Test
+    public void testRewindBelowWatermarkRestartsTracking() {
+        OffsetWatermarkTracker tracker = new OffsetWatermarkTracker(50L);
+        tracker.track(50L);
+        tracker.complete(50L);
+        assertEquals(tracker.watermark(), 51L);
+
+        tracker.track(40L);
+        assertEquals(tracker.watermark(), 40L);
+        tracker.complete(40L);
+        assertEquals(tracker.watermark(), 41L);
+    }
+
+    @Test
+    public void testJumpsForwardWhenNothingIsOutstanding() {
+        OffsetWatermarkTracker tracker = new OffsetWatermarkTracker(0L);
+        tracker.track(0L);
+        tracker.complete(0L);
+        assertEquals(tracker.watermark(), 1L);
+
+        tracker.track(1_000_000L);
+        assertEquals(tracker.watermark(), 1_000_000L);
+        assertEquals(tracker.outstanding(), 1L);
+    }
+
+    @Test
+    public void testGrowsBeyondInitialCapacity() {
+        OffsetWatermarkTracker tracker = new OffsetWatermarkTracker(0L, 64);
+        for (long offset = 0L; offset < 500L; offset++) {
+            tracker.track(offset);
+        }
+        for (long offset = 499L; offset >= 1L; offset--) {
+            tracker.complete(offset);
+        }
+        assertEquals(tracker.watermark(), 0L);
+
+        tracker.complete(0L);
+        assertEquals(tracker.watermark(), 500L);
+    }
+
+    @Test
+    public void testCompletionOutsideWindowIsIgnored() {
+        OffsetWatermarkTracker tracker = new OffsetWatermarkTracker(10L);
+        tracker.track(10L);
+
+        tracker.complete(5L);
+        tracker.complete(11L);
+
+        assertEquals(tracker.watermark(), 10L);
+    }
+}
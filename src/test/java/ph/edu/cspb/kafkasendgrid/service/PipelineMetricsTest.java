@@ -0,0 +1,120 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.config.TemplateConfig;
+import ph.edu.cspb.kafkasendgrid.model.EmailMessage;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Map;
+
+import static org.testng.Assert.*;
+
+/**
+ * Unit tests for PipelineMetrics.
+ */
+public class PipelineMetricsTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private PipelineMetrics pipelineMetrics;
+
+    @BeforeMethod
+    public void setUp() {
+        TemplateConfig templateConfig = new TemplateConfig();
+        templateConfig.setIds(Map.of("Submission", "d-submission", "approval", "d-approval"));
+        meterRegistry = new SimpleMeterRegistry();
+        pipelineMetrics = new PipelineMetrics(meterRegistry, templateConfig);
+    }
+
+    @Test
+    public void testMetersAreRegisteredUpFront() {
+        // Assert
+        // 4 notification types (submission, approval, none, other) x 2 kinds x 5 stages
+        assertEquals(meterRegistry.get("email.pipeline").timers().size(), 40);
+        assertEquals(meterRegistry.get("email.messages").counters().size(), ProcessingOutcome.values().length);
+        assertNotNull(meterRegistry.get("email.sendgrid.responses").tag("status", "429").counter());
+        assertNotNull(meterRegistry.get("email.sendgrid.responses").tag("status", "5xx").counter());
+        assertNotNull(meterRegistry.get("email.sendgrid.responses").tag("status", "error").counter());
+        assertEquals(meterRegistry.get("email.sendgrid.in.flight").gauge().value(), 0.0);
+    }
+
+    @Test
+    public void testStagesAreSelectedByNotificationTypeAndKind() {
+        // Arrange
+        EmailMessage plain = EmailMessage.builder().to("test@example.com").subject("Hi").body("Body").build();
+        EmailMessage known = EmailMessage.builder().to("test@example.com").notificationType("SUBMISSION").build();
+        EmailMessage unknown = EmailMessage.builder().to("test@example.com").notificationType("reminder").build();
+        EmailMessage explicitTemplate = EmailMessage.builder().to("test@example.com").templateId("d-123").build();
+
+        // Act & Assert
+        assertSame(pipelineMetrics.stages(plain).parse(), timer("parse", "none", "plain"));
+        assertSame(pipelineMetrics.stages(known).parse(), timer("parse", "submission", "template"));
+        assertSame(pipelineMetrics.stages(unknown).validate(), timer("validate", "other", "template"));
+        assertSame(pipelineMetrics.stages(explicitTemplate).build(), timer("build", "none", "template"));
+    }
+
+    @Test
+    public void testOutcomesAreCountedByName() {
+        // Act
+        pipelineMetrics.recordOutcome(ProcessingOutcome.SENT);
+        pipelineMetrics.recordOutcome(ProcessingOutcome.SENT);
+        pipelineMetrics.recordOutcome(ProcessingOutcome.RETRY);
+        pipelineMetrics.recordOutcome(ProcessingOutcome.FAILED);
+
+        // Assert
+        assertEquals(outcome("sent"), 2.0);
+        assertEquals(outcome("transient"), 1.0);
+        assertEquals(outcome("permanent"), 1.0);
+        assertEquals(outcome("invalid"), 0.0);
+        assertEquals(outcome("duplicate"), 0.0);
+    }
+
+    @Test
+    public void testUncommonStatusesAreCountedByClass() {
+        // Act
+        pipelineMetrics.recordResponse(202);
+        pipelineMetrics.recordResponse(418);
+        pipelineMetrics.recordResponse(507);
+        pipelineMetrics.recordResponse(-1);
+
+        // Assert
+        assertEquals(response("202"), 1.0);
+        assertEquals(response("4xx"), 1.0);
+        assertEquals(response("5xx"), 1.0);
+        assertEquals(response("error"), 1.0);
+        assertEquals(response("2xx"), 0.0);
+    }
+
+    @Test
+    public void testRequestRoundTripIsTimedAndTrackedInFlight() {
+        // Arrange
+        EmailMessage plain = EmailMessage.builder().to("test@example.com").subject("Hi").body("Body").build();
+        PipelineMetrics.Stages stages = pipelineMetrics.stages(plain);
+
+        // Act
+        long startNanos = pipelineMetrics.requestStarted();
+        double inFlightDuringRequest = meterRegistry.get("email.sendgrid.in.flight").gauge().value();
+        pipelineMetrics.requestFinished(stages, startNanos, 429);
+
+        // Assert
+        assertEquals(inFlightDuringRequest, 1.0);
+        assertEquals(meterRegistry.get("email.sendgrid.in.flight").gauge().value(), 0.0);
+        assertEquals(timer("sendgrid", "none", "plain").count(), 1L);
+        assertEquals(response("429"), 1.0);
+    }
+
+    private Timer timer(String stage, String type, String kind) {
+        return meterRegistry.get("email.pipeline")
+            .tags("stage", stage, "notification.type", type, "kind", kind)
+            .timer();
+    }
+
+    private double outcome(String outcome) {
+        return meterRegistry.get("email.messages").tag("outcome", outcome).counter().count();
+    }
+
+    private double response(String status) {
+        return meterRegistry.get("email.sendgrid.responses").tag("status", status).counter().count();
+    }
+}
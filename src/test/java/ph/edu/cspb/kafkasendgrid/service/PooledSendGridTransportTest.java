@@ -0,0 +1,178 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.config.SendGridTransportConfig;
+import com.sendgrid.Method;
+import com.sendgrid.Request;
+import com.sendgrid.Response;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.util.unit.DataSize;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+
+import static org.testng.Assert.*;
+
+/**
+ * Unit tests for PooledSendGridTransport against a local HTTP server.
+ */
+public class PooledSendGridTransportTest {
+
+    private HttpServer server;
+    private PooledSendGridTransport transport;
+    private SendGridTransportConfig transportConfig;
+    private SimpleMeterRegistry meterRegistry;
+
+    private final AtomicReference<String> receivedPath = new AtomicReference<>();
+    private final AtomicReference<String> receivedAuthorization = new AtomicReference<>();
+    private final AtomicReference<String> receivedEncoding = new AtomicReference<>();
+    private final AtomicReference<String> receivedBody = new AtomicReference<>();
+    private final List<Integer> clientPorts = new CopyOnWriteArrayList<>();
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        clientPorts.clear();
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/v3/", exchange -> {
+            receivedPath.set(exchange.getRequestURI().getPath());
+            receivedAuthorization.set(exchange.getRequestHeaders().getFirst("Authorization"));
+            receivedEncoding.set(exchange.getRequestHeaders().getFirst("Content-Encoding"));
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            try (InputStream body = "gzip".equals(receivedEncoding.get())
+                    ? new GZIPInputStream(exchange.getRequestBody())
+                    : exchange.getRequestBody()) {
+                receivedBody.set(new String(body.readAllBytes(), StandardCharsets.UTF_8));
+            }
+            byte[] response = "{\"errors\":[]}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("X-Message-Id", "abc123");
+            exchange.sendResponseHeaders(202, response.length);
+            exchange.getResponseBody().write(response);
+            exchange.close();
+        });
+        server.start();
+
+        transportConfig = new SendGridTransportConfig();
+        transportConfig.setType(SendGridTransportConfig.Type.POOLED);
+        transportConfig.setBaseUrl("http://localhost:" + server.getAddress().getPort() + "/");
+        transportConfig.setCompressionThreshold(DataSize.ofBytes(1024));
+        meterRegistry = new SimpleMeterRegistry();
+        transport = new PooledSendGridTransport("test-api-key", transportConfig, meterRegistry);
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        transport.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void testSendPostsToVersionedEndpoint() throws Exception {
+        // Act
+        Response response = transport.send(mailSendRequest("{\"subject\":\"Test\"}")).get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertEquals(response.getStatusCode(), 202);
+        assertEquals(response.getBody(), "{\"errors\":[]}");
+        assertEquals(response.getHeaders().get("x-message-id"), "abc123");
+        assertEquals(receivedPath.get(), "/v3/mail/send");
+        assertEquals(receivedAuthorization.get(), "Bearer test-api-key");
+        assertNull(receivedEncoding.get());
+        assertEquals(receivedBody.get(), "{\"subject\":\"Test\"}");
+    }
+
+    @Test
+    public void testLargeBodyIsGzipped() throws Exception {
+        // Arrange
+        String body = "{\"personalizations\":[" + "{\"to\":[{\"email\":\"student@example.com\"}]},".repeat(100) + "{}]}";
+
+        // Act
+        Response response = transport.send(mailSendRequest(body)).get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertEquals(response.getStatusCode(), 202);
+        assertEquals(receivedEncoding.get(), "gzip");
+        assertEquals(receivedBody.get(), body);
+    }
+
+    @Test
+    public void testCompressionCanBeDisabled() throws Exception {
+        // Arrange
+        transportConfig.setCompressionEnabled(false);
+        String body = "{\"subject\":\"" + "x".repeat(4096) + "\"}";
+
+        try (PooledSendGridTransport uncompressed = new PooledSendGridTransport("test-api-key", transportConfig, new SimpleMeterRegistry())) {
+            // Act
+            uncompressed.send(mailSendRequest(body)).get(5, TimeUnit.SECONDS);
+
+            // Assert
+            assertNull(receivedEncoding.get());
+            assertEquals(receivedBody.get(), body);
+        }
+    }
+
+    @Test
+    public void testConnectionIsReusedAcrossRequests() throws Exception {
+        // Act
+        for (int i = 0; i < 3; i++) {
+            transport.send(mailSendRequest("{\"subject\":\"Test\"}")).get(5, TimeUnit.SECONDS);
+        }
+
+        // Assert
+        assertEquals(clientPorts.size(), 3);
+        assertEquals(clientPorts.stream().distinct().count(), 1L);
+        assertEquals(transport.poolStats().getLeased(), 0);
+        assertEquals(transport.poolStats().getAvailable(), 1);
+    }
+
+    @Test
+    public void testPoolMetricsAreRegistered() throws Exception {
+        // Act
+        transport.send(mailSendRequest("{\"subject\":\"Test\"}")).get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertEquals(meterRegistry.get("httpcomponents.httpclient.pool.total.connections")
+            .tags("httpclient", "sendgrid", "state", "available").gauge().value(), 1.0);
+        assertEquals(meterRegistry.get("httpcomponents.httpclient.pool.total.connections")
+            .tags("httpclient", "sendgrid", "state", "leased").gauge().value(), 0.0);
+        assertEquals(meterRegistry.get("httpcomponents.httpclient.pool.total.pending")
+            .tag("httpclient", "sendgrid").gauge().value(), 0.0);
+    }
+
+    @Test
+    public void testConnectionFailureCompletesWithIOException() throws Exception {
+        // Arrange - nothing listens on port 1
+        transportConfig.setBaseUrl("http://localhost:1");
+
+        try (PooledSendGridTransport unreachable = new PooledSendGridTransport("test-api-key", transportConfig, new SimpleMeterRegistry())) {
+            // Act & Assert
+            try {
+                unreachable.send(mailSendRequest("{}")).get(5, TimeUnit.SECONDS);
+                fail("Expected the request to fail");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IOException);
+            }
+            assertEquals(unreachable.poolStats().getLeased(), 0);
+        }
+    }
+
+    private Request mailSendRequest(String body) {
+        Request request = new Request();
+        request.setMethod(Method.POST);
+        request.setEndpoint("mail/send");
+        request.setBody(body);
+        return request;
+    }
+}
@@ -0,0 +1,140 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.config.RetryConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.*;
+
+/**
+ * Unit tests for RetryPublisher.
+ */
+public class RetryPublisherTest {
+
+    @Mock
+    private KafkaTemplate<String, byte[]> kafkaTemplate;
+
+    private RetryConfig retryConfig;
+    private RetryPublisher retryPublisher;
+
+    @BeforeMethod
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        retryConfig = new RetryConfig();
+        retryConfig.setEnabled(true);
+        retryPublisher = new RetryPublisher(kafkaTemplate, retryConfig);
+        ReflectionTestUtils.setField(retryPublisher, "mainTopic", "emails");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFirstRetryGoesToFirstTier() {
+        // Arrange
+        when(kafkaTemplate.send(any(ProducerRecord.class)))
+            .thenReturn(CompletableFuture.completedFuture(mock(SendResult.class)));
+        long before = System.currentTimeMillis();
+
+        // Act
+        boolean scheduled = retryPublisher.scheduleRetry("key", "{}".getBytes(StandardCharsets.UTF_8), "emails", 2, 42L, null);
+
+        // Assert
+        assertTrue(scheduled);
+        ArgumentCaptor<ProducerRecord<String, byte[]>> captor = ArgumentCaptor.forClass(ProducerRecord.class);
+        verify(kafkaTemplate).send(captor.capture());
+        ProducerRecord<String, byte[]> retry = captor.getValue();
+        assertEquals(retry.topic(), "emails-retry-1");
+        assertEquals(retry.key(), "key");
+        assertEquals(new String(retry.value(), StandardCharsets.UTF_8), "{}");
+        assertEquals(header(retry.headers(), RetryPublisher.ATTEMPT_HEADER), "1");
+        assertEquals(header(retry.headers(), RetryPublisher.ORIGINAL_TOPIC_HEADER), "emails");
+        assertEquals(header(retry.headers(), RetryPublisher.ORIGINAL_PARTITION_HEADER), "2");
+        assertEquals(header(retry.headers(), RetryPublisher.ORIGINAL_OFFSET_HEADER), "42");
+        assertTrue(RetryPublisher.notBefore(retry.headers()) >= before + 10_000L);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRetryFromRetryTopicAdvancesTierAndKeepsOrigin() {
+        // Arrange
+        when(kafkaTemplate.send(any(ProducerRecord.class)))
+            .thenReturn(CompletableFuture.completedFuture(mock(SendResult.class)));
+        ConsumerRecord<String, byte[]> record = new ConsumerRecord<>("emails-retry-1", 0, 7L, "key", "{}".getBytes(StandardCharsets.UTF_8));
+        record.headers().add(RetryPublisher.ATTEMPT_HEADER, "1".getBytes(StandardCharsets.UTF_8));
+        record.headers().add(RetryPublisher.ORIGINAL_TOPIC_HEADER, "emails".getBytes(StandardCharsets.UTF_8));
+        record.headers().add(RetryPublisher.ORIGINAL_PARTITION_HEADER, "2".getBytes(StandardCharsets.UTF_8));
+        record.headers().add(RetryPublisher.ORIGINAL_OFFSET_HEADER, "42".getBytes(StandardCharsets.UTF_8));
+
+        // Act
+        boolean scheduled = retryPublisher.scheduleRetry(record);
+
+        // Assert
+        assertTrue(scheduled);
+        ArgumentCaptor<ProducerRecord<String, byte[]>> captor = ArgumentCaptor.forClass(ProducerRecord.class);
+        verify(kafkaTemplate).send(captor.capture());
+        ProducerRecord<String, byte[]> retry = captor.getValue();
+        assertEquals(retry.topic(), "emails-retry-2");
+        assertEquals(RetryPublisher.attempt(retry.headers()), 2);
+        assertEquals(header(retry.headers(), RetryPublisher.ORIGINAL_TOPIC_HEADER), "emails");
+        assertEquals(header(retry.headers(), RetryPublisher.ORIGINAL_OFFSET_HEADER), "42");
+    }
+
+    @Test
+    public void testRetriesExhausted() {
+        // Arrange
+        Headers headers = new RecordHeaders();
+        headers.add(RetryPublisher.ATTEMPT_HEADER, "3".getBytes(StandardCharsets.UTF_8));
+
+        // Act
+        boolean scheduled = retryPublisher.scheduleRetry(null, "{}".getBytes(StandardCharsets.UTF_8), "emails-retry-3", 0, 1L, headers);
+
+        // Assert
+        assertFalse(scheduled);
+        verifyNoInteractions(kafkaTemplate);
+    }
+
+    @Test
+    public void testDisabled() {
+        // Arrange
+        retryConfig.setEnabled(false);
+
+        // Act & Assert
+        assertFalse(retryPublisher.scheduleRetry(null, "{}".getBytes(StandardCharsets.UTF_8), "emails", 0, 1L, null));
+        verifyNoInteractions(kafkaTemplate);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testPublishFailureFallsBackToRedelivery() {
+        // Arrange
+        when(kafkaTemplate.send(any(ProducerRecord.class)))
+            .thenReturn(CompletableFuture.failedFuture(new RuntimeException("broker unavailable")));
+
+        // Act & Assert
+        assertFalse(retryPublisher.scheduleRetry(null, "{}".getBytes(StandardCharsets.UTF_8), "emails", 0, 1L, null));
+    }
+
+    @Test
+    public void testHeaderAccessorsDefaultForMainTopicRecords() {
+        assertEquals(RetryPublisher.attempt(null), 0);
+        assertEquals(RetryPublisher.notBefore(new RecordHeaders()), 0L);
+    }
+
+    private static String header(Headers headers, String name) {
+        return new String(headers.lastHeader(name).value(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,126 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.config.DrainConfig;
+import ph.edu.cspb.kafkasendgrid.config.RetryConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.support.Acknowledgment;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.*;
+
+/**
+ * Unit tests for RetryTopicListener.
+ */
+public class RetryTopicListenerTest {
+
+    @Mock
+    private KafkaConsumerService kafkaConsumerService;
+
+    @Mock
+    private ConcurrentKafkaListenerContainerFactory<String, byte[]> containerFactory;
+
+    @Mock
+    private Acknowledgment acknowledgment;
+
+    private RetryConfig retryConfig;
+    private DrainCoordinator drainCoordinator;
+    private RetryTopicListener retryTopicListener;
+
+    @BeforeMethod
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        retryConfig = new RetryConfig();
+        drainCoordinator = new DrainCoordinator(new DrainConfig(), mock(KafkaListenerEndpointRegistry.class),
+            new SimpleMeterRegistry());
+        retryTopicListener = new RetryTopicListener(kafkaConsumerService, retryConfig, drainCoordinator, containerFactory);
+    }
+
+    @Test
+    public void testRecordNotYetDueIsNacked() {
+        // Arrange
+        ConsumerRecord<String, byte[]> record = retryRecord(1, System.currentTimeMillis() + 5_000L);
+
+        // Act
+        retryTopicListener.onMessage(record, acknowledgment);
+
+        // Assert
+        verify(acknowledgment, times(1)).nack(any(Duration.class));
+        verify(acknowledgment, never()).acknowledge();
+        verifyNoInteractions(kafkaConsumerService);
+    }
+
+    @Test
+    public void testDueRecordIsProcessedAndSettled() {
+        // Arrange
+        ConsumerRecord<String, byte[]> record = retryRecord(1, System.currentTimeMillis() - 1L);
+        when(kafkaConsumerService.process("{}".getBytes(StandardCharsets.UTF_8))).thenReturn(ProcessingResult.SENT);
+        when(kafkaConsumerService.settle(record, ProcessingResult.SENT)).thenReturn(true);
+
+        // Act
+        retryTopicListener.onMessage(record, acknowledgment);
+
+        // Assert
+        verify(kafkaConsumerService, times(1)).settle(record, ProcessingResult.SENT);
+        verify(acknowledgment, times(1)).acknowledge();
+        assertEquals(drainCoordinator.inFlight(), 0);
+    }
+
+    @Test
+    public void testDueRecordIsLeftForRedeliveryWhileDraining() {
+        // Arrange
+        ConsumerRecord<String, byte[]> record = retryRecord(1, System.currentTimeMillis() - 1L);
+        drainCoordinator.start();
+        drainCoordinator.stop();
+
+        // Act
+        retryTopicListener.onMessage(record, acknowledgment);
+
+        // Assert
+        verify(kafkaConsumerService, never()).process(any(byte[].class));
+        verifyNoInteractions(acknowledgment);
+    }
+
+    @Test
+    public void testUnsettledRecordRetriesTierAfterItsDelay() {
+        // Arrange
+        ConsumerRecord<String, byte[]> record = retryRecord(2, 0L);
+        ProcessingResult transientFailure = new ProcessingResult(ProcessingOutcome.RETRY, ProcessingResult.Stage.SEND, null);
+        when(kafkaConsumerService.process("{}".getBytes(StandardCharsets.UTF_8))).thenReturn(transientFailure);
+        when(kafkaConsumerService.settle(record, transientFailure)).thenReturn(false);
+
+        // Act
+        retryTopicListener.onMessage(record, acknowledgment);
+
+        // Assert
+        verify(acknowledgment, times(1)).nack(Duration.ofMinutes(1));
+        verify(acknowledgment, never()).acknowledge();
+    }
+
+    @Test
+    public void testDisabledStartsNoContainers() {
+        // Act
+        retryTopicListener.start();
+
+        // Assert
+        assertFalse(retryTopicListener.isRunning());
+        verifyNoInteractions(containerFactory);
+    }
+
+    private static ConsumerRecord<String, byte[]> retryRecord(int attempt, long notBefore) {
+        ConsumerRecord<String, byte[]> record = new ConsumerRecord<>("emails-retry-" + attempt, 0, 5L, null, "{}".getBytes(StandardCharsets.UTF_8));
+        record.headers().add(RetryPublisher.ATTEMPT_HEADER, String.valueOf(attempt).getBytes(StandardCharsets.UTF_8));
+        record.headers().add(RetryPublisher.NOT_BEFORE_HEADER, String.valueOf(notBefore).getBytes(StandardCharsets.UTF_8));
+        return record;
+    }
+}
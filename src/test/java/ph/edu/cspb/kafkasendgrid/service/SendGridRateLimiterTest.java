@@ -0,0 +1,160 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.config.RateLimitConfig;
+import com.sendgrid.Response;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+/**
+ * Unit tests for SendGridRateLimiter.
+ */
+public class SendGridRateLimiterTest {
+
+    private RateLimitConfig rateLimitConfig;
+
+    @BeforeMethod
+    public void setUp() {
+        rateLimitConfig = new RateLimitConfig();
+        rateLimitConfig.setEnabled(true);
+        rateLimitConfig.setPermitsPerSecond(10);
+        rateLimitConfig.setBurst(2);
+    }
+
+    @Test
+    public void testBurstIsFreeThenRequestsArePaced() {
+        // Arrange
+        SendGridRateLimiter rateLimiter = new SendGridRateLimiter(rateLimitConfig);
+        sleepMillis(300);
+
+        // Act & Assert
+        assertEquals(rateLimiter.reserve(), 0L);
+        assertEquals(rateLimiter.reserve(), 0L);
+        long wait = rateLimiter.reserve();
+        assertTrue(wait > TimeUnit.MILLISECONDS.toNanos(50), "third request should wait for a slot, waited " + wait);
+        assertTrue(wait <= TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    @Test
+    public void testDisabledLimiterNeverWaits() {
+        // Arrange
+        rateLimitConfig.setEnabled(false);
+        SendGridRateLimiter rateLimiter = new SendGridRateLimiter(rateLimitConfig);
+
+        // Act & Assert
+        for (int i = 0; i < 50; i++) {
+            assertEquals(rateLimiter.reserve(), 0L);
+        }
+        assertFalse(rateLimiter.shouldRetry(0));
+    }
+
+    @Test
+    public void testThrottledResponsePausesUntilRetryAfter() {
+        // Arrange
+        SendGridRateLimiter rateLimiter = new SendGridRateLimiter(rateLimitConfig);
+
+        // Act
+        rateLimiter.onResponse(new Response(429, "Too Many Requests", Map.of("retry-after", "2")));
+
+        // Assert
+        assertTrue(rateLimiter.reserve() > TimeUnit.MILLISECONDS.toNanos(1500));
+    }
+
+    @Test
+    public void testThrottledResponseWithoutHeadersUsesDefaultBackoff() {
+        // Arrange
+        rateLimitConfig.setDefaultBackoff(Duration.ofMillis(500));
+        SendGridRateLimiter rateLimiter = new SendGridRateLimiter(rateLimitConfig);
+
+        // Act
+        rateLimiter.onResponse(new Response(429, "Too Many Requests", Map.of()));
+
+        // Assert
+        long wait = rateLimiter.reserve();
+        assertTrue(wait > TimeUnit.MILLISECONDS.toNanos(400));
+        assertTrue(wait <= TimeUnit.MILLISECONDS.toNanos(500));
+    }
+
+    @Test
+    public void testPauseIsCappedByMaxBackoff() {
+        // Arrange
+        rateLimitConfig.setMaxBackoff(Duration.ofMillis(200));
+        SendGridRateLimiter rateLimiter = new SendGridRateLimiter(rateLimitConfig);
+
+        // Act
+        rateLimiter.onResponse(new Response(429, "Too Many Requests", Map.of("Retry-After", "3600")));
+
+        // Assert
+        assertTrue(rateLimiter.reserve() <= TimeUnit.MILLISECONDS.toNanos(200));
+    }
+
+    @Test
+    public void testExhaustedQuotaPausesUntilReset() {
+        // Arrange
+        SendGridRateLimiter rateLimiter = new SendGridRateLimiter(rateLimitConfig);
+        long reset = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + 3;
+
+        // Act
+        rateLimiter.onResponse(new Response(202, "", Map.of(
+            "X-RateLimit-Remaining", "0",
+            "X-RateLimit-Reset", String.valueOf(reset))));
+
+        // Assert
+        assertTrue(rateLimiter.reserve() > TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    public void testRemainingQuotaSlowsRate() {
+        // Arrange
+        SendGridRateLimiter rateLimiter = new SendGridRateLimiter(rateLimitConfig);
+        long reset = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + 11;
+
+        // Act - roughly 10 seconds left for 5 requests
+        rateLimiter.onResponse(new Response(202, "", Map.of(
+            "x-ratelimit-remaining", "5",
+            "x-ratelimit-reset", String.valueOf(reset))));
+
+        // Assert
+        assertTrue(rateLimiter.currentRate() < 1.0, "rate was " + rateLimiter.currentRate());
+    }
+
+    @Test
+    public void testRemainingQuotaNeverExceedsConfiguredRate() {
+        // Arrange
+        SendGridRateLimiter rateLimiter = new SendGridRateLimiter(rateLimitConfig);
+        long reset = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + 1;
+
+        // Act
+        rateLimiter.onResponse(new Response(202, "", Map.of(
+            "X-RateLimit-Remaining", "100000",
+            "X-RateLimit-Reset", String.valueOf(reset))));
+
+        // Assert
+        assertEquals(rateLimiter.currentRate(), 10.0, 0.001);
+    }
+
+    @Test
+    public void testShouldRetryHonoursMaxRetries() {
+        // Arrange
+        rateLimitConfig.setMaxRetries(2);
+        SendGridRateLimiter rateLimiter = new SendGridRateLimiter(rateLimitConfig);
+
+        // Act & Assert
+        assertTrue(rateLimiter.shouldRetry(0));
+        assertTrue(rateLimiter.shouldRetry(1));
+        assertFalse(rateLimiter.shouldRetry(2));
+    }
+
+    private static void sleepMillis(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
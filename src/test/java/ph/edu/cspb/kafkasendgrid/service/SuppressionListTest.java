@@ -0,0 +1,232 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.config.SuppressionConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.*;
+
+/**
+ * Unit tests for SuppressionList.
+ */
+public class SuppressionListTest {
+
+    @Mock
+    private KafkaTemplate<String, byte[]> kafkaTemplate;
+
+    private SuppressionConfig config;
+    private SimpleMeterRegistry meterRegistry;
+    private SuppressionList suppressionList;
+    private Path file;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        MockitoAnnotations.openMocks(this);
+        config = new SuppressionConfig();
+        config.setEnabled(true);
+        config.setExpectedAddresses(1_000);
+        file = Files.createTempFile("suppressions", ".csv");
+        Files.delete(file);
+        meterRegistry = new SimpleMeterRegistry();
+        suppressionList = new SuppressionList(config, kafkaTemplate, meterRegistry);
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        suppressionList.shutdown();
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testFileAddressesAreSuppressedIgnoringCase() throws IOException {
+        // Arrange
+        write("email,created\n"
+            + "\"Bounced@Example.com\",1700000000\n"
+            + "# unsubscribed by hand\n"
+            + "\n"
+            + "  blocked@example.org  \n");
+        config.setFile(file.toString());
+
+        // Act
+        suppressionList.start();
+
+        // Assert
+        assertTrue(suppressionList.isSuppressed("bounced@example.com"));
+        assertTrue(suppressionList.isSuppressed(" BLOCKED@example.org"));
+        assertFalse(suppressionList.isSuppressed("student@example.com"));
+        assertFalse(suppressionList.isSuppressed(null));
+        assertEquals(meterRegistry.get("email.suppression.addresses").tag("source", "file").gauge().value(), 2.0);
+    }
+
+    @Test
+    public void testDisabledSuppressesNothing() throws IOException {
+        // Arrange
+        write("bounced@example.com\n");
+        config.setFile(file.toString());
+        suppressionList.reloadFile();
+        config.setEnabled(false);
+
+        // Act
+        boolean suppressed = suppressionList.isSuppressed("bounced@example.com");
+
+        // Assert
+        assertFalse(suppressed);
+    }
+
+    @Test
+    public void testChangedFileIsReloaded() throws IOException {
+        // Arrange
+        write("bounced@example.com\n");
+        config.setFile(file.toString());
+        suppressionList.reloadFile();
+        write("other@example.com\nthird@example.com\n");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+
+        // Act
+        boolean reloaded = suppressionList.reloadFile();
+        boolean reloadedAgain = suppressionList.reloadFile();
+
+        // Assert
+        assertTrue(reloaded);
+        assertFalse(reloadedAgain);
+        assertFalse(suppressionList.isSuppressed("bounced@example.com"));
+        assertTrue(suppressionList.isSuppressed("third@example.com"));
+        assertEquals(meterRegistry.get("email.suppression.reloads").tag("source", "file").counter().count(), 2.0);
+    }
+
+    @Test
+    public void testMissingFileKeepsCurrentList() throws IOException {
+        // Arrange
+        write("bounced@example.com\n");
+        config.setFile(file.toString());
+        suppressionList.reloadFile();
+        Files.delete(file);
+
+        // Act
+        boolean reloaded = suppressionList.reloadFile();
+
+        // Assert
+        assertFalse(reloaded);
+        assertTrue(suppressionList.isSuppressed("bounced@example.com"));
+    }
+
+    @Test
+    public void testTopicAddsAndLiftsSuppressions() throws IOException {
+        // Arrange
+        write("bounced@example.com\n");
+        config.setFile(file.toString());
+        suppressionList.reloadFile();
+
+        // Act
+        suppressionList.apply("Spam@Example.com", true);
+        suppressionList.apply("bounced@example.com", false);
+
+        // Assert
+        assertTrue(suppressionList.isSuppressed("spam@example.com"));
+        assertFalse(suppressionList.isSuppressed("bounced@example.com"));
+        assertEquals(meterRegistry.get("email.suppression.addresses").tag("source", "topic").gauge().value(), 1.0);
+        assertEquals(meterRegistry.get("email.suppression.false.positives").counter().count(), 1.0);
+    }
+
+    @Test
+    public void testTopicAddressesSurviveFileReload() throws IOException {
+        // Arrange
+        write("bounced@example.com\n");
+        config.setFile(file.toString());
+        suppressionList.apply("spam@example.com", true);
+
+        // Act
+        suppressionList.reloadFile();
+
+        // Assert
+        assertTrue(suppressionList.isSuppressed("spam@example.com"));
+        assertTrue(suppressionList.isSuppressed("bounced@example.com"));
+    }
+
+    @Test
+    public void testManyAddressesAreAllFound() {
+        // Arrange
+        for (int i = 0; i < 5_000; i++) {
+            suppressionList.apply("user" + i + "@example.com", true);
+        }
+
+        // Act
+        int found = 0;
+        for (int i = 0; i < 5_000; i++) {
+            found += suppressionList.isSuppressed("USER" + i + "@example.com") ? 1 : 0;
+        }
+
+        // Assert
+        assertEquals(found, 5_000);
+        assertFalse(suppressionList.isSuppressed("someone-else@example.com"));
+    }
+
+    @Test
+    public void testPublishOutcomeSendsRecordUnchanged() {
+        // Arrange
+        config.setOutcomeTopic("email-outcomes");
+        byte[] value = "{\"to\":\"bounced@example.com\"}".getBytes(StandardCharsets.UTF_8);
+        when(kafkaTemplate.send(any(ProducerRecord.class)))
+            .thenReturn(CompletableFuture.completedFuture(mock(SendResult.class)));
+
+        // Act
+        boolean committable = suppressionList.publishOutcome(new ConsumerRecord<>("email-topic", 0, 5L, "key", value));
+
+        // Assert
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<ProducerRecord<String, byte[]>> captor = ArgumentCaptor.forClass(ProducerRecord.class);
+        verify(kafkaTemplate).send(captor.capture());
+        assertTrue(committable);
+        assertEquals(captor.getValue().topic(), "email-outcomes");
+        assertEquals(captor.getValue().key(), "key");
+        assertSame(captor.getValue().value(), value);
+        assertEquals(new String(captor.getValue().headers().lastHeader(SuppressionList.OUTCOME_HEADER).value(),
+            StandardCharsets.UTF_8), "suppressed");
+    }
+
+    @Test
+    public void testPublishOutcomeFailureIsNotCommittable() {
+        // Arrange
+        config.setOutcomeTopic("email-outcomes");
+        when(kafkaTemplate.send(any(ProducerRecord.class)))
+            .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("broker down")));
+
+        // Act
+        boolean committable = suppressionList.publishOutcome(new ConsumerRecord<>("email-topic", 0, 5L, null, new byte[0]));
+
+        // Assert
+        assertFalse(committable);
+    }
+
+    @Test
+    public void testWithoutOutcomeTopicNothingIsPublished() {
+        // Act
+        boolean committable = suppressionList.publishOutcome(new ConsumerRecord<>("email-topic", 0, 5L, null, new byte[0]));
+
+        // Assert
+        assertTrue(committable);
+        verifyNoInteractions(kafkaTemplate);
+    }
+
+    private void write(String contents) throws IOException {
+        Files.write(file, contents.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,70 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.config.SuppressionConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.*;
+
+/**
+ * Unit tests for SuppressionTopicListener.
+ */
+public class SuppressionTopicListenerTest {
+
+    @Mock
+    private SuppressionList suppressionList;
+
+    @Mock
+    private ConcurrentKafkaListenerContainerFactory<String, byte[]> containerFactory;
+
+    private SuppressionConfig suppressionConfig;
+    private SuppressionTopicListener suppressionTopicListener;
+
+    @BeforeMethod
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        suppressionConfig = new SuppressionConfig();
+        suppressionTopicListener = new SuppressionTopicListener(suppressionList, suppressionConfig, containerFactory);
+    }
+
+    @Test
+    public void testRecordSuppressesAddress() {
+        // Arrange
+        byte[] value = "bounce".getBytes(StandardCharsets.UTF_8);
+
+        // Act
+        suppressionTopicListener.onMessage(new ConsumerRecord<>("email-suppressions", 0, 3L, "bounced@example.com", value));
+
+        // Assert
+        verify(suppressionList, times(1)).apply("bounced@example.com", true);
+    }
+
+    @Test
+    public void testTombstoneLiftsSuppression() {
+        // Act
+        suppressionTopicListener.onMessage(new ConsumerRecord<>("email-suppressions", 0, 4L, "bounced@example.com", null));
+
+        // Assert
+        verify(suppressionList, times(1)).apply("bounced@example.com", false);
+    }
+
+    @Test
+    public void testDisabledStartsNoContainer() {
+        // Arrange
+        suppressionConfig.setTopic("email-suppressions");
+
+        // Act
+        suppressionTopicListener.start();
+
+        // Assert
+        assertFalse(suppressionTopicListener.isRunning());
+        verifyNoInteractions(containerFactory);
+    }
+}
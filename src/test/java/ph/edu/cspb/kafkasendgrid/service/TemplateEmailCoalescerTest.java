@@ -0,0 +1,162 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.config.CoalescingConfig;
+import ph.edu.cspb.kafkasendgrid.model.EmailMessage;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.*;
+
+/**
+ * Unit tests for TemplateEmailCoalescer.
+ */
+public class TemplateEmailCoalescerTest {
+
+    @Mock
+    private EmailService emailService;
+
+    private CoalescingConfig coalescingConfig;
+    private TemplateEmailCoalescer coalescer;
+
+    private final EmailMessage first = EmailMessage.builder().to("first@example.com").notificationType("reminder").build();
+    private final EmailMessage second = EmailMessage.builder().to("second@example.com").notificationType("reminder").build();
+
+    @BeforeMethod
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        coalescingConfig = new CoalescingConfig();
+        coalescingConfig.setEnabled(true);
+        coalescingConfig.setMaxPersonalizations(2);
+        coalescingConfig.setMaxDelay(Duration.ofMinutes(1));
+        coalescer = new TemplateEmailCoalescer(emailService, coalescingConfig);
+        when(emailService.resolveFromEmail(any(EmailMessage.class))).thenReturn("no-reply@example.com");
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        coalescer.shutdown();
+    }
+
+    @Test
+    public void testFlushesWhenGroupIsFull() throws Exception {
+        // Act
+        CompletableFuture<Void> firstResult = coalescer.submit(first, "d-reminder");
+        CompletableFuture<Void> secondResult = coalescer.submit(second, "d-reminder");
+
+        // Assert
+        verify(emailService, times(1)).sendTemplateBatch("d-reminder", "no-reply@example.com", List.of(first, second));
+        assertTrue(firstResult.isDone() && !firstResult.isCompletedExceptionally());
+        assertTrue(secondResult.isDone() && !secondResult.isCompletedExceptionally());
+    }
+
+    @Test
+    public void testGroupsByTemplateId() throws Exception {
+        // Act
+        coalescer.submit(first, "d-reminder");
+        coalescer.submit(second, "d-status-update");
+        coalescer.flush();
+
+        // Assert
+        verify(emailService, times(1)).sendTemplateBatch("d-reminder", "no-reply@example.com", List.of(first));
+        verify(emailService, times(1)).sendTemplateBatch("d-status-update", "no-reply@example.com", List.of(second));
+    }
+
+    @Test
+    public void testFlushesAfterMaxDelay() throws Exception {
+        // Arrange
+        coalescingConfig.setMaxDelay(Duration.ofMillis(10));
+
+        // Act
+        CompletableFuture<Void> result = coalescer.submit(first, "d-reminder");
+        result.get(5, TimeUnit.SECONDS);
+
+        // Assert
+        verify(emailService, times(1)).sendTemplateBatch("d-reminder", "no-reply@example.com", List.of(first));
+    }
+
+    @Test
+    public void testTransientFailureFailsEveryMessage() throws Exception {
+        // Arrange
+        doThrow(new IOException("Network error")).when(emailService)
+            .sendTemplateBatch(anyString(), anyString(), anyList());
+
+        // Act
+        CompletableFuture<Void> firstResult = coalescer.submit(first, "d-reminder");
+        CompletableFuture<Void> secondResult = coalescer.submit(second, "d-reminder");
+
+        // Assert
+        assertTrue(firstResult.isCompletedExceptionally());
+        assertTrue(secondResult.isCompletedExceptionally());
+        verify(emailService, never()).sendEmail(any(EmailMessage.class));
+    }
+
+    @Test
+    public void testRejectedRequestIsResentIndividually() throws Exception {
+        // Arrange
+        doThrow(new SendGridException("template", 400, "Bad Request")).when(emailService)
+            .sendTemplateBatch(anyString(), anyString(), anyList());
+        doThrow(new RuntimeException("Invalid recipient")).when(emailService).sendEmail(second);
+
+        // Act
+        CompletableFuture<Void> firstResult = coalescer.submit(first, "d-reminder");
+        CompletableFuture<Void> secondResult = coalescer.submit(second, "d-reminder");
+
+        // Assert - only the record SendGrid refuses is failed
+        verify(emailService, times(1)).sendEmail(first);
+        verify(emailService, times(1)).sendEmail(second);
+        assertFalse(firstResult.isCompletedExceptionally());
+        assertTrue(secondResult.isCompletedExceptionally());
+    }
+
+    @Test
+    public void testThrottledRequestFailsEveryMessage() throws Exception {
+        // Arrange
+        doThrow(new SendGridException("template", 429, "Too Many Requests")).when(emailService)
+            .sendTemplateBatch(anyString(), anyString(), anyList());
+
+        // Act
+        CompletableFuture<Void> firstResult = coalescer.submit(first, "d-reminder");
+        CompletableFuture<Void> secondResult = coalescer.submit(second, "d-reminder");
+
+        // Assert
+        assertTrue(firstResult.isCompletedExceptionally());
+        assertTrue(secondResult.isCompletedExceptionally());
+        verify(emailService, never()).sendEmail(any(EmailMessage.class));
+    }
+
+    @Test
+    public void testServerErrorFailsEveryMessage() throws Exception {
+        // Arrange
+        doThrow(new SendGridException("template", 503, "Service Unavailable")).when(emailService)
+            .sendTemplateBatch(anyString(), anyString(), anyList());
+
+        // Act
+        CompletableFuture<Void> firstResult = coalescer.submit(first, "d-reminder");
+        CompletableFuture<Void> secondResult = coalescer.submit(second, "d-reminder");
+
+        // Assert
+        assertTrue(firstResult.isCompletedExceptionally());
+        assertTrue(secondResult.isCompletedExceptionally());
+        verify(emailService, never()).sendEmail(any(EmailMessage.class));
+    }
+
+    @Test
+    public void testIsEnabledFollowsConfig() {
+        assertTrue(coalescer.isEnabled());
+        coalescingConfig.setEnabled(false);
+        assertFalse(coalescer.isEnabled());
+    }
+}
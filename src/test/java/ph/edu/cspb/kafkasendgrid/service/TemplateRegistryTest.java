@@ -0,0 +1,181 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.config.TemplateConfig;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.testng.Assert.*;
+
+/**
+ * Unit tests for TemplateRegistry.
+ */
+public class TemplateRegistryTest {
+
+    private TemplateConfig templateConfig;
+    private SimpleMeterRegistry meterRegistry;
+    private TemplateRegistry templateRegistry;
+    private Path file;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        templateConfig = new TemplateConfig();
+        templateConfig.setIds(new HashMap<>(Map.of("submission", "d-submission", "status_update", "d-status")));
+        templateConfig.setDefaultTemplateId("d-default");
+        file = Files.createTempFile("templates", ".json");
+        Files.delete(file);
+        meterRegistry = new SimpleMeterRegistry();
+        templateRegistry = new TemplateRegistry(templateConfig, new ObjectMapper(), meterRegistry);
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        templateRegistry.shutdown();
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testLookupIgnoresCase() {
+        // Act
+        String lower = templateRegistry.getTemplateId("submission");
+        String mixed = templateRegistry.getTemplateId("Status_Update");
+        String upper = templateRegistry.getTemplateId("SUBMISSION");
+
+        // Assert
+        assertEquals(lower, "d-submission");
+        assertEquals(mixed, "d-status");
+        assertEquals(upper, "d-submission");
+    }
+
+    @Test
+    public void testUnknownOrBlankTypeFallsBackToDefault() {
+        // Act
+        String unknown = templateRegistry.getTemplateId("unknown");
+        String blank = templateRegistry.getTemplateId("  ");
+        String missing = templateRegistry.getTemplateId(null);
+
+        // Assert
+        assertEquals(unknown, "d-default");
+        assertEquals(blank, "d-default");
+        assertEquals(missing, "d-default");
+        assertTrue(templateRegistry.hasTemplate(null));
+        assertFalse(templateRegistry.hasTemplate("unknown"));
+        assertTrue(templateRegistry.hasTemplate("Submission"));
+    }
+
+    @Test
+    public void testMappedKeysIgnoreCase() {
+        // Arrange
+        templateConfig.setIds(Map.of("Approval", "d-approval"));
+
+        // Act
+        TemplateRegistry registry = new TemplateRegistry(templateConfig, new ObjectMapper(), new SimpleMeterRegistry());
+
+        // Assert
+        assertEquals(registry.getTemplateId("approval"), "d-approval");
+        assertEquals(registry.size(), 1);
+    }
+
+    @Test
+    public void testFileReplacesStartupMapping() throws IOException {
+        // Arrange
+        write("{\"ids\":{\"approval\":\"d-approval\"},\"defaultTemplateId\":\"d-file-default\"}");
+        templateConfig.getReload().setFile(file.toString());
+
+        // Act
+        templateRegistry.start();
+
+        // Assert
+        assertEquals(templateRegistry.getTemplateId("APPROVAL"), "d-approval");
+        assertEquals(templateRegistry.getTemplateId("submission"), "d-file-default");
+        assertEquals(templateRegistry.size(), 1);
+        assertEquals(meterRegistry.get("email.templates.reloads").tag("source", "file").counter().count(), 1.0);
+    }
+
+    @Test
+    public void testChangedFileIsReloaded() throws IOException {
+        // Arrange
+        write("{\"ids\":{\"approval\":\"d-approval\"}}");
+        templateConfig.getReload().setFile(file.toString());
+        templateRegistry.reloadFile();
+        write("{\"ids\":{\"approval\":\"d-approval-v2\",\"reminder\":\"d-reminder\"}}");
+
+        // Act
+        boolean reloaded = templateRegistry.reloadFile();
+        boolean reloadedAgain = templateRegistry.reloadFile();
+
+        // Assert
+        assertTrue(reloaded);
+        assertFalse(reloadedAgain);
+        assertEquals(templateRegistry.getTemplateId("approval"), "d-approval-v2");
+        assertEquals(templateRegistry.getTemplateId("reminder"), "d-reminder");
+    }
+
+    @Test
+    public void testInvalidOrMissingFileKeepsCurrentMapping() throws IOException {
+        // Arrange
+        templateConfig.getReload().setFile(file.toString());
+        boolean missing = templateRegistry.reloadFile();
+        write("{\"ids\": not json");
+
+        // Act
+        boolean invalid = templateRegistry.reloadFile();
+
+        // Assert
+        assertFalse(missing);
+        assertFalse(invalid);
+        assertEquals(templateRegistry.getTemplateId("submission"), "d-submission");
+        assertEquals(templateRegistry.size(), 2);
+    }
+
+    @Test
+    public void testTopicOverridesApplyOnTopAndTombstonesRemoveThem() {
+        // Arrange
+        templateRegistry.applyOverride("Submission", "d-submission-v2");
+        templateRegistry.applyOverride("reminder", "d-reminder");
+        templateRegistry.applyOverride(TemplateRegistry.DEFAULT_KEY, "d-topic-default");
+        String overridden = templateRegistry.getTemplateId("submission");
+
+        // Act
+        templateRegistry.applyOverride("submission", null);
+
+        // Assert
+        assertEquals(overridden, "d-submission-v2");
+        assertEquals(templateRegistry.getTemplateId("submission"), "d-submission");
+        assertEquals(templateRegistry.getTemplateId("REMINDER"), "d-reminder");
+        assertEquals(templateRegistry.getTemplateId("unknown"), "d-topic-default");
+        assertEquals(meterRegistry.get("email.templates.reloads").tag("source", "topic").counter().count(), 4.0);
+    }
+
+    @Test
+    public void testManyTypesAreAllFound() {
+        // Arrange
+        Map<String, String> ids = new HashMap<>();
+        for (int i = 0; i < 500; i++) {
+            ids.put("type_" + i, "d-" + i);
+        }
+        templateConfig.setIds(ids);
+
+        // Act
+        TemplateRegistry registry = new TemplateRegistry(templateConfig, new ObjectMapper(), new SimpleMeterRegistry());
+
+        // Assert
+        assertEquals(registry.size(), 500);
+        for (int i = 0; i < 500; i++) {
+            assertEquals(registry.getTemplateId("TYPE_" + i), "d-" + i);
+        }
+    }
+
+    private void write(String contents) throws IOException {
+        Files.write(file, contents.getBytes(StandardCharsets.UTF_8));
+    }
+}
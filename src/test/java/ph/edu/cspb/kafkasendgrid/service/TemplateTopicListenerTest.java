@@ -0,0 +1,67 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import ph.edu.cspb.kafkasendgrid.config.TemplateConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.*;
+
+/**
+ * Unit tests for TemplateTopicListener.
+ */
+public class TemplateTopicListenerTest {
+
+    @Mock
+    private TemplateRegistry templateRegistry;
+
+    @Mock
+    private ConcurrentKafkaListenerContainerFactory<String, byte[]> containerFactory;
+
+    private TemplateConfig templateConfig;
+    private TemplateTopicListener templateTopicListener;
+
+    @BeforeMethod
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        templateConfig = new TemplateConfig();
+        templateTopicListener = new TemplateTopicListener(templateRegistry, templateConfig, containerFactory);
+    }
+
+    @Test
+    public void testRecordSetsTemplate() {
+        // Arrange
+        byte[] value = " d-approval-v2\n".getBytes(StandardCharsets.UTF_8);
+
+        // Act
+        templateTopicListener.onMessage(new ConsumerRecord<>("email-templates", 0, 3L, "approval", value));
+
+        // Assert
+        verify(templateRegistry, times(1)).applyOverride("approval", "d-approval-v2");
+    }
+
+    @Test
+    public void testTombstoneRemovesOverride() {
+        // Act
+        templateTopicListener.onMessage(new ConsumerRecord<>("email-templates", 0, 4L, "approval", null));
+
+        // Assert
+        verify(templateRegistry, times(1)).applyOverride("approval", null);
+    }
+
+    @Test
+    public void testWithoutTopicStartsNoContainer() {
+        // Act
+        templateTopicListener.start();
+
+        // Assert
+        assertFalse(templateTopicListener.isRunning());
+        verifyNoInteractions(containerFactory);
+    }
+}
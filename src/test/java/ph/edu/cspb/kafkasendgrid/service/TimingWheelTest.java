@@ -0,0 +1,83 @@
+package ph.edu.cspb.kafkasendgrid.service;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+/**
+ * Unit tests for TimingWheel.
+ */
+public class TimingWheelTest {
+
+    @Test
+    public void testItemsComeOutInDueOrder() {
+        // Arrange
+        TimingWheel<String> wheel = new TimingWheel<>(10, 8, 0);
+        wheel.add(50, "third");
+        wheel.add(20, "first");
+        wheel.add(30, "second");
+        List<String> due = new ArrayList<>();
+
+        // Act
+        wheel.advance(100, due::add);
+
+        // Assert
+        assertEquals(due, List.of("first", "second", "third"));
+    }
+
+    @Test
+    public void testItemsAreHeldUntilTheirTick() {
+        // Arrange
+        TimingWheel<String> wheel = new TimingWheel<>(10, 8, 0);
+        wheel.add(45, "later");
+        List<String> due = new ArrayList<>();
+
+        // Act
+        wheel.advance(39, due::add);
+        List<String> early = List.copyOf(due);
+        wheel.advance(40, due::add);
+
+        // Assert
+        assertTrue(early.isEmpty());
+        assertEquals(due, List.of("later"));
+    }
+
+    @Test
+    public void testFarFutureItemsCascadeThroughOverflowLevels() {
+        // Arrange
+        TimingWheel<String> wheel = new TimingWheel<>(10, 4, 0);
+        wheel.add(1_000, "far");
+        wheel.add(55, "near");
+        List<String> due = new ArrayList<>();
+
+        // Act
+        wheel.advance(990, due::add);
+        List<String> beforeFar = List.copyOf(due);
+        wheel.advance(1_000, due::add);
+
+        // Assert
+        assertTrue(wheel.levels() > 2);
+        assertEquals(beforeFar, List.of("near"));
+        assertEquals(due, List.of("near", "far"));
+    }
+
+    @Test
+    public void testAlreadyDueItemIsNotAdded() {
+        // Arrange
+        TimingWheel<String> wheel = new TimingWheel<>(10, 8, 100);
+
+        // Act
+        boolean pastAdded = wheel.add(50, "past");
+        boolean currentTickAdded = wheel.add(105, "now");
+        boolean nextTickAdded = wheel.add(110, "next");
+
+        // Assert
+        assertFalse(pastAdded);
+        assertFalse(currentTickAdded);
+        assertTrue(nextTickAdded);
+        assertEquals(wheel.levels(), 1);
+    }
+}
@@ -0,0 +1,561 @@
+package ph.edu.cspb.kafkasendgrid.fake;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Embeddable stand-in for SendGrid's v3 {@code mail/send} endpoint, for exercising the real
+ * HTTP path (transports, rate limiting, retries, backpressure) without a network or an account.
+ * <p>
+ * Requests are checked the way SendGrid checks them: a bearer API key, a JSON body (optionally
+ * gzip-compressed), a sender, 1 to 1000 personalizations that each name recipients, and either a
+ * template or content plus a subject. Valid requests are answered 202 with an
+ * {@code X-Message-Id}, invalid ones 400 or 401 with SendGrid's {@code errors} body. Every
+ * request is recorded together with its status. {@code mail/batch} hands out batch IDs for
+ * scheduled sends. A {@link FaultProfile} adds latency,
+ * throttling, server errors, dropped connections and slow response bodies.
+ * <p>
+ * Requests are handled on virtual threads, so injected latency costs no platform threads and
+ * concurrency is limited only by the client. Point the service at the server with
+ * {@code SENDGRID_BASE_URL=http://localhost:<port>}, which every transport honours, or run it on
+ * its own with {@code ./gradlew fakeSendGrid}.
+ */
+public class FakeSendGridServer implements AutoCloseable {
+
+    static final String MAIL_SEND_PATH = "/v3/mail/send";
+    static final String MAIL_BATCH_PATH = "/v3/mail/batch";
+    static final int MAX_PERSONALIZATIONS = 1000;
+
+    private static final int DEFAULT_PORT = 3030;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final String apiKey;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Queue<RecordedRequest> requests = new ConcurrentLinkedQueue<>();
+    private final Map<Integer, LongAdder> statusCounts = new ConcurrentHashMap<>();
+    private final LongAdder received = new LongAdder();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final AtomicLong messageIds = new AtomicLong();
+    private final AtomicLong batchIds = new AtomicLong();
+
+    private volatile FaultProfile faults = FaultProfile.NONE;
+    private volatile Random random = new Random(FaultProfile.NONE.getSeed());
+    private volatile boolean recording = true;
+    private volatile Consumer<RecordedRequest> listener;
+
+    // Guarded by this
+    private long windowStartMillis;
+    private int windowCount;
+
+    private FakeSendGridServer(InetSocketAddress address, String apiKey) throws IOException {
+        this.apiKey = apiKey;
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    /**
+     * Starts a server on a free loopback port that accepts any API key
+     * @return the running server
+     * @throws IOException if the server cannot be started
+     */
+    public static FakeSendGridServer start() throws IOException {
+        return start(null);
+    }
+
+    /**
+     * Starts a server on a free loopback port
+     * @param apiKey the only API key accepted, or null to accept any
+     * @return the running server
+     * @throws IOException if the server cannot be started
+     */
+    public static FakeSendGridServer start(String apiKey) throws IOException {
+        return start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), apiKey);
+    }
+
+    /**
+     * Starts a server on the given address
+     * @param address where to listen; port 0 picks a free port
+     * @param apiKey the only API key accepted, or null to accept any
+     * @return the running server
+     * @throws IOException if the server cannot be started
+     */
+    public static FakeSendGridServer start(InetSocketAddress address, String apiKey) throws IOException {
+        return new FakeSendGridServer(address, apiKey);
+    }
+
+    /**
+     * URL to configure as {@code sendgrid.transport.base-url}
+     * @return e.g. {@code http://localhost:3030}
+     */
+    public String baseUrl() {
+        return "http://localhost:" + port();
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    public FaultProfile getFaults() {
+        return faults;
+    }
+
+    /**
+     * Replaces the injected faults; the random rolls restart from the profile's seed and the
+     * rate-limit window is emptied
+     * @param faults the faults to inject from now on
+     */
+    public void setFaults(FaultProfile faults) {
+        synchronized (this) {
+            windowStartMillis = 0;
+            windowCount = 0;
+        }
+        this.random = new Random(faults.getSeed());
+        this.faults = faults;
+    }
+
+    /**
+     * Turns recording of individual requests on or off; counters are always kept.
+     * Long load runs turn it off so recordings do not grow without bound.
+     * @param recording whether to record requests
+     */
+    public void setRecording(boolean recording) {
+        this.recording = recording;
+    }
+
+    /**
+     * Registers a callback for every request, recorded or not. It runs on the request's thread
+     * before the response is sent, so it should be quick.
+     * @param listener the callback, or null to remove it
+     */
+    public void setListener(Consumer<RecordedRequest> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Requests received so far, in the order they were answered
+     * @return a snapshot of the recorded requests
+     */
+    public List<RecordedRequest> requests() {
+        return List.copyOf(requests);
+    }
+
+    /**
+     * Number of requests received, recorded or not
+     * @return the request count
+     */
+    public long requestCount() {
+        return received.sum();
+    }
+
+    /**
+     * Number of requests answered with a status
+     * @param status the HTTP status, or -1 for dropped connections
+     * @return the request count
+     */
+    public long statusCount(int status) {
+        LongAdder count = statusCounts.get(status);
+        return count != null ? count.sum() : 0;
+    }
+
+    /**
+     * Highest number of requests the server has been handling at once
+     * @return the peak concurrency
+     */
+    public int maxConcurrentRequests() {
+        return maxInFlight.get();
+    }
+
+    /**
+     * Forgets recorded requests and clears every counter
+     */
+    public void reset() {
+        requests.clear();
+        statusCounts.clear();
+        received.reset();
+        maxInFlight.set(inFlight.get());
+    }
+
+    /**
+     * One-line summary of the traffic so far
+     * @return request count, statuses and peak concurrency
+     */
+    public String summary() {
+        Map<Integer, Long> statuses = new TreeMap<>();
+        statusCounts.forEach((status, count) -> statuses.put(status, count.sum()));
+        return "requests=" + requestCount() + " statuses=" + statuses + " maxConcurrent=" + maxConcurrentRequests();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) {
+        Instant receivedAt = Instant.now();
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        String body = null;
+        boolean recorded = false;
+        try {
+            body = readBody(exchange);
+            FaultProfile profile = faults;
+            Random rolls = random;
+            pause(profile.getLatency().sampleNanos(rolls));
+            if (roll(rolls, profile.getResetRate())) {
+                // Closing before any response is sent drops the connection
+                return;
+            }
+            Reply reply = reply(exchange, body, profile, rolls);
+            // Recorded before answering, so a client that has its response can rely on the counters
+            record(exchange, body, reply.status(), receivedAt);
+            recorded = true;
+            write(exchange, reply, roll(rolls, profile.getSlowBodyRate()) ? profile.getSlowBodyDelay() : null);
+        } catch (IOException e) {
+            // The client went away
+        } finally {
+            inFlight.decrementAndGet();
+            if (!recorded) {
+                record(exchange, body, -1, receivedAt);
+            }
+            exchange.close();
+        }
+    }
+
+    private Reply reply(HttpExchange exchange, String body, FaultProfile profile, Random rolls) {
+        String path = exchange.getRequestURI().getPath();
+        if (!MAIL_SEND_PATH.equals(path) && !MAIL_BATCH_PATH.equals(path)) {
+            return error(404, "Not Found", null);
+        }
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            return error(405, "Method Not Allowed", null);
+        }
+        if (!authorized(exchange.getRequestHeaders().getFirst("Authorization"))) {
+            return error(401, "The provided authorization grant is invalid, expired, or revoked", null);
+        }
+        if (!takeFromWindow(profile, exchange.getResponseHeaders())) {
+            return error(429, "Too many requests", null);
+        }
+        if (roll(rolls, profile.getThrottleRate())) {
+            long resetEpochSeconds = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + 1;
+            exchange.getResponseHeaders().set("X-RateLimit-Remaining", "0");
+            exchange.getResponseHeaders().set("X-RateLimit-Reset", Long.toString(resetEpochSeconds));
+            return error(429, "Too many requests", null);
+        }
+        if (roll(rolls, profile.getServerErrorRate())) {
+            return error(profile.getServerErrorStatus(), "Internal Server Error", null);
+        }
+        if (MAIL_BATCH_PATH.equals(path)) {
+            return new Reply(201, "{\"batch_id\":\"fake-batch-" + batchIds.incrementAndGet() + "\"}");
+        }
+        if (body == null) {
+            return error(400, "The request body could not be decompressed", null);
+        }
+        Reply invalid = validate(body);
+        if (invalid != null) {
+            return invalid;
+        }
+        exchange.getResponseHeaders().set("X-Message-Id", "fake-" + messageIds.incrementAndGet());
+        return new Reply(202, "");
+    }
+
+    private boolean authorized(String authorization) {
+        if (authorization == null || !authorization.startsWith("Bearer ")) {
+            return false;
+        }
+        String key = authorization.substring("Bearer ".length()).trim();
+        return apiKey != null ? apiKey.equals(key) : !key.isEmpty();
+    }
+
+    /**
+     * Counts the request against the fixed rate-limit window and sets SendGrid's headers
+     * @return false if the window is used up
+     */
+    private synchronized boolean takeFromWindow(FaultProfile profile, Headers responseHeaders) {
+        if (profile.getRateLimit() <= 0) {
+            return true;
+        }
+        long windowMillis = Math.max(1, profile.getRateLimitWindow().toMillis());
+        long now = System.currentTimeMillis();
+        long windowStart = now - now % windowMillis;
+        if (windowStart != windowStartMillis) {
+            windowStartMillis = windowStart;
+            windowCount = 0;
+        }
+        boolean allowed = windowCount < profile.getRateLimit();
+        if (allowed) {
+            windowCount++;
+        }
+        long resetEpochSeconds = (windowStart + windowMillis + 999) / 1000;
+        responseHeaders.set("X-RateLimit-Limit", Integer.toString(profile.getRateLimit()));
+        responseHeaders.set("X-RateLimit-Remaining", Integer.toString(profile.getRateLimit() - windowCount));
+        responseHeaders.set("X-RateLimit-Reset", Long.toString(resetEpochSeconds));
+        return allowed;
+    }
+
+    private Reply validate(String body) {
+        JsonNode mail;
+        try {
+            mail = objectMapper.readTree(body);
+        } catch (JsonProcessingException e) {
+            return error(400, "Bad Request", null);
+        }
+        if (mail == null || !mail.isObject()) {
+            return error(400, "Bad Request", null);
+        }
+        if (!hasText(mail.path("from").path("email"))) {
+            return error(400, "The from object must be provided for every email send. "
+                + "It is an object that requires the email parameter, but may also contain a name parameter.", "from");
+        }
+        JsonNode personalizations = mail.path("personalizations");
+        if (!personalizations.isArray() || personalizations.isEmpty()) {
+            return error(400, "The personalizations field is required and must have at least one personalization.",
+                "personalizations");
+        }
+        if (personalizations.size() > MAX_PERSONALIZATIONS) {
+            return error(400, "The personalizations field must have no more than " + MAX_PERSONALIZATIONS
+                + " personalizations.", "personalizations");
+        }
+        boolean everyPersonalizationHasSubject = true;
+        for (int i = 0; i < personalizations.size(); i++) {
+            JsonNode personalization = personalizations.get(i);
+            JsonNode to = personalization.path("to");
+            if (!to.isArray() || to.isEmpty()) {
+                return error(400, "The to array is required for all personalization objects, "
+                    + "and must have at least one email object with a valid email address.", "personalizations." + i + ".to");
+            }
+            for (int j = 0; j < to.size(); j++) {
+                String email = to.get(j).path("email").asText("");
+                if (email.indexOf('@') <= 0 || email.endsWith("@")) {
+                    return error(400, "Does not contain a valid address.", "personalizations." + i + ".to." + j + ".email");
+                }
+            }
+            everyPersonalizationHasSubject &= hasText(personalization.path("subject"));
+        }
+        if (hasText(mail.path("template_id"))) {
+            return null;
+        }
+        JsonNode content = mail.path("content");
+        if (!content.isArray() || content.isEmpty() || !hasText(content.get(0).path("value"))) {
+            return error(400, "Unless a valid template_id is provided, the content parameter is required. "
+                + "There must be at least one defined content block.", "content");
+        }
+        if (!hasText(mail.path("subject")) && !everyPersonalizationHasSubject) {
+            return error(400, "The subject is required. You can get around this requirement if you use a template "
+                + "with a subject defined or if every personalization has a subject defined.", "subject");
+        }
+        return null;
+    }
+
+    private static boolean hasText(JsonNode node) {
+        return node.isTextual() && !node.asText().isBlank();
+    }
+
+    private Reply error(int status, String message, String field) {
+        ObjectNode error = objectMapper.createObjectNode();
+        error.put("message", message);
+        error.put("field", field);
+        error.putNull("help");
+        ObjectNode body = objectMapper.createObjectNode();
+        ArrayNode errors = body.putArray("errors");
+        errors.add(error);
+        return new Reply(status, body.toString());
+    }
+
+    /**
+     * Sends the reply; with a delay the headers go out at once and the body trickles out one
+     * byte per delay, an otherwise empty body becoming {@code {}}
+     */
+    private static void write(HttpExchange exchange, Reply reply, Duration slowBodyDelay) throws IOException {
+        String body = slowBodyDelay != null && reply.body().isEmpty() ? "{}" : reply.body();
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length == 0) {
+            exchange.sendResponseHeaders(reply.status(), -1);
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        if (slowBodyDelay == null) {
+            exchange.sendResponseHeaders(reply.status(), bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+            return;
+        }
+        exchange.sendResponseHeaders(reply.status(), 0);
+        try (OutputStream out = exchange.getResponseBody()) {
+            for (byte b : bytes) {
+                pause(slowBodyDelay.toNanos());
+                out.write(b);
+                out.flush();
+            }
+        }
+    }
+
+    /**
+     * Reads the request body, decompressing it if needed
+     * @return the body, or null if it claims to be gzip-compressed but is not
+     */
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream raw = exchange.getRequestBody()) {
+            if (!"gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+                return new String(raw.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            try (InputStream body = new GZIPInputStream(raw)) {
+                return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+            } catch (ZipException | EOFException e) {
+                return null;
+            }
+        }
+    }
+
+    private void record(HttpExchange exchange, String body, int status, Instant receivedAt) {
+        received.increment();
+        statusCounts.computeIfAbsent(status, key -> new LongAdder()).increment();
+        Consumer<RecordedRequest> requestListener = listener;
+        if (!recording && requestListener == null) {
+            return;
+        }
+        Map<String, String> headers = new HashMap<>();
+        exchange.getRequestHeaders().forEach((name, values) -> {
+            if (!values.isEmpty()) {
+                headers.put(name.toLowerCase(), values.get(0));
+            }
+        });
+        RecordedRequest request = new RecordedRequest(exchange.getRequestMethod(), exchange.getRequestURI().getPath(),
+            Map.copyOf(headers), body, status, receivedAt);
+        if (recording) {
+            requests.add(request);
+        }
+        if (requestListener != null) {
+            requestListener.accept(request);
+        }
+    }
+
+    private static boolean roll(Random random, double rate) {
+        return rate > 0 && random.nextDouble() < rate;
+    }
+
+    private static void pause(long nanos) {
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private record Reply(int status, String body) {
+    }
+
+    /**
+     * Runs the server on its own until the JVM is stopped, e.g.
+     * {@code ./gradlew fakeSendGrid --args='port=3030 latency-median=80ms latency-p99=600ms throttle-rate=0.02'}.
+     * <p>
+     * Options: {@code port}, {@code api-key}, {@code latency} (fixed), {@code latency-median} and
+     * {@code latency-p99} (log-normal), {@code throttle-rate}, {@code rate-limit},
+     * {@code rate-limit-window}, {@code error-rate}, {@code error-status}, {@code reset-rate},
+     * {@code slow-body-rate}, {@code slow-body-delay} and {@code seed}.
+     * @param args {@code key=value} options
+     * @throws IOException if the server cannot be started
+     */
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Expected key=value but got: " + arg);
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        int port = Integer.parseInt(options.getOrDefault("port", Integer.toString(DEFAULT_PORT)));
+        FakeSendGridServer server = start(new InetSocketAddress(port), options.get("api-key"));
+        server.setRecording(false);
+        server.setFaults(faultProfile(options));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            System.out.println("Fake SendGrid stopped: " + server.summary());
+            server.close();
+        }));
+        System.out.println("Fake SendGrid listening on " + server.baseUrl() + " with options " + options);
+    }
+
+    static FaultProfile faultProfile(Map<String, String> options) {
+        FaultProfile.FaultProfileBuilder faults = FaultProfile.builder();
+        if (options.containsKey("latency")) {
+            faults.latency(LatencyDistribution.fixed(LatencyDistribution.parseDuration(options.get("latency"))));
+        }
+        if (options.containsKey("latency-median")) {
+            Duration median = LatencyDistribution.parseDuration(options.get("latency-median"));
+            Duration p99 = options.containsKey("latency-p99")
+                ? LatencyDistribution.parseDuration(options.get("latency-p99"))
+                : median;
+            faults.latency(LatencyDistribution.logNormal(median, p99));
+        }
+        if (options.containsKey("throttle-rate")) {
+            faults.throttleRate(Double.parseDouble(options.get("throttle-rate")));
+        }
+        if (options.containsKey("rate-limit")) {
+            faults.rateLimit(Integer.parseInt(options.get("rate-limit")));
+        }
+        if (options.containsKey("rate-limit-window")) {
+            faults.rateLimitWindow(LatencyDistribution.parseDuration(options.get("rate-limit-window")));
+        }
+        if (options.containsKey("error-rate")) {
+            faults.serverErrorRate(Double.parseDouble(options.get("error-rate")));
+        }
+        if (options.containsKey("error-status")) {
+            faults.serverErrorStatus(Integer.parseInt(options.get("error-status")));
+        }
+        if (options.containsKey("reset-rate")) {
+            faults.resetRate(Double.parseDouble(options.get("reset-rate")));
+        }
+        if (options.containsKey("slow-body-rate")) {
+            faults.slowBodyRate(Double.parseDouble(options.get("slow-body-rate")));
+        }
+        if (options.containsKey("slow-body-delay")) {
+            faults.slowBodyDelay(LatencyDistribution.parseDuration(options.get("slow-body-delay")));
+        }
+        if (options.containsKey("seed")) {
+            faults.seed(Long.parseLong(options.get("seed")));
+        }
+        return faults.build();
+    }
+}
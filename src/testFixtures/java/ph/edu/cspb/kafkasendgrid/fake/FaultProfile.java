@@ -0,0 +1,86 @@
+package ph.edu.cspb.kafkasendgrid.fake;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Duration;
+
+/**
+ * Faults {@link FakeSendGridServer} injects into otherwise valid requests.
+ * <p>
+ * Rates are probabilities between 0 and 1, rolled independently for each request in this
+ * order: dropped connection, throttling, server error. A request that survives all three is
+ * validated and, if valid, accepted; {@code slowBodyRate} then decides whether the response
+ * body is trickled out.
+ */
+@Value
+@Builder(toBuilder = true)
+public class FaultProfile {
+
+    /**
+     * No latency and no faults: every valid request is accepted at once
+     */
+    public static final FaultProfile NONE = FaultProfile.builder().build();
+
+    /**
+     * Delay before each request is answered
+     */
+    @Builder.Default
+    LatencyDistribution latency = LatencyDistribution.none();
+
+    /**
+     * Share of requests answered with 429 and exhausted rate-limit headers
+     */
+    @Builder.Default
+    double throttleRate = 0;
+
+    /**
+     * Requests accepted per {@code rateLimitWindow} before the rest get 429, or 0 for no limit.
+     * Like SendGrid, every response then carries {@code X-RateLimit-*} headers.
+     */
+    @Builder.Default
+    int rateLimit = 0;
+
+    /**
+     * Fixed window the rate limit is counted over
+     */
+    @Builder.Default
+    Duration rateLimitWindow = Duration.ofSeconds(1);
+
+    /**
+     * Share of requests answered with {@code serverErrorStatus}
+     */
+    @Builder.Default
+    double serverErrorRate = 0;
+
+    /**
+     * Status used for injected server errors
+     */
+    @Builder.Default
+    int serverErrorStatus = 503;
+
+    /**
+     * Share of requests whose connection is dropped without a response
+     */
+    @Builder.Default
+    double resetRate = 0;
+
+    /**
+     * Share of responses whose headers are sent at once but whose body trickles out one byte per
+     * {@code slowBodyDelay}; accepted responses, normally empty, then carry {@code {}}
+     */
+    @Builder.Default
+    double slowBodyRate = 0;
+
+    /**
+     * Pause before each byte of a slow body
+     */
+    @Builder.Default
+    Duration slowBodyDelay = Duration.ofMillis(500);
+
+    /**
+     * Seed for the fault and latency rolls, so a run can be repeated
+     */
+    @Builder.Default
+    long seed = 0x5E4D6121DL;
+}
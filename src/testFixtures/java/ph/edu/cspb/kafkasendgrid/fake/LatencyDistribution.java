@@ -0,0 +1,95 @@
+package ph.edu.cspb.kafkasendgrid.fake;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.random.RandomGenerator;
+
+/**
+ * How long {@link FakeSendGridServer} takes before it answers a request.
+ */
+@FunctionalInterface
+public interface LatencyDistribution {
+
+    /**
+     * z-score of the 99th percentile of the standard normal distribution
+     */
+    double Z_99 = 2.3263;
+
+    /**
+     * Draws the delay for one request
+     * @param random the server's random source
+     * @return the delay in nanoseconds, zero for none
+     */
+    long sampleNanos(RandomGenerator random);
+
+    /**
+     * Answers immediately
+     * @return a distribution that is always zero
+     */
+    static LatencyDistribution none() {
+        return random -> 0;
+    }
+
+    /**
+     * Always takes the same time
+     * @param latency the delay
+     * @return a constant distribution
+     */
+    static LatencyDistribution fixed(Duration latency) {
+        long nanos = latency.toNanos();
+        return random -> nanos;
+    }
+
+    /**
+     * Takes anywhere between two delays, all equally likely
+     * @param min the shortest delay
+     * @param max the longest delay
+     * @return a uniform distribution
+     */
+    static LatencyDistribution uniform(Duration min, Duration max) {
+        long minNanos = min.toNanos();
+        long maxNanos = max.toNanos();
+        return random -> maxNanos > minNanos ? random.nextLong(minNanos, maxNanos + 1) : minNanos;
+    }
+
+    /**
+     * Memoryless delays around a mean, with an occasional long one
+     * @param mean the mean delay
+     * @return an exponential distribution
+     */
+    static LatencyDistribution exponential(Duration mean) {
+        long meanNanos = mean.toNanos();
+        return random -> (long) (random.nextExponential() * meanNanos);
+    }
+
+    /**
+     * Right-skewed delays shaped like real API latency, described by their median and 99th percentile
+     * @param median the median delay
+     * @param p99 the 99th percentile delay, at least the median
+     * @return a log-normal distribution
+     */
+    static LatencyDistribution logNormal(Duration median, Duration p99) {
+        long medianNanos = median.toNanos();
+        double sigma = Math.log((double) Math.max(p99.toNanos(), medianNanos) / Math.max(1, medianNanos)) / Z_99;
+        return random -> (long) (medianNanos * Math.exp(sigma * random.nextGaussian()));
+    }
+
+    /**
+     * Parses a delay such as {@code 250ms}, {@code 2s} or {@code 500us}; a bare number is milliseconds
+     * @param value the text
+     * @return the delay
+     */
+    static Duration parseDuration(String value) {
+        String text = value.trim().toLowerCase();
+        if (text.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(text.substring(0, text.length() - 2)));
+        }
+        if (text.endsWith("us")) {
+            return Duration.ofNanos(TimeUnit.MICROSECONDS.toNanos(Long.parseLong(text.substring(0, text.length() - 2))));
+        }
+        if (text.endsWith("s")) {
+            return Duration.ofSeconds(Long.parseLong(text.substring(0, text.length() - 1)));
+        }
+        return Duration.ofMillis(Long.parseLong(text));
+    }
+}
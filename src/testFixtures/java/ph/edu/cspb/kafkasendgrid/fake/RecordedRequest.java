@@ -0,0 +1,42 @@
+package ph.edu.cspb.kafkasendgrid.fake;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * A request {@link FakeSendGridServer} received, with the status it answered.
+ *
+ * @param method the HTTP method
+ * @param path the request path, e.g. {@code /v3/mail/send}
+ * @param headers the first value of each request header, keyed by lower-case name
+ * @param body the request body, decompressed if it was sent gzip-compressed
+ * @param status the status answered, or -1 if the connection was dropped
+ * @param receivedAt when the request arrived
+ */
+public record RecordedRequest(String method, String path, Map<String, String> headers, String body,
+        int status, Instant receivedAt) {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    /**
+     * Looks up a request header
+     * @param name the header name, in any case
+     * @return the first value, or null if absent
+     */
+    public String header(String name) {
+        return headers.get(name.toLowerCase());
+    }
+
+    /**
+     * Parses the body
+     * @return the body as a JSON tree
+     * @throws JsonProcessingException if the body is not JSON
+     */
+    public JsonNode json() throws JsonProcessingException {
+        return OBJECT_MAPPER.readTree(body);
+    }
+}